@@ -1,6 +1,10 @@
 package Main;
 
 import controller.Controller;
+import model.TimeRange;
+
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Entry point of the log analysis application.
@@ -13,9 +17,69 @@ public class Main {
     /**
      * Starts the log analysis program.
      *
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments; {@code --follow} keeps following the log
+     *             directory after the existing files were read, {@code --convert}
+     *             converts the log files to segment files instead of analyzing them,
+     *             {@code --from <timestamp>} and {@code --to <timestamp>} limit the
+     *             analysis (also in follow mode) to the entries in a time range ({@code yyyy-MM-dd HH:mm:ss},
+     *             or a date alone), and {@code --filter <conditions>} overrides the
+     *             {@code log.filter} setting; {@code --worker <port>:<token>:<shard>}
+     *             is given by the coordinator of a sharded run to its worker processes
      */
     public static void main(String[] args) {
-        new Controller().run("config.properties");
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.contains("--worker")) {
+            // Started by the coordinator of a sharded run, see pipeline.workers
+            int port;
+            long token;
+            int shard;
+            try {
+                String[] worker = option(arguments, "--worker").split(":");
+                if (worker.length != 3) {
+                    throw new IllegalArgumentException();
+                }
+                port = Integer.parseInt(worker[0]);
+                token = Long.parseLong(worker[1]);
+                shard = Integer.parseInt(worker[2]);
+                if (port < 1 || port > 65535 || shard < 0) {
+                    throw new IllegalArgumentException();
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println("usage: --worker <port>:<token>:<shard>");
+                return;
+            }
+            new Controller().work(port, token, shard);
+        } else if (arguments.contains("--convert")) {
+            new Controller().convert("config.properties");
+        } else {
+            TimeRange range;
+            String filter;
+            try {
+                range = TimeRange.parse(option(arguments, "--from"), option(arguments, "--to"));
+                filter = option(arguments, "--filter");
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            if (arguments.contains("--follow")) {
+                new Controller().follow("config.properties", range, filter);
+            } else {
+                new Controller().run("config.properties", range, filter);
+            }
+        }
+    }
+
+    /**
+     * Returns the value following an option, or null if the option is not given.
+     */
+    private static String option(List<String> arguments, String name) {
+        int index = arguments.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        if (index + 1 >= arguments.size()) {
+            throw new IllegalArgumentException("missing value for " + name);
+        }
+        return arguments.get(index + 1);
     }
 }
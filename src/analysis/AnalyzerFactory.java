@@ -1,6 +1,8 @@
 package analysis;
 
 import config.ConfigManager;
+import model.EntryBatch.Column;
+
 import java.util.*;
 
 /**
@@ -16,6 +18,11 @@ public class AnalyzerFactory {
      *     <li>COUNT_LEVELS – to count the frequency of each log level</li>
      *     <li>FIND_COMMON_SOURCE – to find the most/least common log sources</li>
      *     <li>DETECT_ANOMALIES – to detect spikes in specific log levels</li>
+     *     <li>DISTINCT_COUNTS – to estimate the number of distinct sources and messages per level</li>
+     *     <li>SOURCE_GAPS – to estimate the quantiles of the time between entries of each source</li>
+     *     <li>MESSAGE_TEMPLATES – to find the most frequent message templates of each level</li>
+     *     <li>ROLLUPS – to count entries per time bucket, level and source</li>
+     *     <li>REJECTED_LINES – to count the malformed lines of each log file</li>
      * </ul>
      *
      * @param config the configuration object containing analysis options and parameters
@@ -41,10 +48,46 @@ public class AnalyzerFactory {
             analyzers.add(new AnomalyDetector(
                     config.getAnomalyLevels(),
                     config.getAnomalyWindow(),
-                    config.getAnomalyThreshold()
+                    config.getAnomalyThreshold(),
+                    config.getAnomalyTolerance()
             ));
         }
 
+        if (types.contains("DISTINCT_COUNTS")) {
+            analyzers.add(new DistinctCounter(config.getDistinctError()));
+        }
+
+        if (types.contains("SOURCE_GAPS")) {
+            analyzers.add(new GapAnalyzer(config.getGapAccuracy(), config.getGapSources()));
+        }
+
+        if (types.contains("MESSAGE_TEMPLATES")) {
+            analyzers.add(new TemplateAnalyzer(config.getTemplateTop(), config.getTemplateCapacity()));
+        }
+
+        if (types.contains("ROLLUPS")) {
+            analyzers.add(new RollupAnalyzer(config.getRollupResolutions(), config.getRollupSources()));
+        }
+
+        if (types.contains("REJECTED_LINES")) {
+            analyzers.add(new RejectCounter());
+        }
+
         return analyzers;
     }
+
+    /**
+     * Returns the columns the parser must fill for a list of analyzers,
+     * i.e. every column declared by one of them.
+     *
+     * @param analyzers the analyzers the parsed entries are passed to
+     * @return the union of their {@link LogAnalyzer#columns()}
+     */
+    public static Set<Column> requiredColumns(List<LogAnalyzer> analyzers) {
+        Set<Column> columns = EnumSet.noneOf(Column.class);
+        for (LogAnalyzer analyzer : analyzers) {
+            columns.addAll(analyzer.columns());
+        }
+        return columns;
+    }
 }
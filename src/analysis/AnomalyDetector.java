@@ -1,88 +1,240 @@
 package analysis;
 
-import model.LogEntry;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
 
-import java.time.Duration;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * AnomalyDetector identifies bursts of log entries based on configured severity levels
  * within a given time window. It tracks logs per file and detects timestamps
  * where anomalies (spikes) occur.
+ * <p>
+ * Detection runs online: every processing task feeds the timestamps of the entries
+ * it reads into its own {@link Segment}, which evaluates the rule as entries arrive and
+ * keeps only a bounded window of timestamps as primitive longs. Lines may be out of
+ * order by up to {@code toleranceInSeconds}; within that tolerance the result is the
+ * same as sorting all entries of a file and scanning them, even when a file is split
+ * into several segments processed in parallel.
  */
 public class AnomalyDetector implements LogAnalyzer {
+
+    private static final int DEFAULT_TOLERANCE = 10;
+
     private final Set<String> levelsToDetect;
     private final int windowInSeconds;
     private final int threshold;
+    private final int toleranceInSeconds;
 
-    private final Map<String, List<LogEntry>> entriesPerFile = new ConcurrentHashMap<>();
+    // Level id -> 1 if tracked, 2 if not, 0 if not looked up yet
+    private volatile byte[] trackedLevels = new byte[0];
 
-    private static final java.time.format.DateTimeFormatter formatter =
-            java.time.format.DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // File name -> segments of that file, ordered by their position in the file
+    private final Map<String, ConcurrentSkipListMap<Long, Segment>> segmentsPerFile = new ConcurrentHashMap<>();
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     /**
-     * Constructs an AnomalyDetector with the given configuration parameters.
+     * Constructs an AnomalyDetector with the given configuration parameters
+     * and the default out-of-order tolerance.
      *
      * @param levelsToDetect   log levels to monitor for anomalies (e.g. ERROR, WARNING)
      * @param windowInSeconds  the time window in seconds in which multiple entries are considered a burst
      * @param threshold        the minimum number of log entries in the window to consider it an anomaly
      */
     public AnomalyDetector(Set<String> levelsToDetect, int windowInSeconds, int threshold) {
+        this(levelsToDetect, windowInSeconds, threshold, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Constructs an AnomalyDetector with the given configuration parameters.
+     *
+     * @param levelsToDetect     log levels to monitor for anomalies (e.g. ERROR, WARNING)
+     * @param windowInSeconds    the time window in seconds in which multiple entries are considered a burst
+     * @param threshold          the minimum number of log entries in the window to consider it an anomaly
+     * @param toleranceInSeconds how far (in seconds) a line may lag behind later lines of the same file
+     */
+    public AnomalyDetector(Set<String> levelsToDetect, int windowInSeconds, int threshold, int toleranceInSeconds) {
         this.levelsToDetect = levelsToDetect;
         this.windowInSeconds = windowInSeconds;
-        this.threshold = threshold;
+        this.threshold = Math.max(threshold, 1);
+        this.toleranceInSeconds = Math.max(toleranceInSeconds, 0);
+    }
+
+    /**
+     * Declares the timestamp and level columns.
+     *
+     * @return {@link Column#TIMESTAMP} and {@link Column#LEVEL}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.TIMESTAMP, Column.LEVEL);
+    }
+
+    /**
+     * Feeds the timestamps of the tracked entries of a batch into the segment of the
+     * batch's range (see {@link #segment(String, long)}), then marks the end of the range,
+     * so that the batch that follows it in the log continues the same segment.
+     * <p>
+     * The detector is shared by all workers, and batches may be analyzed concurrently
+     * and in any order, even those of one range: a batch that does not start where a
+     * finished segment ended starts a segment of its own, and segments are combined in
+     * position order. If the batch fails part-way, its segment is not finished and the
+     * following batch starts a new one.
+     *
+     * @param batch the entries to analyze
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        Segment segment = segment(batch.getName(), batch.getPosition());
+        long[] timestamps = batch.timestamps();
+        int[] levels = batch.levels();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            if (isTracked(levels[i])) {
+                segment.add(timestamps[i]);
+            }
+        }
+        segment.finish(batch.getEndPosition());
+    }
+
+    /**
+     * Checks whether entries with the given level take part in anomaly detection.
+     * Callers can use it to skip decoding the timestamps of entries with other levels.
+     *
+     * @param level the log level (case-insensitive)
+     * @return true if the level is one of the monitored levels
+     */
+    public boolean isTracked(String level) {
+        return levelsToDetect.contains(level.toUpperCase());
     }
 
     /**
-     * Required method from LogAnalyzer interface.
-     * Not used in this class since anomaly detection is based on full LogEntry data.
+     * Checks whether entries with the level of the given id take part in anomaly detection.
+     * The answer is computed once per level and then read from an array.
      *
-     * @param value ignored in this implementation
+     * @param levelId the id of the level in {@link SymbolTable#LEVELS}
+     * @return true if the level is one of the monitored levels
+     */
+    public boolean isTracked(int levelId) {
+        byte[] tracked = trackedLevels;
+        if (levelId < tracked.length && tracked[levelId] != 0) {
+            return tracked[levelId] == 1;
+        }
+        return lookUpTracked(levelId);
+    }
+
+    private synchronized boolean lookUpTracked(int levelId) {
+        byte[] tracked = trackedLevels;
+        if (levelId >= tracked.length) {
+            tracked = Arrays.copyOf(tracked, Math.max(levelId + 1, SymbolTable.LEVELS.size()));
+        } else {
+            tracked = tracked.clone();
+        }
+        boolean result = isTracked(SymbolTable.LEVELS.name(levelId));
+        tracked[levelId] = (byte) (result ? 1 : 2);
+        trackedLevels = tracked;
+        return result;
+    }
+
+    /**
+     * Returns the segment that collects the entries of one processing task.
+     * <p>
+     * A task that reads a whole file uses position 0; a task that reads a chunk uses
+     * the chunk's {@linkplain processing.FileChunk#getPosition() position}. Segments of the same file are combined in position
+     * order by {@link #detectAnomalies()}.
+     * <p>
+     * If an earlier task {@linkplain Segment#finish finished} a segment right at
+     * {@code position}, that segment is continued instead of starting a new one, so a
+     * file that keeps growing is still tracked by a single segment.
+     *
+     * @param filename the name of the log file
+     * @param position the position of the task's first line in the file
+     * @return the segment for that file and position, created if needed
+     */
+    public Segment segment(String filename, long position) {
+        ConcurrentSkipListMap<Long, Segment> segments =
+                segmentsPerFile.computeIfAbsent(filename, name -> new ConcurrentSkipListMap<>());
+
+        synchronized (segments) {
+            Map.Entry<Long, Segment> previous = segments.lowerEntry(position);
+            if (previous != null && previous.getValue().end == position) {
+                previous.getValue().end = -1;
+                return previous.getValue();
+            }
+            return segments.computeIfAbsent(position, p -> new Segment());
+        }
+    }
+
+    /**
+     * Writes the segments collected for one log file, with their position.
+     *
+     * @param filename the name of the log file
+     * @param out      the output to write to
+     * @throws IOException if writing fails
      */
     @Override
-    public void analyze(String value) {
-        // Not used
+    public void writeState(String filename, DataOutput out) throws IOException {
+        Map<Long, Segment> segments = segmentsPerFile.getOrDefault(filename, new ConcurrentSkipListMap<>());
+        out.writeInt(segments.size());
+        for (var entry : segments.entrySet()) {
+            out.writeLong(entry.getKey());
+            entry.getValue().write(out);
+        }
     }
 
     /**
-     * Analyzes a single log entry and stores it per file if it matches a tracked level.
+     * Replaces the segments of one log file with those written by
+     * {@link #writeState(String, DataOutput)}. A task that resumes the file where
+     * the last segment ended continues that segment.
      *
-     * @param filename the name of the log file where the entry came from
-     * @param entry    the log entry to analyze
+     * @param filename the name of the log file
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
      */
-    public void analyze(String filename, LogEntry entry) {
-        if (levelsToDetect.contains(entry.getLevel().toUpperCase())) {
-            entriesPerFile.putIfAbsent(filename, new CopyOnWriteArrayList<>());
-            entriesPerFile.get(filename).add(entry);
+    @Override
+    public void readState(String filename, DataInput in) throws IOException {
+        ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long position = in.readLong();
+            Segment segment = new Segment();
+            segment.read(in);
+            segments.put(position, segment);
         }
+        segmentsPerFile.put(filename, segments);
     }
 
     /**
      * Detects anomalies in all processed log entries.
      * An anomaly is detected if there are {@code threshold} log entries or more
-     * within {@code windowInSeconds}, starting from a specific timestamp.
+     * within {@code windowInSeconds}, starting from a specific timestamp,
+     * when the tracked entries of each file are taken in timestamp order.
+     * <p>
+     * Most anomalies are already decided by the segments while entries arrive; this
+     * method only resolves the entries around segment boundaries. It does not change
+     * the collected state, so it can be called again after more entries were added.
      *
      * @return a map where the key is the log filename, and the value is a list of timestamps where anomalies begin
      */
     public Map<String, List<String>> detectAnomalies() {
         Map<String, List<String>> result = new HashMap<>();
 
-        for (var fileEntry : entriesPerFile.entrySet()) {
-            List<LogEntry> entries = fileEntry.getValue();
-            entries.sort(Comparator.comparing(LogEntry::getTimestamp));
+        for (var fileEntry : segmentsPerFile.entrySet()) {
+            LongList starts = new LongList();
+            resolve(fileEntry.getValue().values(), starts);
 
             List<String> anomalies = new ArrayList<>();
-
-            for (int i = 0; i <= entries.size() - threshold; i++) {
-                LocalDateTime start = entries.get(i).getTimestamp();
-                LocalDateTime end = entries.get(i + threshold - 1).getTimestamp();
-
-                if (Duration.between(start, end).getSeconds() <= windowInSeconds) {
-                    anomalies.add(start.format(formatter));
-                }
+            for (int i = 0; i < starts.size(); i++) {
+                anomalies.add(LocalDateTime.ofEpochSecond(starts.get(i), 0, ZoneOffset.UTC).format(formatter));
             }
 
             if (!anomalies.isEmpty()) {
@@ -92,4 +244,221 @@ public class AnomalyDetector implements LogAnalyzer {
 
         return result;
     }
+
+    /**
+     * Walks the segments of one file in order and completes the anomaly rule across
+     * their boundaries.
+     * <p>
+     * The timestamps of a file in sorted order are the concatenation, per segment, of:
+     * entries still pending from earlier segments merged with the segment's head, then the
+     * segment's released entries. The middle of each released stream was already decided
+     * by the segment, so only its first and last {@code threshold - 1} entries are replayed.
+     */
+    private void resolve(Collection<Segment> segments, LongList starts) {
+        SlidingWindow window = new SlidingWindow(threshold, windowInSeconds);
+        long[] pending = new long[0];
+
+        for (Segment segment : segments) {
+            pending = LongList.merge(pending, segment.head.toSortedArray());
+
+            if (segment.releasedCount == 0) {
+                pending = LongList.merge(pending, segment.tail());
+                continue;
+            }
+
+            for (long timestamp : pending) {
+                window.push(timestamp, true, starts);
+            }
+
+            if (segment.releasedCount < threshold) {
+                // Nothing was decided inside the segment
+                for (int i = 0; i < segment.firstReleased.size(); i++) {
+                    window.push(segment.firstReleased.get(i), true, starts);
+                }
+            } else {
+                for (int i = 0; i < segment.firstReleased.size(); i++) {
+                    window.push(segment.firstReleased.get(i), false, starts);
+                }
+                for (int i = 0; i < segment.anomalies.size(); i++) {
+                    starts.add(segment.anomalies.get(i));
+                }
+                window.reset(segment.window.pending(), true);
+            }
+
+            pending = segment.tail();
+        }
+
+        for (long timestamp : pending) {
+            window.push(timestamp, true, starts);
+        }
+    }
+
+    /**
+     * Returns how many tracked entries of each file arrived more than
+     * {@code toleranceInSeconds} after a later entry. Such entries are still counted,
+     * but too late to be reordered, so they may shift or hide an anomaly.
+     *
+     * @return the number of late entries per log filename, for the files that have any
+     */
+    public Map<String, Long> getLateEntries() {
+        Map<String, Long> result = new TreeMap<>();
+        for (var fileEntry : segmentsPerFile.entrySet()) {
+            long late = 0;
+            for (Segment segment : fileEntry.getValue().values()) {
+                late += segment.late;
+            }
+            if (late > 0) {
+                result.put(fileEntry.getKey(), late);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns how far an entry may lag behind later entries of its file and still be
+     * put back in order.
+     *
+     * @return the tolerance in seconds
+     */
+    public int getToleranceInSeconds() {
+        return toleranceInSeconds;
+    }
+
+    /**
+     * The tracked entries of one file read by a single processing task.
+     * <p>
+     * Entries within {@code toleranceInSeconds} of the segment's smallest entry form its
+     * head and are kept as-is, because they may interleave with entries of the previous
+     * segment: since no line lags more than the tolerance behind an earlier one, the
+     * previous segment ends no later than that. Later entries go through a reorder buffer
+     * and are released in timestamp order once no line within the tolerance can precede
+     * them any more; released entries are evaluated immediately by a {@link SlidingWindow}.
+     * <p>
+     * The head is closed once the first entry is released: from then on, a line small
+     * enough for the head is more than the tolerance out of order, and is counted as late
+     * like any other. Until then, a smaller entry lowers the head's limit and the head
+     * entries above it move to the reorder buffer, so a first entry far in the future does
+     * not pull the whole segment into the head. Both buffers are heaps, and each holds
+     * about {@code toleranceInSeconds} worth of entries.
+     * <p>
+     * A segment must be fed by one thread at a time.
+     */
+    public class Segment {
+
+        private boolean started;
+        // The smallest entry seen before the first release
+        private long headStart;
+        private long maxTimestamp;
+
+        // Max-heap of the entries up to headStart + toleranceInSeconds
+        private final LongHeap head = new LongHeap(true);
+
+        // Min-heap of entries waiting for the tolerance to pass
+        private final LongHeap reorder = new LongHeap(false);
+
+        private final LongList firstReleased = new LongList(threshold);
+        private final SlidingWindow window = new SlidingWindow(threshold, windowInSeconds);
+        private final LongList anomalies = new LongList();
+        private long releasedCount;
+        private long lastReleased;
+        private long late;
+
+        // Position right after the last line fed, or -1 while a task is feeding the segment
+        private volatile long end = -1;
+
+        private Segment() {
+        }
+
+        /**
+         * Marks the end of the task that fed this segment, so that a task starting
+         * right at {@code endPosition} may continue it.
+         *
+         * @param endPosition the position right after the last line read by the task
+         */
+        public void finish(long endPosition) {
+            end = endPosition;
+        }
+
+        /**
+         * Adds the timestamp of a tracked entry.
+         *
+         * @param epochSecond the entry's timestamp in seconds since the epoch (UTC)
+         */
+        public void add(long epochSecond) {
+            if (!started) {
+                started = true;
+                headStart = epochSecond;
+                maxTimestamp = epochSecond;
+            }
+            maxTimestamp = Math.max(maxTimestamp, epochSecond);
+
+            if (releasedCount == 0) {
+                if (epochSecond < headStart) {
+                    headStart = epochSecond;
+                    while (head.size() > 0 && head.peek() > headStart + toleranceInSeconds) {
+                        reorder.offer(head.poll());
+                    }
+                }
+                if (epochSecond <= headStart + toleranceInSeconds) {
+                    head.offer(epochSecond);
+                    return;
+                }
+            } else if (epochSecond < lastReleased) {
+                late++;
+                release(epochSecond);
+                return;
+            }
+
+            reorder.offer(epochSecond);
+            while (reorder.size() > 0 && reorder.peek() <= maxTimestamp - toleranceInSeconds) {
+                release(reorder.poll());
+            }
+        }
+
+        private void write(DataOutput out) throws IOException {
+            out.writeBoolean(started);
+            out.writeLong(headStart);
+            out.writeLong(maxTimestamp);
+            head.write(out);
+            reorder.write(out);
+            firstReleased.write(out);
+            window.write(out);
+            anomalies.write(out);
+            out.writeLong(releasedCount);
+            out.writeLong(lastReleased);
+            out.writeLong(late);
+            out.writeLong(end);
+        }
+
+        private void read(DataInput in) throws IOException {
+            started = in.readBoolean();
+            headStart = in.readLong();
+            maxTimestamp = in.readLong();
+            head.read(in);
+            reorder.read(in);
+            firstReleased.read(in);
+            window.read(in);
+            anomalies.read(in);
+            releasedCount = in.readLong();
+            lastReleased = in.readLong();
+            late = in.readLong();
+            end = in.readLong();
+        }
+
+        private void release(long epochSecond) {
+            if (firstReleased.size() < threshold - 1) {
+                firstReleased.add(epochSecond);
+            }
+            window.push(epochSecond, true, anomalies);
+            lastReleased = epochSecond;
+            releasedCount++;
+        }
+
+        /**
+         * Returns the entries still in the reorder buffer, in ascending order.
+         */
+        private long[] tail() {
+            return reorder.toSortedArray();
+        }
+    }
 }
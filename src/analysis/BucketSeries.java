@@ -0,0 +1,200 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts per time bucket, kept in dense pages of {@value #PAGE_SIZE} consecutive
+ * buckets.
+ * <p>
+ * A bucket is a {@code long} index, such as the number of whole minutes since the
+ * epoch. Its count lives in a plain {@code long[]} page found by the bucket's high bits,
+ * so counting an entry is an array increment, and the page last used is remembered so
+ * that entries in time order do not even look the page up. Only pages holding at least
+ * one count exist, so a stray timestamp far from the others costs one page rather than
+ * an array spanning the gap.
+ */
+class BucketSeries {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    // Beyond this many empty buckets, starting a new run is shorter than writing zeros
+    private static final int MAX_EMPTY_BUCKETS = 8;
+
+    // Page number -> index in pages
+    private final LongIntMap index = new LongIntMap(16);
+    private long[] numbers = new long[4];
+    private long[][] pages = new long[4][];
+    private int size;
+
+    private long lastNumber = Long.MIN_VALUE;
+    private long[] lastPage;
+
+    /**
+     * A run of consecutive buckets.
+     *
+     * @param start  the first bucket of the run
+     * @param counts the count of each bucket of the run, from {@code start} on
+     */
+    record Run(long start, long[] counts) {
+    }
+
+    /**
+     * Adds to the count of a bucket.
+     */
+    void add(long bucket, long count) {
+        long number = bucket >> PAGE_BITS;
+        long[] page = number == lastNumber ? lastPage : page(number);
+        page[(int) (bucket & (PAGE_SIZE - 1))] += count;
+    }
+
+    private long[] page(long number) {
+        int slot = index.get(number);
+        long[] page;
+        if (slot >= 0) {
+            page = pages[slot];
+        } else {
+            if (size == pages.length) {
+                numbers = Arrays.copyOf(numbers, size * 2);
+                pages = Arrays.copyOf(pages, size * 2);
+            }
+            page = new long[PAGE_SIZE];
+            numbers[size] = number;
+            pages[size] = page;
+            index.put(number, size++);
+        }
+        lastNumber = number;
+        lastPage = page;
+        return page;
+    }
+
+    /**
+     * Adds the counts of another series to this one, page by page.
+     */
+    void addAll(BucketSeries other) {
+        for (int i = 0; i < other.size; i++) {
+            long[] page = page(other.numbers[i]);
+            long[] counts = other.pages[i];
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                page[j] += counts[j];
+            }
+        }
+    }
+
+    /**
+     * Returns a series of coarser buckets, each holding {@code factor} buckets of this one:
+     * bucket {@code b} of this series counts in bucket {@code floor(b / factor)} of the result.
+     */
+    BucketSeries downsample(int factor) {
+        BucketSeries result = new BucketSeries();
+        for (int i = 0; i < size; i++) {
+            long first = numbers[i] << PAGE_BITS;
+            long[] counts = pages[i];
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                if (counts[j] != 0) {
+                    result.add(Math.floorDiv(first + j, factor), counts[j]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the counts as runs in bucket order. A run goes from a non-empty bucket to
+     * a non-empty bucket and ends where at least {@value #MAX_EMPTY_BUCKETS} empty buckets
+     * follow; fewer empty buckets inside a run are included as zeros.
+     */
+    List<Run> runs() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(numbers[a], numbers[b]));
+
+        List<Run> runs = new ArrayList<>();
+        LongList counts = new LongList();
+        long start = 0;
+        long last = 0;
+        for (int i : order) {
+            long first = numbers[i] << PAGE_BITS;
+            long[] page = pages[i];
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                if (page[j] == 0) {
+                    continue;
+                }
+                long bucket = first + j;
+                if (counts.size() > 0 && bucket - last > MAX_EMPTY_BUCKETS) {
+                    runs.add(new Run(start, counts.toArray()));
+                    counts = new LongList();
+                }
+                if (counts.size() == 0) {
+                    start = bucket;
+                } else {
+                    for (long empty = last + 1; empty < bucket; empty++) {
+                        counts.add(0);
+                    }
+                }
+                counts.add(page[j]);
+                last = bucket;
+            }
+        }
+        if (counts.size() > 0) {
+            runs.add(new Run(start, counts.toArray()));
+        }
+        return runs;
+    }
+
+    /**
+     * Writes the counts as the {@link #runs()}, so the size follows the number of
+     * buckets holding counts rather than the number of pages. The first run starts at
+     * a full {@code long}; each later one at its distance from the end of the previous
+     * one, and lengths and counts are varints.
+     */
+    void write(DataOutput out) throws IOException {
+        List<Run> runs = runs();
+        out.writeInt(runs.size());
+        long end = 0;
+        for (int i = 0; i < runs.size(); i++) {
+            Run run = runs.get(i);
+            if (i == 0) {
+                out.writeLong(run.start());
+            } else {
+                LongList.writeVarLong(out, run.start() - end);
+            }
+            LongList.writeVarLong(out, run.counts().length);
+            for (long count : run.counts()) {
+                LongList.writeVarLong(out, count);
+            }
+            end = run.start() + run.counts().length;
+        }
+    }
+
+    /**
+     * Adds counts written by {@link #write(DataOutput)}.
+     */
+    void read(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid run count " + count);
+        }
+        long end = 0;
+        for (int i = 0; i < count; i++) {
+            long start = i == 0 ? in.readLong() : end + LongList.readVarLong(in);
+            long length = LongList.readVarLong(in);
+            if (length <= 0 || length > Integer.MAX_VALUE) {
+                throw new IOException("invalid run length " + length);
+            }
+            for (long bucket = start; bucket < start + length; bucket++) {
+                long value = LongList.readVarLong(in);
+                if (value != 0) {
+                    add(bucket, value);
+                }
+            }
+            end = start + length;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * DistinctCounter estimates how many distinct sources and distinct messages
+ * appear in the logs, in total and for each log level.
+ * <p>
+ * Unlike {@link SourceCounter}, it keeps no entry per value: each level has one
+ * {@link HyperLogLog} sketch of its sources and one of its messages, whose size is set
+ * by the configured error and stays the same whether a log has ten sources or millions.
+ * Both are fed from fingerprints of the raw bytes, so sources are never interned into
+ * {@link SymbolTable#SOURCES}.
+ * Totals are the union of the sketches of all levels. Like {@link LevelCounter}, each
+ * worker counts into its own partial, and partials are merged into the shared instance
+ * under its lock by combining their registers.
+ */
+public class DistinctCounter implements LogAnalyzer {
+
+    private final int precision;
+
+    // Indexed by level id; null until an entry of that level is seen
+    private HyperLogLog[] sources = new HyperLogLog[8];
+    private HyperLogLog[] messages = new HyperLogLog[8];
+
+    /**
+     * Creates a counter with the given error bound.
+     *
+     * @param error the relative standard error of the counts, such as 0.01 for 1%;
+     *              the sketches are sized for the nearest supported error at or below it
+     */
+    public DistinctCounter(double error) {
+        this.precision = HyperLogLog.precisionFor(error);
+    }
+
+    private DistinctCounter(DistinctCounter shared) {
+        this.precision = shared.precision;
+    }
+
+    /**
+     * Declares the level, source fingerprint and message columns.
+     *
+     * @return {@link Column#LEVEL}, {@link Column#SOURCE_FINGERPRINT} and {@link Column#MESSAGE}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.LEVEL, Column.SOURCE_FINGERPRINT, Column.MESSAGE);
+    }
+
+    /**
+     * Adds the sources and messages of a batch of entries to the sketches of their levels.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries to count
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        int[] levels = batch.levels();
+        long[] sourceFingerprints = batch.sourceFingerprints();
+        byte[] messageBytes = batch.messageBytes();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            int level = levels[i];
+            if (level >= sources.length || sources[level] == null) {
+                addLevel(level);
+            }
+            sources[level].add(sourceFingerprints[i]);
+            messages[level].add(SymbolTable.fingerprint(messageBytes, batch.messageStart(i), batch.messageEnd(i)));
+        }
+    }
+
+    private void addLevel(int level) {
+        if (level >= sources.length) {
+            int capacity = Math.max(level + 1, sources.length * 2);
+            sources = Arrays.copyOf(sources, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        sources[level] = new HyperLogLog(precision);
+        messages[level] = new HyperLogLog(precision);
+    }
+
+    /**
+     * Creates an empty counter with the same error bound for a single worker.
+     *
+     * @return a new {@link DistinctCounter}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new DistinctCounter(this);
+    }
+
+    /**
+     * Adds the sketches of a worker's partial counter to this one.
+     *
+     * @param partial a {@link DistinctCounter} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        DistinctCounter other = (DistinctCounter) partial;
+        for (int level = 0; level < other.sources.length; level++) {
+            if (other.sources[level] != null) {
+                merge(level, other.sources[level], other.messages[level]);
+            }
+        }
+    }
+
+    private void merge(int level, HyperLogLog levelSources, HyperLogLog levelMessages) {
+        if (level >= sources.length || sources[level] == null) {
+            addLevel(level);
+        }
+        sources[level].merge(levelSources);
+        messages[level].merge(levelMessages);
+    }
+
+    /**
+     * Writes the sketches of every level seen, by level name.
+     *
+     * @param filename ignored, a counter holds the results of whatever it was fed
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int seen = 0;
+        for (HyperLogLog sketch : sources) {
+            if (sketch != null) {
+                seen++;
+            }
+        }
+        out.writeInt(seen);
+        for (int level = 0; level < sources.length; level++) {
+            if (sources[level] != null) {
+                out.writeUTF(SymbolTable.LEVELS.name(level));
+                sources[level].write(out);
+                messages[level].write(out);
+            }
+        }
+    }
+
+    /**
+     * Adds sketches written by {@link #writeState(String, DataOutput)}.
+     *
+     * @param filename ignored
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the sketches have another precision
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int level = SymbolTable.LEVELS.intern(in.readUTF());
+            HyperLogLog levelSources = HyperLogLog.read(in);
+            HyperLogLog levelMessages = HyperLogLog.read(in);
+            if (levelSources.precision() != precision || levelMessages.precision() != precision) {
+                throw new IOException("sketch precision does not match");
+            }
+            merge(level, levelSources, levelMessages);
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct sources over all levels.
+     *
+     * @return the estimated count, or 0 if nothing was counted
+     */
+    public synchronized long getDistinctSources() {
+        return union(sources, null).estimate();
+    }
+
+    /**
+     * Returns the estimated number of distinct messages over all levels.
+     *
+     * @return the estimated count, or 0 if nothing was counted
+     */
+    public synchronized long getDistinctMessages() {
+        return union(messages, null).estimate();
+    }
+
+    /**
+     * Returns the estimated number of distinct sources of each level.
+     *
+     * @return a map where the key is the log level (in lowercase) and the value is the estimated count
+     */
+    public synchronized Map<String, Long> getDistinctSourcesPerLevel() {
+        return perLevel(sources);
+    }
+
+    /**
+     * Returns the estimated number of distinct messages of each level.
+     *
+     * @return a map where the key is the log level (in lowercase) and the value is the estimated count
+     */
+    public synchronized Map<String, Long> getDistinctMessagesPerLevel() {
+        return perLevel(messages);
+    }
+
+    private Map<String, Long> perLevel(HyperLogLog[] sketches) {
+        // Levels that differ only in case are counted together, as by LevelCounter
+        Set<String> names = new HashSet<>();
+        for (int level = 0; level < sketches.length; level++) {
+            if (sketches[level] != null) {
+                names.add(SymbolTable.LEVELS.name(level).toLowerCase());
+            }
+        }
+        Map<String, Long> result = new HashMap<>();
+        for (String name : names) {
+            result.put(name, union(sketches, name).estimate());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the union of the sketches of the levels named {@code name} (ignoring case),
+     * or of all levels if it is null.
+     */
+    private HyperLogLog union(HyperLogLog[] sketches, String name) {
+        HyperLogLog union = new HyperLogLog(precision);
+        for (int level = 0; level < sketches.length; level++) {
+            if (sketches[level] != null && (name == null || SymbolTable.LEVELS.name(level).equalsIgnoreCase(name))) {
+                union.merge(sketches[level]);
+            }
+        }
+        return union;
+    }
+}
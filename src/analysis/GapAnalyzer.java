@@ -0,0 +1,363 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * GapAnalyzer measures, for each source, the time between consecutive entries of
+ * that source in a log file, and reports the quantiles of those gaps.
+ * <p>
+ * Gaps go into a {@link QuantileSketch} per source, so the memory used does not
+ * depend on the number of entries, and quantiles are within the configured relative
+ * accuracy. To keep the memory bounded when the source is a high-cardinality field,
+ * such as a pod name or a client address, only the first {@code maxSources} distinct
+ * sources seen get a sketch; entries of the other sources are not measured.
+ * <p>
+ * Like {@link AnomalyDetector}, gaps are followed per file: each processing task
+ * continues a {@link Segment} that remembers the first and last timestamp of every
+ * tracked source in its range, and the gaps between the ranges of a file are completed
+ * in position order when the quantiles are read. Within a range, each worker collects
+ * into its own partial, which is merged into the shared instance under its lock.
+ * Gaps are taken between an entry and the latest earlier entry of the same source;
+ * an entry older than that one is not measured.
+ */
+public class GapAnalyzer implements LogAnalyzer {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /**
+     * The quantiles of the gaps of one source, in seconds.
+     *
+     * @param count the number of gaps measured
+     * @param p50   the median gap
+     * @param p90   the 90th percentile
+     * @param p99   the 99th percentile
+     * @param max   the largest gap
+     */
+    public record Gaps(long count, long p50, long p90, long p99, long max) {
+    }
+
+    private final double accuracy;
+    private final SourceSlots tracked;
+
+    // File name -> segments of that file, ordered by their position in the file
+    private final Map<String, ConcurrentSkipListMap<Long, Segment>> segmentsPerFile;
+
+    // Indexed by slot; null until a gap of that source is measured
+    private QuantileSketch[] sketches = new QuantileSketch[0];
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param accuracy   the relative error of the reported quantiles, such as 0.01 for 1%
+     * @param maxSources the number of distinct sources whose gaps are measured
+     */
+    public GapAnalyzer(double accuracy, int maxSources) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("invalid accuracy: " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.tracked = new SourceSlots(maxSources);
+        this.segmentsPerFile = new ConcurrentHashMap<>();
+    }
+
+    private GapAnalyzer(GapAnalyzer shared) {
+        this.accuracy = shared.accuracy;
+        this.tracked = shared.tracked;
+        this.segmentsPerFile = shared.segmentsPerFile;
+    }
+
+    /**
+     * Declares the timestamp and source fingerprint columns.
+     *
+     * @return {@link Column#TIMESTAMP} and {@link Column#SOURCE_FINGERPRINT}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.TIMESTAMP, Column.SOURCE_FINGERPRINT);
+    }
+
+    /**
+     * Measures the gaps of the tracked sources of a batch, continuing the segment of the
+     * batch's range, then marks the end of the range.
+     * Not thread-safe: each worker should collect into its own partial.
+     *
+     * @param batch the entries to analyze
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        Segment segment = segment(batch.getName(), batch.getPosition());
+        long[] timestamps = batch.timestamps();
+        long[] sources = batch.sourceFingerprints();
+        byte[] sourceBytes = batch.sourceBytes();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            int slot = tracked.slot(sources[i], sourceBytes, batch.sourceStart(i), batch.sourceEnd(i));
+            if (slot < 0) {
+                continue;
+            }
+            long gap = segment.add(slot, timestamps[i]);
+            if (gap >= 0) {
+                sketch(slot).add(gap);
+            }
+        }
+        segment.finish(batch.getEndPosition());
+    }
+
+    private QuantileSketch sketch(int slot) {
+        if (slot >= sketches.length) {
+            sketches = Arrays.copyOf(sketches, Math.min(Math.max(slot + 1, sketches.length * 2), tracked.capacity()));
+        }
+        if (sketches[slot] == null) {
+            sketches[slot] = new QuantileSketch(accuracy);
+        }
+        return sketches[slot];
+    }
+
+    /**
+     * Returns the segment that follows the entries of one processing task, continuing
+     * the segment an earlier task finished right at {@code position} if there is one.
+     */
+    private Segment segment(String filename, long position) {
+        ConcurrentSkipListMap<Long, Segment> segments =
+                segmentsPerFile.computeIfAbsent(filename, name -> new ConcurrentSkipListMap<>());
+
+        synchronized (segments) {
+            Map.Entry<Long, Segment> previous = segments.lowerEntry(position);
+            if (previous != null && previous.getValue().end == position) {
+                previous.getValue().end = -1;
+                return previous.getValue();
+            }
+            return segments.computeIfAbsent(position, p -> new Segment());
+        }
+    }
+
+    /**
+     * Creates an empty analyzer for a single worker, sharing the tracked sources
+     * and the segments of this one.
+     *
+     * @return a new {@link GapAnalyzer}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new GapAnalyzer(this);
+    }
+
+    /**
+     * Adds the sketches of a worker's partial analyzer to this one.
+     *
+     * @param partial a {@link GapAnalyzer} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        QuantileSketch[] other = ((GapAnalyzer) partial).sketches;
+        for (int slot = 0; slot < other.length; slot++) {
+            if (other[slot] != null) {
+                sketch(slot).merge(other[slot]);
+            }
+        }
+    }
+
+    /**
+     * Writes the sketches this analyzer holds and the segments of one log file,
+     * with sources by name.
+     *
+     * @param filename the name of the log file
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int measured = 0;
+        for (QuantileSketch sketch : sketches) {
+            if (sketch != null) {
+                measured++;
+            }
+        }
+        out.writeInt(measured);
+        for (int slot = 0; slot < sketches.length; slot++) {
+            if (sketches[slot] != null) {
+                out.writeUTF(tracked.name(slot));
+                sketches[slot].write(out);
+            }
+        }
+
+        Map<Long, Segment> segments = segmentsPerFile.getOrDefault(filename, new ConcurrentSkipListMap<>());
+        out.writeInt(segments.size());
+        for (var entry : segments.entrySet()) {
+            out.writeLong(entry.getKey());
+            entry.getValue().write(out);
+        }
+    }
+
+    /**
+     * Adds the sketches and replaces the segments of one log file written by
+     * {@link #writeState(String, DataOutput)}. Sources that no longer fit in the
+     * tracked sources are dropped.
+     *
+     * @param filename the name of the log file
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int measured = in.readInt();
+        for (int i = 0; i < measured; i++) {
+            int slot = tracked.slot(in.readUTF());
+            QuantileSketch sketch = QuantileSketch.read(in);
+            if (slot >= 0) {
+                sketch(slot).merge(sketch);
+            }
+        }
+
+        ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long position = in.readLong();
+            Segment segment = new Segment();
+            segment.read(in);
+            segments.put(position, segment);
+        }
+        segmentsPerFile.put(filename, segments);
+    }
+
+    /**
+     * Returns the quantiles of the gaps of each tracked source that has at least one gap.
+     * Gaps between the ranges read by different tasks are added here, without changing
+     * the collected state, so it can be called again after more entries were added.
+     *
+     * @return a map where the key is the source name and the value holds its gap quantiles
+     */
+    public synchronized Map<String, Gaps> getGaps() {
+        QuantileSketch[] all = new QuantileSketch[sketches.length];
+        for (int slot = 0; slot < sketches.length; slot++) {
+            if (sketches[slot] != null) {
+                all[slot] = sketches[slot].copy();
+            }
+        }
+
+        for (ConcurrentSkipListMap<Long, Segment> segments : segmentsPerFile.values()) {
+            long[] last = new long[0];
+            for (Segment segment : segments.values()) {
+                for (int slot = 0; slot < segment.first.length; slot++) {
+                    if (segment.first[slot] == Segment.UNSEEN) {
+                        continue;
+                    }
+                    if (slot < last.length && last[slot] != Segment.UNSEEN && segment.first[slot] >= last[slot]) {
+                        if (slot >= all.length) {
+                            all = Arrays.copyOf(all, slot + 1);
+                        }
+                        if (all[slot] == null) {
+                            all[slot] = new QuantileSketch(accuracy);
+                        }
+                        all[slot].add(segment.first[slot] - last[slot]);
+                    }
+                    if (slot >= last.length) {
+                        int length = last.length;
+                        last = Arrays.copyOf(last, segment.first.length);
+                        Arrays.fill(last, length, last.length, Segment.UNSEEN);
+                    }
+                    last[slot] = Math.max(last[slot], segment.last[slot]);
+                }
+            }
+        }
+
+        Map<String, Gaps> result = new HashMap<>();
+        for (int slot = 0; slot < all.length; slot++) {
+            if (all[slot] != null) {
+                QuantileSketch sketch = all[slot];
+                result.put(tracked.name(slot), new Gaps(sketch.count(), sketch.quantile(QUANTILES[0]),
+                        sketch.quantile(QUANTILES[1]), sketch.quantile(QUANTILES[2]), sketch.max()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The first and latest timestamp of each tracked source in the entries of one file
+     * read by a single processing task, indexed by slot. A segment must be fed by one
+     * thread at a time.
+     */
+    private class Segment {
+        static final long UNSEEN = Long.MIN_VALUE;
+
+        private long[] first = new long[0];
+        private long[] last = new long[0];
+
+        // Position right after the last line fed, or -1 while a task is feeding the segment
+        private volatile long end = -1;
+
+        /**
+         * Records an entry and returns its gap to the latest earlier entry of its source,
+         * or -1 if there is none in this segment or the entry is older than that one.
+         */
+        long add(int slot, long timestamp) {
+            if (slot >= first.length) {
+                int length = first.length;
+                first = Arrays.copyOf(first, Math.max(slot + 1, length * 2));
+                last = Arrays.copyOf(last, first.length);
+                Arrays.fill(first, length, first.length, UNSEEN);
+                Arrays.fill(last, length, last.length, UNSEEN);
+            }
+            long previous = last[slot];
+            if (previous == UNSEEN) {
+                first[slot] = timestamp;
+                last[slot] = timestamp;
+                return -1;
+            }
+            if (timestamp < previous) {
+                return -1;
+            }
+            last[slot] = timestamp;
+            return timestamp - previous;
+        }
+
+        void finish(long endPosition) {
+            end = endPosition;
+        }
+
+        /**
+         * Writes the timestamps of the sources seen by name, since slots differ between runs.
+         */
+        void write(DataOutput out) throws IOException {
+            int seen = 0;
+            for (long timestamp : first) {
+                if (timestamp != UNSEEN) {
+                    seen++;
+                }
+            }
+            out.writeInt(seen);
+            for (int slot = 0; slot < first.length; slot++) {
+                if (first[slot] != UNSEEN) {
+                    out.writeUTF(tracked.name(slot));
+                    out.writeLong(first[slot]);
+                    out.writeLong(last[slot]);
+                }
+            }
+            out.writeLong(end);
+        }
+
+        void read(DataInput in) throws IOException {
+            int seen = in.readInt();
+            for (int i = 0; i < seen; i++) {
+                int slot = tracked.slot(in.readUTF());
+                long firstTimestamp = in.readLong();
+                long lastTimestamp = in.readLong();
+                if (slot >= 0) {
+                    add(slot, firstTimestamp);
+                    add(slot, lastTimestamp);
+                }
+            }
+            end = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A HyperLogLog sketch estimating the number of distinct values it was fed,
+ * in a fixed number of one-byte registers whatever that number is.
+ * <p>
+ * Values are added as 64-bit hashes, such as {@link model.SymbolTable#fingerprint}.
+ * With {@code 2^precision} registers the standard error of the estimate is about
+ * {@code 1.04 / sqrt(2^precision)}; small cardinalities are estimated by linear
+ * counting. Two sketches of the same precision merge by keeping the larger of each
+ * pair of registers, which gives the sketch of the union of their values.
+ */
+class HyperLogLog {
+
+    static final int MIN_PRECISION = 4;
+    static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param precision the base-2 logarithm of the number of registers,
+     *                  from {@value #MIN_PRECISION} to {@value #MAX_PRECISION}
+     */
+    HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("invalid precision: " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Returns the smallest precision whose standard error is at most {@code error}.
+     *
+     * @param error the relative standard error wanted, such as 0.01
+     * @return the precision, within the supported bounds
+     */
+    static int precisionFor(double error) {
+        int precision = MIN_PRECISION;
+        while (precision < MAX_PRECISION && 1.04 / Math.sqrt(1 << precision) > error) {
+            precision++;
+        }
+        return precision;
+    }
+
+    int precision() {
+        return precision;
+    }
+
+    /**
+     * Adds a value given by its 64-bit hash.
+     */
+    void add(long hash) {
+        // The hashes are mixed again so that weak hashes still spread over the registers
+        hash = mix(hash);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Adds the values of another sketch of the same precision.
+     */
+    void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("cannot merge sketches of precision " + other.precision
+                    + " and " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values added.
+     */
+    long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double alpha = switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    static HyperLogLog read(DataInput in) throws IOException {
+        int precision = in.readByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("invalid sketch precision: " + precision);
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        in.readFully(sketch.registers);
+        return sketch;
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,29 +1,151 @@
 package analysis;
 
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 /**
  * LevelCounter is responsible for counting the occurrences
  * of different log levels (e.g. INFO, WARNING, ERROR).
  *
- * This implementation is thread-safe using {@link ConcurrentHashMap} and {@link AtomicInteger},
- * making it suitable for use in concurrent log processing environments.
+ * Levels are counted by their id in {@link SymbolTable#LEVELS}, in a plain array of
+ * 64-bit counters. Counting is done per worker: each worker counts into its own
+ * partial (see {@link #newPartial()}), and the partials are merged into the shared
+ * instance once the worker finishes. Merging and reading the counts are synchronized,
+ * so the shared instance can be used safely by concurrent workers.
  */
 public class LevelCounter implements LogAnalyzer {
 
-    private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    // Indexed by level id, as the level appears in the log; folded to lowercase when read
+    private long[] counts = new long[8];
 
     /**
      * Processes a single log level string and increments its count.
+     * Not thread-safe: each worker should count into its own partial.
      *
      * @param level the log level to be counted (case-insensitive)
      */
-    @Override
     public void analyze(String level) {
-        counts.putIfAbsent(level.toLowerCase(), new AtomicInteger(0));
-        counts.get(level.toLowerCase()).incrementAndGet();
+        analyze(SymbolTable.LEVELS.intern(level));
+    }
+
+    /**
+     * Increments the count of a level given by its id.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param levelId the id of the level in {@link SymbolTable#LEVELS}
+     */
+    public void analyze(int levelId) {
+        if (levelId >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(levelId + 1, counts.length * 2));
+        }
+        counts[levelId]++;
+    }
+
+    /**
+     * Declares the level column.
+     *
+     * @return {@link Column#LEVEL}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.LEVEL);
+    }
+
+    /**
+     * Counts the levels of a batch of entries.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries to count
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        int[] levels = batch.levels();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            analyze(levels[i]);
+        }
+    }
+
+    /**
+     * Creates an empty counter for a single worker.
+     *
+     * @return a new {@link LevelCounter}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new LevelCounter();
+    }
+
+    /**
+     * Adds the counts of a worker's partial counter to this one.
+     *
+     * @param partial a {@link LevelCounter} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        long[] other = ((LevelCounter) partial).counts;
+        if (other.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.length);
+        }
+        for (int id = 0; id < other.length; id++) {
+            counts[id] += other[id];
+        }
+    }
+
+    /**
+     * Writes the count of every level seen, by name.
+     *
+     * @param filename ignored, a counter holds the results of whatever it was fed
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int nonZero = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                nonZero++;
+            }
+        }
+        out.writeInt(nonZero);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                out.writeUTF(SymbolTable.LEVELS.name(id));
+                out.writeLong(counts[id]);
+            }
+        }
+    }
+
+    /**
+     * Adds counts written by {@link #writeState(String, DataOutput)}.
+     *
+     * @param filename ignored
+     * @param in       the input to read from
+     * @throws IOException if reading fails
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int id = SymbolTable.LEVELS.intern(in.readUTF());
+            long count = in.readLong();
+            if (id >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(id + 1, counts.length * 2));
+            }
+            counts[id] += count;
+        }
     }
 
     /**
@@ -32,10 +154,12 @@ public class LevelCounter implements LogAnalyzer {
      * @return a map where the key is the log level (in lowercase)
      *         and the value is the number of times it appeared
      */
-    public Map<String, Integer> getCounts() {
-        Map<String, Integer> result = new ConcurrentHashMap<>();
-        for (var entry : counts.entrySet()) {
-            result.put(entry.getKey(), entry.getValue().get());
+    public synchronized Map<String, Long> getCounts() {
+        Map<String, Long> result = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                result.merge(SymbolTable.LEVELS.name(id).toLowerCase(), counts[id], Long::sum);
+            }
         }
         return result;
     }
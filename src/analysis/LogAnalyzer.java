@@ -1,18 +1,91 @@
 package analysis;
 
+import model.EntryBatch;
+import model.EntryBatch.Column;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Set;
+
 /**
  * An interface for analyzing log entries.
- * Implementing classes define how to handle a single log value,
- * such as a log level or log source.
+ * Implementing classes receive the parsed entries in {@link EntryBatch}es and read
+ * the columns they declared in {@link #columns()}, such as the log level or log source.
  */
 public interface LogAnalyzer {
 
     /**
-     * Analyzes a single string value from a log entry.
-     * The meaning of the value depends on the implementation
-     * (e.g., a log level, a log source, etc.).
+     * Returns the columns of an {@link EntryBatch} this analyzer reads.
+     * Other columns may be left unfilled by the parser.
+     *
+     * @return the columns the analyzer needs
+     */
+    Set<Column> columns();
+
+    /**
+     * Analyzes a batch of entries from one contiguous range of a log,
+     * reading the columns declared in {@link #columns()}.
+     * <p>
+     * Batches come in no particular order, not even those of one log: the
+     * {@code processing.LogPipeline} parses and analyzes them on several threads, and
+     * any batch may be passed concurrently with any other to a different partial
+     * (see {@link #newPartial()}), or to this analyzer if it is its own partial. An
+     * analyzer whose results depend on the order of the entries in a log must order
+     * them itself, by the {@linkplain EntryBatch#getPosition() position} of each batch.
+     *
+     * @param batch the entries to analyze
+     */
+    void analyze(EntryBatch batch);
+
+    /**
+     * Returns an analyzer that collects partial results for a single worker.
+     * <p>
+     * A worker feeds its partial without any synchronization and hands it back
+     * to {@link #merge(LogAnalyzer)} once, when it has finished. Analyzers that are
+     * safe to share between threads return themselves, which is the default.
+     *
+     * @return a new worker-local analyzer of the same kind, or this analyzer
+     */
+    default LogAnalyzer newPartial() {
+        return this;
+    }
+
+    /**
+     * Adds the results collected by a partial created with {@link #newPartial()}.
+     * Does nothing when the partial is this analyzer itself.
+     *
+     * @param partial the worker-local analyzer to fold into this one
+     */
+    default void merge(LogAnalyzer partial) {
+    }
+
+    /**
+     * Writes the results collected for one log file, so that a later run can
+     * restore them with {@link #readState(String, DataInput)} instead of reading
+     * the file again.
+     * <p>
+     * Analyzers that collect into per-file partials write everything they hold;
+     * analyzers that keep results per file name write only those of {@code filename}.
+     * Values are written by name, never by a {@link model.SymbolTable} id, since ids
+     * differ between runs. The state is part of the {@code processing.AnalyzerState}
+     * format, whose version must change with its layout. The default writes nothing.
+     *
+     * @param filename the name of the log file the results belong to
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    default void writeState(String filename, DataOutput out) throws IOException {
+    }
+
+    /**
+     * Restores results written by {@link #writeState(String, DataOutput)}
+     * for one log file. The default reads nothing.
      *
-     * @param level the log-related value to be analyzed
+     * @param filename the name of the log file the results belong to
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
      */
-    void analyze(String level);
+    default void readState(String filename, DataInput in) throws IOException {
+    }
 }
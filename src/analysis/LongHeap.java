@@ -0,0 +1,111 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A minimal binary heap of primitive {@code long} values, with either the smallest
+ * or the largest value on top, used to reorder timestamps without boxing them.
+ */
+class LongHeap {
+
+    private final boolean largestFirst;
+    private long[] values = new long[16];
+    private int size;
+
+    /**
+     * Creates an empty heap.
+     *
+     * @param largestFirst true to keep the largest value on top, false for the smallest
+     */
+    LongHeap(boolean largestFirst) {
+        this.largestFirst = largestFirst;
+    }
+
+    void offer(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(value, values[parent])) {
+                break;
+            }
+            values[index] = values[parent];
+            index = parent;
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Returns the value on top of the heap, which must not be empty.
+     */
+    long peek() {
+        return values[0];
+    }
+
+    /**
+     * Removes and returns the value on top of the heap, which must not be empty.
+     */
+    long poll() {
+        long result = values[0];
+        long last = values[--size];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(values[child + 1], values[child])) {
+                child++;
+            }
+            if (!before(values[child], last)) {
+                break;
+            }
+            values[index] = values[child];
+            index = child;
+        }
+        values[index] = last;
+        return result;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the values of the heap in ascending order, whichever value is on top.
+     */
+    long[] toSortedArray() {
+        long[] sorted = Arrays.copyOf(values, size);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Writes the values in no particular order, preceded by their count.
+     */
+    void write(DataOutput out) throws IOException {
+        LongList.writeArray(out, values, size);
+    }
+
+    /**
+     * Replaces the values of the heap with those written by {@link #write(DataOutput)},
+     * or by {@link LongList#writeArray} in any order.
+     */
+    void read(DataInput in) throws IOException {
+        long[] read = LongList.readArray(in);
+        values = new long[Math.max(read.length, 16)];
+        size = 0;
+        for (long value : read) {
+            offer(value);
+        }
+    }
+
+    private boolean before(long a, long b) {
+        return largestFirst ? a > b : a < b;
+    }
+}
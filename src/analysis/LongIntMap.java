@@ -0,0 +1,101 @@
+package analysis;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing map from {@code long} keys to non-negative {@code int}
+ * values, used to look up counters without boxing their keys.
+ */
+class LongIntMap {
+
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntMap(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 4) * 2 - 1) << 1;
+        keys = new long[slots];
+        values = new int[slots];
+        Arrays.fill(values, FREE);
+    }
+
+    /**
+     * Returns the value of a key, or -1 if it has none.
+     */
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            if (values[slot] == FREE) {
+                return -1;
+            }
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (values[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (values[slot] == FREE) {
+            size++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (values[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (values[slot] == FREE) {
+            return;
+        }
+        size--;
+        // Moves back the following entries that would no longer be found past the hole
+        int hole = slot;
+        for (int next = (hole + 1) & mask; values[next] != FREE; next = (next + 1) & mask) {
+            int home = slot(keys[next], mask);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        values[hole] = FREE;
+    }
+
+    void clear() {
+        Arrays.fill(values, FREE);
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, FREE);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
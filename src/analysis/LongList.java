@@ -0,0 +1,125 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A minimal growable list of primitive {@code long} values,
+ * used to keep timestamps without boxing them.
+ */
+class LongList {
+
+    private long[] values;
+    private int size;
+
+    LongList() {
+        this(16);
+    }
+
+    LongList(int capacity) {
+        values = new long[Math.max(capacity, 1)];
+    }
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    void write(DataOutput out) throws IOException {
+        writeArray(out, values, size);
+    }
+
+    void read(DataInput in) throws IOException {
+        values = readArray(in);
+        size = values.length;
+        if (values.length == 0) {
+            values = new long[1];
+        }
+    }
+
+    /**
+     * Writes a non-negative value as an unsigned LEB128 varint, in one byte per 7 bits,
+     * so that small values such as counts and gaps take one or two bytes.
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads a value written by {@link #writeVarLong(DataOutput, long)}.
+     */
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid varint");
+    }
+
+    /**
+     * Writes the first {@code length} values of an array, preceded by their count.
+     */
+    static void writeArray(DataOutput out, long[] array, int length) throws IOException {
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeLong(array[i]);
+        }
+    }
+
+    static long[] readArray(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("invalid array length " + length);
+        }
+        long[] array = new long[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = in.readLong();
+        }
+        return array;
+    }
+
+    /**
+     * Merges two ascending arrays into one; on equal values the elements
+     * of {@code first} come before those of {@code second}.
+     */
+    static long[] merge(long[] first, long[] second) {
+        long[] merged = new long[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < first.length && j < second.length) {
+            merged[k++] = first[i] <= second[j] ? first[i++] : second[j++];
+        }
+        while (i < first.length) {
+            merged[k++] = first[i++];
+        }
+        while (j < second.length) {
+            merged[k++] = second[j++];
+        }
+        return merged;
+    }
+}
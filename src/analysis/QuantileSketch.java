@@ -0,0 +1,150 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A quantile sketch over non-negative whole numbers, after DDSketch: values are
+ * counted in buckets whose bounds grow geometrically by {@code gamma = (1 + a) / (1 - a)},
+ * so every quantile is returned within a relative error {@code a} of the exact one.
+ * <p>
+ * A value {@code x >= 1} falls in bucket {@code ceil(log_gamma(x))}, and zeros are
+ * counted apart. Bucket counts are kept in a dense array that only grows up to the
+ * bucket of the largest value seen, so its size depends on the range of the values
+ * and the accuracy, never on how many values were added. Two sketches of the same
+ * accuracy merge by adding their bucket counts.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class QuantileSketch {
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private long zeroCount;
+    private long[] buckets = new long[0];
+    private long count;
+    private long max;
+
+    /**
+     * Creates an empty sketch.
+     *
+     * @param accuracy the relative error of the quantiles, between 0 and 1 (exclusive)
+     */
+    public QuantileSketch(double accuracy) {
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IllegalArgumentException("invalid accuracy: " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value a value, at least 0
+     */
+    public void add(long value) {
+        count++;
+        max = Math.max(max, value);
+        if (value == 0) {
+            zeroCount++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+        if (bucket >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, Math.max(bucket + 1, buckets.length * 2));
+        }
+        buckets[bucket]++;
+    }
+
+    /**
+     * Adds the values of another sketch of the same accuracy.
+     */
+    public void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("cannot merge sketches of accuracy " + other.accuracy
+                    + " and " + accuracy);
+        }
+        if (other.buckets.length > buckets.length) {
+            buckets = Arrays.copyOf(buckets, other.buckets.length);
+        }
+        for (int i = 0; i < other.buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        zeroCount += other.zeroCount;
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the number of values added.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the largest value added, or 0 if the sketch is empty.
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Returns the value of the given rank, rounded to a whole number.
+     *
+     * @param quantile the rank as a fraction of the values, from 0 to 1
+     * @return the estimated value, or 0 if the sketch is empty
+     */
+    public long quantile(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) (quantile * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (rank < seen) {
+                // The value in the bucket that is within the accuracy of both its bounds
+                double value = 2 * Math.pow(gamma, i) / (gamma + 1);
+                return Math.min(Math.round(value), max);
+            }
+        }
+        return max;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeDouble(accuracy);
+        out.writeLong(zeroCount);
+        out.writeLong(count);
+        out.writeLong(max);
+        LongList.writeArray(out, buckets, buckets.length);
+    }
+
+    static QuantileSketch read(DataInput in) throws IOException {
+        double accuracy = in.readDouble();
+        if (!(accuracy > 0 && accuracy < 1)) {
+            throw new IOException("invalid sketch accuracy: " + accuracy);
+        }
+        QuantileSketch sketch = new QuantileSketch(accuracy);
+        sketch.zeroCount = in.readLong();
+        sketch.count = in.readLong();
+        sketch.max = in.readLong();
+        sketch.buckets = LongList.readArray(in);
+        return sketch;
+    }
+
+    QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(accuracy);
+        copy.merge(this);
+        return copy;
+    }
+}
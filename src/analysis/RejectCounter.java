@@ -0,0 +1,114 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RejectCounter counts the lines of each log file that were rejected as malformed.
+ * <p>
+ * Rejected lines never become entries; the parser counts them in the batch they were
+ * found in (see {@link EntryBatch#rejected()}), and this analyzer adds up those counts
+ * by log name. Lines rejected while a segment file was written are not in the segment,
+ * so they are not counted when the segment is analyzed.
+ * <p>
+ * Each worker counts into its own partial, and the partials are merged into the shared
+ * instance under its lock once the worker finishes.
+ */
+public class RejectCounter implements LogAnalyzer {
+
+    private final Map<String, Long> counts = new HashMap<>();
+
+    /**
+     * Declares no column: only the number of rejected lines of a batch is read.
+     *
+     * @return an empty set
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.noneOf(Column.class);
+    }
+
+    /**
+     * Adds the rejected lines of a batch to the count of its log.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries of a range of a log
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        if (batch.rejected() > 0) {
+            counts.merge(batch.getName(), (long) batch.rejected(), Long::sum);
+        }
+    }
+
+    /**
+     * Creates an empty counter for a single worker.
+     *
+     * @return a new {@link RejectCounter}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new RejectCounter();
+    }
+
+    /**
+     * Adds the counts of a worker's partial counter to this one.
+     *
+     * @param partial a {@link RejectCounter} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        ((RejectCounter) partial).counts.forEach((name, count) -> counts.merge(name, count, Long::sum));
+    }
+
+    /**
+     * Writes the number of rejected lines of one log file.
+     *
+     * @param filename the name of the log file
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        out.writeLong(counts.getOrDefault(filename, 0L));
+    }
+
+    /**
+     * Adds the number of rejected lines written by {@link #writeState(String, DataOutput)}
+     * to the count of one log file.
+     *
+     * @param filename the name of the log file
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        long count = in.readLong();
+        if (count < 0) {
+            throw new IOException("invalid rejected line count " + count);
+        }
+        if (count > 0) {
+            counts.merge(filename, count, Long::sum);
+        }
+    }
+
+    /**
+     * Returns the number of rejected lines of each log file that had any.
+     *
+     * @return a map where the key is the log file name and the value is its number of rejected lines
+     */
+    public synchronized Map<String, Long> getRejectedLines() {
+        return new HashMap<>(counts);
+    }
+}
@@ -0,0 +1,263 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * RollupAnalyzer counts entries per time bucket, level and source, giving the series
+ * behind a graph of error rates over time.
+ * <p>
+ * Entries are counted at the finest configured resolution into a {@link BucketSeries}
+ * per level and source, which keeps the counts in dense {@code long[]} pages indexed by
+ * bucket. Coarser resolutions are derived from those counts by downsampling when the
+ * results are read, so they cost nothing while counting. To keep the number of series
+ * bounded when the source is a high-cardinality field, only the first
+ * {@code maxSources} distinct sources get their own series; entries of the other
+ * sources are counted together under {@value #OTHER_SOURCES}.
+ * <p>
+ * Each worker counts into its own partial without locking, and the partials are added
+ * into the shared instance under its lock once the worker finishes.
+ */
+public class RollupAnalyzer implements LogAnalyzer {
+
+    /**
+     * The source name the entries of untracked sources are counted under.
+     */
+    public static final String OTHER_SOURCES = "(other)";
+
+    /**
+     * A run of consecutive buckets of one series.
+     *
+     * @param start  the start of the first bucket, in seconds since the epoch
+     * @param counts the number of entries in each bucket of the run, from {@code start} on
+     */
+    public record Run(long start, long[] counts) {
+    }
+
+    private final int[] resolutions;
+    private final SourceSlots tracked;
+
+    // Indexed by level id, then by source slot, with untracked sources in the last slot
+    private BucketSeries[][] series = new BucketSeries[8][];
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param resolutions the lengths of the buckets to report, in seconds; entries are
+     *                    counted at the shortest, which every other one must be a multiple of
+     * @param maxSources  the number of distinct sources that get their own series
+     * @throws IllegalArgumentException if a resolution is not positive or not a multiple
+     *                                  of the shortest one
+     */
+    public RollupAnalyzer(int[] resolutions, int maxSources) {
+        int[] sorted = Arrays.stream(resolutions).distinct().sorted().toArray();
+        if (sorted.length == 0 || sorted[0] <= 0) {
+            throw new IllegalArgumentException("invalid resolutions: " + Arrays.toString(resolutions));
+        }
+        for (int resolution : sorted) {
+            if (resolution % sorted[0] != 0) {
+                throw new IllegalArgumentException("resolution " + resolution
+                        + " is not a multiple of " + sorted[0]);
+            }
+        }
+        this.resolutions = sorted;
+        this.tracked = new SourceSlots(maxSources);
+    }
+
+    private RollupAnalyzer(RollupAnalyzer shared) {
+        this.resolutions = shared.resolutions;
+        this.tracked = shared.tracked;
+    }
+
+    /**
+     * Declares the timestamp, level and source fingerprint columns.
+     *
+     * @return {@link Column#TIMESTAMP}, {@link Column#LEVEL} and {@link Column#SOURCE_FINGERPRINT}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.TIMESTAMP, Column.LEVEL, Column.SOURCE_FINGERPRINT);
+    }
+
+    /**
+     * Counts the entries of a batch in their bucket at the finest resolution.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries to count
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        long[] timestamps = batch.timestamps();
+        int[] levels = batch.levels();
+        long[] sources = batch.sourceFingerprints();
+        byte[] sourceBytes = batch.sourceBytes();
+        int resolution = resolutions[0];
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            int slot = tracked.slot(sources[i], sourceBytes, batch.sourceStart(i), batch.sourceEnd(i));
+            series(levels[i], slot < 0 ? tracked.capacity() : slot)
+                    .add(Math.floorDiv(timestamps[i], resolution), 1);
+        }
+    }
+
+    private BucketSeries series(int level, int slot) {
+        if (level >= series.length) {
+            series = Arrays.copyOf(series, Math.max(level + 1, series.length * 2));
+        }
+        if (series[level] == null) {
+            series[level] = new BucketSeries[tracked.capacity() + 1];
+        }
+        if (series[level][slot] == null) {
+            series[level][slot] = new BucketSeries();
+        }
+        return series[level][slot];
+    }
+
+    /**
+     * Creates an empty analyzer for a single worker, sharing the tracked sources of this one.
+     *
+     * @return a new {@link RollupAnalyzer}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new RollupAnalyzer(this);
+    }
+
+    /**
+     * Adds the counts of a worker's partial analyzer to this one.
+     *
+     * @param partial a {@link RollupAnalyzer} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        BucketSeries[][] other = ((RollupAnalyzer) partial).series;
+        for (int level = 0; level < other.length; level++) {
+            if (other[level] == null) {
+                continue;
+            }
+            for (int slot = 0; slot < other[level].length; slot++) {
+                if (other[level][slot] != null) {
+                    series(level, slot).addAll(other[level][slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the counts of every series, by level and source name.
+     *
+     * @param filename ignored, an analyzer holds the results of whatever it was fed
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int count = 0;
+        for (BucketSeries[] levelSeries : series) {
+            if (levelSeries != null) {
+                count += (int) Arrays.stream(levelSeries).filter(Objects::nonNull).count();
+            }
+        }
+        out.writeInt(count);
+        for (int level = 0; level < series.length; level++) {
+            if (series[level] == null) {
+                continue;
+            }
+            for (int slot = 0; slot < series[level].length; slot++) {
+                if (series[level][slot] == null) {
+                    continue;
+                }
+                out.writeUTF(SymbolTable.LEVELS.name(level));
+                boolean other = slot == tracked.capacity();
+                out.writeBoolean(other);
+                if (!other) {
+                    out.writeUTF(tracked.name(slot));
+                }
+                series[level][slot].write(out);
+            }
+        }
+    }
+
+    /**
+     * Adds counts written by {@link #writeState(String, DataOutput)}. Series of sources
+     * that no longer fit in the tracked sources are added to {@value #OTHER_SOURCES}.
+     *
+     * @param filename ignored
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int level = SymbolTable.LEVELS.intern(in.readUTF());
+            int slot = in.readBoolean() ? -1 : tracked.slot(in.readUTF());
+            series(level, slot < 0 ? tracked.capacity() : slot).read(in);
+        }
+    }
+
+    /**
+     * Returns the bucket lengths the counts are reported at.
+     *
+     * @return the resolutions in seconds, from the finest to the coarsest
+     */
+    public int[] getResolutions() {
+        return resolutions.clone();
+    }
+
+    /**
+     * Returns the counts per bucket at one of the {@link #getResolutions()}.
+     * Buckets are aligned on the epoch, so an hourly bucket starts on the hour (UTC).
+     *
+     * @param resolution the length of the buckets, in seconds
+     * @return a map where the key is the log level (in lowercase), then the source, and
+     *         the value is the runs of buckets holding entries, in time order
+     * @throws IllegalArgumentException if the resolution is not a multiple of the finest one
+     */
+    public synchronized Map<String, Map<String, List<Run>>> getRollup(int resolution) {
+        if (resolution <= 0 || resolution % resolutions[0] != 0) {
+            throw new IllegalArgumentException("resolution " + resolution
+                    + " is not a multiple of " + resolutions[0]);
+        }
+
+        // Levels that differ only in case are counted together, as by LevelCounter
+        Map<String, Map<String, BucketSeries>> folded = new HashMap<>();
+        for (int level = 0; level < series.length; level++) {
+            if (series[level] == null) {
+                continue;
+            }
+            Map<String, BucketSeries> levelSeries = folded.computeIfAbsent(
+                    SymbolTable.LEVELS.name(level).toLowerCase(), name -> new HashMap<>());
+            for (int slot = 0; slot < series[level].length; slot++) {
+                if (series[level][slot] != null) {
+                    String source = slot == tracked.capacity() ? OTHER_SOURCES : tracked.name(slot);
+                    levelSeries.computeIfAbsent(source, name -> new BucketSeries()).addAll(series[level][slot]);
+                }
+            }
+        }
+
+        int factor = resolution / resolutions[0];
+        Map<String, Map<String, List<Run>>> result = new HashMap<>();
+        for (var level : folded.entrySet()) {
+            Map<String, List<Run>> sources = new HashMap<>();
+            for (var source : level.getValue().entrySet()) {
+                BucketSeries buckets = factor == 1 ? source.getValue() : source.getValue().downsample(factor);
+                List<Run> runs = new ArrayList<>();
+                for (BucketSeries.Run run : buckets.runs()) {
+                    runs.add(new Run(run.start() * resolution, run.counts()));
+                }
+                sources.put(source.getKey(), runs);
+            }
+            result.put(level.getKey(), sources);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Evaluates the anomaly rule over a stream of timestamps given in ascending order.
+ * <p>
+ * The entry at position {@code i} starts an anomaly if the entry at position
+ * {@code i + threshold - 1} is at most {@code windowInSeconds} later. Only the
+ * last {@code threshold - 1} timestamps are kept: each new timestamp decides
+ * whether the oldest kept one starts an anomaly, so memory does not depend on
+ * the length of the stream.
+ * <p>
+ * Each kept timestamp carries a flag saying whether it should be reported, which
+ * lets a stream be continued with timestamps whose own result is already known.
+ */
+class SlidingWindow {
+
+    private final long[] timestamps;
+    private final boolean[] reported;
+    private final int windowInSeconds;
+    private int start;
+    private int size;
+
+    /**
+     * @param threshold       the number of entries that make up an anomaly (at least 1)
+     * @param windowInSeconds the maximal distance between the first and the last of them
+     */
+    SlidingWindow(int threshold, int windowInSeconds) {
+        this.timestamps = new long[threshold - 1];
+        this.reported = new boolean[threshold - 1];
+        this.windowInSeconds = windowInSeconds;
+    }
+
+    /**
+     * Appends the next timestamp of the stream.
+     *
+     * @param timestamp the timestamp, not earlier than any previously pushed one
+     * @param report    whether this timestamp should be added to {@code anomalies}
+     *                  if it turns out to start an anomaly
+     * @param anomalies receives the start of every anomaly decided by this call
+     */
+    void push(long timestamp, boolean report, LongList anomalies) {
+        int capacity = timestamps.length;
+        if (capacity == 0) {
+            if (report && windowInSeconds >= 0) {
+                anomalies.add(timestamp);
+            }
+            return;
+        }
+
+        if (size == capacity) {
+            long oldest = timestamps[start];
+            if (reported[start] && timestamp - oldest <= windowInSeconds) {
+                anomalies.add(oldest);
+            }
+            timestamps[start] = timestamp;
+            reported[start] = report;
+            start = (start + 1) % capacity;
+        } else {
+            int index = (start + size) % capacity;
+            timestamps[index] = timestamp;
+            reported[index] = report;
+            size++;
+        }
+    }
+
+    /**
+     * Replaces the content of the window without deciding anything,
+     * as if the stream had just ended with the given timestamps.
+     *
+     * @param tail   the last timestamps of the stream, at most {@code threshold - 1} of them
+     * @param report whether these timestamps should be reported
+     */
+    void reset(long[] tail, boolean report) {
+        start = 0;
+        size = tail.length;
+        System.arraycopy(tail, 0, timestamps, 0, size);
+        Arrays.fill(reported, 0, size, report);
+    }
+
+    /**
+     * Returns the undecided timestamps, oldest first.
+     *
+     * @return the last {@code threshold - 1} timestamps pushed, or fewer
+     */
+    long[] pending() {
+        long[] result = new long[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = timestamps[(start + i) % timestamps.length];
+        }
+        return result;
+    }
+
+    /**
+     * Writes the undecided timestamps and their flags, to be restored by {@link #read}.
+     */
+    void write(DataOutput out) throws IOException {
+        LongList.writeArray(out, pending(), size);
+        for (int i = 0; i < size; i++) {
+            out.writeBoolean(reported[(start + i) % reported.length]);
+        }
+    }
+
+    /**
+     * Replaces the content of the window with what {@link #write} stored.
+     */
+    void read(DataInput in) throws IOException {
+        long[] tail = LongList.readArray(in);
+        if (tail.length > timestamps.length) {
+            throw new IOException("window holds more than threshold - 1 timestamps");
+        }
+        reset(tail, false);
+        for (int i = 0; i < size; i++) {
+            reported[i] = in.readBoolean();
+        }
+    }
+}
@@ -1,29 +1,147 @@
 package analysis;
 
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * SourceCounter is responsible for counting how many times
  * each source appears in the log entries.
  *
  * It also provides methods for identifying the most and least common sources.
- * The class is thread-safe and suitable for parallel processing.
+ * Sources are counted by their id in {@link SymbolTable#SOURCES}, in a plain array
+ * of 64-bit counters. Like {@link LevelCounter}, each worker counts into its own
+ * partial and partials are merged into the shared instance under its lock,
+ * so the class is suitable for parallel processing.
  */
 public class SourceCounter implements LogAnalyzer {
 
-    private final Map<String, AtomicInteger> sourceCounts = new ConcurrentHashMap<>();
+    // Indexed by source id
+    private long[] sourceCounts = new long[16];
 
     /**
      * Increments the count for the given log source.
+     * Not thread-safe: each worker should count into its own partial.
      *
      * @param source the source string (e.g. "Server1", "Database") to be counted
      */
-    @Override
     public void analyze(String source) {
-        sourceCounts.putIfAbsent(source, new AtomicInteger(0));
-        sourceCounts.get(source).incrementAndGet();
+        analyze(SymbolTable.SOURCES.intern(source));
+    }
+
+    /**
+     * Increments the count of a source given by its id.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param sourceId the id of the source in {@link SymbolTable#SOURCES}
+     */
+    public void analyze(int sourceId) {
+        if (sourceId >= sourceCounts.length) {
+            sourceCounts = Arrays.copyOf(sourceCounts, Math.max(sourceId + 1, sourceCounts.length * 2));
+        }
+        sourceCounts[sourceId]++;
+    }
+
+    /**
+     * Declares the source column.
+     *
+     * @return {@link Column#SOURCE}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.SOURCE);
+    }
+
+    /**
+     * Counts the sources of a batch of entries.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries to count
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        int[] sources = batch.sources();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            analyze(sources[i]);
+        }
+    }
+
+    /**
+     * Creates an empty counter for a single worker.
+     *
+     * @return a new {@link SourceCounter}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new SourceCounter();
+    }
+
+    /**
+     * Adds the counts of a worker's partial counter to this one.
+     *
+     * @param partial a {@link SourceCounter} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        long[] other = ((SourceCounter) partial).sourceCounts;
+        if (other.length > sourceCounts.length) {
+            sourceCounts = Arrays.copyOf(sourceCounts, other.length);
+        }
+        for (int id = 0; id < other.length; id++) {
+            sourceCounts[id] += other[id];
+        }
+    }
+
+    /**
+     * Writes the count of every source seen, by name.
+     *
+     * @param filename ignored, a counter holds the results of whatever it was fed
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int nonZero = 0;
+        for (long count : sourceCounts) {
+            if (count > 0) {
+                nonZero++;
+            }
+        }
+        out.writeInt(nonZero);
+        for (int id = 0; id < sourceCounts.length; id++) {
+            if (sourceCounts[id] > 0) {
+                out.writeUTF(SymbolTable.SOURCES.name(id));
+                out.writeLong(sourceCounts[id]);
+            }
+        }
+    }
+
+    /**
+     * Adds counts written by {@link #writeState(String, DataOutput)}.
+     *
+     * @param filename ignored
+     * @param in       the input to read from
+     * @throws IOException if reading fails
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int entries = in.readInt();
+        for (int i = 0; i < entries; i++) {
+            int id = SymbolTable.SOURCES.intern(in.readUTF());
+            long count = in.readLong();
+            if (id >= sourceCounts.length) {
+                sourceCounts = Arrays.copyOf(sourceCounts, Math.max(id + 1, sourceCounts.length * 2));
+            }
+            sourceCounts[id] += count;
+        }
     }
 
     /**
@@ -31,12 +149,15 @@ public class SourceCounter implements LogAnalyzer {
      *
      * @return a map where the key is the source name and the value is the number of times it appeared
      */
-    public Map<String, Integer> getSourceCounts() {
-        Map<String, Integer> result = new LinkedHashMap<>();
-        for (var entry : sourceCounts.entrySet()) {
-            result.put(entry.getKey(), entry.getValue().get());
+    public synchronized Map<String, Long> getSourceCounts() {
+        // Collected through a HashMap first so sources keep their usual by-name order
+        Map<String, Long> byName = new HashMap<>();
+        for (int id = 0; id < sourceCounts.length; id++) {
+            if (sourceCounts[id] > 0) {
+                byName.put(SymbolTable.SOURCES.name(id), sourceCounts[id]);
+            }
         }
-        return result;
+        return new LinkedHashMap<>(byName);
     }
 
     /**
@@ -44,9 +165,9 @@ public class SourceCounter implements LogAnalyzer {
      *
      * @return the most common source name, or null if no sources were counted
      */
-    public String getMostCommonSource() {
-        return sourceCounts.entrySet().stream()
-                .max(Comparator.comparingInt(e -> e.getValue().get()))
+    public synchronized String getMostCommonSource() {
+        return getSourceCounts().entrySet().stream()
+                .max(Map.Entry.comparingByValue())
                 .map(Map.Entry::getKey)
                 .orElse(null);
     }
@@ -56,9 +177,9 @@ public class SourceCounter implements LogAnalyzer {
      *
      * @return the highest source count, or 0 if none exist
      */
-    public int getMostCommonSourceCount() {
-        return sourceCounts.values().stream()
-                .mapToInt(AtomicInteger::get)
+    public synchronized long getMostCommonSourceCount() {
+        return getSourceCounts().values().stream()
+                .mapToLong(Long::longValue)
                 .max()
                 .orElse(0);
     }
@@ -68,9 +189,9 @@ public class SourceCounter implements LogAnalyzer {
      *
      * @return the least common source name, or null if no sources were counted
      */
-    public String getLeastCommonSource() {
-        return sourceCounts.entrySet().stream()
-                .min(Comparator.comparingInt(e -> e.getValue().get()))
+    public synchronized String getLeastCommonSource() {
+        return getSourceCounts().entrySet().stream()
+                .min(Map.Entry.comparingByValue())
                 .map(Map.Entry::getKey)
                 .orElse(null);
     }
@@ -80,9 +201,9 @@ public class SourceCounter implements LogAnalyzer {
      *
      * @return the lowest source count, or 0 if none exist
      */
-    public int getLeastCommonSourceCount() {
-        return sourceCounts.values().stream()
-                .mapToInt(AtomicInteger::get)
+    public synchronized long getLeastCommonSourceCount() {
+        return getSourceCounts().values().stream()
+                .mapToLong(Long::longValue)
                 .min()
                 .orElse(0);
     }
@@ -0,0 +1,99 @@
+package analysis;
+
+import model.SymbolTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Assigns each of the first {@code capacity} distinct sources seen a slot from 0 to
+ * {@code capacity - 1}, so that analyzers keeping something per source have a bounded
+ * number of them when the source is a high-cardinality field. Shared by an analyzer and
+ * all its partials; looking up a source already seen takes no lock.
+ * <p>
+ * Sources are told apart by their {@link SymbolTable#fingerprint(byte[], int, int)}
+ * rather than by a {@link SymbolTable} id, so they do not have to be interned: only the
+ * tracked sources are kept, in an open-addressing table of twice their number, and
+ * untracked ones leave nothing behind. Two sources with the same 64-bit fingerprint
+ * share a slot.
+ */
+class SourceSlots {
+
+    private final String[] names;
+    // Fingerprint of each table entry, 0 if empty; a fingerprint of 0 is stored as 1.
+    // Only written under the lock, after the slot of the entry.
+    private final AtomicLongArray keys;
+    private final int[] values;
+    private volatile int used;
+
+    SourceSlots(int capacity) {
+        names = new String[Math.max(capacity, 1)];
+        keys = new AtomicLongArray(Integer.highestOneBit(names.length) * 4);
+        values = new int[keys.length()];
+    }
+
+    /**
+     * Returns the slot of a source, giving it the next free one if it has none.
+     *
+     * @param fingerprint the fingerprint of the source bytes
+     * @param bytes       the array holding the source as UTF-8, decoded only if the source gets a slot
+     * @param from        the index of the first byte of the source
+     * @param to          the index right after the last byte of the source
+     * @return the slot, or -1 if every slot was taken by other sources
+     */
+    int slot(long fingerprint, byte[] bytes, int from, int to) {
+        long key = fingerprint == 0 ? 1 : fingerprint;
+        int mask = keys.length() - 1;
+        for (int index = (int) (key ^ (key >>> 32)) & mask; ; index = (index + 1) & mask) {
+            long current = keys.get(index);
+            if (current == key) {
+                return values[index];
+            }
+            if (current == 0) {
+                return used < names.length ? assign(key, bytes, from, to) : -1;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of a source given by its name, giving it the next free one if it has none.
+     *
+     * @param name the source
+     * @return the slot, or -1 if every slot was taken by other sources
+     */
+    int slot(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return slot(SymbolTable.fingerprint(bytes, 0, bytes.length), bytes, 0, bytes.length);
+    }
+
+    private synchronized int assign(long key, byte[] bytes, int from, int to) {
+        int mask = keys.length() - 1;
+        for (int index = (int) (key ^ (key >>> 32)) & mask; ; index = (index + 1) & mask) {
+            long current = keys.get(index);
+            if (current == key) {
+                return values[index];
+            }
+            if (current == 0) {
+                if (used == names.length) {
+                    return -1;
+                }
+                names[used] = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+                values[index] = used;
+                keys.set(index, key);
+                used++;
+                return values[index];
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the source holding a slot.
+     */
+    synchronized String name(int slot) {
+        return names[slot];
+    }
+
+    int capacity() {
+        return names.length;
+    }
+}
@@ -0,0 +1,166 @@
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A Space-Saving summary finding the most frequent keys of a stream with a fixed
+ * number of counters.
+ * <p>
+ * A key that is not counted yet takes a free counter, or else replaces the key with
+ * the smallest count, inheriting that count as its possible overestimation. Every key
+ * whose true count exceeds {@code total / capacity} is guaranteed to hold a counter, and
+ * the count of a key is at most its error above the true count. The smallest counter is
+ * found through a min-heap, so an update costs {@code O(log capacity)}. Summaries merge
+ * by adding each counter of one into the other as a weighted update.
+ * <p>
+ * Each key carries a label, such as the text of a template, replaced by the label
+ * given with its latest update.
+ *
+ * @param <T> the type of the labels
+ */
+class SpaceSaving<T> {
+
+    /**
+     * A counted key.
+     *
+     * @param key   the key
+     * @param label the label of the key
+     * @param count the count of the key, at least its true count
+     * @param error how much the count may exceed the true count
+     */
+    record Counter<T>(long key, T label, long count, long error) {
+    }
+
+    private final int capacity;
+    private final LongIntMap index;
+
+    // Indexed by counter; only the first size counters are used
+    private long[] keys = new long[16];
+    private long[] counts = new long[16];
+    private long[] errors = new long[16];
+    private Object[] labels = new Object[16];
+    // A min-heap of counters by count, and the position of each counter in it
+    private int[] heap = new int[16];
+    private int[] positions = new int[16];
+    private int size;
+
+    SpaceSaving(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        this.index = new LongIntMap(Math.min(this.capacity, 1024));
+    }
+
+    /**
+     * Counts a key once.
+     *
+     * @param key   the key
+     * @param label the label of the key
+     */
+    void add(long key, T label) {
+        add(key, label, 1, 0);
+    }
+
+    /**
+     * Counts a key {@code count} times, with a possible overestimation of {@code error}.
+     */
+    void add(long key, T label, long count, long error) {
+        int counter = index.get(key);
+        if (counter < 0) {
+            if (size < capacity) {
+                counter = newCounter();
+                keys[counter] = key;
+                counts[counter] = 0;
+                errors[counter] = 0;
+                heap[size - 1] = counter;
+                positions[counter] = size - 1;
+                siftUp(size - 1);
+            } else {
+                // The key replaces the smallest counter, whose count it may not have reached
+                counter = heap[0];
+                index.remove(keys[counter]);
+                keys[counter] = key;
+                errors[counter] = counts[counter];
+            }
+            index.put(key, counter);
+        }
+        labels[counter] = label;
+        counts[counter] += count;
+        errors[counter] += error;
+        siftDown(positions[counter]);
+    }
+
+    /**
+     * Returns the counters, from the largest count to the smallest.
+     */
+    @SuppressWarnings("unchecked")
+    List<Counter<T>> counters() {
+        List<Counter<T>> result = new ArrayList<>(size);
+        for (int counter = 0; counter < size; counter++) {
+            result.add(new Counter<>(keys[counter], (T) labels[counter], counts[counter], errors[counter]));
+        }
+        result.sort(Comparator.comparingLong((Counter<T> c) -> c.count).reversed());
+        return result;
+    }
+
+    /**
+     * Adds the counters of another summary to this one.
+     */
+    @SuppressWarnings("unchecked")
+    void merge(SpaceSaving<? extends T> other) {
+        for (int counter = 0; counter < other.size; counter++) {
+            add(other.keys[counter], (T) other.labels[counter], other.counts[counter], other.errors[counter]);
+        }
+    }
+
+    private int newCounter() {
+        if (size == keys.length) {
+            int length = Math.min(size * 2, capacity);
+            keys = Arrays.copyOf(keys, length);
+            counts = Arrays.copyOf(counts, length);
+            errors = Arrays.copyOf(errors, length);
+            labels = Arrays.copyOf(labels, length);
+            heap = Arrays.copyOf(heap, length);
+            positions = Arrays.copyOf(positions, length);
+        }
+        return size++;
+    }
+
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[counter]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(int counter, int position) {
+        heap[position] = counter;
+        positions[counter] = position;
+    }
+}
@@ -0,0 +1,274 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * TemplateAnalyzer finds the message templates that dominate each log level, such as
+ * {@code Connection to <*> timed out after <*> ms}.
+ * <p>
+ * Messages are grouped into templates by a {@link TemplateTree}, which masks variable
+ * tokens and merges messages of the same shape. The templates of each level are counted
+ * by a {@link SpaceSaving} summary with a fixed number of counters, so only the most
+ * frequent ones are kept, with a bound on how much each count may be overestimated.
+ * Memory and the work per line therefore stay the same however many distinct messages
+ * the logs hold.
+ * <p>
+ * Each worker matches and counts into its own partial, without any lock. A partial takes
+ * a tree from the pool of the shared instance, or a new one, and gives it back when it
+ * is merged, so the trees keep what they learned across partials and there are no more
+ * of them than partials in use at once. Partials are merged into the shared instance
+ * under its lock. Since a template may be generalized after it was counted, or by
+ * another tree, counts of a template are folded into those of a more general template
+ * of the same level when the results are read; counters are keyed by the fingerprint
+ * of the template text, which is the same in every tree.
+ */
+public class TemplateAnalyzer implements LogAnalyzer {
+
+    /**
+     * A frequent template.
+     *
+     * @param template the template, with variable tokens as {@value TemplateTree#WILDCARD}
+     * @param count    the number of entries counted for it, at least the true number
+     * @param error    how much the count may exceed the true number
+     */
+    public record Template(String template, long count, long error) {
+    }
+
+    private final int top;
+    private final int capacity;
+    private final TemplateTree tree;
+    // The trees of merged partials, for the next partials to reuse
+    private final Deque<TemplateTree> trees;
+
+    // Indexed by level id; null until an entry of that level is seen
+    @SuppressWarnings("unchecked")
+    private SpaceSaving<String>[] summaries = (SpaceSaving<String>[]) new SpaceSaving<?>[8];
+
+    /**
+     * Creates an analyzer.
+     *
+     * @param top      the number of templates reported per level
+     * @param capacity the number of templates counted per level; more counters make the
+     *                 counts of the reported templates more accurate
+     */
+    public TemplateAnalyzer(int top, int capacity) {
+        this.top = Math.max(top, 1);
+        this.capacity = Math.max(capacity, this.top);
+        this.tree = new TemplateTree();
+        this.trees = new ConcurrentLinkedDeque<>();
+    }
+
+    private TemplateAnalyzer(TemplateAnalyzer shared) {
+        this.top = shared.top;
+        this.capacity = shared.capacity;
+        TemplateTree pooled = shared.trees.poll();
+        this.tree = pooled != null ? pooled : new TemplateTree();
+        this.trees = shared.trees;
+    }
+
+    /**
+     * Declares the level and message columns.
+     *
+     * @return {@link Column#LEVEL} and {@link Column#MESSAGE}
+     */
+    @Override
+    public Set<Column> columns() {
+        return EnumSet.of(Column.LEVEL, Column.MESSAGE);
+    }
+
+    /**
+     * Matches the messages of a batch to their templates and counts them by level.
+     * Not thread-safe: each worker should count into its own partial.
+     *
+     * @param batch the entries to analyze
+     */
+    @Override
+    public void analyze(EntryBatch batch) {
+        int[] levels = batch.levels();
+        byte[] messageBytes = batch.messageBytes();
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            TemplateTree.Template template = tree.match(messageBytes, batch.messageStart(i), batch.messageEnd(i));
+            summary(levels[i]).add(template.fingerprint(), template.text());
+        }
+    }
+
+    private SpaceSaving<String> summary(int level) {
+        if (level >= summaries.length) {
+            summaries = Arrays.copyOf(summaries, Math.max(level + 1, summaries.length * 2));
+        }
+        if (summaries[level] == null) {
+            summaries[level] = new SpaceSaving<>(capacity);
+        }
+        return summaries[level];
+    }
+
+    /**
+     * Creates an empty analyzer for a single worker, with a template tree of its own
+     * taken from the pool of this one.
+     *
+     * @return a new {@link TemplateAnalyzer}
+     */
+    @Override
+    public LogAnalyzer newPartial() {
+        return new TemplateAnalyzer(this);
+    }
+
+    /**
+     * Adds the counts of a worker's partial analyzer to this one, and takes its
+     * template tree back into the pool. The partial must not be used afterwards.
+     *
+     * @param partial a {@link TemplateAnalyzer} created by {@link #newPartial()}
+     */
+    @Override
+    public synchronized void merge(LogAnalyzer partial) {
+        if (partial == this) {
+            return;
+        }
+        TemplateAnalyzer other = (TemplateAnalyzer) partial;
+        for (int level = 0; level < other.summaries.length; level++) {
+            if (other.summaries[level] != null) {
+                summary(level).merge(other.summaries[level]);
+            }
+        }
+        if (other.trees == trees) {
+            trees.push(other.tree);
+        }
+    }
+
+    /**
+     * Writes the counted templates of every level seen, by level name.
+     *
+     * @param filename ignored, an analyzer holds the results of whatever it was fed
+     * @param out      the output to write to
+     * @throws IOException if writing fails
+     */
+    @Override
+    public synchronized void writeState(String filename, DataOutput out) throws IOException {
+        int seen = 0;
+        for (SpaceSaving<String> summary : summaries) {
+            if (summary != null) {
+                seen++;
+            }
+        }
+        out.writeInt(seen);
+        for (int level = 0; level < summaries.length; level++) {
+            if (summaries[level] == null) {
+                continue;
+            }
+            List<SpaceSaving.Counter<String>> counters = summaries[level].counters();
+            out.writeUTF(SymbolTable.LEVELS.name(level));
+            out.writeInt(counters.size());
+            for (SpaceSaving.Counter<String> counter : counters) {
+                out.writeUTF(counter.label());
+                out.writeLong(counter.count());
+                out.writeLong(counter.error());
+            }
+        }
+    }
+
+    /**
+     * Adds counts written by {@link #writeState(String, DataOutput)}.
+     *
+     * @param filename ignored
+     * @param in       the input to read from
+     * @throws IOException if reading fails or the data is invalid
+     */
+    @Override
+    public synchronized void readState(String filename, DataInput in) throws IOException {
+        int levels = in.readInt();
+        for (int i = 0; i < levels; i++) {
+            SpaceSaving<String> summary = summary(SymbolTable.LEVELS.intern(in.readUTF()));
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("invalid template count " + count);
+            }
+            for (int j = 0; j < count; j++) {
+                String text = in.readUTF();
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                summary.add(SymbolTable.fingerprint(bytes, 0, bytes.length), text, in.readLong(), in.readLong());
+            }
+        }
+    }
+
+    /**
+     * Returns the most frequent templates of each level, from the most frequent down.
+     *
+     * @return a map where the key is the log level (in lowercase) and the value lists at
+     *         most {@code top} templates
+     */
+    public synchronized Map<String, List<Template>> getTopTemplates() {
+        // Levels that differ only in case are counted together, as by LevelCounter
+        Map<String, Map<String, long[]>> byLevel = new HashMap<>();
+        for (int level = 0; level < summaries.length; level++) {
+            if (summaries[level] == null) {
+                continue;
+            }
+            Map<String, long[]> counts = byLevel.computeIfAbsent(
+                    SymbolTable.LEVELS.name(level).toLowerCase(), name -> new HashMap<>());
+            for (SpaceSaving.Counter<String> counter : summaries[level].counters()) {
+                long[] total = counts.computeIfAbsent(counter.label(), text -> new long[2]);
+                total[0] += counter.count();
+                total[1] += counter.error();
+            }
+        }
+
+        Map<String, List<Template>> result = new HashMap<>();
+        for (var entry : byLevel.entrySet()) {
+            List<Template> templates = fold(entry.getValue());
+            templates.sort(Comparator.comparingLong(Template::count).reversed()
+                    .thenComparing(Template::template));
+            result.put(entry.getKey(), List.copyOf(templates.subList(0, Math.min(top, templates.size()))));
+        }
+        return result;
+    }
+
+    /**
+     * Folds the counts of each template into a more general template that covers it,
+     * the most frequent one if there are several, starting from the most specific.
+     */
+    private static List<Template> fold(Map<String, long[]> counts) {
+        List<String> texts = new ArrayList<>(counts.keySet());
+        Map<String, String[]> tokens = new HashMap<>();
+        Map<String, Integer> wildcards = new HashMap<>();
+        for (String text : texts) {
+            String[] split = text.split(" ", -1);
+            tokens.put(text, split);
+            wildcards.put(text, (int) Arrays.stream(split).filter(TemplateTree.WILDCARD::equals).count());
+        }
+        texts.sort(Comparator.comparingInt(wildcards::get));
+
+        Set<String> folded = new HashSet<>();
+        for (String text : texts) {
+            String target = null;
+            for (String other : texts) {
+                if (wildcards.get(other) > wildcards.get(text) && !folded.contains(other)
+                        && TemplateTree.covers(tokens.get(other), tokens.get(text))
+                        && (target == null || counts.get(other)[0] > counts.get(target)[0])) {
+                    target = other;
+                }
+            }
+            if (target != null) {
+                counts.get(target)[0] += counts.get(text)[0];
+                counts.get(target)[1] += counts.get(text)[1];
+                folded.add(text);
+            }
+        }
+
+        List<Template> templates = new ArrayList<>();
+        for (String text : texts) {
+            if (!folded.contains(text)) {
+                templates.add(new Template(text, counts.get(text)[0], counts.get(text)[1]));
+            }
+        }
+        return templates;
+    }
+}
@@ -0,0 +1,274 @@
+package analysis;
+
+import model.SymbolTable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups log messages into templates online, in the manner of the Drain log parser.
+ * <p>
+ * A message is split into tokens at spaces, and tokens that hold a digit, or that are
+ * long runs of hexadecimal letters, are masked as the wildcard {@value #WILDCARD}, so
+ * numbers, addresses and ids do not make templates differ. The tree then leads from the
+ * number of tokens and the first token to a small group of templates, where the message
+ * joins the most similar one if more than half of its tokens already agree with it; the
+ * positions that differ become wildcards. Otherwise the message starts a new template.
+ * <p>
+ * The tree is a bounded cache: a group keeps at most {@value #MAX_TEMPLATES_PER_GROUP}
+ * templates and drops the one used least recently, and the tree is emptied when it holds
+ * {@value #MAX_TEMPLATES} templates, so its memory and the work per message do not grow
+ * with the number of distinct messages. Matching a message creates no object unless it
+ * starts a template. Instances are not thread-safe.
+ */
+class TemplateTree {
+
+    static final String WILDCARD = "<*>";
+
+    private static final int MAX_TOKENS = 64;
+    private static final int MAX_TEMPLATES_PER_GROUP = 16;
+    private static final int MAX_TEMPLATES = 10_000;
+    private static final int MIN_HEX_LENGTH = 8;
+
+    /**
+     * A template: its tokens, with null for a wildcard.
+     */
+    static class Template {
+        private final byte[][] tokens;
+        private long lastUsed;
+        private String text;
+        private long fingerprint;
+
+        private Template(byte[][] tokens) {
+            this.tokens = tokens;
+        }
+
+        /**
+         * Returns the tokens joined by spaces, with wildcards as {@value #WILDCARD}.
+         */
+        String text() {
+            if (text == null) {
+                StringBuilder builder = new StringBuilder();
+                for (byte[] token : tokens) {
+                    if (!builder.isEmpty()) {
+                        builder.append(' ');
+                    }
+                    builder.append(token == null ? WILDCARD : new String(token, StandardCharsets.UTF_8));
+                }
+                text = builder.toString();
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                fingerprint = SymbolTable.fingerprint(bytes, 0, bytes.length);
+            }
+            return text;
+        }
+
+        /**
+         * Returns a hash of the {@link #text()}, which changes when the template does.
+         */
+        long fingerprint() {
+            text();
+            return fingerprint;
+        }
+    }
+
+    /**
+     * The templates with a given number of tokens and first token.
+     */
+    private static class Group {
+        final int length;
+        final byte[] first;
+        final List<Template> templates = new ArrayList<>();
+
+        Group(int length, byte[] first) {
+            this.length = length;
+            this.first = first;
+        }
+    }
+
+    // Hash of the length and first token -> group number, probing on collisions
+    private final LongIntMap index = new LongIntMap(256);
+    private final List<Group> groups = new ArrayList<>();
+    private int templates;
+    private long clock;
+
+    // The tokens of the message being matched
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private final boolean[] variable = new boolean[MAX_TOKENS];
+
+    /**
+     * Returns the template of a message, adding or generalizing one as needed.
+     *
+     * @param bytes the array holding the message as UTF-8
+     * @param from  the index of the first byte of the message
+     * @param to    the index right after the last byte of the message
+     * @return the template the message belongs to
+     */
+    Template match(byte[] bytes, int from, int to) {
+        int length = tokenize(bytes, from, to);
+        Group group = group(bytes, length);
+
+        Template best = null;
+        int bestScore = -1;
+        for (Template template : group.templates) {
+            int score = score(template, bytes, length);
+            if (score > bestScore) {
+                best = template;
+                bestScore = score;
+            }
+        }
+
+        if (best != null && bestScore * 2 > length) {
+            generalize(best, bytes, length);
+        } else {
+            best = add(group, bytes, length);
+        }
+        best.lastUsed = ++clock;
+        return best;
+    }
+
+    /**
+     * Splits a message into tokens at spaces and tabs; a message with more than
+     * {@value #MAX_TOKENS} tokens ends with one variable token holding the rest.
+     */
+    private int tokenize(byte[] bytes, int from, int to) {
+        int length = 0;
+        int i = from;
+        while (i < to) {
+            while (i < to && (bytes[i] == ' ' || bytes[i] == '\t')) {
+                i++;
+            }
+            if (i == to) {
+                break;
+            }
+            if (length == MAX_TOKENS - 1) {
+                starts[length] = i;
+                ends[length] = to;
+                variable[length] = true;
+                return length + 1;
+            }
+            int start = i;
+            while (i < to && bytes[i] != ' ' && bytes[i] != '\t') {
+                i++;
+            }
+            starts[length] = start;
+            ends[length] = i;
+            variable[length] = isVariable(bytes, start, i);
+            length++;
+        }
+        return length;
+    }
+
+    private static boolean isVariable(byte[] bytes, int from, int to) {
+        boolean hex = to - from >= MIN_HEX_LENGTH;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                return true;
+            }
+            hex &= (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+        }
+        return hex;
+    }
+
+    private Group group(byte[] bytes, int length) {
+        long key = 31 * length + (length == 0 || variable[0]
+                ? 0 : SymbolTable.fingerprint(bytes, starts[0], ends[0]));
+        while (true) {
+            int number = index.get(key);
+            if (number < 0) {
+                byte[] first = length == 0 || variable[0] ? null : Arrays.copyOfRange(bytes, starts[0], ends[0]);
+                Group group = new Group(length, first);
+                index.put(key, groups.size());
+                groups.add(group);
+                return group;
+            }
+            Group group = groups.get(number);
+            if (group.length == length && (group.first == null
+                    ? length == 0 || variable[0]
+                    : length > 0 && !variable[0] && equals(group.first, bytes, starts[0], ends[0]))) {
+                return group;
+            }
+            key++;
+        }
+    }
+
+    /**
+     * Counts the tokens of the message that the template already accepts.
+     */
+    private int score(Template template, byte[] bytes, int length) {
+        int score = 0;
+        for (int i = 0; i < length; i++) {
+            byte[] token = template.tokens[i];
+            if (token == null || !variable[i] && equals(token, bytes, starts[i], ends[i])) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    private void generalize(Template template, byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte[] token = template.tokens[i];
+            if (token != null && (variable[i] || !equals(token, bytes, starts[i], ends[i]))) {
+                template.tokens[i] = null;
+                template.text = null;
+            }
+        }
+    }
+
+    private Template add(Group group, byte[] bytes, int length) {
+        if (templates >= MAX_TEMPLATES) {
+            clear();
+            group = group(bytes, length);
+        }
+        if (group.templates.size() >= MAX_TEMPLATES_PER_GROUP) {
+            Template oldest = group.templates.get(0);
+            for (Template template : group.templates) {
+                if (template.lastUsed < oldest.lastUsed) {
+                    oldest = template;
+                }
+            }
+            group.templates.remove(oldest);
+            templates--;
+        }
+
+        byte[][] tokens = new byte[length][];
+        for (int i = 0; i < length; i++) {
+            tokens[i] = variable[i] ? null : Arrays.copyOfRange(bytes, starts[i], ends[i]);
+        }
+        Template template = new Template(tokens);
+        group.templates.add(template);
+        templates++;
+        return template;
+    }
+
+    private void clear() {
+        index.clear();
+        groups.clear();
+        templates = 0;
+    }
+
+    private static boolean equals(byte[] token, byte[] bytes, int from, int to) {
+        return Arrays.equals(token, 0, token.length, bytes, from, to);
+    }
+
+    /**
+     * Checks whether a template text accepts every message another one accepts:
+     * both have the same number of tokens, and each token of {@code general} is a
+     * wildcard or equal to that of {@code specific}.
+     */
+    static boolean covers(String[] general, String[] specific) {
+        if (general.length != specific.length) {
+            return false;
+        }
+        for (int i = 0; i < general.length; i++) {
+            if (!general[i].equals(WILDCARD) && !general[i].equals(specific[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
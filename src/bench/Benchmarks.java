@@ -0,0 +1,496 @@
+package bench;
+
+import analysis.AnalyzerFactory;
+import analysis.AnomalyDetector;
+import analysis.DistinctCounter;
+import analysis.GapAnalyzer;
+import analysis.LevelCounter;
+import analysis.LogAnalyzer;
+import analysis.RollupAnalyzer;
+import analysis.SourceCounter;
+import analysis.TemplateAnalyzer;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.TimeRange;
+import model.LogEntry;
+import model.SymbolTable;
+import processing.BatchAnalyzer;
+import processing.FileChunk;
+import processing.LineFilter;
+import processing.LogFileProcessor;
+import processing.LogPipeline;
+import processing.RunMetrics;
+import processing.SegmentReader;
+import processing.SegmentWriter;
+import report.ReportBuilder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A small benchmark harness for the main stages of the analysis.
+ * <p>
+ * Each benchmark runs a few warm-up iterations, then measured iterations timed
+ * with {@link System#nanoTime()}; the best and average throughput are printed.
+ * Results are folded into a volatile field, so the JIT cannot remove the measured work.
+ * The input is produced by {@link LogGenerator} with a fixed seed, so two runs with
+ * the same settings measure the same data.
+ * <p>
+ * Usage: {@code java bench.Benchmarks [dir=bench-data] [size.mb=256] [warmup=2]
+ * [iterations=5] [seed=42] [skew=1.0] [bursts=0.001] [malformed=0]
+ * [small.files=20000] [small.kb=4]}
+ * <p>
+ * The input files are reused when they already exist with the requested size; delete
+ * them after changing the generator settings.
+ */
+public class Benchmarks {
+
+    private static final int VALUES = 1 << 20;
+
+    // The times each thread of the counter scaling benchmark counts the values
+    private static final int COUNTER_PASSES = 8;
+
+    private static volatile long sink;
+
+    private final int warmup;
+    private final int iterations;
+
+    private Benchmarks(int warmup, int iterations) {
+        this.warmup = warmup;
+        this.iterations = Math.max(iterations, 1);
+    }
+
+    /**
+     * A piece of work to measure. It returns a value derived from its result,
+     * which is kept so the work is not optimized away.
+     */
+    interface Task {
+        long run() throws Exception;
+    }
+
+    /**
+     * Runs all benchmarks from the command line.
+     *
+     * @param args {@code key=value} settings, see the class description
+     * @throws Exception if the input cannot be generated or a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LogGenerator.parseOptions(args);
+        File directory = new File(options.getOrDefault("dir", "bench-data"));
+        long size = Long.parseLong(options.getOrDefault("size.mb", "256")) * 1024 * 1024;
+        Benchmarks benchmarks = new Benchmarks(
+                Integer.parseInt(options.getOrDefault("warmup", "2")),
+                Integer.parseInt(options.getOrDefault("iterations", "5")));
+
+        File input = new File(directory, "bench.log");
+        if (!input.isFile() || input.length() < size) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                System.out.println("cannot create directory " + directory);
+                return;
+            }
+            long lines = new LogGenerator(
+                    Long.parseLong(options.getOrDefault("seed", "42")),
+                    Double.parseDouble(options.getOrDefault("skew", "1.0")),
+                    Double.parseDouble(options.getOrDefault("bursts", "0.001")),
+                    Double.parseDouble(options.getOrDefault("malformed", "0"))).write(input, size);
+            System.out.println("generated " + input + ": " + lines + " lines");
+        }
+
+        benchmarks.processing(input);
+        benchmarks.segments(input);
+        benchmarks.smallFiles(new File(directory, "small"),
+                Integer.parseInt(options.getOrDefault("small.files", "20000")),
+                Long.parseLong(options.getOrDefault("small.kb", "4")) * 1024);
+        benchmarks.entries();
+        benchmarks.analyzers();
+        benchmarks.report(directory);
+    }
+
+    /**
+     * Measures reading and parsing a whole file through {@link LogFileProcessor},
+     * without analyzers and with all of them, for each input mode, then through a
+     * {@link LogPipeline}: with all analyzers on the lines of a {@link LineFilter} on a
+     * single parser and analyzer thread, then with the file split into chunks: with 1, 2,
+     * 4 and so on up to one parser thread and one analyzer thread per processor, then with
+     * all of them and {@link RunMetrics}.
+     */
+    private void processing(File input) throws Exception {
+        double megabytes = input.length() / (1024.0 * 1024.0);
+
+        for (String mode : List.of("STREAM", "CHANNEL", "MMAP")) {
+            measure("parse only (" + mode + ")", megabytes, "MB", () -> {
+                new LogFileProcessor(FileChunk.whole(input), List.of(), mode, 1024 * 1024).call();
+                return 0;
+            });
+        }
+
+        for (String mode : List.of("STREAM", "CHANNEL", "MMAP")) {
+            measure("parse + all analyzers (" + mode + ")", megabytes, "MB", () -> {
+                List<LogAnalyzer> analyzers = newAnalyzers();
+                new LogFileProcessor(FileChunk.whole(input), analyzers, mode, 1024 * 1024).call();
+                return ((LevelCounter) analyzers.get(0)).getCounts().size();
+            });
+        }
+
+        LineFilter filter = LineFilter.parse("level=ERROR AND source IN (Database, Cache)", TimeRange.ALL);
+        measure("pipeline, filtered (STREAM, 1 + 1 threads)", megabytes, "MB", () -> {
+            List<LogAnalyzer> analyzers = newAnalyzers();
+            try (LogPipeline pipeline = new LogPipeline(1, 1, 1, 16, 16, 1024 * 1024, "STREAM")) {
+                pipeline.submit(FileChunk.whole(input), input.getName(), analyzers, filter, null);
+            }
+            return ((LevelCounter) analyzers.get(0)).getCounts().size();
+        });
+
+        double single = 0;
+        for (int threads : threadCounts()) {
+            double rate = measure("pipeline (STREAM, " + threads + " + " + threads + " threads)", megabytes, "MB", () -> {
+                List<LogAnalyzer> analyzers = newAnalyzers();
+                try (LogPipeline pipeline = new LogPipeline(2, threads, threads, 16, 16, 1024 * 1024, "STREAM")) {
+                    for (FileChunk chunk : FileChunk.split(input, 64L * 1024 * 1024)) {
+                        pipeline.submit(chunk, analyzers);
+                    }
+                }
+                return ((LevelCounter) analyzers.get(0)).getCounts().size();
+            });
+            single = printSpeedup(threads, rate, single);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        measure("pipeline with metrics (STREAM, " + threads + " parser threads)", megabytes, "MB", () -> {
+            List<LogAnalyzer> analyzers = newAnalyzers();
+            try (LogPipeline pipeline = new LogPipeline(2, false, 2, threads, 2, 16, 16, 1024 * 1024, "STREAM",
+                    new RunMetrics(), null)) {
+                for (FileChunk chunk : FileChunk.split(input, 64L * 1024 * 1024)) {
+                    pipeline.submit(chunk, analyzers);
+                }
+            }
+            return ((LevelCounter) analyzers.get(0)).getCounts().size();
+        });
+    }
+
+    /**
+     * Converts the input to a segment file, then measures converting and reading the
+     * segment into all analyzers, to compare with parsing the text. Throughput is given
+     * in megabytes of the original log, so the numbers compare directly.
+     */
+    private void segments(File input) throws Exception {
+        double megabytes = input.length() / (1024.0 * 1024.0);
+        File segment = new File(input.getPath() + SegmentWriter.SUFFIX);
+
+        measure("convert to segment", megabytes, "MB", () -> {
+            SegmentWriter.convert(input, input.getName(), segment, "STREAM", 1024 * 1024);
+            return segment.length();
+        });
+        System.out.printf("segment size: %,d bytes (%.1f%% of the log)%n",
+                segment.length(), 100.0 * segment.length() / input.length());
+
+        measure("segment + all analyzers", megabytes, "MB", () -> {
+            List<LogAnalyzer> analyzers = newAnalyzers();
+            BatchAnalyzer analyzer = new BatchAnalyzer(analyzers);
+            EntryBatch batch = new EntryBatch(16 * 1024);
+            try (SegmentReader reader = new SegmentReader(segment, AnalyzerFactory.requiredColumns(analyzers))) {
+                while (reader.next(batch)) {
+                    analyzer.analyze(batch);
+                }
+            }
+            analyzer.finish();
+            return ((LevelCounter) analyzers.get(0)).getCounts().size();
+        });
+
+        measure("segment, all columns", megabytes, "MB", () -> {
+            EntryBatch batch = new EntryBatch(16 * 1024);
+            long entries = 0;
+            try (SegmentReader reader = new SegmentReader(segment, EnumSet.allOf(Column.class))) {
+                while (reader.next(batch)) {
+                    entries += batch.size();
+                }
+            }
+            return entries;
+        });
+    }
+
+    /**
+     * Measures a directory of many small files read by a fixed pool of readers and
+     * by one virtual thread per file, with the default cap on open files.
+     */
+    private void smallFiles(File directory, int count, long size) throws Exception {
+        File[] files = new File[count];
+        LogGenerator generator = null;
+        for (int i = 0; i < count; i++) {
+            files[i] = new File(directory, "small_" + i + ".log");
+            if (!files[i].isFile() || files[i].length() < size) {
+                if (generator == null) {
+                    if (!directory.isDirectory() && !directory.mkdirs()) {
+                        System.out.println("cannot create directory " + directory);
+                        return;
+                    }
+                    generator = new LogGenerator(17, 1.0, 0.001, 0);
+                }
+                generator.write(files[i], size);
+            }
+        }
+
+        int parsers = Runtime.getRuntime().availableProcessors();
+        for (boolean virtual : new boolean[]{false, true}) {
+            String name = count + " small files (" + (virtual ? "virtual readers" : "2 fixed readers") + ")";
+            measure(name, count, "files", () -> {
+                List<LogAnalyzer> analyzers = newAnalyzers();
+                try (LogPipeline pipeline = new LogPipeline(2, virtual, 256, parsers, 2,
+                        16, 16, 1024 * 1024, "STREAM")) {
+                    for (File file : files) {
+                        pipeline.submit(FileChunk.whole(file), analyzers);
+                    }
+                }
+                return ((LevelCounter) analyzers.get(0)).getCounts().size();
+            });
+        }
+    }
+
+    /**
+     * Measures building {@link LogEntry} objects from string fields.
+     */
+    private void entries() throws Exception {
+        LogGenerator generator = new LogGenerator(7, 1.0, 0.001, 0);
+        String[][] fields = new String[VALUES][];
+        for (int i = 0; i < VALUES; i++) {
+            String line = generator.nextLine();
+            // [timestamp] [level] [source] [message]\n
+            fields[i] = line.substring(1, line.length() - 2).split("] \\[", 4);
+        }
+
+        measure("LogEntry construction", VALUES, "entries", () -> {
+            long sum = 0;
+            for (String[] f : fields) {
+                sum += new LogEntry(f[0], f[1], f[2], f[3]).getEpochSecond();
+            }
+            return sum;
+        });
+    }
+
+    /**
+     * Measures each analyzer on values that were already parsed, the level and source
+     * counters on 1, 2, 4 and so on up to one thread per processor, and the final
+     * anomaly resolution.
+     */
+    private void analyzers() throws Exception {
+        SplittableRandom random = new SplittableRandom(11);
+        int[] levels = new int[VALUES];
+        int[] sources = new int[VALUES];
+        long[] timestamps = new long[VALUES];
+        String[] levelNames = {"INFO", "WARNING", "ERROR"};
+        long timestamp = 1_744_761_600L;
+        for (int i = 0; i < VALUES; i++) {
+            levels[i] = SymbolTable.LEVELS.intern(levelNames[random.nextInt(3)]);
+            sources[i] = SymbolTable.SOURCES.intern("Server" + (1 + random.nextInt(10)));
+            timestamp += random.nextInt(4);
+            timestamps[i] = timestamp;
+        }
+
+        byte[][] messages = new byte[1000][];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = ("Request " + i + " completed").getBytes(StandardCharsets.UTF_8);
+        }
+
+        EntryBatch batch = new EntryBatch(VALUES);
+        batch.reset("bench.log", 0, VALUES);
+        for (int i = 0; i < VALUES; i++) {
+            byte[] message = messages[random.nextInt(messages.length)];
+            batch.add(timestamps[i], levels[i], sources[i], message, 0, message.length);
+        }
+
+        measure("LevelCounter.analyze", VALUES, "values", () -> {
+            LevelCounter counter = new LevelCounter();
+            counter.analyze(batch);
+            return counter.getCounts().size();
+        });
+
+        measure("SourceCounter.analyze", VALUES, "values", () -> {
+            SourceCounter counter = new SourceCounter();
+            counter.analyze(batch);
+            return counter.getSourceCounts().size();
+        });
+
+        // Each thread counts into its own partials, merged into the shared counters at the end
+        double single = 0;
+        for (int threads : threadCounts()) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                double rate = measure("Level + SourceCounter (" + threads + " threads)", (double) threads * COUNTER_PASSES * VALUES,
+                        "values", () -> {
+                            LevelCounter levelCounter = new LevelCounter();
+                            SourceCounter sourceCounter = new SourceCounter();
+                            List<Future<?>> futures = new ArrayList<>();
+                            for (int t = 0; t < threads; t++) {
+                                futures.add(executor.submit(() -> {
+                                    LogAnalyzer levelPartial = levelCounter.newPartial();
+                                    LogAnalyzer sourcePartial = sourceCounter.newPartial();
+                                    for (int pass = 0; pass < COUNTER_PASSES; pass++) {
+                                        levelPartial.analyze(batch);
+                                        sourcePartial.analyze(batch);
+                                    }
+                                    levelCounter.merge(levelPartial);
+                                    sourceCounter.merge(sourcePartial);
+                                }));
+                            }
+                            for (Future<?> future : futures) {
+                                future.get();
+                            }
+                            return levelCounter.getCounts().size() + sourceCounter.getSourceCounts().size();
+                        });
+                single = printSpeedup(threads, rate, single);
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        measure("AnomalyDetector.analyze", VALUES, "values", () -> {
+            AnomalyDetector detector = newDetector();
+            detector.analyze(batch);
+            return 0;
+        });
+
+        measure("DistinctCounter.analyze", VALUES, "values", () -> {
+            DistinctCounter counter = new DistinctCounter(0.01);
+            counter.analyze(batch);
+            return counter.getDistinctMessages();
+        });
+
+        measure("GapAnalyzer.analyze", VALUES, "values", () -> {
+            GapAnalyzer analyzer = new GapAnalyzer(0.01, 64);
+            LogAnalyzer partial = analyzer.newPartial();
+            partial.analyze(batch);
+            analyzer.merge(partial);
+            return analyzer.getGaps().size();
+        });
+
+        measure("TemplateAnalyzer.analyze", VALUES, "values", () -> {
+            TemplateAnalyzer analyzer = new TemplateAnalyzer(10, 1000);
+            analyzer.analyze(batch);
+            return analyzer.getTopTemplates().size();
+        });
+
+        measure("RollupAnalyzer.analyze", VALUES, "values", () -> {
+            RollupAnalyzer analyzer = new RollupAnalyzer(new int[]{60, 3600}, 16);
+            analyzer.analyze(batch);
+            return analyzer.getRollup(3600).size();
+        });
+
+        // Resolution across many segments, as when a large file is split into chunks
+        AnomalyDetector detector = newDetector();
+        int perSegment = VALUES / 256;
+        for (int s = 0; s < 256; s++) {
+            AnomalyDetector.Segment segment = detector.segment("bench.log", s);
+            for (int i = s * perSegment; i < (s + 1) * perSegment; i++) {
+                segment.add(timestamps[i]);
+            }
+        }
+        measure("AnomalyDetector.detectAnomalies", 256, "segments",
+                () -> detector.detectAnomalies().getOrDefault("bench.log", List.of()).size());
+    }
+
+    /**
+     * Measures writing the report for a realistic set of results.
+     */
+    private void report(File directory) throws Exception {
+        LevelCounter levels = new LevelCounter();
+        SourceCounter sources = new SourceCounter();
+        AnomalyDetector detector = newDetector();
+        LogGenerator generator = new LogGenerator(13, 1.0, 0.01, 0);
+        for (int file = 0; file < 50; file++) {
+            AnomalyDetector.Segment segment = detector.segment("file_" + file + ".log", 0);
+            for (int i = 0; i < 2000; i++) {
+                String[] f = generator.nextLine().substring(1).split("] \\[", 4);
+                levels.analyze(f[1]);
+                sources.analyze(f[2]);
+                if (detector.isTracked(f[1])) {
+                    segment.add(new LogEntry(f[0], f[1], f[2], "").getEpochSecond());
+                }
+            }
+        }
+        Map<String, List<String>> anomalies = detector.detectAnomalies();
+        String output = new File(directory, "bench_report.json").getPath();
+
+        measure("ReportBuilder.saveFullReport", 1, "reports", () -> {
+            ReportBuilder.saveFullReport(levels, sources, anomalies, output);
+            return new File(output).length();
+        });
+    }
+
+    /**
+     * Returns the thread counts of a scaling benchmark: the powers of two below the
+     * number of processors, then the number of processors.
+     */
+    private static List<Integer> threadCounts() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(processors);
+        return counts;
+    }
+
+    /**
+     * Prints the throughput of a step of a scaling benchmark relative to one thread.
+     *
+     * @param threads the number of threads of the step
+     * @param rate    the best throughput of the step
+     * @param single  the best throughput with one thread, or 0 for the first step
+     * @return the throughput with one thread
+     */
+    private static double printSpeedup(int threads, double rate, double single) {
+        if (single == 0) {
+            return rate;
+        }
+        System.out.printf("%-40s %.2fx of 1 thread (%.0f%% of linear)%n", "", rate / single, 100 * rate / single / threads);
+        return single;
+    }
+
+    private static List<LogAnalyzer> newAnalyzers() {
+        return List.of(new LevelCounter(), new SourceCounter(), newDetector());
+    }
+
+    private static AnomalyDetector newDetector() {
+        return new AnomalyDetector(Set.of("ERROR", "WARNING"), 60, 5);
+    }
+
+    /**
+     * Runs a task and prints its throughput in {@code units} per second.
+     *
+     * @param name  the name of the benchmark
+     * @param units the amount of work done by one run of the task
+     * @param unit  the name of the unit of work
+     * @param task  the work to measure
+     * @return the best throughput, in {@code units} per second
+     */
+    private double measure(String name, double units, String unit, Task task) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            sink += task.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            sink += task.run();
+            long elapsed = System.nanoTime() - start;
+            best = Math.min(best, elapsed);
+            total += elapsed;
+        }
+
+        double bestRate = units / (best / 1e9);
+        double averageRate = units / (total / 1e9 / iterations);
+        System.out.printf("%-40s best %,14.1f %s/s   avg %,14.1f %s/s%n", name, bestRate, unit, averageRate, unit);
+        return bestRate;
+    }
+}
@@ -0,0 +1,212 @@
+package bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic log files in the format of the application's input,
+ * {@code [yyyy-MM-dd HH:mm:ss] [LEVEL] [Source] [Message]}.
+ * <p>
+ * The output depends only on the settings and the seed, so files of any size can
+ * be regenerated anywhere to reproduce a measurement. The settings are:
+ * <ul>
+ *   <li>{@code skew} – the Zipf exponent of the source distribution (0 = uniform)</li>
+ *   <li>{@code bursts} – the probability that a line starts a burst of ERROR entries
+ *       a few seconds apart, which the anomaly detection should report</li>
+ *   <li>{@code malformed} – the probability that a line is broken in some way</li>
+ * </ul>
+ * Outside of bursts, lines are roughly 60% INFO, 25% WARNING and 15% ERROR, with
+ * exponentially distributed gaps averaging ten seconds.
+ * <p>
+ * Usage: {@code java bench.LogGenerator dir=<directory> size.mb=<total size>
+ * [files=1] [seed=42] [skew=1.0] [bursts=0.001] [malformed=0]}
+ */
+public class LogGenerator {
+
+    private static final String[] INFO_MESSAGES = {
+            "Cache hit", "Cache miss", "Server started", "Server stopped", "User logged in",
+            "User logged out", "New user registered", "Service restarted successfully", "Disk space low"
+    };
+    private static final String[] WARNING_MESSAGES = {
+            "CPU usage exceeded threshold", "Disk space low", "High memory usage detected",
+            "Network packet loss", "Out of memory", "New user registered"
+    };
+    private static final String[] ERROR_MESSAGES = {
+            "Database connection failed", "Failed login attempt", "Invalid request received",
+            "Out of memory", "Server stopped"
+    };
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final int SOURCES = 10;
+    private static final long START = LocalDateTime.of(2025, 4, 16, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    private final SplittableRandom random;
+    private final double burstRate;
+    private final double malformedRate;
+    private final double[] sourceWeights = new double[SOURCES];
+
+    private long timestamp = START;
+    private int burstRemaining;
+
+    /**
+     * Creates a generator.
+     *
+     * @param seed          the seed of the pseudo-random sequence
+     * @param skew          the Zipf exponent of the source distribution, 0 for uniform
+     * @param burstRate     the probability that a line starts an error burst
+     * @param malformedRate the probability that a line is malformed
+     */
+    public LogGenerator(long seed, double skew, double burstRate, double malformedRate) {
+        this.random = new SplittableRandom(seed);
+        this.burstRate = burstRate;
+        this.malformedRate = malformedRate;
+
+        double total = 0;
+        for (int i = 0; i < SOURCES; i++) {
+            total += 1 / Math.pow(i + 1, Math.max(skew, 0));
+            sourceWeights[i] = total;
+        }
+        for (int i = 0; i < SOURCES; i++) {
+            sourceWeights[i] /= total;
+        }
+    }
+
+    /**
+     * Writes lines to a file until it reaches the given size.
+     * Timestamps continue from the last line written by this generator.
+     *
+     * @param file the file to create or overwrite
+     * @param size the minimal size of the file in bytes
+     * @return the number of lines written
+     * @throws IOException if the file cannot be written
+     */
+    public long write(File file, long size) throws IOException {
+        long lines = 0;
+        long written = 0;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024)) {
+            while (written < size) {
+                byte[] line = nextLine().getBytes(StandardCharsets.UTF_8);
+                out.write(line);
+                written += line.length;
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Returns the next line, including its line break.
+     *
+     * @return the line
+     */
+    public String nextLine() {
+        String level;
+        if (burstRemaining == 0 && random.nextDouble() < burstRate) {
+            burstRemaining = 5 + random.nextInt(16);
+        }
+        if (burstRemaining > 0) {
+            burstRemaining--;
+            timestamp += random.nextInt(4);
+            level = "ERROR";
+        } else {
+            timestamp += (long) (-10 * Math.log(1 - random.nextDouble()));
+            double p = random.nextDouble();
+            level = p < 0.60 ? "INFO" : p < 0.85 ? "WARNING" : "ERROR";
+        }
+
+        String[] messages = switch (level) {
+            case "INFO" -> INFO_MESSAGES;
+            case "WARNING" -> WARNING_MESSAGES;
+            default -> ERROR_MESSAGES;
+        };
+        String time = LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC).format(formatter);
+        String line = "[" + time + "] [" + level + "] [Server" + nextSource() + "] ["
+                + messages[random.nextInt(messages.length)] + "]";
+
+        if (malformedRate > 0 && random.nextDouble() < malformedRate) {
+            line = malform(line);
+        }
+        return line + "\n";
+    }
+
+    private int nextSource() {
+        double p = random.nextDouble();
+        for (int i = 0; i < SOURCES - 1; i++) {
+            if (p < sourceWeights[i]) {
+                return i + 1;
+            }
+        }
+        return SOURCES;
+    }
+
+    private String malform(String line) {
+        return switch (random.nextInt(4)) {
+            case 0 -> line.substring(0, line.length() - 1);
+            case 1 -> line.replace("] [", "][");
+            case 2 -> "[2025-13-45 99:99:99" + line.substring(20);
+            default -> line.substring(0, random.nextInt(line.length()));
+        };
+    }
+
+    /**
+     * Generates log files from the command line.
+     *
+     * @param args {@code key=value} settings, see the class description
+     * @throws IOException if a file cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        if (!options.containsKey("dir") || !options.containsKey("size.mb")) {
+            System.out.println("usage: java bench.LogGenerator dir=<directory> size.mb=<total size>"
+                    + " [files=1] [seed=42] [skew=1.0] [bursts=0.001] [malformed=0]");
+            return;
+        }
+
+        File directory = new File(options.get("dir"));
+        long size = Long.parseLong(options.get("size.mb")) * 1024 * 1024;
+        int files = Integer.parseInt(options.getOrDefault("files", "1"));
+        LogGenerator generator = new LogGenerator(
+                Long.parseLong(options.getOrDefault("seed", "42")),
+                Double.parseDouble(options.getOrDefault("skew", "1.0")),
+                Double.parseDouble(options.getOrDefault("bursts", "0.001")),
+                Double.parseDouble(options.getOrDefault("malformed", "0")));
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.out.println("cannot create directory " + directory);
+            return;
+        }
+        for (int i = 1; i <= files; i++) {
+            File file = new File(directory, "generated_" + i + ".log");
+            long lines = generator.write(file, size / files);
+            System.out.println(file + ": " + lines + " lines");
+        }
+    }
+
+    /**
+     * Parses {@code key=value} arguments; arguments without '=' are ignored.
+     *
+     * @param args the command-line arguments
+     * @return the settings by key
+     */
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+            }
+        }
+        return options;
+    }
+}
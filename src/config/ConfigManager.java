@@ -2,9 +2,12 @@ package config;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * ConfigManager is responsible for loading and providing access
@@ -14,11 +17,34 @@ import java.util.Set;
 public class ConfigManager {
 
     private static final String DEFAULT_LOG_DIRECTORY = "logs";
+    private static final String DEFAULT_INCLUDE = "*.log,*.log.gz,*.zip";
     private static final int DEFAULT_THREAD_POOL_SIZE = 5;
+    private static final int DEFAULT_READER_THREADS = 2;
+    private static final int DEFAULT_ANALYZER_THREADS = 2;
+    private static final int DEFAULT_QUEUE_SIZE = 16;
+    private static final String DEFAULT_READER_MODE = "FIXED";
+    private static final Set<String> READER_MODES = Set.of("FIXED", "VIRTUAL");
+    private static final int DEFAULT_MAX_OPEN_FILES = 256;
     private static final String DEFAULT_ANOMALY_WINDOW = "60";
     private static final String DEFAULT_ANOMALY_THRESHOLD = "5";
+    private static final String DEFAULT_ANOMALY_TOLERANCE = "10";
     private static final String DEFAULT_OUTPUT_FILE = "output.json";
     private static final String DEFAULT_ANALYSIS = "COUNT_LEVELS";
+    private static final long DEFAULT_CHUNK_SIZE_MB = 0;
+    private static final String DEFAULT_INPUT_MODE = "STREAM";
+    private static final Set<String> INPUT_MODES = Set.of("STREAM", "CHANNEL", "MMAP");
+    private static final int DEFAULT_INPUT_BUFFER_KB = 1024;
+    private static final int DEFAULT_FOLLOW_REPORT_INTERVAL = 30;
+    private static final double DEFAULT_DISTINCT_ERROR = 0.01;
+    private static final double DEFAULT_GAP_ACCURACY = 0.01;
+    private static final double MIN_GAP_ACCURACY = 0.001;
+    private static final int DEFAULT_GAP_SOURCES = 64;
+    private static final int DEFAULT_TEMPLATE_TOP = 10;
+    private static final int DEFAULT_TEMPLATE_CAPACITY = 1000;
+    private static final int[] DEFAULT_ROLLUP_RESOLUTIONS = {60, 3600};
+    private static final int DEFAULT_ROLLUP_SOURCES = 16;
+    private static final int DEFAULT_QUARANTINE_QUEUE_SIZE = 4096;
+    private static final int DEFAULT_QUARANTINE_SUMMARY_INTERVAL = 10;
 
     private final Properties props = new Properties();
 
@@ -45,15 +71,298 @@ public class ConfigManager {
     }
 
     /**
-     * Returns the configured thread pool size.
+     * Returns whether the subdirectories of the log directory are searched for log files.
      *
-     * @return the number of threads to use, or the default (5) if invalid or missing
+     * @return true if discovery is recursive, false (the default) otherwise
      */
-    public int getThreadPoolSize() {
+    public boolean isRecursive() {
+        return Boolean.parseBoolean(props.getProperty("log.recursive", "false").trim());
+    }
+
+    /**
+     * Returns the glob patterns selecting the log files to process.
+     * A pattern without a '/' applies to file names, others to paths
+     * relative to the log directory.
+     *
+     * @return the include patterns, by default .log, .log.gz and .zip files
+     */
+    public List<String> getIncludePatterns() {
+        return getList("log.include", DEFAULT_INCLUDE);
+    }
+
+    /**
+     * Returns the glob patterns of the files and directories to leave out,
+     * in the same form as {@link #getIncludePatterns()}.
+     *
+     * @return the exclude patterns, empty by default
+     */
+    public List<String> getExcludePatterns() {
+        return getList("log.exclude", "");
+    }
+
+    private List<String> getList(String key, String defaultValue) {
+        List<String> values = new ArrayList<>();
+        for (String value : props.getProperty(key, defaultValue).split(",")) {
+            if (!value.isBlank()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of threads reading (or inflating) log files.
+     *
+     * @return the number of reader threads, or the default (2) if invalid or missing
+     */
+    public int getReaderThreads() {
+        return getPositiveInt("pipeline.reader.threads", DEFAULT_READER_THREADS);
+    }
+
+    /**
+     * Returns how reader threads are run: on a fixed pool of {@link #getReaderThreads()}
+     * threads (FIXED), or on one virtual thread per file or chunk (VIRTUAL), which suits
+     * directories holding many small files.
+     *
+     * @return the reader mode, or "FIXED" if not defined or not recognized
+     */
+    public String getReaderMode() {
+        String mode = props.getProperty("pipeline.reader.mode", DEFAULT_READER_MODE).trim().toUpperCase();
+        return READER_MODES.contains(mode) ? mode : DEFAULT_READER_MODE;
+    }
+
+    /**
+     * Returns the maximum number of log files read at the same time.
+     *
+     * @return the number of open files, or the default (256) if invalid or missing
+     */
+    public int getMaxOpenFiles() {
+        return getPositiveInt("pipeline.max.open.files", DEFAULT_MAX_OPEN_FILES);
+    }
+
+    /**
+     * Returns the number of threads parsing the lines read.
+     * The older {@code thread.pool.size} setting is used if this one is missing.
+     *
+     * @return the number of parser threads, or the default (5) if invalid or missing
+     */
+    public int getParserThreads() {
+        int threadPoolSize = getPositiveInt("thread.pool.size", DEFAULT_THREAD_POOL_SIZE);
+        return getPositiveInt("pipeline.parser.threads", threadPoolSize);
+    }
+
+    /**
+     * Returns the number of threads passing parsed entries to the analyzers.
+     *
+     * @return the number of analyzer threads, or the default (2) if invalid or missing
+     */
+    public int getAnalyzerThreads() {
+        return getPositiveInt("pipeline.analyzer.threads", DEFAULT_ANALYZER_THREADS);
+    }
+
+    /**
+     * Returns the number of read buffers queued between the readers and the parsers.
+     * Each buffer is {@link #getInputBufferSize()} bytes large.
+     *
+     * @return the queue size, or the default (16) if invalid or missing
+     */
+    public int getReadQueueSize() {
+        return getPositiveInt("pipeline.read.queue.size", DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the number of parsed batches queued between the parsers and the analyzers.
+     *
+     * @return the queue size, or the default (16) if invalid or missing
+     */
+    public int getParseQueueSize() {
+        return getPositiveInt("pipeline.parse.queue.size", DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the number of worker processes the log files are split across; with 0,
+     * the files are analyzed in this process.
+     *
+     * @return the number of workers, or 0 if not defined or invalid
+     */
+    public int getWorkers() {
         try {
-            return Integer.parseInt(props.getProperty("thread.pool.size", String.valueOf(DEFAULT_THREAD_POOL_SIZE)));
+            int workers = Integer.parseInt(props.getProperty("pipeline.workers", "0").trim());
+            return Math.max(workers, 0);
         } catch (NumberFormatException e) {
-            return DEFAULT_THREAD_POOL_SIZE;
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the options the worker JVMs are started with, such as {@code -Xmx4g}.
+     *
+     * @return the options, split at whitespace; empty if not defined
+     */
+    public List<String> getWorkerOptions() {
+        String options = props.getProperty("pipeline.worker.options", "").trim();
+        return options.isEmpty() ? List.of() : List.of(options.split("\\s+"));
+    }
+
+    /**
+     * Returns whether the run collects metrics, exposes them through JMX and adds them
+     * to the report as {@code RUN_STATS}.
+     *
+     * @return false (the default) for no metrics
+     */
+    public boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(props.getProperty("pipeline.metrics", "false").trim());
+    }
+
+    private int getPositiveInt(String key, int defaultValue) {
+        try {
+            int value = Integer.parseInt(props.getProperty(key, String.valueOf(defaultValue)).trim());
+            return value > 0 ? value : defaultValue;
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns the preferred size of the byte ranges large log files are split into,
+     * so that a single file can be processed by several threads at once.
+     *
+     * @return the chunk size in bytes, or 0 (one task per file) if not defined or invalid
+     */
+    public long getChunkSize() {
+        try {
+            long megabytes = Long.parseLong(props.getProperty("log.chunk.size.mb", String.valueOf(DEFAULT_CHUNK_SIZE_MB)).trim());
+            return Math.max(megabytes, 0) * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            return DEFAULT_CHUNK_SIZE_MB * 1024 * 1024;
+        }
+    }
+
+    /**
+     * Returns how log files are read: through a buffered stream (STREAM),
+     * a file channel with a direct buffer (CHANNEL) or memory-mapped windows (MMAP).
+     *
+     * @return the input mode, or "STREAM" if not defined or not recognized
+     */
+    public String getInputMode() {
+        String mode = props.getProperty("log.input.mode", DEFAULT_INPUT_MODE).trim().toUpperCase();
+        return INPUT_MODES.contains(mode) ? mode : DEFAULT_INPUT_MODE;
+    }
+
+    /**
+     * Returns the size of the read buffer, or of each mapped window in MMAP mode.
+     *
+     * @return the buffer size in bytes, or 1024 KB if not defined or invalid
+     */
+    public int getInputBufferSize() {
+        try {
+            int kilobytes = Integer.parseInt(props.getProperty("log.input.buffer.kb", String.valueOf(DEFAULT_INPUT_BUFFER_KB)).trim());
+            return kilobytes > 0 && kilobytes <= 1024 * 1024 ? kilobytes * 1024 : DEFAULT_INPUT_BUFFER_KB * 1024;
+        } catch (NumberFormatException e) {
+            return DEFAULT_INPUT_BUFFER_KB * 1024;
+        }
+    }
+
+    /**
+     * Returns the directory where per-file analysis results are cached between runs.
+     *
+     * @return the cache directory, or an empty string (no cache) if not defined
+     */
+    public String getCacheDirectory() {
+        return props.getProperty("log.cache.directory", "").trim();
+    }
+
+    /**
+     * Returns the conditions the analyzed lines must meet, see {@link processing.LineFilter}.
+     *
+     * @return the filter expression, or an empty string to analyze every line
+     */
+    public String getFilter() {
+        return props.getProperty("log.filter", "").trim();
+    }
+
+    /**
+     * Returns the directory where the time index of each log file is kept between runs.
+     *
+     * @return the index directory, or an empty string (no index) if not defined
+     */
+    public String getIndexDirectory() {
+        return props.getProperty("log.index.directory", "").trim();
+    }
+
+    /**
+     * Returns the directory the segment files written by a convert run go to.
+     *
+     * @return the segment directory, by default "segments"
+     */
+    public String getSegmentDirectory() {
+        String directory = props.getProperty("log.segment.directory", "").trim();
+        return directory.isEmpty() ? "segments" : directory;
+    }
+
+    /**
+     * Returns the file malformed lines are written to, with their log and position.
+     *
+     * @return the quarantine file, or an empty string (the default) to only count and
+     *         summarize malformed lines
+     */
+    public String getQuarantineFile() {
+        return props.getProperty("log.quarantine.file", "").trim();
+    }
+
+    /**
+     * Returns the number of malformed lines that may wait to be written to the
+     * quarantine file before further ones are dropped.
+     *
+     * @return the queue size, or the default (4096) if invalid or missing
+     */
+    public int getQuarantineQueueSize() {
+        return getPositiveInt("log.quarantine.queue.size", DEFAULT_QUARANTINE_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the shortest time between two summaries of the malformed lines on the console.
+     *
+     * @return the interval in seconds, or 10 seconds if not defined or invalid
+     */
+    public int getQuarantineSummaryInterval() {
+        return getPositiveInt("log.quarantine.summary.interval", DEFAULT_QUARANTINE_SUMMARY_INTERVAL);
+    }
+
+    /**
+     * Returns a description of every setting the analysis results depend on,
+     * so that results cached with other settings are not reused.
+     *
+     * @return the analysis types and anomaly detection settings, as one string
+     */
+    public String getAnalysisSignature() {
+        return String.join(",", getAnalysisTypes()) + ";" + new TreeSet<>(getAnomalyLevels())
+                + ";" + getAnomalyWindow() + ";" + getAnomalyThreshold() + ";" + getAnomalyTolerance()
+                + ";" + getDistinctError() + ";" + getGapAccuracy() + ";" + getGapSources()
+                + ";" + getTemplateCapacity() + ";" + getRollupResolutions()[0] + ";" + getRollupSources();
+    }
+
+    /**
+     * Returns whether the log directory should be followed after the existing
+     * files were read, processing lines as they are appended.
+     *
+     * @return true if follow mode is enabled, false (the default) otherwise
+     */
+    public boolean isFollowMode() {
+        return Boolean.parseBoolean(props.getProperty("log.follow", "false").trim());
+    }
+
+    /**
+     * Returns how often the report is rewritten in follow mode.
+     *
+     * @return the interval in seconds, or 30 seconds if not defined or invalid
+     */
+    public int getFollowReportInterval() {
+        try {
+            int seconds = Integer.parseInt(props.getProperty("log.follow.report.interval", String.valueOf(DEFAULT_FOLLOW_REPORT_INTERVAL)).trim());
+            return seconds > 0 ? seconds : DEFAULT_FOLLOW_REPORT_INTERVAL;
+        } catch (NumberFormatException e) {
+            return DEFAULT_FOLLOW_REPORT_INTERVAL;
         }
     }
 
@@ -66,6 +375,15 @@ public class ConfigManager {
         return props.getProperty("output.file", DEFAULT_OUTPUT_FILE);
     }
 
+    /**
+     * Returns whether the JSON report is indented, or written on a single line.
+     *
+     * @return true (the default) for an indented report
+     */
+    public boolean isPrettyReport() {
+        return Boolean.parseBoolean(props.getProperty("output.pretty", "true").trim());
+    }
+
     /**
      * Returns the list of requested analysis types from the configuration.
      *
@@ -115,4 +433,135 @@ public class ConfigManager {
             return Integer.parseInt(DEFAULT_ANOMALY_THRESHOLD);
         }
     }
+
+    /**
+     * Returns how many seconds a log line may lag behind later lines of the same file
+     * and still be placed correctly by the online anomaly detection.
+     *
+     * @return the tolerance in seconds, or 10 seconds if not defined or invalid
+     */
+    public int getAnomalyTolerance() {
+        try {
+            return Integer.parseInt(props.getProperty("log.analysis.anomalies.tolerance", DEFAULT_ANOMALY_TOLERANCE));
+        } catch (NumberFormatException e) {
+            return Integer.parseInt(DEFAULT_ANOMALY_TOLERANCE);
+        }
+    }
+
+    /**
+     * Returns the relative standard error of the distinct counts.
+     *
+     * @return the error, such as 0.01 for 1%, or 0.01 if not defined or not between 0 and 1
+     */
+    public double getDistinctError() {
+        try {
+            double error = Double.parseDouble(props.getProperty("log.analysis.distinct.error", String.valueOf(DEFAULT_DISTINCT_ERROR)).trim());
+            return error > 0 && error < 1 ? error : DEFAULT_DISTINCT_ERROR;
+        } catch (NumberFormatException e) {
+            return DEFAULT_DISTINCT_ERROR;
+        }
+    }
+
+    /**
+     * Returns the relative accuracy of the gap quantiles of each source.
+     *
+     * @return the accuracy, at least 0.001, or 0.01 if not defined or not between 0 and 1
+     */
+    public double getGapAccuracy() {
+        try {
+            double accuracy = Double.parseDouble(props.getProperty("log.analysis.gaps.accuracy", String.valueOf(DEFAULT_GAP_ACCURACY)).trim());
+            return accuracy > 0 && accuracy < 1 ? Math.max(accuracy, MIN_GAP_ACCURACY) : DEFAULT_GAP_ACCURACY;
+        } catch (NumberFormatException e) {
+            return DEFAULT_GAP_ACCURACY;
+        }
+    }
+
+    /**
+     * Returns how many distinct sources get their gap quantiles measured; further
+     * sources are ignored, so that memory stays bounded.
+     *
+     * @return the number of sources, or 64 if not defined or invalid
+     */
+    public int getGapSources() {
+        try {
+            int sources = Integer.parseInt(props.getProperty("log.analysis.gaps.sources", String.valueOf(DEFAULT_GAP_SOURCES)).trim());
+            return sources > 0 ? sources : DEFAULT_GAP_SOURCES;
+        } catch (NumberFormatException e) {
+            return DEFAULT_GAP_SOURCES;
+        }
+    }
+
+    /**
+     * Returns how many message templates are reported for each level.
+     *
+     * @return the number of templates, or 10 if not defined or invalid
+     */
+    public int getTemplateTop() {
+        try {
+            int top = Integer.parseInt(props.getProperty("log.analysis.templates.top", String.valueOf(DEFAULT_TEMPLATE_TOP)).trim());
+            return top > 0 ? top : DEFAULT_TEMPLATE_TOP;
+        } catch (NumberFormatException e) {
+            return DEFAULT_TEMPLATE_TOP;
+        }
+    }
+
+    /**
+     * Returns how many message templates are counted for each level; the counts of the
+     * reported templates are more accurate with more counters.
+     *
+     * @return the number of counters, or 1000 if not defined or invalid
+     */
+    public int getTemplateCapacity() {
+        try {
+            int capacity = Integer.parseInt(props.getProperty("log.analysis.templates.capacity", String.valueOf(DEFAULT_TEMPLATE_CAPACITY)).trim());
+            return capacity > 0 ? capacity : DEFAULT_TEMPLATE_CAPACITY;
+        } catch (NumberFormatException e) {
+            return DEFAULT_TEMPLATE_CAPACITY;
+        }
+    }
+
+    /**
+     * Returns the lengths of the time buckets entries are counted in, in seconds.
+     * Entries are counted at the shortest one, and the others are derived from it,
+     * so each must be a multiple of the shortest.
+     *
+     * @return the resolutions from the shortest to the longest, or 60 and 3600 if not
+     *         defined or invalid
+     */
+    public int[] getRollupResolutions() {
+        String value = props.getProperty("log.analysis.rollup.resolutions", "").trim();
+        if (value.isEmpty()) {
+            return DEFAULT_ROLLUP_RESOLUTIONS.clone();
+        }
+        Set<Integer> resolutions = new TreeSet<>();
+        try {
+            for (String resolution : value.split(",")) {
+                resolutions.add(Integer.parseInt(resolution.trim()));
+            }
+        } catch (NumberFormatException e) {
+            return DEFAULT_ROLLUP_RESOLUTIONS.clone();
+        }
+        int finest = resolutions.iterator().next();
+        for (int resolution : resolutions) {
+            if (finest <= 0 || resolution % finest != 0) {
+                return DEFAULT_ROLLUP_RESOLUTIONS.clone();
+            }
+        }
+        return resolutions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Returns how many distinct sources get their own rollup series; entries of further
+     * sources are counted together, so that memory stays bounded.
+     *
+     * @return the number of sources, or 16 if not defined or invalid
+     */
+    public int getRollupSources() {
+        try {
+            int sources = Integer.parseInt(props.getProperty("log.analysis.rollup.sources", String.valueOf(DEFAULT_ROLLUP_SOURCES)).trim());
+            return sources > 0 ? sources : DEFAULT_ROLLUP_SOURCES;
+        } catch (NumberFormatException e) {
+            return DEFAULT_ROLLUP_SOURCES;
+        }
+    }
 }
@@ -1,19 +1,39 @@
 package controller;
 
 import analysis.AnomalyDetector;
+import analysis.DistinctCounter;
+import analysis.GapAnalyzer;
+import analysis.TemplateAnalyzer;
+import analysis.RollupAnalyzer;
+import analysis.RejectCounter;
 import analysis.SourceCounter;
 import analysis.LevelCounter;
 import analysis.LogAnalyzer;
 import analysis.AnalyzerFactory;
 import config.ConfigManager;
-import processing.LogFileProcessor;
+import model.TimeRange;
+import processing.AnalysisCache;
+import processing.AnalyzerState;
+import processing.CompressedLogReader;
+import processing.FileChunk;
+import processing.LineFilter;
+import processing.LogPipeline;
+import processing.QuarantineSink;
+import processing.RunMetrics;
+import processing.SegmentReader;
+import processing.SegmentWriter;
+import processing.TimeIndex;
 import report.ReportBuilder;
 
-import java.io.File;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 /**
  * The main controller responsible for coordinating the log analysis process.
@@ -23,23 +43,110 @@ import java.util.concurrent.TimeUnit;
  */
 public class Controller {
 
+    /**
+     * The work done on one log file in a batch run. With a cache, results are
+     * collected into per-file analyzers, which are cached as they are and then
+     * merged into the shared ones; otherwise they go to the shared ones directly.
+     */
+    private static class FileRun {
+        final File file;
+        final String name;
+        final List<LogAnalyzer> analyzers;
+        final List<LogPipeline.Job> jobs = new ArrayList<>();
+        // The time index being built from the lines read in this run, if any
+        TimeIndex.Builder index;
+        // Captured before reading, so a later append is seen as a change by the next run
+        final long lastModified;
+        final long started = System.nanoTime();
+        long end;
+        boolean failed;
+        // The position of the file among those handed to the run, in the order they were found
+        final int number;
+
+        FileRun(File file, String name, int number, List<LogAnalyzer> analyzers) {
+            this.file = file;
+            this.name = name;
+            this.number = number;
+            this.analyzers = analyzers;
+            this.lastModified = file.lastModified();
+            this.end = file.length();
+        }
+
+        /**
+         * Returns whether some lines of the file could not be read, parsed or analyzed.
+         */
+        boolean hasFailed() {
+            return failed || jobs.stream().anyMatch(LogPipeline.Job::hasFailed);
+        }
+
+        /**
+         * Returns whether every line read in this run reached the analyzers.
+         */
+        boolean isComplete() {
+            return !failed && !jobs.isEmpty() && jobs.stream().allMatch(LogPipeline.Job::isComplete);
+        }
+    }
+
     /**
      * Runs the log analysis process using the configuration provided at the given path.
      * <p>
      * The process includes:
      * <ul>
      *   <li>Loading configuration settings</li>
-     *   <li>Scanning the logs directory for .log files</li>
      *   <li>Creating analyzers dynamically based on config</li>
-     *   <li>Processing logs in parallel using a thread pool</li>
+     *   <li>Walking the logs directory, optionally recursively, for the files matching
+     *       the include and exclude patterns (by default .log files, gzipped logs (.log.gz)
+     *       and zip archives); each file is submitted as soon as it is found, and pending
+     *       files are read largest first</li>
+     *   <li>Restoring the results of unchanged files from the analysis cache, if
+     *       one is configured, and reading only the appended part of grown files</li>
+     *   <li>Processing logs in a {@link LogPipeline}, optionally splitting
+     *       large files into chunks read concurrently; segment files written by
+     *       {@link #convert(String)} are analyzed without parsing</li>
+     *   <li>With {@code pipeline.workers} set, splitting the files across worker
+     *       processes instead and merging the results they send back</li>
      *   <li>Aggregating results and printing them</li>
      *   <li>Saving final report as a JSON file</li>
      * </ul>
+     * With {@code pipeline.metrics} enabled, the run is timed and counted into
+     * {@link RunMetrics}, which are registered with JMX until the run ends and added to
+     * the report; the metrics of worker processes are not included. Malformed lines go
+     * to a {@link QuarantineSink}, which writes them to {@code log.quarantine.file} if set
+     * and summarizes them on the console.
+     * If follow mode is enabled in the configuration, this delegates to {@link #follow(String)}.
      *
      * @param configPath the path to the configuration properties file
      */
     public void run(String configPath) {
+        run(configPath, TimeRange.ALL, null);
+    }
+
+    /**
+     * Runs the log analysis process like {@link #run(String)}, but only analyzes the
+     * entries in a time range that are accepted by a filter (see {@link LineFilter}).
+     * <p>
+     * With an index directory configured, each plain log file gets a {@link TimeIndex}
+     * while it is read. When the file is read again for a time range, only the parts
+     * the index gives for the range are read, plus whatever was appended since it was
+     * indexed; files whose entries are all outside the range are not opened at all.
+     * Filtered results are not stored in the analysis cache.
+     *
+     * @param configPath the path to the configuration properties file
+     * @param range      the timestamps of the entries to analyze
+     * @param expression the filter conditions, or null to use {@code log.filter} from the configuration
+     */
+    public void run(String configPath, TimeRange range, String expression) {
         ConfigManager config = new ConfigManager(configPath);
+        String conditions = expression != null ? expression : config.getFilter();
+        LineFilter filter = parseFilter(conditions, range);
+        if (filter == null) {
+            return;
+        }
+        if (config.isFollowMode()) {
+            follow(config, filter);
+            return;
+        }
+
         File logFolder = new File(config.getLogDirectory());
 
         if (!logFolder.exists() || !logFolder.isDirectory()) {
@@ -47,17 +154,539 @@ public class Controller {
             return;
         }
 
-        File[] logFiles = logFolder.listFiles((dir, name) -> name.endsWith(".log"));
-        if (logFiles == null || logFiles.length == 0) {
+        List<LogAnalyzer> analyzers = AnalyzerFactory.createAnalyzers(config);
+        AnalysisCache cache = config.getCacheDirectory().isEmpty() || !filter.isAll()
+                ? null
+                : new AnalysisCache(new File(config.getCacheDirectory()), config.getAnalysisSignature());
+
+        LogDiscovery discovery = new LogDiscovery(logFolder, config.isRecursive(),
+                config.getIncludePatterns(), config.getExcludePatterns());
+
+        RunMetrics metrics = config.isMetricsEnabled() ? new RunMetrics() : null;
+        if (metrics != null) {
+            metrics.register();
+        }
+        QuarantineSink quarantine = newQuarantine(config, "");
+        try {
+            if (config.getWorkers() > 0) {
+                if (!runShards(configPath, config, conditions, filter, discovery, analyzers, cache, metrics,
+                        quarantine)) {
+                    return;
+                }
+            } else {
+                List<FileRun> fileRuns = analyze(config, analyzers, cache, filter, cache != null, metrics,
+                        quarantine, discovery::walk);
+                if (fileRuns.isEmpty()) {
+                    System.out.println("No log files found.");
+                    return;
+                }
+
+                finish(config, fileRuns, analyzers, cache, metrics);
+                if (cache != null) {
+                    cache.prune();
+                }
+            }
+
+            quarantine.close();
+            report(analyzers, config.getOutputFile(), config.isPrettyReport(), true, metrics);
+        } finally {
+            quarantine.close();
+            if (metrics != null) {
+                metrics.unregister();
+            }
+        }
+    }
+
+    /**
+     * Supplies the log files of a run to a {@link LogDiscovery.Listener}.
+     */
+    private interface LogFiles {
+        void walk(LogDiscovery.Listener listener) throws IOException;
+    }
+
+    /**
+     * Reads and analyzes log files, restoring what it can from the cache.
+     *
+     * @param perFile whether the results of each file are collected into their own
+     *                analyzers, to be merged into the shared ones by {@link #finish};
+     *                required with a cache
+     * @param metrics    the metrics of the run, or null
+     * @param quarantine the sink receiving malformed lines
+     * @return the work done on each file, in the order the files were found
+     */
+    private List<FileRun> analyze(ConfigManager config, List<LogAnalyzer> analyzers, AnalysisCache cache,
+                                  LineFilter filter, boolean perFile, RunMetrics metrics, QuarantineSink quarantine,
+                                  LogFiles files) {
+        TimeRange range = filter.range();
+        File indexFolder = config.getIndexDirectory().isEmpty() ? null : new File(config.getIndexDirectory());
+        LogPipeline pipeline = newPipeline(config, metrics, quarantine);
+        long chunkSize = config.getChunkSize();
+        List<FileRun> fileRuns = new ArrayList<>();
+        int[] found = {0};
+
+        try {
+            files.walk((logFile, name) -> {
+                int number = found[0]++;
+                List<LogAnalyzer> fileAnalyzers = perFile
+                        ? analyzers.stream().map(LogAnalyzer::newPartial).toList()
+                        : analyzers;
+
+                boolean segment = SegmentWriter.isSegment(name);
+                if (segment) {
+                    // Results are kept under the name of the log the segment was converted from
+                    try {
+                        FileRun fileRun = new FileRun(logFile, SegmentReader.readName(logFile), number, fileAnalyzers);
+                        fileRuns.add(fileRun);
+                        long offset = cache == null ? 0 : cache.restore(logFile, fileRun.name, fileRun.analyzers, false);
+                        if (offset < fileRun.end) {
+                            fileRun.jobs.add(pipeline.submitSegment(logFile, name, fileRun.analyzers, filter));
+                        }
+                    } catch (IOException e) {
+                        System.out.println("error processing file " + name);
+                    }
+                    return;
+                }
+
+                FileRun fileRun = new FileRun(logFile, name, number, fileAnalyzers);
+                fileRuns.add(fileRun);
+
+                boolean zip = name.endsWith(".zip");
+                boolean compressed = CompressedLogReader.isCompressed(name);
+                long offset = cache == null || zip ? 0 : cache.restore(logFile, name, fileRun.analyzers, !compressed);
+                fileRun.end = Math.max(fileRun.end, offset);
+                if (offset >= fileRun.end) {
+                    return;
+                }
+
+                if (compressed) {
+                    fileRun.jobs.add(pipeline.submitCompressed(logFile, name, fileRun.analyzers, filter));
+                    return;
+                }
+
+                // Indexed parts are only read where the index allows it; the rest is read and indexed
+                TimeIndex index = indexFolder == null ? null : TimeIndex.load(indexFolder, logFile);
+                List<FileChunk> selected = List.of();
+                if (index != null && !range.isAll()) {
+                    selected = index.select(logFile, range);
+                    offset = index.getLength();
+                }
+                if (indexFolder != null) {
+                    if (index != null && index.getLength() == offset) {
+                        fileRun.index = new TimeIndex.Builder(index);
+                    } else if (offset == 0) {
+                        fileRun.index = new TimeIndex.Builder(null);
+                    }
+                }
+
+                try {
+                    for (FileChunk part : selected) {
+                        for (FileChunk chunk : FileChunk.split(part, chunkSize)) {
+                            fileRun.jobs.add(pipeline.submit(chunk, name, fileRun.analyzers, filter, null));
+                        }
+                    }
+                    if (offset < fileRun.end) {
+                        for (FileChunk chunk : FileChunk.split(new FileChunk(logFile, offset, fileRun.end), chunkSize)) {
+                            fileRun.jobs.add(pipeline.submit(chunk, name, fileRun.analyzers, filter, fileRun.index));
+                        }
+                    }
+                } catch (IOException e) {
+                    fileRun.failed = true;
+                    System.out.println("error processing file " + name);
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("invalid log path");
+        }
+
+        pipeline.close();
+        return fileRuns;
+    }
+
+    /**
+     * Saves the time indexes of the files read completely, then merges the per-file
+     * results into the shared analyzers, caching those of each file read completely.
+     * The time each file read completely took is recorded into the metrics.
+     * Files whose batches could not be parsed or analyzed are reported, and every file
+     * with lost lines is counted as failed.
+     *
+     * @param analyzers the shared analyzers, or null to leave the per-file results as they are
+     * @param metrics   the metrics of the run, or null
+     */
+    private void finish(ConfigManager config, List<FileRun> fileRuns, List<LogAnalyzer> analyzers, AnalysisCache cache,
+                        RunMetrics metrics) {
+        File indexFolder = config.getIndexDirectory().isEmpty() ? null : new File(config.getIndexDirectory());
+        int failed = 0;
+        for (FileRun fileRun : fileRuns) {
+            if (fileRun.hasFailed()) {
+                failed++;
+                if (metrics != null) {
+                    metrics.fileFailed();
+                }
+                // Read errors were reported by the readers already
+                fileRun.jobs.stream().map(LogPipeline.Job::getError).filter(Objects::nonNull).findFirst()
+                        .ifPresent(e -> System.out.println("error processing file " + fileRun.name + ": " + e));
+            }
+            if (metrics != null && fileRun.isComplete()) {
+                long finished = fileRun.jobs.stream().mapToLong(LogPipeline.Job::getFinishTime).max().orElseThrow();
+                metrics.fileDone(finished - fileRun.started);
+            }
+            if (fileRun.index != null && fileRun.isComplete()) {
+                fileRun.index.build(fileRun.end).save(indexFolder, fileRun.file, fileRun.lastModified);
+            }
+            if (fileRun.analyzers == analyzers) {
+                continue;
+            }
+            if (analyzers != null) {
+                for (int i = 0; i < analyzers.size(); i++) {
+                    analyzers.get(i).merge(fileRun.analyzers.get(i));
+                }
+            }
+            if (cache != null && !fileRun.name.endsWith(".zip") && fileRun.isComplete()) {
+                cache.save(fileRun.file, fileRun.name, fileRun.end, fileRun.lastModified, fileRun.analyzers);
+            }
+        }
+        if (failed > 0) {
+            System.out.println(failed + " log files failed, their results are incomplete");
+        }
+    }
+
+    /**
+     * Analyzes the log files in worker processes (see {@link ShardCoordinator}) and
+     * merges the results of each file into the shared analyzers, in the order the files
+     * were found. Files left without results, by a failed worker or because a worker
+     * could not analyze them completely, are analyzed here.
+     * The cache is used by the workers but not pruned.
+     *
+     * @return false if there was nothing to report
+     */
+    private boolean runShards(String configPath, ConfigManager config, String conditions, LineFilter filter,
+                              LogDiscovery discovery, List<LogAnalyzer> analyzers, AnalysisCache cache,
+                              RunMetrics metrics, QuarantineSink quarantine) {
+        List<File> files = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try {
+            discovery.walk((logFile, name) -> {
+                files.add(logFile);
+                names.add(name);
+            });
+        } catch (IOException e) {
+            System.out.println("invalid log path");
+        }
+
+        if (files.isEmpty()) {
             System.out.println("No log files found.");
+            return false;
+        }
+
+        ShardCoordinator.Outcome outcome;
+        try {
+            outcome = new ShardCoordinator(config.getWorkers(), config.getWorkerOptions())
+                    .run(new File(configPath).getAbsolutePath(), conditions, filter.range(), files, names);
+        } catch (IOException e) {
+            System.out.println("error starting workers");
+            return false;
+        }
+
+        List<Integer> remaining = new ArrayList<>(outcome.failed());
+        for (int file = 0; file < files.size(); file++) {
+            ShardProtocol.Result result = outcome.results()[file];
+            if (result == null) {
+                continue;
+            }
+            List<LogAnalyzer> fileAnalyzers = analyzers.stream().map(LogAnalyzer::newPartial).toList();
+            try {
+                if (!AnalyzerState.read(result.state(), result.name(), fileAnalyzers)) {
+                    throw new IOException("unexpected analyzers");
+                }
+            } catch (IOException e) {
+                System.out.println("invalid worker results for file " + names.get(file));
+                remaining.add(file);
+                continue;
+            }
+            for (int i = 0; i < analyzers.size(); i++) {
+                analyzers.get(i).merge(fileAnalyzers.get(i));
+            }
+        }
+
+        if (!remaining.isEmpty()) {
+            Collections.sort(remaining);
+            System.out.println("analyzing " + remaining.size() + " files left without worker results");
+            List<FileRun> fileRuns = analyze(config, analyzers, cache, filter, cache != null, metrics, quarantine,
+                    listener -> {
+                        for (int file : remaining) {
+                            listener.found(files.get(file), names.get(file));
+                        }
+                    });
+            finish(config, fileRuns, analyzers, cache, metrics);
+        }
+        return true;
+    }
+
+    /**
+     * Runs as a worker of a sharded run: connects to the coordinator on the loopback
+     * address, receives the log files of its shard, analyzes them with per-file
+     * analyzers, and sends back the results of each file analyzed completely
+     * (see {@link ShardProtocol}).
+     * The time indexes and the cache are updated as in a single-process run.
+     *
+     * @param port  the port the coordinator listens on
+     * @param token the token identifying the run
+     * @param shard the number of this worker's shard
+     */
+    public void work(int port, long token, int shard) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ShardProtocol.writeHello(out, token, shard);
+            out.flush();
+            ShardProtocol.Assignment assignment = ShardProtocol.readAssignment(in);
+
+            ConfigManager config = new ConfigManager(assignment.configPath());
+            LineFilter filter = LineFilter.parse(assignment.filter(), assignment.range());
+            List<LogAnalyzer> analyzers = AnalyzerFactory.createAnalyzers(config);
+            AnalysisCache cache = config.getCacheDirectory().isEmpty() || !filter.isAll()
+                    ? null
+                    : new AnalysisCache(new File(config.getCacheDirectory()), config.getAnalysisSignature());
+
+            List<File> files = assignment.files();
+            List<FileRun> fileRuns;
+            // Each worker has a quarantine file of its own
+            try (QuarantineSink quarantine = newQuarantine(config, "." + shard)) {
+                fileRuns = analyze(config, analyzers, cache, filter, true, null, quarantine, listener -> {
+                    for (int file = 0; file < files.size(); file++) {
+                        listener.found(files.get(file), assignment.names().get(file));
+                    }
+                });
+            }
+            finish(config, fileRuns, null, cache, null);
+
+            for (FileRun fileRun : fileRuns) {
+                if (fileRun.hasFailed()) {
+                    // Partial results would pass for complete ones; the coordinator analyzes the file again
+                    continue;
+                }
+                byte[] state = AnalyzerState.write(fileRun.name, fileRun.analyzers);
+                ShardProtocol.writeResult(out, new ShardProtocol.Result(fileRun.number, fileRun.name, state));
+            }
+            ShardProtocol.writeEnd(out);
+            out.flush();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("worker " + shard + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Converts the plain log files found in the logs directory to segment files
+     * (see {@link SegmentWriter}) in the segment directory, keeping their relative paths.
+     * The files are converted concurrently, one per parser thread; segments newer than
+     * their log are left as they are. Compressed logs are skipped.
+     *
+     * @param configPath the path to the configuration properties file
+     */
+    public void convert(String configPath) {
+        ConfigManager config = new ConfigManager(configPath);
+        File logFolder = new File(config.getLogDirectory());
+
+        if (!logFolder.exists() || !logFolder.isDirectory()) {
+            System.out.println("invalid log path");
+            return;
+        }
+
+        File segmentFolder = new File(config.getSegmentDirectory());
+        String inputMode = config.getInputMode();
+        int bufferSize = config.getInputBufferSize();
+        LogDiscovery discovery = new LogDiscovery(logFolder, config.isRecursive(),
+                config.getIncludePatterns(), config.getExcludePatterns());
+        ExecutorService executor = Executors.newFixedThreadPool(config.getParserThreads());
+        Map<String, Future<?>> conversions = new LinkedHashMap<>();
+        QuarantineSink quarantine = newQuarantine(config, "");
+
+        try {
+            discovery.walk((logFile, name) -> {
+                if (CompressedLogReader.isCompressed(name) || SegmentWriter.isSegment(name)) {
+                    System.out.println("skipping " + name);
+                    return;
+                }
+                File segment = new File(segmentFolder, name + SegmentWriter.SUFFIX);
+                if (segment.lastModified() > logFile.lastModified()) {
+                    return;
+                }
+                conversions.put(name, executor.submit(() -> {
+                    Files.createDirectories(segment.getAbsoluteFile().getParentFile().toPath());
+                    SegmentWriter.convert(logFile, name, segment, inputMode, bufferSize, quarantine);
+                    return null;
+                }));
+            });
+        } catch (IOException e) {
+            System.out.println("invalid log path");
+        } finally {
+            executor.shutdown();
+        }
+
+        int converted = 0;
+        for (Map.Entry<String, Future<?>> conversion : conversions.entrySet()) {
+            try {
+                conversion.getValue().get();
+                converted++;
+            } catch (ExecutionException e) {
+                System.out.println("error converting file " + conversion.getKey());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        quarantine.close();
+        System.out.println("Converted " + converted + " log files to " + segmentFolder.getPath());
+    }
+
+    /**
+     * Runs the log analysis process in follow mode: the existing log files are read,
+     * then lines appended to them (or to new .log files) are processed as they arrive,
+     * until the program is stopped.
+     * <p>
+     * The analyzers keep their state for the whole run, and the report is rewritten
+     * every {@code log.follow.report.interval} seconds. When the program is stopped
+     * (e.g. with Ctrl+C), the current round is completed, and the results are printed
+     * and saved one last time.
+     *
+     * @param configPath the path to the configuration properties file
+     * @see LogFollower
+     */
+    public void follow(String configPath) {
+        follow(configPath, TimeRange.ALL, null);
+    }
+
+    /**
+     * Runs the log analysis process in follow mode like {@link #follow(String)}, but only
+     * follows the .log files matching the include and exclude patterns, and only analyzes
+     * the entries in a time range that are accepted by a filter (see {@link LineFilter}).
+     * Subdirectories are not followed.
+     *
+     * @param configPath the path to the configuration properties file
+     * @param range      the timestamps of the entries to analyze
+     * @param expression the filter conditions, or null to use {@code log.filter} from the configuration
+     */
+    public void follow(String configPath, TimeRange range, String expression) {
+        ConfigManager config = new ConfigManager(configPath);
+        LineFilter filter = parseFilter(expression != null ? expression : config.getFilter(), range);
+        if (filter != null) {
+            follow(config, filter);
+        }
+    }
+
+    private void follow(ConfigManager config, LineFilter filter) {
+        File logFolder = new File(config.getLogDirectory());
+
+        if (!logFolder.exists() || !logFolder.isDirectory()) {
+            System.out.println("invalid log path");
             return;
         }
 
         List<LogAnalyzer> analyzers = AnalyzerFactory.createAnalyzers(config);
+        String outputFile = config.getOutputFile();
+        boolean pretty = config.isPrettyReport();
+
+        RunMetrics metrics = config.isMetricsEnabled() ? new RunMetrics() : null;
+        if (metrics != null) {
+            metrics.register();
+        }
+        QuarantineSink quarantine = newQuarantine(config, "");
+        LogPipeline pipeline = newPipeline(config, metrics, quarantine);
+        LogDiscovery discovery = new LogDiscovery(logFolder, false,
+                config.getIncludePatterns(), config.getExcludePatterns());
+        LogFollower follower = new LogFollower(logFolder, discovery, analyzers, filter, pipeline,
+                config.getChunkSize());
+
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            follower.stop();
+            try {
+                mainThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        System.out.println("Following " + logFolder.getPath() + " (press Ctrl+C to stop)");
+        try {
+            follower.run(config.getFollowReportInterval() * 1000L,
+                    () -> report(analyzers, outputFile, pretty, false, metrics));
+        } catch (IOException e) {
+            System.out.println("error watching log directory");
+        } finally {
+            pipeline.close();
+            quarantine.close();
+        }
+
+        report(analyzers, outputFile, pretty, true, metrics);
+        if (metrics != null) {
+            metrics.unregister();
+        }
+    }
+
+    /**
+     * Parses filter conditions, printing why they are invalid.
+     *
+     * @return the filter, or null if the conditions are invalid
+     */
+    private static LineFilter parseFilter(String conditions, TimeRange range) {
+        try {
+            return LineFilter.parse(conditions, range);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Creates the processing pipeline with the stage threads and ring sizes from the configuration.
+     *
+     * @param metrics    the metrics the pipeline records into, or null
+     * @param quarantine the sink receiving malformed lines
+     */
+    private static LogPipeline newPipeline(ConfigManager config, RunMetrics metrics, QuarantineSink quarantine) {
+        return new LogPipeline(
+                config.getReaderThreads(),
+                config.getReaderMode().equals("VIRTUAL"),
+                config.getMaxOpenFiles(),
+                config.getParserThreads(),
+                config.getAnalyzerThreads(),
+                config.getReadQueueSize(),
+                config.getParseQueueSize(),
+                config.getInputBufferSize(),
+                config.getInputMode(),
+                metrics,
+                quarantine
+        );
+    }
+
+    /**
+     * Creates the sink for malformed lines, writing to the configured quarantine file
+     * with a suffix added to its name, if one is configured.
+     */
+    private static QuarantineSink newQuarantine(ConfigManager config, String suffix) {
+        String path = config.getQuarantineFile();
+        return new QuarantineSink(path.isEmpty() ? null : new File(path + suffix),
+                config.getQuarantineQueueSize(), config.getQuarantineSummaryInterval());
+    }
 
+    /**
+     * Saves the report from the current state of the analyzers,
+     * optionally printing the results first.
+     *
+     * @param metrics the metrics of the run, timing anomaly detection and the report
+     *                and added to it, or null
+     */
+    private void report(List<LogAnalyzer> analyzers, String outputFile, boolean pretty, boolean print,
+                        RunMetrics metrics) {
         LevelCounter levelAnalyzer = null;
         SourceCounter sourceAnalyzer = null;
         AnomalyDetector anomalyAnalyzer = null;
+        DistinctCounter distinctAnalyzer = null;
+        GapAnalyzer gapAnalyzer = null;
+        TemplateAnalyzer templateAnalyzer = null;
+        RollupAnalyzer rollupAnalyzer = null;
+        RejectCounter rejectAnalyzer = null;
 
         for (LogAnalyzer analyzer : analyzers) {
             if (analyzer instanceof LevelCounter)
@@ -66,30 +695,28 @@ public class Controller {
                 sourceAnalyzer = (SourceCounter) analyzer;
             else if (analyzer instanceof AnomalyDetector)
                 anomalyAnalyzer = (AnomalyDetector) analyzer;
+            else if (analyzer instanceof DistinctCounter)
+                distinctAnalyzer = (DistinctCounter) analyzer;
+            else if (analyzer instanceof GapAnalyzer)
+                gapAnalyzer = (GapAnalyzer) analyzer;
+            else if (analyzer instanceof TemplateAnalyzer)
+                templateAnalyzer = (TemplateAnalyzer) analyzer;
+            else if (analyzer instanceof RollupAnalyzer)
+                rollupAnalyzer = (RollupAnalyzer) analyzer;
+            else if (analyzer instanceof RejectCounter)
+                rejectAnalyzer = (RejectCounter) analyzer;
         }
 
-        ExecutorService executor = Executors.newFixedThreadPool(config.getThreadPoolSize());
-        for (File logFile : logFiles) {
-            executor.submit(new LogFileProcessor(logFile, analyzers));
-        }
-
-        executor.shutdown();
-        try {
-            executor.awaitTermination(5, TimeUnit.MINUTES);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        if (levelAnalyzer != null) {
+        if (print && levelAnalyzer != null) {
             System.out.println("Log level counts:");
-            for (Map.Entry<String, Integer> entry : levelAnalyzer.getCounts().entrySet()) {
+            for (Map.Entry<String, Long> entry : levelAnalyzer.getCounts().entrySet()) {
                 System.out.println(entry.getKey() + ": " + entry.getValue());
             }
         }
 
-        if (sourceAnalyzer != null) {
+        if (print && sourceAnalyzer != null) {
             System.out.println("\nSources:");
-            for (Map.Entry<String, Integer> entry : sourceAnalyzer.getSourceCounts().entrySet()) {
+            for (Map.Entry<String, Long> entry : sourceAnalyzer.getSourceCounts().entrySet()) {
                 System.out.println(entry.getKey() + ": " + entry.getValue());
             }
 
@@ -99,8 +726,12 @@ public class Controller {
 
         Map<String, List<String>> anomalies = new HashMap<>();
         if (anomalyAnalyzer != null) {
+            long start = System.nanoTime();
             anomalies = anomalyAnalyzer.detectAnomalies();
-            if (!anomalies.isEmpty()) {
+            if (metrics != null) {
+                metrics.addTime(RunMetrics.DETECT_ANOMALIES, System.nanoTime() - start);
+            }
+            if (print && !anomalies.isEmpty()) {
                 System.out.println("\nAnomalies Detected:");
                 for (var entry : anomalies.entrySet()) {
                     System.out.println("File: " + entry.getKey());
@@ -109,13 +740,60 @@ public class Controller {
                     }
                 }
             }
+            if (print) {
+                for (var entry : anomalyAnalyzer.getLateEntries().entrySet()) {
+                    System.out.println("warning: " + entry.getValue() + " entries in " + entry.getKey()
+                            + " were more than " + anomalyAnalyzer.getToleranceInSeconds() + " seconds out of order");
+                }
+            }
         }
 
+        if (print && distinctAnalyzer != null) {
+            System.out.println("\nDistinct sources (estimated): " + distinctAnalyzer.getDistinctSources());
+            System.out.println("Distinct messages (estimated): " + distinctAnalyzer.getDistinctMessages());
+        }
+
+        if (print && templateAnalyzer != null) {
+            System.out.println("\nMost frequent message templates:");
+            for (var entry : templateAnalyzer.getTopTemplates().entrySet()) {
+                TemplateAnalyzer.Template template = entry.getValue().get(0);
+                System.out.println(entry.getKey() + ": " + template.template() + " (" + template.count() + ")");
+            }
+        }
+
+        if (print && rejectAnalyzer != null && !rejectAnalyzer.getRejectedLines().isEmpty()) {
+            System.out.println("\nRejected lines:");
+            for (var entry : rejectAnalyzer.getRejectedLines().entrySet()) {
+                System.out.println(entry.getKey() + ": " + entry.getValue());
+            }
+        }
+
+        long start = System.nanoTime();
         ReportBuilder.saveFullReport(
                 levelAnalyzer,
                 sourceAnalyzer,
                 anomalies,
-                config.getOutputFile()
+                distinctAnalyzer,
+                gapAnalyzer,
+                templateAnalyzer,
+                rollupAnalyzer,
+                rejectAnalyzer,
+                metrics,
+                outputFile,
+                pretty
         );
+        if (metrics == null) {
+            return;
+        }
+        metrics.addTime(RunMetrics.SAVE_REPORT, System.nanoTime() - start);
+
+        if (print) {
+            System.out.println("\nRun statistics: " + metrics.getFilesRead() + " files read ("
+                    + metrics.getFilesFailed() + " failed), " + metrics.getBytesRead() + " bytes, "
+                    + metrics.getLinesParsed() + " lines ("
+                    + metrics.getParseFailures() + " malformed) in " + metrics.getElapsedMillis() + " ms");
+            System.out.println("Stage times (ms): " + metrics.getStageMillis());
+            System.out.println("Analyzer times (ms): " + metrics.getAnalyzerMillis());
+        }
     }
 }
@@ -0,0 +1,143 @@
+package controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Finds the log files under a directory, optionally descending into subdirectories,
+ * and hands each one over as soon as it is found, so that processing can start
+ * before the whole tree has been listed.
+ * <p>
+ * Files are selected with glob patterns (see {@link FileSystem#getPathMatcher(String)}).
+ * A pattern without a '/' is matched against the file name, so {@code *.log} selects
+ * .log files at any depth; other patterns are matched against the path relative to the
+ * directory, e.g. {@code 2025/04/**}. A file is found if it matches an include pattern
+ * and no exclude pattern; a directory matching an exclude pattern is skipped entirely.
+ */
+class LogDiscovery {
+
+    /**
+     * Receives the files found.
+     */
+    interface Listener {
+
+        /**
+         * Called for each log file found.
+         *
+         * @param file the log file
+         * @param name the path of the file relative to the directory, with '/' separators
+         */
+        void found(File file, String name);
+    }
+
+    private final Path directory;
+    private final boolean recursive;
+    private final List<Pattern> includes = new ArrayList<>();
+    private final List<Pattern> excludes = new ArrayList<>();
+
+    /**
+     * A compiled glob pattern, and whether it applies to names or relative paths.
+     */
+    private record Pattern(PathMatcher matcher, boolean byName) {
+
+        static Pattern of(String glob) {
+            return new Pattern(FileSystems.getDefault().getPathMatcher("glob:" + glob), !glob.contains("/"));
+        }
+
+        boolean matches(Path relative) {
+            return matcher.matches(byName ? relative.getFileName() : relative);
+        }
+    }
+
+    /**
+     * Constructs a new LogDiscovery.
+     *
+     * @param directory the directory holding the log files
+     * @param recursive whether subdirectories are searched too
+     * @param include   the glob patterns of the files to process
+     * @param exclude   the glob patterns of the files and directories to leave out
+     */
+    LogDiscovery(File directory, boolean recursive, List<String> include, List<String> exclude) {
+        this.directory = directory.toPath();
+        this.recursive = recursive;
+        for (String glob : include) {
+            includes.add(Pattern.of(glob));
+        }
+        for (String glob : exclude) {
+            excludes.add(Pattern.of(glob));
+        }
+    }
+
+    /**
+     * Walks the directory and reports every matching regular file to the listener.
+     * Symbolic links are followed, both for the directory itself and for the files and
+     * subdirectories in it; a link back to one of its own parent directories is reported
+     * and skipped, like other entries that cannot be read.
+     *
+     * @param listener receives the files, in the order they are found
+     * @throws IOException if the directory itself cannot be read
+     */
+    void walk(Listener listener) throws IOException {
+        int depth = recursive ? Integer.MAX_VALUE : 1;
+        Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), depth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                if (dir.equals(directory)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (matchesAny(excludes, directory.relativize(dir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                Path relative = directory.relativize(file);
+                if (attributes.isRegularFile() && matchesAny(includes, relative) && !matchesAny(excludes, relative)) {
+                    listener.found(file.toFile(), relative.toString().replace(File.separatorChar, '/'));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (file.equals(directory)) {
+                    throw e;
+                }
+                if (e instanceof FileSystemLoopException) {
+                    System.out.println("skipping link loop " + directory.relativize(file));
+                    return FileVisitResult.CONTINUE;
+                }
+                System.out.println("error listing " + directory.relativize(file));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Returns whether a file directly in the directory matches the include and exclude
+     * patterns, i.e. whether {@link #walk(Listener)} would report it.
+     *
+     * @param name the name of the file
+     * @return true if the file is selected
+     */
+    boolean accepts(String name) {
+        Path relative = Path.of(name);
+        return matchesAny(includes, relative) && !matchesAny(excludes, relative);
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, Path relative) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,227 @@
+package controller;
+
+import analysis.LogAnalyzer;
+import processing.FileChunk;
+import processing.LineFilter;
+import processing.LogPipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows the .log files of a directory as they grow, feeding only the newly
+ * appended lines to the shared analyzers.
+ * <p>
+ * Only the files directly in the directory that match the include and exclude
+ * patterns of a {@link LogDiscovery} are followed, and only the lines accepted by a
+ * {@link LineFilter}, including its time range, are analyzed.
+ * <p>
+ * The directory is watched with a {@link WatchService}; every file that changed is
+ * read from the offset where the previous read stopped up to its last complete line,
+ * so a line that is still being written waits for the next round. A file whose
+ * identity changed (rotation to a new file under the same name) or that became
+ * shorter than its offset (truncation) is read again from the start; its lines are
+ * positioned after those of the earlier generations, so anomaly detection sees the
+ * content written under one name as a single stream.
+ * <p>
+ * The analyzers stay live between rounds and the report callback is invoked after
+ * the first round and then periodically. Since events may be lost (e.g. on overflow
+ * or on file systems that do not report changes), all files are also checked
+ * whenever the report is written.
+ */
+class LogFollower {
+
+    /**
+     * What has been read of a file so far.
+     */
+    private static class FileState {
+        Object fileKey;
+        long offset;
+        // Logical position of offset 0 of the current generation of the file
+        long base;
+    }
+
+    private final File directory;
+    private final LogDiscovery discovery;
+    private final List<LogAnalyzer> analyzers;
+    private final LineFilter filter;
+    private final LogPipeline pipeline;
+    private final long chunkSize;
+
+    private final Map<String, FileState> states = new HashMap<>();
+
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    /**
+     * Constructs a new LogFollower.
+     *
+     * @param directory the directory holding the log files
+     * @param discovery selects the files to follow by name
+     * @param analyzers the shared analyzers updated with each new line
+     * @param filter    the lines to analyze
+     * @param pipeline  the pipeline processing the appended lines
+     * @param chunkSize the preferred size of the ranges a large append is split into
+     */
+    LogFollower(File directory, LogDiscovery discovery, List<LogAnalyzer> analyzers, LineFilter filter,
+                LogPipeline pipeline, long chunkSize) {
+        this.directory = directory;
+        this.discovery = discovery;
+        this.analyzers = analyzers;
+        this.filter = filter;
+        this.pipeline = pipeline;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads the existing files, then keeps reading appended lines until {@link #stop()}
+     * is called, the calling thread is interrupted or the directory disappears.
+     *
+     * @param reportIntervalMillis the time between two calls of {@code report}
+     * @param report               writes the report from the current state of the analyzers
+     * @throws IOException if the directory cannot be watched
+     */
+    void run(long reportIntervalMillis, Runnable report) throws IOException {
+        thread = Thread.currentThread();
+
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            directory.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+            Set<String> changed = new TreeSet<>();
+            long nextReport = 0;
+
+            while (running) {
+                boolean reportDue = System.currentTimeMillis() >= nextReport;
+                if (reportDue) {
+                    changed.addAll(listLogFiles());
+                }
+
+                readAppended(changed);
+                changed.clear();
+
+                if (reportDue) {
+                    report.run();
+                    nextReport = System.currentTimeMillis() + reportIntervalMillis;
+                }
+
+                WatchKey key;
+                try {
+                    key = watcher.poll(Math.max(nextReport - System.currentTimeMillis(), 1), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                if (key == null) {
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        changed.addAll(listLogFiles());
+                    } else {
+                        String name = event.context().toString();
+                        if (follows(name)) {
+                            changed.add(name);
+                        }
+                    }
+                }
+
+                if (!key.reset()) {
+                    System.out.println("log directory is no longer accessible");
+                    break;
+                }
+            }
+        } finally {
+            thread = null;
+        }
+    }
+
+    /**
+     * Asks a running follower to finish the current round and return.
+     */
+    void stop() {
+        running = false;
+        Thread current = thread;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    private List<String> listLogFiles() {
+        String[] names = directory.list((dir, name) -> follows(name));
+        return names == null ? List.of() : Arrays.asList(names);
+    }
+
+    /**
+     * Returns whether a file of the directory is followed: it must be a plain .log
+     * file, since compressed files cannot be read from an offset, and be selected.
+     */
+    private boolean follows(String name) {
+        return name.endsWith(".log") && discovery.accepts(name);
+    }
+
+    /**
+     * Processes the complete lines appended to the given files since the last round,
+     * and waits until they have been merged into the analyzers.
+     */
+    private void readAppended(Collection<String> names) {
+        Map<LogPipeline.Job, String> jobs = new LinkedHashMap<>();
+
+        for (String name : names) {
+            File file = new File(directory, name);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                if (!attributes.isRegularFile()) {
+                    continue;
+                }
+                FileState state = states.computeIfAbsent(name, n -> new FileState());
+                Object fileKey = attributes.fileKey();
+                long size = attributes.size();
+
+                if ((state.fileKey != null && !state.fileKey.equals(fileKey)) || size < state.offset) {
+                    // Rotated or truncated: start over, after everything read under this name
+                    state.base += state.offset;
+                    state.offset = 0;
+                }
+                state.fileKey = fileKey;
+
+                long end = FileChunk.lastLineEnd(file, state.offset, size);
+                if (end > state.offset) {
+                    FileChunk appended = new FileChunk(file, state.offset, end, state.base + state.offset);
+                    for (FileChunk chunk : FileChunk.split(appended, chunkSize)) {
+                        jobs.put(pipeline.submit(chunk, name, analyzers, filter, null), name);
+                    }
+                    state.offset = end;
+                }
+            } catch (NoSuchFileException e) {
+                // Deleted or being rotated; its state is kept for when it comes back
+            } catch (IOException e) {
+                System.out.println("error processing file " + name);
+            }
+        }
+
+        // Wait even if interrupted, so the offsets always match what the analyzers have seen
+        boolean interrupted = false;
+        for (Map.Entry<LogPipeline.Job, String> job : jobs.entrySet()) {
+            while (true) {
+                try {
+                    job.getKey().await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (job.getKey().getError() != null) {
+                System.out.println("error processing file " + job.getValue() + ": " + job.getKey().getError());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package controller;
+
+import controller.ShardProtocol.Assignment;
+import controller.ShardProtocol.Result;
+import model.TimeRange;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the log files of a run into shards and has each shard analyzed by a worker
+ * JVM on the same machine, so that no single heap has to hold the work of all files.
+ * <p>
+ * Files are dealt out largest first, each to the shard with the fewest bytes so far.
+ * Workers are started with the class path of this JVM and the configured JVM options,
+ * connect back to a server socket bound to the loopback address, and prove they were
+ * started by this run with a random token given on their command line. Each worker
+ * analyzes its files as a single-process run would, with per-file analyzers, and sends
+ * the results of the files they analyzed completely back (see {@link ShardProtocol}).
+ * Files without results, because their worker exited, failed to connect within
+ * {@value #CONNECT_TIMEOUT_SECONDS} seconds or broke its connection, or because the
+ * worker could not analyze them, are left to the caller. A connection must send its
+ * hello within {@value #HELLO_TIMEOUT_SECONDS} seconds, so that a stray local client
+ * cannot hold up the run.
+ */
+class ShardCoordinator {
+
+    // The class whose main method starts a worker when given --worker
+    private static final String MAIN_CLASS = "Main.Main";
+    private static final int CONNECT_TIMEOUT_SECONDS = 60;
+    private static final int HELLO_TIMEOUT_SECONDS = 10;
+
+    /**
+     * What came back from the workers.
+     *
+     * @param results the results of each file, null for a file without results
+     * @param failed  the numbers of the files without results, in ascending order
+     */
+    record Outcome(Result[] results, List<Integer> failed) {
+    }
+
+    private final int workers;
+    private final List<String> jvmOptions;
+
+    /**
+     * Constructs a new ShardCoordinator.
+     *
+     * @param workers    the largest number of worker processes to start
+     * @param jvmOptions the options the worker JVMs are started with, such as {@code -Xmx4g}
+     */
+    ShardCoordinator(int workers, List<String> jvmOptions) {
+        this.workers = Math.max(workers, 1);
+        this.jvmOptions = jvmOptions;
+    }
+
+    /**
+     * Analyzes files in worker processes and waits for their results.
+     *
+     * @param configPath the configuration file the workers create their analyzers from
+     * @param filter     the filter conditions, empty for none
+     * @param range      the timestamps of the entries to analyze
+     * @param files      the log files
+     * @param names      the name of each file, as found in the log directory
+     * @return the results per file, and the files left without results
+     * @throws IOException if the server socket cannot be opened
+     */
+    Outcome run(String configPath, String filter, TimeRange range, List<File> files, List<String> names)
+            throws IOException {
+        List<List<Integer>> shards = partition(files);
+        Result[] results = new Result[files.size()];
+        boolean[] connected = new boolean[shards.size()];
+        long token = new SecureRandom().nextLong();
+
+        List<Process> processes = new ArrayList<>();
+        ExecutorService receivers = Executors.newFixedThreadPool(shards.size());
+        try (ServerSocket server = new ServerSocket(0, shards.size(), InetAddress.getLoopbackAddress())) {
+            for (int shard = 0; shard < shards.size(); shard++) {
+                processes.add(start(server.getLocalPort(), token, shard));
+            }
+
+            List<Future<Boolean>> receiving = new ArrayList<>(Collections.nCopies(shards.size(), null));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(CONNECT_TIMEOUT_SECONDS);
+            server.setSoTimeout(1000);
+            while (System.nanoTime() < deadline && anyWaiting(processes, connected)) {
+                Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                try {
+                    socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(HELLO_TIMEOUT_SECONDS));
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    int shard = ShardProtocol.readHello(in, token);
+                    if (shard < 0 || shard >= shards.size() || connected[shard]) {
+                        throw new IOException("unexpected shard " + shard);
+                    }
+                    connected[shard] = true;
+                    // Analyzing a shard takes as long as it takes
+                    socket.setSoTimeout(0);
+
+                    List<Integer> shardFiles = shards.get(shard);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    ShardProtocol.writeAssignment(out, new Assignment(configPath, filter, range,
+                            shardFiles.stream().map(files::get).toList(),
+                            shardFiles.stream().map(names::get).toList()));
+                    out.flush();
+                    receiving.set(shard, receivers.submit(() -> receive(socket, in, shardFiles, results)));
+                } catch (IOException e) {
+                    socket.close();
+                }
+            }
+
+            for (int shard = 0; shard < shards.size(); shard++) {
+                if (!connected[shard]) {
+                    System.out.println("worker " + shard + " did not connect");
+                    continue;
+                }
+                boolean complete;
+                try {
+                    complete = receiving.get(shard).get();
+                } catch (ExecutionException e) {
+                    complete = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    complete = false;
+                }
+                if (!complete) {
+                    System.out.println("worker " + shard + " failed");
+                }
+            }
+        } finally {
+            receivers.shutdownNow();
+            for (int shard = 0; shard < processes.size(); shard++) {
+                Process process = processes.get(shard);
+                try {
+                    if (!connected[shard] || !process.waitFor(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        List<Integer> failed = new ArrayList<>();
+        for (int file = 0; file < results.length; file++) {
+            if (results[file] == null) {
+                failed.add(file);
+            }
+        }
+        return new Outcome(results, failed);
+    }
+
+    /**
+     * Deals the files out to at most {@code workers} shards, largest first,
+     * each to the shard with the fewest bytes so far.
+     */
+    private List<List<Integer>> partition(List<File> files) {
+        Integer[] bySize = new Integer[files.size()];
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < bySize.length; i++) {
+            bySize[i] = i;
+            sizes[i] = files.get(i).length();
+        }
+        Arrays.sort(bySize, (a, b) -> Long.compare(sizes[b], sizes[a]));
+
+        int count = Math.min(workers, files.size());
+        List<List<Integer>> shards = new ArrayList<>();
+        long[] loads = new long[count];
+        for (int shard = 0; shard < count; shard++) {
+            shards.add(new ArrayList<>());
+        }
+        for (int file : bySize) {
+            int lightest = 0;
+            for (int shard = 1; shard < count; shard++) {
+                if (loads[shard] < loads[lightest]) {
+                    lightest = shard;
+                }
+            }
+            shards.get(lightest).add(file);
+            loads[lightest] += sizes[file];
+        }
+        return shards;
+    }
+
+    private Process start(int port, long token, int shard) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(MAIN_CLASS);
+        command.add("--worker");
+        command.add(port + ":" + token + ":" + shard);
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+    private static boolean anyWaiting(List<Process> processes, boolean[] connected) {
+        for (int shard = 0; shard < processes.size(); shard++) {
+            if (!connected[shard] && processes.get(shard).isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stores the results sent by one worker.
+     *
+     * @return whether the worker sent its end marker
+     */
+    private static boolean receive(Socket socket, DataInputStream in, List<Integer> shardFiles, Result[] results) {
+        try (socket) {
+            Result result;
+            while ((result = ShardProtocol.readResult(in, shardFiles.size())) != null) {
+                int file = shardFiles.get(result.file());
+                results[file] = new Result(file, result.name(), result.state());
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package controller;
+
+import model.TimeRange;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages exchanged over a loopback socket between the coordinator of a sharded
+ * run and its worker processes (see {@link ShardCoordinator}).
+ * <p>
+ * All values use the big-endian encoding of {@link DataOutput}. A worker connects and
+ * introduces itself; the coordinator answers with the files of its shard; the worker
+ * then sends the results of each file and an end marker:
+ * <pre>
+ *   worker:      int magic 0x4C475348 ("LGSH"), int protocol version (1),
+ *                long token given on its command line, int shard number
+ *   coordinator: UTF configuration path, UTF filter conditions,
+ *                long range start, long range end (inclusive, in epoch seconds),
+ *                int n, n × (UTF file path, UTF file name)
+ *   worker:      for each file with results: int file number (0 to n - 1),
+ *                UTF name the results are reported under, int length,
+ *                the results in the {@link processing.AnalyzerState} format;
+ *                then int -1
+ * </pre>
+ * A shard whose connection ends before the end marker is incomplete; the files it
+ * did not send results for are left to the coordinator.
+ */
+final class ShardProtocol {
+
+    private static final int MAGIC = 0x4C475348;
+    private static final int VERSION = 1;
+    private static final int END = -1;
+
+    /**
+     * The work given to one worker.
+     *
+     * @param configPath the configuration file the analyzers are created from
+     * @param filter     the filter conditions, empty for none
+     * @param range      the timestamps of the entries to analyze
+     * @param files      the log files of the shard
+     * @param names      the name of each file, as found in the log directory
+     */
+    record Assignment(String configPath, String filter, TimeRange range, List<File> files, List<String> names) {
+    }
+
+    /**
+     * The results of one file.
+     *
+     * @param file  the number of the file in the {@link Assignment}
+     * @param name  the name the results are reported under
+     * @param state the results, in the {@link processing.AnalyzerState} format
+     */
+    record Result(int file, String name, byte[] state) {
+    }
+
+    private ShardProtocol() {
+    }
+
+    static void writeHello(DataOutput out, long token, int shard) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(token);
+        out.writeInt(shard);
+    }
+
+    /**
+     * Reads the introduction of a worker.
+     *
+     * @return the shard number of the worker
+     * @throws IOException if the peer is not a worker of this run
+     */
+    static int readHello(DataInput in, long token) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != token) {
+            throw new IOException("unexpected connection");
+        }
+        return in.readInt();
+    }
+
+    static void writeAssignment(DataOutput out, Assignment assignment) throws IOException {
+        out.writeUTF(assignment.configPath());
+        out.writeUTF(assignment.filter());
+        out.writeLong(assignment.range().from());
+        out.writeLong(assignment.range().to());
+        out.writeInt(assignment.files().size());
+        for (int i = 0; i < assignment.files().size(); i++) {
+            out.writeUTF(assignment.files().get(i).getPath());
+            out.writeUTF(assignment.names().get(i));
+        }
+    }
+
+    static Assignment readAssignment(DataInput in) throws IOException {
+        String configPath = in.readUTF();
+        String filter = in.readUTF();
+        TimeRange range = new TimeRange(in.readLong(), in.readLong());
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid file count " + count);
+        }
+        List<File> files = new ArrayList<>(count);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new File(in.readUTF()));
+            names.add(in.readUTF());
+        }
+        return new Assignment(configPath, filter, range, files, names);
+    }
+
+    static void writeResult(DataOutput out, Result result) throws IOException {
+        out.writeInt(result.file());
+        out.writeUTF(result.name());
+        out.writeInt(result.state().length);
+        out.write(result.state());
+    }
+
+    static void writeEnd(DataOutput out) throws IOException {
+        out.writeInt(END);
+    }
+
+    /**
+     * Reads the next result of a worker.
+     *
+     * @param files the number of files of the worker's shard
+     * @return the result, or null at the end marker
+     * @throws IOException if reading fails or the data is invalid
+     */
+    static Result readResult(DataInput in, int files) throws IOException {
+        int file = in.readInt();
+        if (file == END) {
+            return null;
+        }
+        if (file < 0 || file >= files) {
+            throw new IOException("invalid file number " + file);
+        }
+        String name = in.readUTF();
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("invalid result length " + length);
+        }
+        byte[] state = new byte[length];
+        in.readFully(state);
+        return new Result(file, name, state);
+    }
+}
@@ -0,0 +1,358 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A batch of parsed log entries stored column by column.
+ * <p>
+ * Levels and sources are kept as {@link SymbolTable} ids and timestamps as seconds
+ * since the epoch, in primitive arrays indexed by the entry's position in the batch,
+ * so a batch can be filled and read without creating an object per entry. Messages
+ * are kept as slices of one byte array holding their raw UTF-8 bytes. All the
+ * entries of a batch come from one contiguous range of one log, described by its
+ * name and its start and end positions.
+ * <p>
+ * Sources can also be kept without interning them, as their raw UTF-8 bytes and a
+ * fingerprint of those bytes, so that analyzers that only tell sources apart do not
+ * make {@link SymbolTable#SOURCES} grow with every distinct source of the logs.
+ * <p>
+ * Only the {@link Column}s some analyzer asked for are filled: level and source ids
+ * of a column that was not requested are -1, source fingerprints are 0, and messages
+ * and source bytes are empty.
+ * <p>
+ * A batch also counts the lines of its range that were rejected as malformed, so
+ * that they can be reported per log although they hold no entry.
+ * <p>
+ * Batches are meant to be reused: {@link #reset} empties a batch and keeps its arrays.
+ */
+public class EntryBatch {
+
+    /**
+     * The columns of a batch an analyzer may read.
+     */
+    public enum Column {
+        TIMESTAMP,
+        LEVEL,
+        SOURCE,
+        SOURCE_FINGERPRINT,
+        MESSAGE
+    }
+
+    private String name;
+    private long position;
+    private long endPosition;
+
+    private int size;
+    private int rejected;
+    private long[] timestamps;
+    private int[] levels;
+    private int[] sources;
+    private int[] messageEnds;
+    private long[] sourceFingerprints;
+    private int[] sourceEnds;
+
+    private byte[] messageBytes = new byte[0];
+    private int messageLength;
+    private byte[] sourceBytes = new byte[0];
+    private int sourceLength;
+
+    /**
+     * Creates an empty batch.
+     *
+     * @param capacity the number of entries the batch can hold before growing
+     */
+    public EntryBatch(int capacity) {
+        capacity = Math.max(capacity, 16);
+        timestamps = new long[capacity];
+        levels = new int[capacity];
+        sources = new int[capacity];
+        messageEnds = new int[capacity];
+        sourceFingerprints = new long[capacity];
+        sourceEnds = new int[capacity];
+    }
+
+    /**
+     * Empties the batch and describes where its next entries come from.
+     *
+     * @param name        the name of the log the entries are reported under
+     * @param position    the position of the first line of the range within the log
+     * @param endPosition the position right after the last line of the range
+     */
+    public void reset(String name, long position, long endPosition) {
+        this.name = name;
+        this.position = position;
+        this.endPosition = endPosition;
+        this.size = 0;
+        this.rejected = 0;
+        this.messageLength = 0;
+        this.sourceLength = 0;
+    }
+
+    /**
+     * Counts a line of the batch's range that was rejected as malformed.
+     */
+    public void addRejected() {
+        rejected++;
+    }
+
+    /**
+     * Appends an entry without a message.
+     *
+     * @param timestamp the timestamp in seconds since the epoch
+     * @param level     the id of the level in {@link SymbolTable#LEVELS}, or -1
+     * @param source    the id of the source in {@link SymbolTable#SOURCES}, or -1
+     */
+    public void add(long timestamp, int level, int source) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            levels = Arrays.copyOf(levels, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            messageEnds = Arrays.copyOf(messageEnds, capacity);
+            sourceFingerprints = Arrays.copyOf(sourceFingerprints, capacity);
+            sourceEnds = Arrays.copyOf(sourceEnds, capacity);
+        }
+        timestamps[size] = timestamp;
+        levels[size] = level;
+        sources[size] = source;
+        messageEnds[size] = messageLength;
+        sourceFingerprints[size] = 0;
+        sourceEnds[size] = sourceLength;
+        size++;
+    }
+
+    /**
+     * Sets the source bytes of the last entry appended, copied from {@code [from, to)}
+     * of a buffer, and their fingerprint, without interning the source.
+     *
+     * @param buffer the buffer holding the source as UTF-8
+     * @param from   the index of the first byte of the source
+     * @param to     the index right after the last byte of the source
+     */
+    public void setSourceBytes(ByteBuffer buffer, int from, int to) {
+        int start = sourceStart(size - 1);
+        int length = to - from;
+        if (start + length > sourceBytes.length) {
+            sourceBytes = Arrays.copyOf(sourceBytes, Math.max(start + length, sourceBytes.length * 2));
+        }
+        buffer.get(from, sourceBytes, start, length);
+        sourceLength = start + length;
+        sourceEnds[size - 1] = sourceLength;
+        sourceFingerprints[size - 1] = SymbolTable.fingerprint(sourceBytes, start, sourceLength);
+    }
+
+    /**
+     * Sets the source bytes of the last entry appended, copied from {@code [from, to)}
+     * of an array, and their fingerprint, without interning the source.
+     *
+     * @param bytes       the array holding the source as UTF-8
+     * @param from        the index of the first byte of the source
+     * @param to          the index right after the last byte of the source
+     * @param fingerprint the {@link SymbolTable#fingerprint(byte[], int, int)} of the source
+     */
+    public void setSourceBytes(byte[] bytes, int from, int to, long fingerprint) {
+        int start = sourceStart(size - 1);
+        int length = to - from;
+        if (start + length > sourceBytes.length) {
+            sourceBytes = Arrays.copyOf(sourceBytes, Math.max(start + length, sourceBytes.length * 2));
+        }
+        System.arraycopy(bytes, from, sourceBytes, start, length);
+        sourceLength = start + length;
+        sourceEnds[size - 1] = sourceLength;
+        sourceFingerprints[size - 1] = fingerprint;
+    }
+
+    /**
+     * Appends an entry with its message, copied from {@code [from, to)} of a buffer.
+     *
+     * @param timestamp the timestamp in seconds since the epoch
+     * @param level     the id of the level in {@link SymbolTable#LEVELS}, or -1
+     * @param source    the id of the source in {@link SymbolTable#SOURCES}, or -1
+     * @param buffer    the buffer holding the message as UTF-8
+     * @param from      the index of the first byte of the message
+     * @param to        the index right after the last byte of the message
+     */
+    public void add(long timestamp, int level, int source, ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (messageLength + length > messageBytes.length) {
+            messageBytes = Arrays.copyOf(messageBytes, Math.max(messageLength + length, messageBytes.length * 2));
+        }
+        buffer.get(from, messageBytes, messageLength, length);
+        messageLength += length;
+        add(timestamp, level, source);
+    }
+
+    /**
+     * Appends an entry with its message, copied from {@code [from, to)} of an array.
+     *
+     * @param timestamp the timestamp in seconds since the epoch
+     * @param level     the id of the level in {@link SymbolTable#LEVELS}, or -1
+     * @param source    the id of the source in {@link SymbolTable#SOURCES}, or -1
+     * @param bytes     the array holding the message as UTF-8
+     * @param from      the index of the first byte of the message
+     * @param to        the index right after the last byte of the message
+     */
+    public void add(long timestamp, int level, int source, byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (messageLength + length > messageBytes.length) {
+            messageBytes = Arrays.copyOf(messageBytes, Math.max(messageLength + length, messageBytes.length * 2));
+        }
+        System.arraycopy(bytes, from, messageBytes, messageLength, length);
+        messageLength += length;
+        add(timestamp, level, source);
+    }
+
+    /**
+     * Returns the number of entries in the batch.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of lines of the batch's range that were rejected as malformed.
+     *
+     * @return the number of rejected lines
+     */
+    public int rejected() {
+        return rejected;
+    }
+
+    /**
+     * Returns the timestamp column. Only the first {@link #size()} values belong to the batch.
+     *
+     * @return the timestamps in seconds since the epoch, indexed by entry
+     */
+    public long[] timestamps() {
+        return timestamps;
+    }
+
+    /**
+     * Returns the level column. Only the first {@link #size()} values belong to the batch.
+     *
+     * @return the ids of the levels in {@link SymbolTable#LEVELS}, indexed by entry
+     */
+    public int[] levels() {
+        return levels;
+    }
+
+    /**
+     * Returns the source column. Only the first {@link #size()} values belong to the batch.
+     *
+     * @return the ids of the sources in {@link SymbolTable#SOURCES}, indexed by entry
+     */
+    public int[] sources() {
+        return sources;
+    }
+
+    /**
+     * Returns the source fingerprint column. Only the first {@link #size()} values belong to the batch.
+     *
+     * @return the {@link SymbolTable#fingerprint(byte[], int, int)} of each source, indexed by entry
+     */
+    public long[] sourceFingerprints() {
+        return sourceFingerprints;
+    }
+
+    /**
+     * Returns the array holding the source bytes of all entries, one after the other.
+     * The source of an entry spans {@code [sourceStart(i), sourceEnd(i))}.
+     *
+     * @return the UTF-8 bytes of the sources
+     */
+    public byte[] sourceBytes() {
+        return sourceBytes;
+    }
+
+    /**
+     * Returns where the source bytes of an entry start in {@link #sourceBytes()}.
+     *
+     * @param index the index of the entry, from 0 to {@code size() - 1}
+     * @return the index of the first byte of the source
+     */
+    public int sourceStart(int index) {
+        return index == 0 ? 0 : sourceEnds[index - 1];
+    }
+
+    /**
+     * Returns where the source bytes of an entry end in {@link #sourceBytes()}.
+     *
+     * @param index the index of the entry, from 0 to {@code size() - 1}
+     * @return the index right after the last byte of the source
+     */
+    public int sourceEnd(int index) {
+        return sourceEnds[index];
+    }
+
+    /**
+     * Returns the array holding the messages of all entries, one after the other.
+     * The message of an entry spans {@code [messageStart(i), messageEnd(i))}.
+     *
+     * @return the UTF-8 bytes of the messages
+     */
+    public byte[] messageBytes() {
+        return messageBytes;
+    }
+
+    /**
+     * Returns where the message of an entry starts in {@link #messageBytes()}.
+     *
+     * @param index the index of the entry, from 0 to {@code size() - 1}
+     * @return the index of the first byte of the message
+     */
+    public int messageStart(int index) {
+        return index == 0 ? 0 : messageEnds[index - 1];
+    }
+
+    /**
+     * Returns where the message of an entry ends in {@link #messageBytes()}.
+     *
+     * @param index the index of the entry, from 0 to {@code size() - 1}
+     * @return the index right after the last byte of the message
+     */
+    public int messageEnd(int index) {
+        return messageEnds[index];
+    }
+
+    /**
+     * Decodes the message of an entry.
+     *
+     * @param index the index of the entry, from 0 to {@code size() - 1}
+     * @return the message, or an empty string if messages were not requested
+     */
+    public String message(int index) {
+        int start = messageStart(index);
+        return new String(messageBytes, start, messageEnds[index] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the name of the log the entries are reported under.
+     *
+     * @return the log name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the position of the first line of the batch's range within the log.
+     *
+     * @return the start position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the position right after the last line of the batch's range.
+     *
+     * @return the end position
+     */
+    public long getEndPosition() {
+        return endPosition;
+    }
+}
@@ -1,15 +1,17 @@
 package model;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 /**
  * Represents a single log entry parsed from a log file.
  * Each entry includes a timestamp, log level, source, and message.
+ * The timestamp is stored as seconds since the epoch, reading the local time as UTC.
  */
 public class LogEntry {
 
-    private final LocalDateTime timestamp;
+    private final long epochSecond;
     private final String level;
     private final String source;
     private final String message;
@@ -25,7 +27,20 @@ public class LogEntry {
      * @param message       the message text of the log
      */
     public LogEntry(String timestampStr, String level, String source, String message) {
-        this.timestamp = LocalDateTime.parse(timestampStr, formatter);
+        this(LocalDateTime.parse(timestampStr, formatter).toEpochSecond(ZoneOffset.UTC), level, source, message);
+    }
+
+    /**
+     * Constructs a new {@code LogEntry} with an already decoded timestamp,
+     * e.g. from a {@link TimestampDecoder}.
+     *
+     * @param epochSecond the timestamp in seconds since the epoch
+     * @param level       the log level (e.g., INFO, ERROR, WARNING)
+     * @param source      the origin/source of the log (e.g., Server1)
+     * @param message     the message text of the log
+     */
+    public LogEntry(long epochSecond, String level, String source, String message) {
+        this.epochSecond = epochSecond;
         this.level = level;
         this.source = source;
         this.message = message;
@@ -37,7 +52,17 @@ public class LogEntry {
      * @return a {@link LocalDateTime} representing the timestamp
      */
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Returns the timestamp of the log entry as a number, which is cheaper
+     * to store and compare than a {@link LocalDateTime}.
+     *
+     * @return the timestamp in seconds since the epoch
+     */
+    public long getEpochSecond() {
+        return epochSecond;
     }
 
     /**
@@ -74,6 +99,6 @@ public class LogEntry {
      */
     @Override
     public String toString() {
-        return "[" + timestamp + "] [" + level + "] [" + source + "] [" + message + "]";
+        return "[" + getTimestamp() + "] [" + level + "] [" + source + "] [" + message + "]";
     }
 }
@@ -0,0 +1,203 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A dictionary that assigns dense int ids to the distinct values of a low-cardinality
+ * log field, such as the level or the source.
+ * <p>
+ * Values are interned straight from the raw UTF-8 bytes of a line, so no {@link String}
+ * is created for a value that was seen before. Ids start at 0 and never change, which
+ * lets analyzers keep their counters in plain arrays indexed by id and turn ids back
+ * into names only when a report is built.
+ * <p>
+ * Lookups are lock-free; adding a new value is synchronized. The table is shared by
+ * all workers through {@link #LEVELS} and {@link #SOURCES}.
+ */
+public class SymbolTable {
+
+    /**
+     * The shared dictionary of log levels.
+     */
+    public static final SymbolTable LEVELS = new SymbolTable();
+
+    /**
+     * The shared dictionary of log sources.
+     */
+    public static final SymbolTable SOURCES = new SymbolTable();
+
+    /**
+     * An immutable-size snapshot of the table. A slot holds {@code id + 1}, or 0 when
+     * empty; the key and name of an id are written before its slot is published.
+     */
+    private static class Table {
+        final AtomicIntegerArray slots;
+        final byte[][] keys;
+        final String[] names;
+        final long[] fingerprints;
+
+        Table(int capacity) {
+            slots = new AtomicIntegerArray(capacity * 2);
+            keys = new byte[capacity][];
+            names = new String[capacity];
+            fingerprints = new long[capacity];
+        }
+    }
+
+    private volatile Table table = new Table(16);
+    private volatile int size;
+
+    /**
+     * Returns the id of the value stored in {@code buffer} between two absolute indexes,
+     * adding it to the table if it is new.
+     *
+     * @param buffer the buffer holding the UTF-8 bytes of the value
+     * @param from   the index of the first byte (inclusive)
+     * @param to     the index right after the last byte (exclusive)
+     * @return the id of the value
+     */
+    public int intern(ByteBuffer buffer, int from, int to) {
+        int hash = hash(buffer, from, to);
+        int id = find(table, buffer, from, to, hash);
+        if (id >= 0) {
+            return id;
+        }
+        byte[] key = new byte[to - from];
+        buffer.get(from, key, 0, key.length);
+        return add(key, hash);
+    }
+
+    /**
+     * Returns the id of the given value, adding it to the table if it is new.
+     *
+     * @param name the value
+     * @return the id of the value
+     */
+    public int intern(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(key), 0, key.length);
+    }
+
+    /**
+     * Returns the value with the given id.
+     *
+     * @param id an id returned by {@link #intern}
+     * @return the value as a string
+     */
+    public String name(int id) {
+        return table.names[id];
+    }
+
+    /**
+     * Returns a 64-bit hash of the value with the given id, the same as
+     * {@link #fingerprint(byte[], int, int)} of its bytes, and so the same in every run.
+     *
+     * @param id an id returned by {@link #intern}
+     * @return the hash of the value
+     */
+    public long fingerprint(int id) {
+        return table.fingerprints[id];
+    }
+
+    /**
+     * Computes a 64-bit hash (FNV-1a) of a value given by its UTF-8 bytes, which
+     * does not depend on the table, so it can be kept across runs.
+     *
+     * @param bytes the array holding the value
+     * @param from  the index of the first byte (inclusive)
+     * @param to    the index right after the last byte (exclusive)
+     * @return the hash of the value
+     */
+    public static long fingerprint(byte[] bytes, int from, int to) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of distinct values in the table; valid ids are {@code 0 .. size() - 1}.
+     *
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int find(Table table, ByteBuffer buffer, int from, int to, int hash) {
+        int mask = table.slots.length() - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table.slots.get(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if (equals(table.keys[entry - 1], buffer, from, to)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private synchronized int add(byte[] key, int hash) {
+        Table current = table;
+        int existing = find(current, ByteBuffer.wrap(key), 0, key.length, hash);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        int id = size;
+        if (id == current.keys.length) {
+            current = grow(current);
+        }
+        current.keys[id] = key;
+        current.names[id] = new String(key, StandardCharsets.UTF_8);
+        current.fingerprints[id] = fingerprint(key, 0, key.length);
+        insert(current, id, hash);
+        size = id + 1;
+        table = current;
+        return id;
+    }
+
+    private static void insert(Table table, int id, int hash) {
+        int mask = table.slots.length() - 1;
+        int slot = hash & mask;
+        while (table.slots.get(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table.slots.set(slot, id + 1);
+    }
+
+    private Table grow(Table current) {
+        Table larger = new Table(current.keys.length * 2);
+        for (int id = 0; id < size; id++) {
+            byte[] key = current.keys[id];
+            larger.keys[id] = key;
+            larger.names[id] = current.names[id];
+            larger.fingerprints[id] = current.fingerprints[id];
+            insert(larger, id, hash(ByteBuffer.wrap(key), 0, key.length));
+        }
+        return larger;
+    }
+
+    private static int hash(ByteBuffer buffer, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] key, ByteBuffer buffer, int from, int to) {
+        if (key.length != to - from) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,87 @@
+package model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * An inclusive range of timestamps, in seconds since the epoch with the local
+ * time read as UTC, as decoded by {@link TimestampDecoder}.
+ *
+ * @param from the first timestamp in the range
+ * @param to   the last timestamp in the range
+ */
+public record TimeRange(long from, long to) {
+
+    /**
+     * The range holding every timestamp.
+     */
+    public static final TimeRange ALL = new TimeRange(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Parses a range from two bounds in the log format {@code yyyy-MM-dd HH:mm:ss}.
+     * A bound can also be a date alone, which stands for the start of the day for
+     * {@code from} and the end of the day for {@code to}.
+     *
+     * @param from the first timestamp, or null for no lower bound
+     * @param to   the last timestamp, or null for no upper bound
+     * @return the range
+     * @throws IllegalArgumentException if a bound cannot be parsed or {@code from} is after {@code to}
+     */
+    public static TimeRange parse(String from, String to) {
+        long start = from == null ? Long.MIN_VALUE : parseBound(from.trim(), false);
+        long end = to == null ? Long.MAX_VALUE : parseBound(to.trim(), true);
+        if (start > end) {
+            throw new IllegalArgumentException("empty time range: " + from + " - " + to);
+        }
+        return new TimeRange(start, end);
+    }
+
+    private static long parseBound(String text, boolean end) {
+        try {
+            if (text.length() == 10) {
+                LocalDate date = LocalDate.parse(text);
+                return end
+                        ? date.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1
+                        : date.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+            }
+            return LocalDateTime.parse(text, formatter).toEpochSecond(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("invalid timestamp: " + text);
+        }
+    }
+
+    /**
+     * Returns whether this range holds every timestamp.
+     *
+     * @return true for {@link #ALL}
+     */
+    public boolean isAll() {
+        return from == Long.MIN_VALUE && to == Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether a timestamp is in the range.
+     *
+     * @param timestamp the timestamp in seconds since the epoch
+     * @return true if it is between the bounds
+     */
+    public boolean contains(long timestamp) {
+        return timestamp >= from && timestamp <= to;
+    }
+
+    /**
+     * Checks whether the range shares a timestamp with {@code [min, max]}.
+     *
+     * @param min the first timestamp of the other range
+     * @param max the last timestamp of the other range
+     * @return true if the ranges overlap
+     */
+    public boolean overlaps(long min, long max) {
+        return min <= to && max >= from;
+    }
+}
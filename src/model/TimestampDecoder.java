@@ -0,0 +1,117 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Decodes timestamps in the fixed format {@code yyyy-MM-dd HH:mm:ss} straight from
+ * raw bytes into seconds since the epoch, reading the local time as UTC.
+ * <p>
+ * The day number of the last decoded date is cached: consecutive lines of a log
+ * usually share the same date, so most timestamps only need their time of day
+ * parsed. Values outside the common form (e.g. {@code 24:00:00}, a signed year
+ * or a malformed field) are handed to a {@link DateTimeFormatter} with the same
+ * pattern, so the decoder accepts, rejects and resolves exactly like
+ * {@code LocalDateTime.parse(text, formatter)}.
+ * <p>
+ * Instances keep a cache and are not thread-safe; each worker uses its own decoder.
+ */
+public class TimestampDecoder {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    // Length of "yyyy-MM-dd HH:mm:ss" and of its date part
+    private static final int TIMESTAMP_LENGTH = 19;
+    private static final int DATE_LENGTH = 10;
+
+    private final byte[] cachedDate = new byte[DATE_LENGTH];
+    private long cachedDaySeconds;
+    private boolean hasCachedDate;
+
+    /**
+     * Decodes the timestamp stored in {@code buffer} between two absolute indexes.
+     *
+     * @param buffer the buffer holding the timestamp text
+     * @param from   the index of the first byte (inclusive)
+     * @param to     the index right after the last byte (exclusive)
+     * @return the timestamp in seconds since the epoch
+     * @throws DateTimeParseException if the formatter would reject the timestamp
+     */
+    public long decode(ByteBuffer buffer, int from, int to) {
+        if (to - from == TIMESTAMP_LENGTH && buffer.get(from + 10) == ' ' && buffer.get(from + 13) == ':'
+                && buffer.get(from + 16) == ':') {
+            long daySeconds = daySeconds(buffer, from);
+            int hour = digits(buffer, from + 11);
+            int minute = digits(buffer, from + 14);
+            int second = digits(buffer, from + 17);
+            if (daySeconds != Long.MIN_VALUE && hour >= 0 && hour <= 23
+                    && minute >= 0 && minute <= 59 && second >= 0 && second <= 59) {
+                return daySeconds + hour * 3600L + minute * 60L + second;
+            }
+        }
+        return slowDecode(buffer, from, to);
+    }
+
+    /**
+     * Returns the epoch second of midnight of the date at {@code from},
+     * or {@link Long#MIN_VALUE} if the date is not in the common form.
+     */
+    private long daySeconds(ByteBuffer buffer, int from) {
+        if (hasCachedDate && sameAsCachedDate(buffer, from)) {
+            return cachedDaySeconds;
+        }
+        if (buffer.get(from + 4) != '-' || buffer.get(from + 7) != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(buffer, from) * 100 + digits(buffer, from + 2);
+        int month = digits(buffer, from + 5);
+        int day = digits(buffer, from + 8);
+        if (year <= 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Long.MIN_VALUE;
+        }
+
+        // Like the formatter's smart resolver, clamp the day to the end of the month
+        LocalDate date = LocalDate.of(year, month, 1);
+        date = date.withDayOfMonth(Math.min(day, date.lengthOfMonth()));
+
+        buffer.get(from, cachedDate, 0, DATE_LENGTH);
+        cachedDaySeconds = date.toEpochDay() * 86400L;
+        hasCachedDate = true;
+        return cachedDaySeconds;
+    }
+
+    private boolean sameAsCachedDate(ByteBuffer buffer, int from) {
+        // Compared from the end, where consecutive dates usually differ
+        for (int i = DATE_LENGTH - 1; i >= 0; i--) {
+            if (buffer.get(from + i) != cachedDate[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads two ASCII digits. A non-digit yields -10000, so that any field built
+     * from the pair (including the four-digit year) ends up out of range.
+     */
+    private static int digits(ByteBuffer buffer, int index) {
+        int high = buffer.get(index) - '0';
+        int low = buffer.get(index + 1) - '0';
+        if (high < 0 || high > 9 || low < 0 || low > 9) {
+            return -10000;
+        }
+        return high * 10 + low;
+    }
+
+    private static long slowDecode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        buffer.get(from, bytes, 0, bytes.length);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        return LocalDateTime.parse(text, formatter).toEpochSecond(ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,210 @@
+package processing;
+
+import analysis.LogAnalyzer;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps the results of each analyzer per log file on disk, so that a later run
+ * does not need to read files that did not change.
+ * <p>
+ * An entry is stored in its own file and is keyed by the path of the log file, the
+ * number of bytes that were analyzed, the modification time, and a checksum of the
+ * first bytes of the file. When the log file is found again:
+ * <ul>
+ *   <li>with the same size and modification time, the cached results are used as-is
+ *       and the file is skipped;</li>
+ *   <li>larger, with the same first bytes and the analyzed part ending on a line
+ *       break, the cached results are restored and only the appended bytes need to
+ *       be read;</li>
+ *   <li>otherwise the entry is ignored and the file is read again from the start.</li>
+ * </ul>
+ * The results themselves are stored in the {@link AnalyzerState} format. Entries also
+ * record a signature of the analysis settings; an entry written with other settings,
+ * by another format version, or that fails its checksum is ignored.
+ * Entries are replaced atomically, so an interrupted run never leaves a broken entry.
+ */
+public class AnalysisCache {
+
+    private static final int MAGIC = 0x4C47434B;
+    private static final int VERSION = 2;
+    static final int HEAD_LENGTH = 64 * 1024;
+    private static final String SUFFIX = ".state";
+
+    private final File directory;
+    private final String signature;
+    private final Set<String> used = new HashSet<>();
+
+    /**
+     * Creates a cache stored in the given directory, which is created if needed.
+     *
+     * @param directory the directory holding the cache entries
+     * @param signature a description of the analysis settings the results depend on
+     */
+    public AnalysisCache(File directory, String signature) {
+        this.directory = directory;
+        this.signature = signature;
+    }
+
+    /**
+     * Restores the cached results of a log file into per-file analyzers.
+     * <p>
+     * Nothing is restored unless the entry is valid for the current file.
+     * A file that cannot be read from an offset, such as a compressed log, is
+     * only restored if it did not change.
+     *
+     * @param file      the log file
+     * @param name      the name the entries of the file are reported under
+     * @param analyzers the analyzers that collect the results of this file
+     * @param resumable whether the file can be read from the end of the cached part
+     * @return the offset from which the file still has to be read: its length if it
+     *         did not change, the end of the cached part if it only grew, or 0
+     */
+    public long restore(File file, String name, List<LogAnalyzer> analyzers, boolean resumable) {
+        File entry = entryFile(file);
+        if (!entry.isFile()) {
+            return 0;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(signature)
+                    || !in.readUTF().equals(file.getCanonicalPath())) {
+                return 0;
+            }
+            long offset = in.readLong();
+            long lastModified = in.readLong();
+            int headLength = in.readInt();
+            long headChecksum = in.readLong();
+
+            long length = file.length();
+            boolean unchanged = length == offset && file.lastModified() == lastModified;
+            if (!unchanged && (!resumable || length <= offset || !endsWithLineBreak(file, offset))) {
+                return 0;
+            }
+            if (headChecksum(file, headLength) != headChecksum) {
+                return 0;
+            }
+
+            byte[] payload = new byte[in.readInt()];
+            long payloadChecksum = in.readLong();
+            in.readFully(payload);
+            if (checksum(payload, payload.length) != payloadChecksum) {
+                return 0;
+            }
+
+            if (!AnalyzerState.read(payload, name, analyzers)) {
+                return 0;
+            }
+
+            used.add(entry.getName());
+            return offset;
+        } catch (IOException e) {
+            System.out.println("error reading cache for file " + name);
+            return 0;
+        }
+    }
+
+    /**
+     * Stores the results of a log file, replacing its previous entry.
+     *
+     * @param file         the log file
+     * @param name         the name the entries of the file are reported under
+     * @param offset       the number of bytes of the file that were analyzed
+     * @param lastModified the modification time of the file when it was analyzed
+     * @param analyzers    the analyzers that collected the results of this file
+     */
+    public void save(File file, String name, long offset, long lastModified, List<LogAnalyzer> analyzers) {
+        File entry = entryFile(file);
+        used.add(entry.getName());
+
+        try {
+            byte[] payload = AnalyzerState.write(name, analyzers);
+            int headLength = (int) Math.min(offset, HEAD_LENGTH);
+
+            Files.createDirectories(directory.toPath());
+            File temporary = new File(directory, entry.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(signature);
+                out.writeUTF(file.getCanonicalPath());
+                out.writeLong(offset);
+                out.writeLong(lastModified);
+                out.writeInt(headLength);
+                out.writeLong(headChecksum(file, headLength));
+                out.writeInt(payload.length);
+                out.writeLong(checksum(payload, payload.length));
+                out.write(payload);
+            }
+            Files.move(temporary.toPath(), entry.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("error writing cache for file " + name);
+        }
+    }
+
+    /**
+     * Deletes the entries that were neither restored nor saved since this cache
+     * was created, i.e. those of log files that no longer exist.
+     */
+    public void prune() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            if (!used.contains(entry.getName()) && !entry.delete()) {
+                System.out.println("error deleting cache entry " + entry.getName());
+            }
+        }
+    }
+
+    private File entryFile(File file) {
+        return entryFile(directory, file, SUFFIX);
+    }
+
+    /**
+     * Returns the file holding the entry of a log file in a directory of per-file
+     * entries, named after the log file and a hash of its path.
+     */
+    static File entryFile(File directory, File file, String suffix) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return new File(directory, file.getName() + "-" + Integer.toHexString(path.hashCode()) + suffix);
+    }
+
+    static boolean endsWithLineBreak(File file, long offset) throws IOException {
+        if (offset == 0) {
+            return true;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    static long headChecksum(File file, int headLength) throws IOException {
+        byte[] head = new byte[headLength];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.readFully(head);
+        } catch (EOFException e) {
+            return -1;
+        }
+        return checksum(head, headLength);
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+}
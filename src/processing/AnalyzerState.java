@@ -0,0 +1,84 @@
+package processing;
+
+import analysis.LogAnalyzer;
+
+import java.io.*;
+import java.util.List;
+
+/**
+ * The binary format the results of a list of analyzers for one log file are exchanged
+ * in: stored between runs by the {@link AnalysisCache}, and sent from worker processes
+ * to the coordinator in a sharded run.
+ * <p>
+ * The layout, in the big-endian encoding of {@link DataOutput}, is:
+ * <pre>
+ *   int     magic, 0x4C475354 ("LGST")
+ *   int     format version, currently 2
+ *   int     n, the number of analyzers
+ *   n × UTF the class name of each analyzer, in order
+ *   n × ... the state of each analyzer, in order, as written by
+ *           {@link LogAnalyzer#writeState(String, DataOutput)}
+ * </pre>
+ * The state of an analyzer has no length prefix, so the class names must match
+ * before any state is read. The version must be increased whenever an analyzer
+ * changes the layout of its state; states of another version are not read.
+ */
+public final class AnalyzerState {
+
+    private static final int MAGIC = 0x4C475354;
+    private static final int VERSION = 2;
+
+    private AnalyzerState() {
+    }
+
+    /**
+     * Writes the results of analyzers for one log file.
+     *
+     * @param name      the name the entries of the file are reported under
+     * @param analyzers the analyzers that collected the results of this file
+     * @return the encoded state
+     * @throws IOException if an analyzer fails to write its state
+     */
+    public static byte[] write(String name, List<LogAnalyzer> analyzers) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(analyzers.size());
+        for (LogAnalyzer analyzer : analyzers) {
+            out.writeUTF(analyzer.getClass().getName());
+        }
+        for (LogAnalyzer analyzer : analyzers) {
+            analyzer.writeState(name, out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restores results written by {@link #write(String, List)} into analyzers, which
+     * must be of the same classes, in the same order, as those that wrote them.
+     *
+     * @param state     the encoded state
+     * @param name      the name the entries of the file are reported under
+     * @param analyzers the analyzers that collect the results of this file
+     * @return false, with nothing restored, if the state has another format version or
+     *         was written by other analyzers
+     * @throws IOException if the state is invalid
+     */
+    public static boolean read(byte[] state, String name, List<LogAnalyzer> analyzers) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != analyzers.size()) {
+            return false;
+        }
+        for (LogAnalyzer analyzer : analyzers) {
+            if (!in.readUTF().equals(analyzer.getClass().getName())) {
+                return false;
+            }
+        }
+        for (LogAnalyzer analyzer : analyzers) {
+            analyzer.readState(name, in);
+        }
+        return true;
+    }
+}
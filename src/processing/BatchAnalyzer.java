@@ -0,0 +1,74 @@
+package processing;
+
+import analysis.LogAnalyzer;
+import model.EntryBatch;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Passes {@link EntryBatch}es to a list of {@link LogAnalyzer}s.
+ * <p>
+ * Values are counted into worker-local partials (see {@link LogAnalyzer#newPartial()}),
+ * which collect any number of batches and are merged into the shared analyzers once,
+ * by {@link #finish()}, after which the batch analyzer is done. Each analyzer walks
+ * the columns it declared over the whole batch. With {@link RunMetrics}, the time each
+ * analyzer spends on a batch is added to its total.
+ */
+public class BatchAnalyzer {
+
+    private final List<LogAnalyzer> analyzers;
+    private final List<LogAnalyzer> partials;
+    // The time spent in each analyzer, or null without metrics
+    private final LongAdder[] times;
+
+    /**
+     * Creates partials of the given analyzers for a single worker.
+     *
+     * @param analyzers the shared analyzers
+     */
+    public BatchAnalyzer(List<LogAnalyzer> analyzers) {
+        this(analyzers, null);
+    }
+
+    /**
+     * Creates partials of the given analyzers for a single worker, timing each analyzer.
+     *
+     * @param analyzers the shared analyzers
+     * @param metrics   the metrics of the run, or null
+     */
+    public BatchAnalyzer(List<LogAnalyzer> analyzers, RunMetrics metrics) {
+        this.analyzers = analyzers;
+        this.partials = analyzers.stream().map(LogAnalyzer::newPartial).toList();
+        this.times = metrics == null ? null : analyzers.stream().map(metrics::analyzerTime).toArray(LongAdder[]::new);
+    }
+
+    /**
+     * Passes a batch to each analyzer.
+     *
+     * @param batch the entries to analyze, in any order (see {@link LogAnalyzer#analyze(EntryBatch)})
+     */
+    public void analyze(EntryBatch batch) {
+        if (times == null) {
+            for (LogAnalyzer partial : partials) {
+                partial.analyze(batch);
+            }
+            return;
+        }
+        for (int i = 0; i < partials.size(); i++) {
+            long start = System.nanoTime();
+            partials.get(i).analyze(batch);
+            times[i].add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Merges the partial results into the shared analyzers. No batch may be passed
+     * afterwards, since the partials would be merged twice.
+     */
+    public void finish() {
+        for (int i = 0; i < analyzers.size(); i++) {
+            analyzers.get(i).merge(partials.get(i));
+        }
+    }
+}
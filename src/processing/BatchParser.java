@@ -0,0 +1,208 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Splits raw bytes into lines and parses them into an {@link EntryBatch}.
+ * <p>
+ * Lines are split on '\n', '\r' or "\r\n" and parsed directly from the raw bytes by a
+ * {@link LogLineParser}. If a line does not match, or its timestamp cannot be parsed,
+ * it is skipped, counted in the batch (see {@link EntryBatch#rejected()}) and handed
+ * to the {@link QuarantineSink}, if the parser has one. Timestamps are always decoded, since they decide
+ * whether a line is valid; levels, sources and messages are only extracted when their
+ * {@link Column} was requested.
+ * <p>
+ * A {@link LineFilter} is checked as soon as a line has been split into fields: lines
+ * rejected by its level, source or message conditions are dropped before their timestamp
+ * is decoded (so a malformed timestamp on a rejected line goes unreported), and lines
+ * outside its time range right after. When lines are sampled for a {@link TimeIndex},
+ * every valid line has to be seen, so the timestamp is decoded first.
+ * <p>
+ * Instances keep parser state and are not thread-safe; each thread uses its own.
+ */
+public class BatchParser {
+
+    private final LogLineParser parser = new LogLineParser();
+    private final QuarantineSink quarantine;
+
+    // The columns, filter and sampler requested for the batch being parsed
+    private boolean levels;
+    private boolean sources;
+    private boolean sourceBytes;
+    private boolean messages;
+    private LineFilter filter;
+    private LineFilter.Matcher matcher = LineFilter.ALL.matcher();
+    private TimeIndex.Sampler sampler;
+    private long offset;
+
+    // The ids of the level and source of the current line, or -1 if not looked up yet
+    private int lineLevel;
+    private int lineSource;
+
+    // The lines seen and skipped by the last call to parse
+    private int lines;
+    private int malformed;
+
+    /**
+     * Creates a parser that only counts malformed lines.
+     */
+    public BatchParser() {
+        this(null);
+    }
+
+    /**
+     * Creates a parser that hands malformed lines over to a quarantine sink.
+     *
+     * @param quarantine the sink receiving malformed lines, or null to only count them
+     */
+    public BatchParser(QuarantineSink quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    /**
+     * Parses every line in {@code [from, to)} of a buffer and appends the entries to a batch.
+     * The range must end at the end of a line; bytes after the last terminator form a line.
+     *
+     * @param buffer  the buffer holding the lines
+     * @param from    the index of the first byte of the first line
+     * @param to      the index right after the last line
+     * @param entries the batch receiving the parsed entries
+     * @param columns the columns the analyzers read
+     */
+    public void parse(ByteBuffer buffer, int from, int to, EntryBatch entries, Set<Column> columns) {
+        parse(buffer, from, to, entries, columns, LineFilter.ALL, null);
+    }
+
+    /**
+     * Parses every line in {@code [from, to)} of a buffer and appends the entries accepted
+     * by a filter to a batch, optionally recording every valid line for a {@link TimeIndex}.
+     * The range must end at the end of a line; bytes after the last terminator form a line.
+     *
+     * @param buffer  the buffer holding the lines
+     * @param from    the index of the first byte of the first line, which is at
+     *                {@link EntryBatch#getPosition()} in the log
+     * @param to      the index right after the last line
+     * @param entries the batch receiving the parsed entries
+     * @param columns the columns the analyzers read
+     * @param filter  the entries to keep
+     * @param sampler receives the position and timestamp of every valid line, or null
+     */
+    public void parse(ByteBuffer buffer, int from, int to, EntryBatch entries, Set<Column> columns,
+                      LineFilter filter, TimeIndex.Sampler sampler) {
+        levels = columns.contains(Column.LEVEL);
+        sources = columns.contains(Column.SOURCE);
+        sourceBytes = columns.contains(Column.SOURCE_FINGERPRINT);
+        messages = columns.contains(Column.MESSAGE);
+        this.filter = filter;
+        if (matcher.filter() != filter) {
+            matcher = filter.matcher();
+        }
+        this.sampler = sampler;
+        offset = entries.getPosition() - from;
+        lines = 0;
+        malformed = 0;
+        int lineStart = from;
+
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                parseLine(buffer, lineStart, i, entries);
+                if (b == '\r' && i + 1 < to && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+                lineStart = i + 1;
+            }
+        }
+
+        if (lineStart < to) {
+            parseLine(buffer, lineStart, to, entries);
+        }
+    }
+
+    private void parseLine(ByteBuffer buffer, int from, int to, EntryBatch entries) {
+        lines++;
+        if (!parser.parse(buffer, from, to)) {
+            reject(buffer, from, to, entries);
+            return;
+        }
+
+        lineLevel = -1;
+        lineSource = -1;
+        if (sampler == null && !acceptsFields(buffer)) {
+            return;
+        }
+        if (!parser.hasValidTimestamp()) {
+            reject(buffer, from, to, entries);
+            return;
+        }
+
+        long timestamp = parser.epochSecond();
+        if (sampler != null) {
+            sampler.line(offset + from, timestamp);
+            if (!acceptsFields(buffer)) {
+                return;
+            }
+        }
+        if (!filter.range().contains(timestamp)) {
+            return;
+        }
+
+        int level = !levels ? -1 : lineLevel >= 0 ? lineLevel : parser.level(SymbolTable.LEVELS);
+        int source = !sources ? -1 : lineSource >= 0 ? lineSource : parser.source(SymbolTable.SOURCES);
+        if (messages) {
+            entries.add(timestamp, level, source, buffer, parser.messageStart(), parser.messageEnd());
+        } else {
+            entries.add(timestamp, level, source);
+        }
+        if (sourceBytes) {
+            entries.setSourceBytes(buffer, parser.sourceStart(), parser.sourceEnd());
+        }
+    }
+
+    private void reject(ByteBuffer buffer, int from, int to, EntryBatch entries) {
+        malformed++;
+        entries.addRejected();
+        if (quarantine != null) {
+            quarantine.reject(entries.getName(), offset + from, buffer, from, to);
+        }
+    }
+
+    /**
+     * Returns the number of lines in the range given to the last call to {@code parse},
+     * including those that were skipped or filtered out.
+     *
+     * @return the number of lines
+     */
+    public int lines() {
+        return lines;
+    }
+
+    /**
+     * Returns the number of lines skipped by the last call to {@code parse} because
+     * they did not match or had an invalid timestamp.
+     *
+     * @return the number of malformed lines
+     */
+    public int malformed() {
+        return malformed;
+    }
+
+    /**
+     * Checks the level, source and message conditions of the filter against the fields
+     * of the current line, keeping the level and source ids looked up on the way.
+     */
+    private boolean acceptsFields(ByteBuffer buffer) {
+        if (filter.hasLevelTerms() && !matcher.level(lineLevel = parser.level(SymbolTable.LEVELS))) {
+            return false;
+        }
+        if (filter.hasSourceTerms() && !matcher.source(lineSource = parser.source(SymbolTable.SOURCES))) {
+            return false;
+        }
+        return !filter.hasMessageTerms() || filter.acceptsMessage(buffer, parser.messageStart(), parser.messageEnd());
+    }
+}
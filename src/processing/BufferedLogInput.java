@@ -0,0 +1,84 @@
+package processing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LogInput} that reads the file into a buffer of its own.
+ * <p>
+ * Each {@link #fill(int)} moves the unconsumed bytes to the front of the buffer and
+ * reads new data after them with {@link #read(ByteBuffer, long)}, the only method
+ * an implementation has to provide besides {@link #close()}.
+ */
+public abstract class BufferedLogInput extends LogInput {
+
+    /**
+     * Constructs an input over the byte range {@code [start, end)}. The implementation
+     * must allocate {@link #buffer}, empty and in read mode.
+     *
+     * @param start the offset of the first byte to read
+     * @param end   the offset right after the last byte to read
+     */
+    protected BufferedLogInput(long start, long end) {
+        super(start, end);
+    }
+
+    /**
+     * Discards the bytes before {@code consumed} and reads more data after the rest.
+     * The buffer is enlarged when it is entirely filled by a single unconsumed line.
+     *
+     * @param consumed the index of the first byte not consumed by the caller
+     * @return false if the end of the range had already been reached, true otherwise
+     * @throws IOException if reading fails
+     */
+    @Override
+    public boolean fill(int consumed) throws IOException {
+        if (atEnd) {
+            return false;
+        }
+
+        buffer.position(consumed);
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            buffer = grow(buffer);
+        }
+        buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + end - position));
+
+        int read = read(buffer, position);
+        if (read < 0) {
+            atEnd = true;
+        } else {
+            position += read;
+            atEnd = position >= end;
+        }
+
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Reads bytes at the given file offset into the remaining space of {@code target}.
+     *
+     * @param target   the buffer to read into
+     * @param position the file offset of the first byte to read
+     * @return the number of bytes read, or -1 at the end of the file
+     * @throws IOException if reading fails
+     */
+    protected abstract int read(ByteBuffer target, long position) throws IOException;
+
+    /**
+     * Allocates a buffer of the same kind and twice the size of {@code full},
+     * holding the same content.
+     *
+     * @param full a buffer in write mode with no space left
+     * @return the larger buffer, in write mode
+     */
+    protected ByteBuffer grow(ByteBuffer full) {
+        ByteBuffer larger = full.isDirect()
+                ? ByteBuffer.allocateDirect(full.capacity() * 2)
+                : ByteBuffer.allocate(full.capacity() * 2);
+        full.flip();
+        larger.put(full);
+        return larger;
+    }
+}
@@ -0,0 +1,71 @@
+package processing;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A batch of raw log lines handed from a reader to a parser in a {@link LogPipeline}.
+ * <p>
+ * A batch holds complete lines only (its last line may lack a terminator if it is the
+ * last line of the log), so each batch can be parsed on its own. Batches are allocated
+ * once by the pipeline and recycled.
+ */
+class ByteBatch {
+
+    byte[] bytes;
+    ByteBuffer buffer;
+    int length;
+
+    String name;
+    long position;
+    LogPipeline.Job job;
+
+    ByteBatch(int capacity) {
+        bytes = new byte[Math.max(capacity, 1)];
+        buffer = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Makes room for at least {@code capacity} bytes, keeping the first {@code length} bytes.
+     */
+    void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            buffer = ByteBuffer.wrap(bytes);
+        }
+    }
+
+    /**
+     * Copies {@code [from, to)} of a buffer into this batch.
+     */
+    void copyFrom(ByteBuffer source, int from, int to) {
+        length = to - from;
+        ensureCapacity(length);
+        source.get(from, bytes, 0, length);
+    }
+
+    /**
+     * Returns the index following the last complete line in {@code [0, limit)} of a buffer.
+     * <p>
+     * A line ends with '\n', '\r' or "\r\n". A '\r' in the last byte only ends a line at
+     * the end of the input, since a '\n' may still follow it. At the end of the input,
+     * the whole range is complete.
+     *
+     * @param buffer     the buffer holding the lines
+     * @param limit      the index right after the last byte
+     * @param endOfInput whether no more bytes follow
+     * @return the end of the last complete line, or 0 if there is none
+     */
+    static int lineEnd(ByteBuffer buffer, int limit, boolean endOfInput) {
+        if (endOfInput) {
+            return limit;
+        }
+        for (int i = limit - 1; i >= 0; i--) {
+            byte b = buffer.get(i);
+            if (b == '\n' || (b == '\r' && i + 1 < limit)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
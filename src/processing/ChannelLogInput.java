@@ -0,0 +1,42 @@
+package processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link BufferedLogInput} that reads a file through a {@link FileChannel} into a large
+ * direct buffer, avoiding the extra copy through a temporary native buffer that
+ * channel reads into heap buffers require.
+ */
+public class ChannelLogInput extends BufferedLogInput {
+
+    private final FileChannel channel;
+
+    /**
+     * Opens a read-only channel for the file.
+     *
+     * @param file       the log file
+     * @param start      the offset of the first byte to read
+     * @param end        the offset right after the last byte to read
+     * @param bufferSize the initial size of the direct buffer
+     * @throws IOException if the file cannot be opened
+     */
+    public ChannelLogInput(File file, long start, long end, int bufferSize) throws IOException {
+        super(start, end);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize).flip();
+    }
+
+    @Override
+    protected int read(ByteBuffer target, long position) throws IOException {
+        return channel.read(target, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,136 @@
+package processing;
+
+import java.io.*;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The reader stage of a {@link LogPipeline} for a gzip-compressed log ({@code .log.gz})
+ * or a zip archive of logs ({@code .zip}).
+ * <p>
+ * A compressed stream can only be inflated sequentially, so one reader thread inflates
+ * it straight into the pipeline's byte batches and cuts them at line boundaries, while
+ * the batches already handed off are parsed and analyzed on other threads. When the
+ * parsers fall behind, the reader waits for a free batch instead of inflating ahead.
+ * <p>
+ * Each batch carries its offset in the decompressed stream, which orders the anomaly
+ * segments of the stream like the chunks of a plain file. A gzip file is reported under
+ * the name it was submitted with; each {@code .log} entry of a zip archive is reported
+ * as {@code archive.zip:entry.log}.
+ */
+public class CompressedLogReader implements Runnable {
+
+    private final File file;
+    private final String name;
+    private final LogPipeline pipeline;
+    private final LogPipeline.Job job;
+
+    /**
+     * Constructs a reader for a compressed log.
+     *
+     * @param file     the .log.gz or .zip file
+     * @param name     the name the entries are reported under
+     * @param pipeline the pipeline the batches are handed to
+     * @param job      the job the batches belong to
+     */
+    CompressedLogReader(File file, String name, LogPipeline pipeline, LogPipeline.Job job) {
+        this.file = file;
+        this.name = name;
+        this.pipeline = pipeline;
+        this.job = job;
+    }
+
+    /**
+     * Checks whether a file name denotes a compressed log this class can read.
+     *
+     * @param name the file name
+     * @return true for names ending with .log.gz or .zip
+     */
+    public static boolean isCompressed(String name) {
+        return name.endsWith(".log.gz") || name.endsWith(".zip");
+    }
+
+    /**
+     * Inflates the file and hands its lines over to the parsers.
+     */
+    @Override
+    public void run() {
+        boolean ok = false;
+        try {
+            if (file.getName().endsWith(".zip")) {
+                try (ZipFile zip = new ZipFile(file)) {
+                    Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (!entry.isDirectory() && entry.getName().endsWith(".log")) {
+                            try (InputStream in = zip.getInputStream(entry)) {
+                                read(in, name + ":" + entry.getName());
+                            }
+                        }
+                    }
+                }
+            } else {
+                try (InputStream in = new GZIPInputStream(new FileInputStream(file), 64 * 1024)) {
+                    read(in, name);
+                }
+            }
+            ok = true;
+        } catch (IOException e) {
+            System.out.println("error processing file " + name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            job.readDone(ok);
+        }
+    }
+
+    /**
+     * Cuts one decompressed stream into batches of complete lines.
+     * A partial line at the end of a batch is moved to the start of the next one.
+     */
+    private void read(InputStream in, String name) throws IOException, InterruptedException {
+        ByteBatch batch = pipeline.takeBatch();
+        int length = 0;
+        long position = 0;
+
+        try {
+            while (true) {
+                length += in.readNBytes(batch.bytes, length, batch.bytes.length - length);
+                boolean endOfStream = length < batch.bytes.length;
+
+                int cut = ByteBatch.lineEnd(batch.buffer, length, endOfStream);
+                if (cut == 0) {
+                    if (endOfStream) {
+                        return;
+                    }
+                    // A single line fills the batch
+                    batch.ensureCapacity(length * 2);
+                    continue;
+                }
+
+                ByteBatch next = endOfStream ? null : pipeline.takeBatch();
+                int rest = length - cut;
+                if (next != null) {
+                    next.ensureCapacity(rest + 1);
+                    System.arraycopy(batch.bytes, cut, next.bytes, 0, rest);
+                }
+
+                batch.length = cut;
+                pipeline.emit(job, name, position, batch);
+                batch = next;
+                if (endOfStream) {
+                    return;
+                }
+
+                position += cut;
+                length = rest;
+            }
+        } finally {
+            if (batch != null) {
+                pipeline.releaseBatch(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents a newline-aligned byte range of a log file.
+ * <p>
+ * Every chunk starts at the beginning of a line and ends right after a line
+ * terminator (or at the end of the file), so the chunks of a file can be
+ * processed independently and together still cover every line exactly once.
+ */
+public class FileChunk {
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final long position;
+
+    /**
+     * Constructs a chunk covering the byte range {@code [start, end)} of the given file.
+     *
+     * @param file  the log file the chunk belongs to
+     * @param start the offset of the first byte of the chunk
+     * @param end   the offset right after the last byte of the chunk
+     */
+    public FileChunk(File file, long start, long end) {
+        this(file, start, end, start);
+    }
+
+    /**
+     * Constructs a chunk covering the byte range {@code [start, end)} of the given file,
+     * with an explicit logical position.
+     * <p>
+     * The position orders the chunks of all the content ever written under the file's
+     * name: it equals {@code start} for a plain file, and is shifted past the content of
+     * earlier generations when a followed file has been rotated or truncated.
+     *
+     * @param file     the log file the chunk belongs to
+     * @param start    the offset of the first byte of the chunk
+     * @param end      the offset right after the last byte of the chunk
+     * @param position the logical position of the first byte of the chunk
+     */
+    public FileChunk(File file, long start, long end, long position) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.position = position;
+    }
+
+    /**
+     * Creates a single chunk covering the whole file.
+     *
+     * @param file the log file
+     * @return a chunk from offset 0 to the current length of the file
+     */
+    public static FileChunk whole(File file) {
+        return new FileChunk(file, 0, file.length());
+    }
+
+    /**
+     * Splits a file into newline-aligned chunks of roughly {@code chunkSize} bytes.
+     * <p>
+     * Each boundary is moved forward to the byte following the next {@code '\n'},
+     * so no line is ever cut in two. A file smaller than the chunk size, or a
+     * non-positive chunk size, yields a single chunk.
+     *
+     * @param file      the log file to split
+     * @param chunkSize the preferred chunk size in bytes
+     * @return the chunks of the file, ordered by offset
+     * @throws IOException if the file cannot be read
+     */
+    public static List<FileChunk> split(File file, long chunkSize) throws IOException {
+        return split(new FileChunk(file, 0, file.length()), chunkSize);
+    }
+
+    /**
+     * Splits a chunk into newline-aligned chunks of roughly {@code chunkSize} bytes,
+     * keeping their logical positions consistent with the original chunk.
+     *
+     * @param range     the newline-aligned range to split
+     * @param chunkSize the preferred chunk size in bytes
+     * @return the chunks of the range, ordered by offset
+     * @throws IOException if the file cannot be read
+     * @see #split(File, long)
+     */
+    public static List<FileChunk> split(FileChunk range, long chunkSize) throws IOException {
+        List<FileChunk> chunks = new ArrayList<>();
+        long length = range.end;
+
+        if (chunkSize <= 0 || length - range.start <= chunkSize) {
+            chunks.add(range);
+            return chunks;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(range.file, "r")) {
+            byte[] buffer = new byte[8192];
+            long start = range.start;
+
+            while (start < length) {
+                long end = start + chunkSize >= length
+                        ? length
+                        : nextLineStart(raf, start + chunkSize, length, buffer);
+                chunks.add(new FileChunk(range.file, start, end, range.position + start - range.start));
+                start = end;
+            }
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Finds the end of the last complete line in {@code [start, end)} of a file,
+     * so that a line still being written is left for later.
+     *
+     * @param file  the log file
+     * @param start the offset where the search stops
+     * @param end   the current length of the file
+     * @return the offset following the last '\n' in the range, or {@code start} if there is none
+     * @throws IOException if the file cannot be read
+     */
+    public static long lastLineEnd(File file, long start, long end) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buffer = new byte[8192];
+            long blockEnd = end;
+
+            while (blockEnd > start) {
+                long blockStart = Math.max(start, blockEnd - buffer.length);
+                int length = (int) (blockEnd - blockStart);
+                raf.seek(blockStart);
+                raf.readFully(buffer, 0, length);
+                for (int i = length - 1; i >= 0; i--) {
+                    if (buffer[i] == '\n') {
+                        return blockStart + i + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+        }
+
+        return start;
+    }
+
+    /**
+     * Finds the offset of the first line that starts at or after {@code offset}.
+     *
+     * @return the offset following the first '\n' at or after {@code offset - 1},
+     *         or {@code length} if there is none
+     */
+    private static long nextLineStart(RandomAccessFile raf, long offset, long length, byte[] buffer)
+            throws IOException {
+        long position = offset - 1;
+        raf.seek(position);
+
+        while (position < length) {
+            int read = raf.read(buffer);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the file this chunk belongs to.
+     *
+     * @return the log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the offset of the first byte of the chunk.
+     *
+     * @return the start offset (inclusive)
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the offset right after the last byte of the chunk.
+     *
+     * @return the end offset (exclusive)
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the logical position of the first byte of the chunk, used to order
+     * the chunks of a file across rotations.
+     *
+     * @return the logical start position
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the logical position right after the last byte of the chunk.
+     *
+     * @return the logical end position
+     */
+    public long getEndPosition() {
+        return position + end - start;
+    }
+
+    /**
+     * Returns a readable description of the chunk.
+     *
+     * @return the file name followed by the byte range
+     */
+    @Override
+    public String toString() {
+        return file.getName() + " [" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,397 @@
+package processing;
+
+import model.SymbolTable;
+import model.TimeRange;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Selects the log lines an analysis runs on: a {@link TimeRange}, and conditions on
+ * the level, source and message of a line, all of which must hold.
+ * <p>
+ * Conditions are written as in
+ * {@code level=ERROR AND source IN (Database, Cache) AND message contains "timeout"}:
+ * <ul>
+ *   <li>{@code level} and {@code source} support {@code =}, {@code !=}, {@code IN (...)}
+ *       and {@code NOT IN (...)}; levels are compared ignoring case, sources exactly;</li>
+ *   <li>{@code message} supports {@code =}, {@code !=}, {@code contains} and
+ *       {@code not contains}, compared on the UTF-8 bytes of the message.</li>
+ * </ul>
+ * Keywords are case-insensitive, and values can be quoted with {@code "} or {@code '}.
+ * An unquoted value ends at whitespace, a quote, {@code =}, {@code !=}, a parenthesis
+ * or a comma; a {@code !} not followed by {@code =} is part of it.
+ * <p>
+ * The filter is applied by the {@link BatchParser} right after a line was split into
+ * fields, so that rejected lines cost neither a timestamp decode nor a copy of their
+ * message. Level and source conditions are decided once per {@link SymbolTable} id
+ * by a {@link Matcher}. Instances are immutable and shared by all parser threads.
+ */
+public class LineFilter {
+
+    /**
+     * The filter accepting every line.
+     */
+    public static final LineFilter ALL = new LineFilter(TimeRange.ALL, List.of(), List.of(), List.of());
+
+    /**
+     * A condition on the level or source of a line.
+     */
+    private record SymbolTerm(Set<String> values, boolean negated) {
+
+        boolean accepts(String name) {
+            return values.contains(name) != negated;
+        }
+    }
+
+    /**
+     * A condition on the message of a line.
+     */
+    private record MessageTerm(byte[] value, boolean exact, boolean negated) {
+
+        boolean accepts(ByteBuffer buffer, int from, int to) {
+            boolean found = exact ? equals(buffer, from, to) : contains(buffer, from, to);
+            return found != negated;
+        }
+
+        boolean accepts(byte[] bytes, int from, int to) {
+            return accepts(ByteBuffer.wrap(bytes), from, to);
+        }
+
+        private boolean equals(ByteBuffer buffer, int from, int to) {
+            if (to - from != value.length) {
+                return false;
+            }
+            for (int i = 0; i < value.length; i++) {
+                if (buffer.get(from + i) != value[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean contains(ByteBuffer buffer, int from, int to) {
+            if (value.length == 0) {
+                return true;
+            }
+            byte first = value[0];
+            for (int i = from, last = to - value.length; i <= last; i++) {
+                if (buffer.get(i) != first) {
+                    continue;
+                }
+                int j = 1;
+                while (j < value.length && buffer.get(i + j) == value[j]) {
+                    j++;
+                }
+                if (j == value.length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private final TimeRange range;
+    private final List<SymbolTerm> levelTerms;
+    private final List<SymbolTerm> sourceTerms;
+    private final List<MessageTerm> messageTerms;
+
+    private LineFilter(TimeRange range, List<SymbolTerm> levelTerms, List<SymbolTerm> sourceTerms,
+                       List<MessageTerm> messageTerms) {
+        this.range = range;
+        this.levelTerms = levelTerms;
+        this.sourceTerms = sourceTerms;
+        this.messageTerms = messageTerms;
+    }
+
+    /**
+     * Decides the level and source conditions of a filter for each {@link SymbolTable}
+     * id, remembering the answer. Instances are not thread-safe; each parser uses its own.
+     */
+    public static class Matcher {
+        private final LineFilter filter;
+        // Symbol id -> 0 if not decided yet, 1 if accepted, 2 if rejected
+        private byte[] levels = new byte[16];
+        private byte[] sources = new byte[16];
+
+        private Matcher(LineFilter filter) {
+            this.filter = filter;
+        }
+
+        /**
+         * Returns the filter this matcher decides for.
+         *
+         * @return the filter
+         */
+        public LineFilter filter() {
+            return filter;
+        }
+
+        /**
+         * Checks the level conditions.
+         *
+         * @param id the id of the level in {@link SymbolTable#LEVELS}
+         * @return true if the level is accepted
+         */
+        public boolean level(int id) {
+            if (id >= levels.length) {
+                levels = Arrays.copyOf(levels, Math.max(id + 1, levels.length * 2));
+            }
+            if (levels[id] == 0) {
+                String name = SymbolTable.LEVELS.name(id).toUpperCase();
+                levels[id] = filter.levelTerms.stream().allMatch(term -> term.accepts(name)) ? (byte) 1 : 2;
+            }
+            return levels[id] == 1;
+        }
+
+        /**
+         * Checks the source conditions.
+         *
+         * @param id the id of the source in {@link SymbolTable#SOURCES}
+         * @return true if the source is accepted
+         */
+        public boolean source(int id) {
+            if (id >= sources.length) {
+                sources = Arrays.copyOf(sources, Math.max(id + 1, sources.length * 2));
+            }
+            if (sources[id] == 0) {
+                String name = SymbolTable.SOURCES.name(id);
+                sources[id] = filter.sourceTerms.stream().allMatch(term -> term.accepts(name)) ? (byte) 1 : 2;
+            }
+            return sources[id] == 1;
+        }
+    }
+
+    /**
+     * Compiles a filter.
+     *
+     * @param expression the conditions, see the class description; null or blank for none
+     * @param range      the timestamps of the lines to keep
+     * @return the filter
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static LineFilter parse(String expression, TimeRange range) {
+        List<SymbolTerm> levelTerms = new ArrayList<>();
+        List<SymbolTerm> sourceTerms = new ArrayList<>();
+        List<MessageTerm> messageTerms = new ArrayList<>();
+
+        if (expression != null && !expression.isBlank()) {
+            Tokens tokens = new Tokens(expression);
+            do {
+                String field = tokens.next().toLowerCase();
+                switch (field) {
+                    case "level" -> levelTerms.add(symbolTerm(tokens, true));
+                    case "source" -> sourceTerms.add(symbolTerm(tokens, false));
+                    case "message" -> messageTerms.add(messageTerm(tokens));
+                    default -> throw new IllegalArgumentException("unknown field in filter: " + field);
+                }
+            } while (tokens.keyword("AND"));
+            if (tokens.hasNext()) {
+                throw new IllegalArgumentException("unexpected '" + tokens.next() + "' in filter");
+            }
+        }
+
+        if (range.isAll() && levelTerms.isEmpty() && sourceTerms.isEmpty() && messageTerms.isEmpty()) {
+            return ALL;
+        }
+        return new LineFilter(range, List.copyOf(levelTerms), List.copyOf(sourceTerms), List.copyOf(messageTerms));
+    }
+
+    private static SymbolTerm symbolTerm(Tokens tokens, boolean level) {
+        boolean negated;
+        Set<String> values = new HashSet<>();
+        if (tokens.symbol("=")) {
+            negated = false;
+            values.add(tokens.value());
+        } else if (tokens.symbol("!=")) {
+            negated = true;
+            values.add(tokens.value());
+        } else {
+            negated = tokens.keyword("NOT");
+            if (!tokens.keyword("IN") || !tokens.symbol("(")) {
+                throw new IllegalArgumentException("expected =, != or IN in filter");
+            }
+            do {
+                values.add(tokens.value());
+            } while (tokens.symbol(","));
+            if (!tokens.symbol(")")) {
+                throw new IllegalArgumentException("expected ) in filter");
+            }
+        }
+        if (level) {
+            Set<String> upper = new HashSet<>();
+            for (String value : values) {
+                upper.add(value.toUpperCase());
+            }
+            values = upper;
+        }
+        return new SymbolTerm(Set.copyOf(values), negated);
+    }
+
+    private static MessageTerm messageTerm(Tokens tokens) {
+        boolean exact;
+        boolean negated;
+        if (tokens.symbol("=")) {
+            exact = true;
+            negated = false;
+        } else if (tokens.symbol("!=")) {
+            exact = true;
+            negated = true;
+        } else {
+            exact = false;
+            negated = tokens.keyword("NOT");
+            if (!tokens.keyword("CONTAINS")) {
+                throw new IllegalArgumentException("expected =, != or contains in filter");
+            }
+        }
+        return new MessageTerm(tokens.value().getBytes(StandardCharsets.UTF_8), exact, negated);
+    }
+
+    /**
+     * Splits an expression into words, quoted values and the symbols = != ( ) ,
+     */
+    private static class Tokens {
+        private static final Set<String> SYMBOLS = Set.of("=", "!=", "(", ")", ",");
+
+        private final List<String> tokens = new ArrayList<>();
+        // Whether each token was quoted, so that a quoted "and" is not a keyword
+        private final List<Boolean> quoted = new ArrayList<>();
+        private int index;
+
+        Tokens(String expression) {
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '"' || c == '\'') {
+                    int end = expression.indexOf(c, i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("unterminated quote in filter");
+                    }
+                    add(expression.substring(i + 1, end), true);
+                    i = end + 1;
+                } else if (c == '!' && expression.startsWith("!=", i)) {
+                    add("!=", false);
+                    i += 2;
+                } else if (c == '=' || c == '(' || c == ')' || c == ',') {
+                    add(String.valueOf(c), false);
+                    i++;
+                } else {
+                    // A '!' only ends a word when it starts "!=", so "Error!" is one word
+                    int end = i + 1;
+                    while (end < expression.length() && !Character.isWhitespace(expression.charAt(end))
+                            && "\"'=(),".indexOf(expression.charAt(end)) < 0
+                            && !expression.startsWith("!=", end)) {
+                        end++;
+                    }
+                    add(expression.substring(i, end), false);
+                    i = end;
+                }
+            }
+        }
+
+        private void add(String token, boolean isQuoted) {
+            tokens.add(token);
+            quoted.add(isQuoted);
+        }
+
+        boolean hasNext() {
+            return index < tokens.size();
+        }
+
+        String next() {
+            if (!hasNext()) {
+                throw new IllegalArgumentException("unexpected end of filter");
+            }
+            return tokens.get(index++);
+        }
+
+        String value() {
+            if (hasNext() && !quoted.get(index) && SYMBOLS.contains(tokens.get(index))) {
+                throw new IllegalArgumentException("expected a value in filter");
+            }
+            return next();
+        }
+
+        boolean keyword(String keyword) {
+            if (hasNext() && !quoted.get(index) && tokens.get(index).equalsIgnoreCase(keyword)) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        boolean symbol(String symbol) {
+            if (hasNext() && !quoted.get(index) && tokens.get(index).equals(symbol)) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the timestamps of the lines to keep.
+     *
+     * @return the time range
+     */
+    public TimeRange range() {
+        return range;
+    }
+
+    /**
+     * Returns whether this filter accepts every line.
+     *
+     * @return true if there is no condition and the range holds every timestamp
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    boolean hasLevelTerms() {
+        return !levelTerms.isEmpty();
+    }
+
+    boolean hasSourceTerms() {
+        return !sourceTerms.isEmpty();
+    }
+
+    boolean hasMessageTerms() {
+        return !messageTerms.isEmpty();
+    }
+
+    /**
+     * Creates a matcher for the level and source conditions of this filter.
+     *
+     * @return a new matcher, for use by one thread
+     */
+    public Matcher matcher() {
+        return new Matcher(this);
+    }
+
+    /**
+     * Checks the message conditions against a message stored in a buffer.
+     */
+    boolean acceptsMessage(ByteBuffer buffer, int from, int to) {
+        for (MessageTerm term : messageTerms) {
+            if (!term.accepts(buffer, from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the message conditions against a message stored in an array.
+     */
+    boolean acceptsMessage(byte[] bytes, int from, int to) {
+        for (MessageTerm term : messageTerms) {
+            if (!term.accepts(bytes, from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,31 +1,43 @@
 package processing;
 
-import analysis.AnomalyDetector;
-import analysis.LevelCounter;
+import analysis.AnalyzerFactory;
 import analysis.LogAnalyzer;
-import analysis.SourceCounter;
-import model.LogEntry;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
- * Responsible for processing a single log file and delegating each line
- * to the appropriate {@link LogAnalyzer} implementations.
+ * Responsible for processing a single log file, or a newline-aligned
+ * {@link FileChunk} of it, and delegating each line to the appropriate
+ * {@link LogAnalyzer} implementations.
  * <p>
- * This class implements {@link Callable} to support parallel execution
- * using thread pools.
+ * This class runs the stages of a {@link LogPipeline} (read, parse, analyze)
+ * one after the other on the calling thread. It implements {@link Callable}
+ * to support parallel execution using thread pools.
+ * <p>
+ * The application processes every file through a {@link LogPipeline}; this class
+ * is kept as the single-threaded baseline of the benchmarks, and has none of the
+ * pipeline's filtering, quarantine, indexing or metrics.
  */
 public class LogFileProcessor implements Callable<Void> {
 
-    private final File file;
-    private final List<LogAnalyzer> analyzers;
+    private static final String DEFAULT_INPUT_MODE = "STREAM";
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChunk chunk;
+    private final String inputMode;
+    private final int bufferSize;
 
-    // Regular expression to parse a log line: [timestamp] [level] [source] [message]
-    private static final Pattern logPattern = Pattern.compile("^\\[(.*?)\\] \\[(.*?)\\] \\[(.*?)\\] \\[(.*?)\\]$");
+    private final BatchParser parser;
+    private final BatchAnalyzer analyzer;
+    private final Set<Column> columns;
+    private final EntryBatch entries;
 
     /**
      * Constructs a new LogFileProcessor.
@@ -34,50 +46,79 @@ public class LogFileProcessor implements Callable<Void> {
      * @param analyzers the list of analyzers to apply on each log line
      */
     public LogFileProcessor(File file, List<LogAnalyzer> analyzers) {
-        this.file = file;
-        this.analyzers = analyzers;
+        this(FileChunk.whole(file), analyzers);
+    }
+
+    /**
+     * Constructs a new LogFileProcessor for a byte range of a log file.
+     * <p>
+     * Entries are still reported under the name of the whole file, so analyzers
+     * that group by file see the same data as in a per-file run.
+     *
+     * @param chunk     the newline-aligned range of the file to be processed
+     * @param analyzers the list of analyzers to apply on each log line
+     */
+    public LogFileProcessor(FileChunk chunk, List<LogAnalyzer> analyzers) {
+        this(chunk, analyzers, DEFAULT_INPUT_MODE, DEFAULT_BUFFER_SIZE);
     }
 
     /**
-     * Reads the log file line by line and applies each analyzer
-     * to the relevant part of the parsed log entry.
+     * Constructs a new LogFileProcessor for a byte range of a log file,
+     * reading it with the given {@link LogInput} mode.
+     *
+     * @param chunk      the newline-aligned range of the file to be processed
+     * @param analyzers  the list of analyzers to apply on each log line
+     * @param inputMode  the input mode (STREAM, CHANNEL or MMAP)
+     * @param bufferSize the read buffer size, or the mapped window size for MMAP, in bytes
+     */
+    public LogFileProcessor(FileChunk chunk, List<LogAnalyzer> analyzers, String inputMode, int bufferSize) {
+        this.chunk = chunk;
+        this.parser = new BatchParser();
+        this.inputMode = inputMode;
+        this.bufferSize = bufferSize;
+        this.analyzer = new BatchAnalyzer(analyzers);
+        this.columns = AnalyzerFactory.requiredColumns(analyzers);
+        this.entries = new EntryBatch(bufferSize / 64);
+    }
+
+    /**
+     * Reads the log file (or its assigned range) buffer by buffer and applies
+     * each analyzer to the relevant part of the parsed log entries.
      * <p>
-     * Each line is parsed using a regular expression. If it matches,
-     * a {@link LogEntry} is created and passed to the analyzers based on their type.
-     * If a line does not match, it is skipped and a warning is printed.
+     * The bytes are read through a {@link LogInput} of the configured mode.
+     * The complete lines of each buffer are parsed by a {@link BatchParser} into
+     * the columns the analyzers need; levels and sources are passed on as
+     * {@link SymbolTable} ids and no field is turned into a string; malformed lines
+     * are skipped.
+     * <p>
+     * Values are counted into worker-local partials (see {@link LogAnalyzer#newPartial()}),
+     * which are merged into the shared analyzers once the range has been processed.
      *
      * @return null (void), as required by {@link Callable}
      */
     @Override
     public Void call() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Matcher matcher = logPattern.matcher(line);
-                if (matcher.matches()) {
-                    String timestamp = matcher.group(1);
-                    String level = matcher.group(2);
-                    String source = matcher.group(3);
-                    String message = matcher.group(4);
-
-                    LogEntry entry = new LogEntry(timestamp, level, source, message);
+        String name = chunk.getFile().getName();
 
-                    for (LogAnalyzer analyzer : analyzers) {
-                        if (analyzer instanceof AnomalyDetector detector) {
-                            detector.analyze(file.getName(), entry);
-                        } else if (analyzer instanceof LevelCounter) {
-                            analyzer.analyze(level);
-                        } else if (analyzer instanceof SourceCounter) {
-                            analyzer.analyze(source);
-                        }
-                    }
-
-                } else {
-                    System.out.println("unexpected input " + line);
+        try (LogInput input = LogInput.open(inputMode, chunk, bufferSize)) {
+            long position = chunk.getPosition();
+            int consumed = 0;
+            while (input.fill(consumed)) {
+                ByteBuffer buffer = input.buffer();
+                consumed = ByteBatch.lineEnd(buffer, buffer.limit(), input.isAtEnd());
+                if (consumed == 0) {
+                    continue;
                 }
+
+                entries.reset(name, position, position + consumed);
+                parser.parse(buffer, 0, consumed, entries, columns);
+                analyzer.analyze(entries);
+                position += consumed;
             }
         } catch (IOException e) {
-            System.out.println("error processing file " + file.getName());
+            System.out.println("error processing file " + name);
+        } finally {
+            analyzer.finish();
         }
 
         return null;
@@ -0,0 +1,96 @@
+package processing;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A source of raw bytes for a byte range of a log file.
+ * <p>
+ * The bytes are exposed through a {@link ByteBuffer} whose readable content always
+ * spans the absolute indexes {@code [0, limit)}. A caller consumes complete lines
+ * from the front and calls {@link #fill(int)} with the index of the first byte it
+ * did not consume; those bytes (a partial line) are kept at the front of the next
+ * buffer, followed by newly read data.
+ * <p>
+ * Three implementations are available, selected by {@code log.input.mode}:
+ * <ul>
+ *     <li>{@code STREAM} – a {@link java.io.FileInputStream} read into a heap buffer</li>
+ *     <li>{@code CHANNEL} – a {@link java.nio.channels.FileChannel} read into a direct buffer</li>
+ *     <li>{@code MMAP} – read-only memory-mapped windows of the file</li>
+ * </ul>
+ * The first two copy the file into a buffer of their own (see {@link BufferedLogInput}),
+ * the last one exposes the mapped file directly.
+ */
+public abstract class LogInput implements Closeable {
+
+    protected final long end;
+    protected long position;
+    protected ByteBuffer buffer;
+    protected boolean atEnd;
+
+    /**
+     * Constructs an input over the byte range {@code [start, end)}.
+     *
+     * @param start the offset of the first byte to read
+     * @param end   the offset right after the last byte to read
+     */
+    protected LogInput(long start, long end) {
+        this.position = start;
+        this.end = end;
+    }
+
+    /**
+     * Opens an input of the given mode over a chunk of a log file.
+     *
+     * @param mode       the input mode: STREAM, CHANNEL or MMAP
+     * @param chunk      the byte range to read
+     * @param bufferSize the size in bytes of the read buffer, or of the mapped window for MMAP
+     * @return a new input positioned at the start of the chunk
+     * @throws IOException if the file cannot be opened
+     */
+    public static LogInput open(String mode, FileChunk chunk, int bufferSize) throws IOException {
+        File file = chunk.getFile();
+        long start = chunk.getStart();
+        long end = chunk.getEnd();
+
+        // A small chunk never needs a buffer larger than itself
+        int size = (int) Math.max(1, Math.min(bufferSize, end - start));
+
+        return switch (mode) {
+            case "CHANNEL" -> new ChannelLogInput(file, start, end, size);
+            case "MMAP" -> new MappedLogInput(file, start, end, size);
+            default -> new StreamLogInput(file, start, end, size);
+        };
+    }
+
+    /**
+     * Returns the buffer holding the bytes read so far, readable in {@code [0, limit)}.
+     * The returned object may change after each call to {@link #fill(int)}.
+     *
+     * @return the current buffer
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns whether the whole range has been read, so that bytes after the last
+     * line terminator in the buffer form a complete final line.
+     *
+     * @return true if no more bytes will be read
+     */
+    public boolean isAtEnd() {
+        return atEnd;
+    }
+
+    /**
+     * Discards the bytes before {@code consumed} and makes more data available after the rest.
+     *
+     * @param consumed the index of the first byte not consumed by the caller
+     * @return false if the end of the range had already been reached, true otherwise
+     * @throws IOException if reading fails
+     */
+    public abstract boolean fill(int consumed) throws IOException;
+}
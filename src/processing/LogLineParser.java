@@ -0,0 +1,270 @@
+package processing;
+
+import model.SymbolTable;
+import model.TimestampDecoder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A hand-written parser for log lines in the format
+ * {@code [timestamp] [level] [source] [message]} that works directly on raw UTF-8 bytes.
+ * <p>
+ * Parsing a line only records the offsets of its four fields; a {@link String} is
+ * created for a field only when one of the accessors is called, and levels and
+ * sources can be turned into {@link SymbolTable} ids without creating one at all. The parser accepts
+ * exactly the lines matched by the regular expression
+ * {@code ^\[(.*?)\] \[(.*?)\] \[(.*?)\] \[(.*?)\]$} and splits them the same way:
+ * each of the first three fields ends at the first following {@code "] ["}.
+ * <p>
+ * Instances keep per-line state and are not thread-safe; each worker uses its own parser.
+ */
+public class LogLineParser {
+
+    private ByteBuffer buffer;
+    private int timestampStart;
+    private int timestampEnd;
+    private int levelStart;
+    private int levelEnd;
+    private int sourceStart;
+    private int sourceEnd;
+    private int messageStart;
+    private int messageEnd;
+
+    private final TimestampDecoder decoder = new TimestampDecoder();
+    private long epochSecond;
+    private boolean timestampDecoded;
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Parses the line stored in {@code buffer} between the absolute indexes
+     * {@code start} (inclusive) and {@code end} (exclusive), without line terminator.
+     *
+     * @param buffer the buffer holding the line
+     * @param start  the index of the first byte of the line
+     * @param end    the index right after the last byte of the line
+     * @return true if the line has the expected format, false otherwise
+     */
+    public boolean parse(ByteBuffer buffer, int start, int end) {
+        // Shortest valid line is "[] [] [] []"
+        if (end - start < 11 || buffer.get(start) != '[' || buffer.get(end - 1) != ']') {
+            return false;
+        }
+        if (containsLineSeparator(buffer, start, end)) {
+            return false;
+        }
+
+        int first = indexOfSeparator(buffer, start + 1, end);
+        if (first < 0) {
+            return false;
+        }
+        int second = indexOfSeparator(buffer, first + 3, end);
+        if (second < 0) {
+            return false;
+        }
+        int third = indexOfSeparator(buffer, second + 3, end);
+        if (third < 0 || third + 3 > end - 1) {
+            return false;
+        }
+
+        this.buffer = buffer;
+        timestampStart = start + 1;
+        timestampEnd = first;
+        levelStart = first + 3;
+        levelEnd = second;
+        sourceStart = second + 3;
+        sourceEnd = third;
+        messageStart = third + 3;
+        messageEnd = end - 1;
+        timestampDecoded = false;
+        return true;
+    }
+
+    /**
+     * Returns the index of the first {@code "] ["} that starts at or after {@code from}
+     * and ends before {@code end}.
+     */
+    private static int indexOfSeparator(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i + 2 < end; i++) {
+            if (buffer.get(i) == ']' && buffer.get(i + 1) == ' ' && buffer.get(i + 2) == '[') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks for the UTF-8 encodings of U+0085, U+2028 and U+2029, which
+     * (like '\r' and '\n') are line terminators that '.' in the regex does not match.
+     */
+    private static boolean containsLineSeparator(ByteBuffer buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '\r' || b == '\n') {
+                return true;
+            }
+            if (b == (byte) 0xC2 && i + 1 < end && buffer.get(i + 1) == (byte) 0x85) {
+                return true;
+            }
+            if (b == (byte) 0xE2 && i + 2 < end && buffer.get(i + 1) == (byte) 0x80
+                    && (buffer.get(i + 2) == (byte) 0xA8 || buffer.get(i + 2) == (byte) 0xA9)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the timestamp of the last parsed line is accepted by
+     * {@link LocalDateTime#parse(CharSequence, DateTimeFormatter)} with the pattern
+     * {@code yyyy-MM-dd HH:mm:ss}. The decoded value is kept for {@link #epochSecond()}.
+     *
+     * @return true if the timestamp can be parsed, false otherwise
+     */
+    public boolean hasValidTimestamp() {
+        try {
+            epochSecond();
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decodes the timestamp of the last parsed line with a {@link TimestampDecoder},
+     * without creating a string or a {@link LocalDateTime} for common values.
+     *
+     * @return the timestamp in seconds since the epoch, reading the local time as UTC
+     * @throws DateTimeParseException if the timestamp is not valid
+     */
+    public long epochSecond() {
+        if (!timestampDecoded) {
+            epochSecond = decoder.decode(buffer, timestampStart, timestampEnd);
+            timestampDecoded = true;
+        }
+        return epochSecond;
+    }
+
+    /**
+     * Returns the timestamp field of the last parsed line.
+     *
+     * @return the timestamp text
+     */
+    public String timestamp() {
+        return decode(timestampStart, timestampEnd);
+    }
+
+    /**
+     * Returns the level field of the last parsed line.
+     *
+     * @return the log level text
+     */
+    public String level() {
+        return decode(levelStart, levelEnd);
+    }
+
+    /**
+     * Returns the id of the level field of the last parsed line,
+     * interning it in the given table without creating a string for known values.
+     *
+     * @param levels the dictionary of levels
+     * @return the level id
+     */
+    public int level(SymbolTable levels) {
+        return levels.intern(buffer, levelStart, levelEnd);
+    }
+
+    /**
+     * Returns the source field of the last parsed line.
+     *
+     * @return the log source text
+     */
+    public String source() {
+        return decode(sourceStart, sourceEnd);
+    }
+
+    /**
+     * Returns the id of the source field of the last parsed line,
+     * interning it in the given table without creating a string for known values.
+     *
+     * @param sources the dictionary of sources
+     * @return the source id
+     */
+    public int source(SymbolTable sources) {
+        return sources.intern(buffer, sourceStart, sourceEnd);
+    }
+
+    /**
+     * Returns where the source field of the last parsed line starts in the buffer.
+     *
+     * @return the index of the first byte of the source
+     */
+    public int sourceStart() {
+        return sourceStart;
+    }
+
+    /**
+     * Returns where the source field of the last parsed line ends in the buffer.
+     *
+     * @return the index right after the last byte of the source
+     */
+    public int sourceEnd() {
+        return sourceEnd;
+    }
+
+    /**
+     * Returns the message field of the last parsed line.
+     *
+     * @return the message text
+     */
+    public String message() {
+        return decode(messageStart, messageEnd);
+    }
+
+    /**
+     * Returns where the message field of the last parsed line starts in the buffer.
+     *
+     * @return the index of the first byte of the message
+     */
+    public int messageStart() {
+        return messageStart;
+    }
+
+    /**
+     * Returns where the message field of the last parsed line ends in the buffer.
+     *
+     * @return the index right after the last byte of the message
+     */
+    public int messageEnd() {
+        return messageEnd;
+    }
+
+    private String decode(int from, int to) {
+        return decode(buffer, from, to);
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of {@code buffer} between two absolute indexes,
+     * copying through an internal scratch array when the buffer is not array-backed.
+     *
+     * @param buffer the buffer holding the bytes
+     * @param from   the index of the first byte (inclusive)
+     * @param to     the index right after the last byte (exclusive)
+     * @return the decoded string
+     */
+    public String decode(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + from, length, StandardCharsets.UTF_8);
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(from, scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,731 @@
+package processing;
+
+import analysis.AnalyzerFactory;
+import analysis.LogAnalyzer;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Processes log files in three stages running on separate threads:
+ * <ol>
+ *   <li>readers read (or inflate) the files into large {@link ByteBatch}es of complete lines,</li>
+ *   <li>parsers turn each byte batch into an {@link EntryBatch},</li>
+ *   <li>analyzer workers feed the entry batches to partials of the analyzers through a
+ *       {@link BatchAnalyzer}, and merge them whenever they run out of batches.</li>
+ * </ol>
+ * Stages are connected by bounded {@link ArrayBlockingQueue} rings. The batches are
+ * allocated once and recycled through a ring of free batches, so a stage that runs
+ * ahead blocks until a later stage hands a batch back, and memory stays bounded by
+ * the ring sizes whatever the size of the input.
+ * <p>
+ * Readers run either on a fixed pool or on one virtual thread per submitted job.
+ * The fixed pool takes the largest pending job first, so that a big file submitted
+ * among many small ones does not end up being read last.
+ * Virtual threads suit directories of many small files, where readers spend most of
+ * their time blocked on opening files; the number of files open at once is capped
+ * by a semaphore in both modes.
+ * <p>
+ * Every batch carries its position within its log, so the anomaly segments of a
+ * log are ordered correctly even though batches are analyzed in any order.
+ * Work is submitted as {@link Job}s, which can be waited for individually; the
+ * pipeline is stopped by {@link #close()} once all submitted jobs are done. A batch
+ * that cannot be parsed or analyzed fails its job, which keeps the exception for the
+ * caller to report (see {@link Job#getError()}).
+ * <p>
+ * Given {@link RunMetrics}, the stages time their work and count what passes through
+ * them once per batch; without, they only check that the metrics are null. Malformed
+ * lines are handed to a {@link QuarantineSink}, if one is given.
+ */
+public class LogPipeline implements Closeable {
+
+    /**
+     * A unit of submitted work: a chunk of a log file, a compressed file or a segment file.
+     * It is done once all its lines have been read and every batch has been analyzed.
+     */
+    public static class Job {
+
+        final List<LogAnalyzer> analyzers;
+        final Set<Column> columns;
+        final LineFilter filter;
+        // Receives the samples of every line read, if the file is being indexed
+        final TimeIndex.Builder index;
+        private boolean reading = true;
+        private int pendingBatches;
+        private boolean failed;
+        // The first exception thrown while parsing or analyzing a batch of the job
+        private RuntimeException error;
+        private long finished;
+
+        Job(List<LogAnalyzer> analyzers, LineFilter filter, TimeIndex.Builder index) {
+            this.analyzers = analyzers;
+            this.columns = AnalyzerFactory.requiredColumns(analyzers);
+            this.filter = filter;
+            this.index = index;
+        }
+
+        synchronized void batchQueued() {
+            pendingBatches++;
+        }
+
+        synchronized void batchDone(boolean ok) {
+            pendingBatches--;
+            failed |= !ok;
+            done();
+        }
+
+        synchronized void batchFailed(RuntimeException e) {
+            if (error == null) {
+                error = e;
+            }
+            batchDone(false);
+        }
+
+        synchronized void readDone(boolean ok) {
+            reading = false;
+            failed |= !ok;
+            done();
+        }
+
+        private void done() {
+            if (!reading && pendingBatches == 0) {
+                finished = System.nanoTime();
+            }
+            notifyAll();
+        }
+
+        /**
+         * Waits until the job is done.
+         *
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        public synchronized void await() throws InterruptedException {
+            while (reading || pendingBatches > 0) {
+                wait();
+            }
+        }
+
+        /**
+         * Returns whether every line of the job reached the analyzers.
+         *
+         * @return true if the job is done and nothing failed
+         */
+        public synchronized boolean isComplete() {
+            return !reading && pendingBatches == 0 && !failed;
+        }
+
+        /**
+         * Returns whether some lines of the job were lost, because they could not be read,
+         * parsed or analyzed.
+         *
+         * @return true if something failed, even if the job is not done yet
+         */
+        public synchronized boolean hasFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns what went wrong while parsing or analyzing the batches of the job.
+         *
+         * @return the first exception thrown by the parser or analyzer stage, or null
+         */
+        public synchronized RuntimeException getError() {
+            return error;
+        }
+
+        /**
+         * Returns when the job was done.
+         *
+         * @return the {@link System#nanoTime()} at which the job was done, or 0 if it is not done
+         */
+        public synchronized long getFinishTime() {
+            return finished;
+        }
+    }
+
+    /**
+     * A submitted read, ordered by size (largest first) and then by submission order.
+     */
+    private static class ReadTask implements Runnable, Comparable<ReadTask> {
+        final long size;
+        final long sequence;
+        final Runnable read;
+
+        ReadTask(long size, long sequence, Runnable read) {
+            this.size = size;
+            this.sequence = sequence;
+            this.read = read;
+        }
+
+        @Override
+        public void run() {
+            read.run();
+        }
+
+        @Override
+        public int compareTo(ReadTask other) {
+            int bySize = Long.compare(other.size, size);
+            return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * An entry batch on its way to the analyzer workers, with the job it belongs to.
+     */
+    private static class ParsedBatch {
+        final EntryBatch entries;
+        Job job;
+
+        ParsedBatch(int capacity) {
+            entries = new EntryBatch(capacity);
+        }
+    }
+
+    /**
+     * The partials an analyzer worker collects into for one list of analyzers, and the
+     * job of each batch analyzed into them since they were created.
+     */
+    private static class WorkerPartials {
+        final BatchAnalyzer analyzer;
+        final List<Job> jobs = new ArrayList<>();
+
+        WorkerPartials(BatchAnalyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+    }
+
+    // Sent through the rings to stop the parser and analyzer threads
+    private static final ByteBatch END_OF_BYTES = new ByteBatch(1);
+    private static final ParsedBatch END_OF_ENTRIES = new ParsedBatch(1);
+    // The lists of analyzers a worker collects into at once, such as one list per file
+    // when the results of each file are kept apart; the partials are merged beyond that
+    private static final int MAX_WORKER_PARTIALS = 16;
+
+    private final String inputMode;
+    private final int batchSize;
+    private final QuarantineSink quarantine;
+
+    // The metrics and the stage times, all null without metrics
+    private final RunMetrics metrics;
+    private final LongAdder openTime;
+    private final LongAdder readTime;
+    private final LongAdder parseTime;
+
+    private final ExecutorService readers;
+    private final AtomicLong submitted = new AtomicLong();
+    private final Semaphore openFiles;
+    // A compressed reader holds one batch while it waits for the next
+    private final Semaphore inflaters;
+    private final List<Thread> parsers = new ArrayList<>();
+    private final List<Thread> analyzerWorkers = new ArrayList<>();
+
+    private final BlockingQueue<ByteBatch> freeBytes;
+    private final BlockingQueue<ByteBatch> fullBytes;
+    private final BlockingQueue<ParsedBatch> freeEntries;
+    private final BlockingQueue<ParsedBatch> fullEntries;
+
+    /**
+     * Creates the rings and starts the stage threads, with a fixed pool of readers.
+     *
+     * @param readerThreads   the number of threads reading files
+     * @param parserThreads   the number of threads parsing byte batches
+     * @param analyzerThreads the number of threads feeding entry batches to the analyzers
+     * @param readQueueSize   the number of byte batches between readers and parsers
+     * @param parseQueueSize  the number of entry batches between parsers and analyzer workers
+     * @param batchSize       the size of a byte batch in bytes
+     * @param inputMode       the input mode used to read plain files (STREAM, CHANNEL or MMAP)
+     */
+    public LogPipeline(int readerThreads, int parserThreads, int analyzerThreads,
+                       int readQueueSize, int parseQueueSize, int batchSize, String inputMode) {
+        this(readerThreads, false, readerThreads, parserThreads, analyzerThreads,
+                readQueueSize, parseQueueSize, batchSize, inputMode);
+    }
+
+    /**
+     * Creates the rings and starts the stage threads.
+     *
+     * @param readerThreads   the number of threads reading files, if not virtual
+     * @param virtualReaders  whether each job is read on its own virtual thread
+     * @param maxOpenFiles    the maximum number of files read at the same time
+     * @param parserThreads   the number of threads parsing byte batches
+     * @param analyzerThreads the number of threads feeding entry batches to the analyzers
+     * @param readQueueSize   the number of byte batches between readers and parsers
+     * @param parseQueueSize  the number of entry batches between parsers and analyzer workers
+     * @param batchSize       the size of a byte batch in bytes
+     * @param inputMode       the input mode used to read plain files (STREAM, CHANNEL or MMAP)
+     */
+    public LogPipeline(int readerThreads, boolean virtualReaders, int maxOpenFiles,
+                       int parserThreads, int analyzerThreads,
+                       int readQueueSize, int parseQueueSize, int batchSize, String inputMode) {
+        this(readerThreads, virtualReaders, maxOpenFiles, parserThreads, analyzerThreads,
+                readQueueSize, parseQueueSize, batchSize, inputMode, null, null);
+    }
+
+    /**
+     * Creates the rings and starts the stage threads, recording what the stages do
+     * into run metrics and sending malformed lines to a quarantine sink.
+     *
+     * @param readerThreads   the number of threads reading files, if not virtual
+     * @param virtualReaders  whether each job is read on its own virtual thread
+     * @param maxOpenFiles    the maximum number of files read at the same time
+     * @param parserThreads   the number of threads parsing byte batches
+     * @param analyzerThreads the number of threads feeding entry batches to the analyzers
+     * @param readQueueSize   the number of byte batches between readers and parsers
+     * @param parseQueueSize  the number of entry batches between parsers and analyzer workers
+     * @param batchSize       the size of a byte batch in bytes
+     * @param inputMode       the input mode used to read plain files (STREAM, CHANNEL or MMAP)
+     * @param metrics         the metrics of the run, or null to record nothing
+     * @param quarantine      the sink receiving malformed lines, or null to only count them
+     */
+    public LogPipeline(int readerThreads, boolean virtualReaders, int maxOpenFiles,
+                       int parserThreads, int analyzerThreads,
+                       int readQueueSize, int parseQueueSize, int batchSize, String inputMode,
+                       RunMetrics metrics, QuarantineSink quarantine) {
+        this.inputMode = inputMode;
+        this.batchSize = batchSize;
+        this.quarantine = quarantine;
+        this.metrics = metrics;
+        this.openTime = metrics == null ? null : metrics.stageTime(RunMetrics.OPEN);
+        this.readTime = metrics == null ? null : metrics.stageTime(RunMetrics.READ);
+        this.parseTime = metrics == null ? null : metrics.stageTime(RunMetrics.PARSE);
+        readerThreads = Math.max(readerThreads, 1);
+        parserThreads = Math.max(parserThreads, 1);
+        analyzerThreads = Math.max(analyzerThreads, 1);
+        readQueueSize = Math.max(readQueueSize, 2);
+        parseQueueSize = Math.max(parseQueueSize, 1);
+
+        openFiles = new Semaphore(Math.max(maxOpenFiles, 1));
+        inflaters = new Semaphore(readQueueSize / 2);
+
+        freeBytes = new ArrayBlockingQueue<>(readQueueSize);
+        fullBytes = new ArrayBlockingQueue<>(readQueueSize + parserThreads);
+        for (int i = 0; i < readQueueSize; i++) {
+            freeBytes.add(new ByteBatch(batchSize));
+        }
+
+        freeEntries = new ArrayBlockingQueue<>(parseQueueSize);
+        fullEntries = new ArrayBlockingQueue<>(parseQueueSize + analyzerThreads);
+        for (int i = 0; i < parseQueueSize; i++) {
+            // Lines are rarely shorter than 64 bytes
+            freeEntries.add(new ParsedBatch(batchSize / 64));
+        }
+        if (metrics != null) {
+            metrics.watch(fullBytes, fullEntries);
+        }
+
+        readers = virtualReaders
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : new ThreadPoolExecutor(readerThreads, readerThreads, 0, TimeUnit.MILLISECONDS,
+                        new PriorityBlockingQueue<>());
+        for (int i = 0; i < parserThreads; i++) {
+            parsers.add(start("log-parser-" + i, this::parse));
+        }
+        for (int i = 0; i < analyzerThreads; i++) {
+            analyzerWorkers.add(start("log-analyzer-" + i, this::analyze));
+        }
+    }
+
+    private static Thread start(String name, Runnable stage) {
+        Thread thread = new Thread(stage, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Submits a newline-aligned chunk of a plain log file, reported under the file's name.
+     *
+     * @param chunk     the range to process
+     * @param analyzers the analyzers receiving its entries
+     * @return the job, to wait for its completion
+     */
+    public Job submit(FileChunk chunk, List<LogAnalyzer> analyzers) {
+        return submit(chunk, chunk.getFile().getName(), analyzers);
+    }
+
+    /**
+     * Submits a newline-aligned chunk of a plain log file.
+     *
+     * @param chunk     the range to process
+     * @param name      the name the entries are reported under
+     * @param analyzers the analyzers receiving its entries
+     * @return the job, to wait for its completion
+     */
+    public Job submit(FileChunk chunk, String name, List<LogAnalyzer> analyzers) {
+        return submit(chunk, name, analyzers, LineFilter.ALL, null);
+    }
+
+    /**
+     * Submits a newline-aligned chunk of a plain log file, keeping only the entries
+     * accepted by a filter and optionally sampling every line for a {@link TimeIndex}.
+     *
+     * @param chunk     the range to process
+     * @param name      the name the entries are reported under
+     * @param analyzers the analyzers receiving its entries
+     * @param filter    the entries to analyze
+     * @param index     the index being built for the file, or null
+     * @return the job, to wait for its completion
+     */
+    public Job submit(FileChunk chunk, String name, List<LogAnalyzer> analyzers,
+                      LineFilter filter, TimeIndex.Builder index) {
+        Job job = new Job(analyzers, filter, index);
+        execute(chunk.getEnd() - chunk.getStart(), () -> readChunk(job, chunk, name));
+        return job;
+    }
+
+    /**
+     * Submits a compressed log, see {@link CompressedLogReader}.
+     *
+     * @param file      the .log.gz or .zip file
+     * @param name      the name the entries are reported under
+     * @param analyzers the analyzers receiving its entries
+     * @param filter    the entries to analyze
+     * @return the job, to wait for its completion
+     */
+    public Job submitCompressed(File file, String name, List<LogAnalyzer> analyzers, LineFilter filter) {
+        Job job = new Job(analyzers, filter, null);
+        execute(file.length(), () -> readCompressed(job, file, name));
+        return job;
+    }
+
+    /**
+     * Submits a segment file, see {@link SegmentReader}. Its blocks go straight to the
+     * analyzer workers, without being parsed; the entries are reported under the name
+     * of the log the segment was converted from.
+     *
+     * @param file      the segment file
+     * @param name      the name of the segment file, for error messages
+     * @param analyzers the analyzers receiving its entries
+     * @param filter    the entries to analyze
+     * @return the job, to wait for its completion
+     */
+    public Job submitSegment(File file, String name, List<LogAnalyzer> analyzers, LineFilter filter) {
+        Job job = new Job(analyzers, filter, null);
+        execute(file.length(), () -> readSegment(job, file, name));
+        return job;
+    }
+
+    private void execute(long size, Runnable read) {
+        if (metrics == null) {
+            readers.execute(new ReadTask(size, submitted.getAndIncrement(), read));
+            return;
+        }
+        metrics.readQueued();
+        readers.execute(new ReadTask(size, submitted.getAndIncrement(), () -> {
+            metrics.readStarted();
+            read.run();
+        }));
+    }
+
+    /**
+     * Waits for all submitted jobs to be done, then stops the stage threads.
+     */
+    @Override
+    public void close() {
+        try {
+            readers.shutdown();
+            readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < parsers.size(); i++) {
+                fullBytes.put(END_OF_BYTES);
+            }
+            for (Thread parser : parsers) {
+                parser.join();
+            }
+            for (int i = 0; i < analyzerWorkers.size(); i++) {
+                fullEntries.put(END_OF_ENTRIES);
+            }
+            for (Thread worker : analyzerWorkers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes an empty byte batch, waiting for the parsers to release one if needed.
+     */
+    ByteBatch takeBatch() throws InterruptedException {
+        return freeBytes.take();
+    }
+
+    /**
+     * Returns a byte batch that is not going to be emitted.
+     */
+    void releaseBatch(ByteBatch batch) {
+        freeBytes.add(batch);
+    }
+
+    /**
+     * Hands a filled byte batch over to the parsers.
+     */
+    void emit(Job job, String name, long position, ByteBatch batch) throws InterruptedException {
+        batch.job = job;
+        batch.name = name;
+        batch.position = position;
+        job.batchQueued();
+        // The batch may be parsed and recycled as soon as it is queued
+        int length = batch.length;
+        fullBytes.put(batch);
+        if (metrics != null) {
+            metrics.addBytes(length);
+            metrics.byteQueueDepth(fullBytes.size());
+        }
+    }
+
+    /**
+     * The reader stage for a plain file: copies the complete lines of each buffer
+     * read by a {@link LogInput} into a byte batch.
+     */
+    private void readChunk(Job job, FileChunk chunk, String name) {
+        boolean ok = false;
+
+        try {
+            openFiles.acquire();
+            long start = metrics == null ? 0 : System.nanoTime();
+            try (LogInput input = LogInput.open(inputMode, chunk, batchSize)) {
+                long position = chunk.getPosition();
+                int consumed = 0;
+                if (metrics != null) {
+                    openTime.add(System.nanoTime() - start);
+                }
+                while (fill(input, consumed)) {
+                    ByteBuffer buffer = input.buffer();
+                    consumed = ByteBatch.lineEnd(buffer, buffer.limit(), input.isAtEnd());
+                    if (consumed > 0) {
+                        ByteBatch batch = takeBatch();
+                        batch.copyFrom(buffer, 0, consumed);
+                        emit(job, name, position, batch);
+                        position += consumed;
+                    }
+                }
+                ok = true;
+            } finally {
+                openFiles.release();
+            }
+        } catch (IOException e) {
+            System.out.println("error processing file " + name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            job.readDone(ok);
+        }
+    }
+
+    private boolean fill(LogInput input, int consumed) throws IOException {
+        if (metrics == null) {
+            return input.fill(consumed);
+        }
+        long start = System.nanoTime();
+        try {
+            return input.fill(consumed);
+        } finally {
+            readTime.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * The reader stage for a compressed file, see {@link CompressedLogReader}.
+     */
+    private void readCompressed(Job job, File file, String name) {
+        try {
+            inflaters.acquire();
+            try {
+                openFiles.acquire();
+                try {
+                    new CompressedLogReader(file, name, this, job).run();
+                } finally {
+                    openFiles.release();
+                }
+            } finally {
+                inflaters.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.readDone(false);
+        }
+    }
+
+    /**
+     * The reader stage for a segment file: decodes each block into an entry batch
+     * and hands it over to the analyzer workers.
+     */
+    private void readSegment(Job job, File file, String name) {
+        boolean ok = false;
+
+        try {
+            openFiles.acquire();
+            try (SegmentReader reader = new SegmentReader(file, job.columns, job.filter)) {
+                while (true) {
+                    ParsedBatch parsed = freeEntries.take();
+                    try {
+                        if (!reader.next(parsed.entries)) {
+                            break;
+                        }
+                        parsed.job = job;
+                        job.batchQueued();
+                        fullEntries.put(parsed);
+                        parsed = null;
+                        if (metrics != null) {
+                            metrics.entryQueueDepth(fullEntries.size());
+                        }
+                    } finally {
+                        if (parsed != null) {
+                            freeEntries.add(parsed);
+                        }
+                    }
+                }
+                ok = true;
+            } finally {
+                openFiles.release();
+            }
+        } catch (IOException e) {
+            System.out.println("error processing file " + name);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            job.readDone(ok);
+        }
+    }
+
+    /**
+     * The parser stage.
+     */
+    private void parse() {
+        BatchParser parser = new BatchParser(quarantine);
+        TimeIndex.Sampler sampler = new TimeIndex.Sampler();
+        try {
+            while (true) {
+                ByteBatch bytes = fullBytes.take();
+                if (bytes == END_OF_BYTES) {
+                    return;
+                }
+
+                Job job = bytes.job;
+                ParsedBatch parsed = freeEntries.take();
+                parsed.entries.reset(bytes.name, bytes.position, bytes.position + bytes.length);
+                long start = metrics == null ? 0 : System.nanoTime();
+                try {
+                    if (job.index == null) {
+                        parser.parse(bytes.buffer, 0, bytes.length, parsed.entries, job.columns, job.filter, null);
+                    } else {
+                        sampler.clear();
+                        parser.parse(bytes.buffer, 0, bytes.length, parsed.entries, job.columns, job.filter, sampler);
+                        job.index.add(sampler);
+                    }
+                    if (metrics != null) {
+                        parseTime.add(System.nanoTime() - start);
+                        metrics.addLines(parser.lines(), parser.malformed());
+                    }
+                } catch (RuntimeException e) {
+                    freeEntries.add(parsed);
+                    job.batchFailed(e);
+                    parsed = null;
+                } finally {
+                    bytes.job = null;
+                    freeBytes.add(bytes);
+                }
+
+                if (parsed != null) {
+                    parsed.job = job;
+                    fullEntries.put(parsed);
+                    if (metrics != null) {
+                        metrics.entryQueueDepth(fullEntries.size());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The analyzer stage.
+     * <p>
+     * A worker analyzes batches into partials of its own, one set per list of analyzers,
+     * and merges them into the shared analyzers only when it runs out of batches, when
+     * it has collected into too many lists at once, or when the pipeline stops. A batch
+     * only counts as done for its job once it has been merged, so that the results of a
+     * job are in the shared analyzers when {@link Job#await()} returns.
+     */
+    private void analyze() {
+        Map<List<LogAnalyzer>, WorkerPartials> partials = new IdentityHashMap<>();
+        try {
+            while (true) {
+                ParsedBatch parsed = fullEntries.poll();
+                if (parsed == null) {
+                    merge(partials);
+                    parsed = fullEntries.take();
+                }
+                if (parsed == END_OF_ENTRIES) {
+                    merge(partials);
+                    return;
+                }
+
+                Job job = parsed.job;
+                WorkerPartials worker = partials.get(job.analyzers);
+                if (worker == null) {
+                    if (partials.size() == MAX_WORKER_PARTIALS) {
+                        merge(partials);
+                    }
+                    worker = new WorkerPartials(new BatchAnalyzer(job.analyzers, metrics));
+                    partials.put(job.analyzers, worker);
+                }
+                try {
+                    worker.analyzer.analyze(parsed.entries);
+                    worker.jobs.add(job);
+                } catch (RuntimeException e) {
+                    job.batchFailed(e);
+                } finally {
+                    parsed.job = null;
+                    freeEntries.add(parsed);
+                }
+            }
+        } catch (InterruptedException e) {
+            merge(partials);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Merges the partials of an analyzer worker into the shared analyzers, then marks
+     * the batches analyzed into them as done.
+     */
+    private static void merge(Map<List<LogAnalyzer>, WorkerPartials> partials) {
+        for (WorkerPartials worker : partials.values()) {
+            RuntimeException error = null;
+            try {
+                worker.analyzer.finish();
+            } catch (RuntimeException e) {
+                error = e;
+            }
+            for (Job job : worker.jobs) {
+                if (error == null) {
+                    job.batchDone(true);
+                } else {
+                    job.batchFailed(error);
+                }
+            }
+        }
+        partials.clear();
+    }
+}
@@ -0,0 +1,93 @@
+package processing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link LogInput} that maps the file into memory in read-only windows.
+ * <p>
+ * Instead of copying a partial line to the front of the buffer, each
+ * {@link #fill(int)} returns a window that starts at the first unconsumed byte.
+ * A window is doubled when a single line does not fit in it.
+ * <p>
+ * Windows are slices of a larger mapped region, so a new mapping is only created
+ * when a window would go past the end of the current region, about once every
+ * {@value #REGION_SIZE} bytes. The JDK offers no way to unmap a
+ * {@link MappedByteBuffer}: a region is released when the garbage collector finds it
+ * unreachable. An input only keeps its current region, and drops it when closed, so
+ * the address space it holds is bounded by one region (or one window, if a line is
+ * longer) plus the regions not collected yet.
+ */
+public class MappedLogInput extends LogInput {
+
+    // The size of a mapped region, unless a window or the rest of the range is smaller
+    private static final int REGION_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private int windowSize;
+    private long windowStart;
+
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    /**
+     * Opens a read-only channel for the file. Nothing is mapped until the first fill.
+     *
+     * @param file       the log file
+     * @param start      the offset of the first byte to read
+     * @param end        the offset right after the last byte to read
+     * @param windowSize the size of each window in bytes
+     * @throws IOException if the file cannot be opened
+     */
+    public MappedLogInput(File file, long start, long end, int windowSize) throws IOException {
+        super(start, end);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.windowSize = windowSize;
+        this.windowStart = start;
+        this.buffer = ByteBuffer.allocate(0);
+    }
+
+    @Override
+    public boolean fill(int consumed) throws IOException {
+        if (atEnd) {
+            return false;
+        }
+
+        if (consumed == 0 && buffer.limit() == windowSize) {
+            windowSize = (int) Math.min((long) windowSize * 2, Integer.MAX_VALUE);
+        }
+        windowStart += consumed;
+
+        // The file may have been truncated since the chunk was planned
+        long available = Math.min(end, channel.size());
+        int size = (int) Math.min(windowSize, available - windowStart);
+        if (size <= 0) {
+            atEnd = true;
+            buffer = ByteBuffer.allocate(0);
+            region = null;
+            return true;
+        }
+
+        if (region == null || windowStart + size > regionStart + region.capacity()) {
+            regionStart = windowStart;
+            long regionSize = Math.min(Math.max(size, REGION_SIZE), available - windowStart);
+            region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+        }
+
+        buffer = region.slice((int) (windowStart - regionStart), size);
+        position = windowStart + size;
+        atEnd = position >= available;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        region = null;
+        buffer = ByteBuffer.allocate(0);
+        channel.close();
+    }
+}
@@ -0,0 +1,226 @@
+package processing;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives the lines the parsers reject as malformed and writes them to a quarantine
+ * file on a thread of its own, so that a corrupted or mixed-format log does not turn
+ * every parser thread into a writer to the console.
+ * <p>
+ * Parser threads hand a rejected line over with {@link #reject}, which never waits:
+ * the line is copied into a bounded queue, and when the queue is full it is only
+ * counted, so the quarantine file may miss lines when the parsers reject faster than
+ * they can be written. Each line is written as the name of its log, a tab, the
+ * position of the line in the log (in the decompressed data of a compressed log),
+ * a tab, and the raw bytes of the line followed by '\n'.
+ * <p>
+ * Instead of each line, the console gets a summary at most every
+ * {@code summaryIntervalSeconds}: the number of lines rejected since the last one and
+ * the first of them as a sample. A last summary is printed by {@link #close()}.
+ */
+public class QuarantineSink implements Closeable {
+
+    // The part of a sample line printed to the console
+    private static final int MAX_SAMPLE_LENGTH = 200;
+
+    /**
+     * A rejected line on its way to the writer thread.
+     */
+    private record Rejected(String name, long position, byte[] line) {
+    }
+
+    // Sent through the queue to stop the writer thread
+    private static final Rejected END = new Rejected("", 0, new byte[0]);
+
+    private final File file;
+    private final BlockingQueue<Rejected> queue;
+    private final long summaryInterval;
+    private final Thread writer;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private boolean closed;
+
+    // Used by the writer thread only
+    private OutputStream out;
+    private Rejected sample;
+    private long summarized;
+
+    /**
+     * Opens the quarantine file and starts the writer thread. If the file cannot be
+     * opened, an error is printed and rejected lines are only counted and summarized.
+     *
+     * @param file                   the quarantine file, replaced if it exists, or null
+     *                               to only count and summarize rejected lines
+     * @param queueSize              the number of lines waiting to be written before
+     *                               further lines are dropped
+     * @param summaryIntervalSeconds the shortest time between two summaries on the console
+     */
+    public QuarantineSink(File file, int queueSize, int summaryIntervalSeconds) {
+        this.file = file;
+        this.queue = new ArrayBlockingQueue<>(Math.max(queueSize, 1));
+        this.summaryInterval = TimeUnit.SECONDS.toNanos(Math.max(summaryIntervalSeconds, 1));
+        if (file != null) {
+            try {
+                out = new BufferedOutputStream(new FileOutputStream(file));
+            } catch (IOException e) {
+                System.out.println("error opening quarantine file " + file.getPath());
+            }
+        }
+        writer = new Thread(this::write, "log-quarantine");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Hands a rejected line over to the writer thread, without waiting.
+     *
+     * @param name     the name of the log the line belongs to
+     * @param position the position of the line in the log
+     * @param buffer   the buffer holding the line
+     * @param from     the index of the first byte of the line
+     * @param to       the index right after the last byte of the line
+     */
+    public void reject(String name, long position, ByteBuffer buffer, int from, int to) {
+        rejected.increment();
+        // Checked first, so that a full queue costs no copy
+        if (queue.remainingCapacity() == 0) {
+            dropped.increment();
+            return;
+        }
+        byte[] line = new byte[to - from];
+        buffer.get(from, line);
+        if (!queue.offer(new Rejected(name, position, line))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Returns the number of lines rejected so far.
+     *
+     * @return the number of rejected lines, including those not written
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Writes the lines still queued, closes the quarantine file and prints a last summary.
+     * Closing again has no effect. No line may be rejected once the sink is closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The writer thread.
+     */
+    private void write() {
+        long nextSummary = System.nanoTime() + summaryInterval;
+        try {
+            while (true) {
+                Rejected line = queue.poll(Math.max(nextSummary - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                if (line == END) {
+                    break;
+                }
+                if (line != null) {
+                    if (sample == null) {
+                        sample = line;
+                    }
+                    write(line);
+                }
+                if (System.nanoTime() - nextSummary >= 0) {
+                    summarize();
+                    nextSummary = System.nanoTime() + summaryInterval;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        summarize();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.out.println("error writing quarantine file " + file.getPath());
+            }
+        }
+    }
+
+    private void write(Rejected line) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.write((line.name() + "\t" + line.position() + "\t").getBytes(StandardCharsets.UTF_8));
+            out.write(line.line());
+            out.write('\n');
+        } catch (IOException e) {
+            System.out.println("error writing quarantine file " + file.getPath());
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // Already reported
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Prints the number of lines rejected since the last summary, if any, with a sample.
+     */
+    private void summarize() {
+        long total = rejected.sum();
+        if (total == summarized) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder()
+                .append(total - summarized).append(" malformed lines rejected (").append(total).append(" in total");
+        long notWritten = dropped.sum();
+        if (out != null) {
+            summary.append(", ").append(notWritten).append(" not written to ").append(file.getPath());
+        }
+        summary.append(')');
+        if (sample != null) {
+            String line = new String(sample.line(), StandardCharsets.UTF_8);
+            if (line.length() > MAX_SAMPLE_LENGTH) {
+                line = line.substring(0, MAX_SAMPLE_LENGTH) + "...";
+            }
+            summary.append(", e.g. ").append(sample.name()).append(" at ").append(sample.position())
+                    .append(": ").append(line);
+        }
+        System.out.println(summary);
+
+        summarized = total;
+        sample = null;
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("error writing quarantine file " + file.getPath());
+            }
+        }
+    }
+}
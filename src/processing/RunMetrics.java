@@ -0,0 +1,271 @@
+package processing;
+
+import analysis.LogAnalyzer;
+import analysis.QuantileSketch;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timings of a run: bytes and lines through the parsers, parse failures,
+ * the time spent in each stage and in each analyzer, the time each file took, and the
+ * depth of the queues between the stages of a {@link LogPipeline}.
+ * <p>
+ * Counters are {@link LongAdder}s, so the stage threads add to them without contending,
+ * and they are only updated once per batch or per file, never per line. A pipeline
+ * created without metrics does none of this work. File times go into a
+ * {@link QuantileSketch} with an accuracy of 1%.
+ * <p>
+ * The metrics can be watched during the run through JMX (see {@link RunMetricsMXBean})
+ * and are written to the {@code RUN_STATS} section of the report.
+ */
+public class RunMetrics implements RunMetricsMXBean {
+
+    /**
+     * The name the metrics are registered under with the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "loganalyzer:type=RunMetrics";
+
+    /** Opening plain log files. */
+    public static final String OPEN = "open";
+    /** Reading plain log files into byte batches, not counting waits for a free batch. */
+    public static final String READ = "read";
+    /** Parsing byte batches into entry batches. */
+    public static final String PARSE = "parse";
+    /** Resolving the anomalies of the {@code AnomalyDetector}. */
+    public static final String DETECT_ANOMALIES = "detect_anomalies";
+    /** Writing the report. */
+    public static final String SAVE_REPORT = "save_report";
+
+    private static final double FILE_LATENCY_ACCURACY = 0.01;
+
+    private final long started = System.nanoTime();
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder failedFiles = new LongAdder();
+    private final Map<String, LongAdder> stages = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> analyzers = new ConcurrentHashMap<>();
+
+    // In milliseconds, guarded by this
+    private final QuantileSketch fileLatencies = new QuantileSketch(FILE_LATENCY_ACCURACY);
+
+    private final AtomicInteger pendingReads = new AtomicInteger();
+    private final AtomicInteger maxPendingReads = new AtomicInteger();
+    private final AtomicInteger maxByteQueue = new AtomicInteger();
+    private final AtomicInteger maxEntryQueue = new AtomicInteger();
+    private volatile BlockingQueue<?> byteQueue;
+    private volatile BlockingQueue<?> entryQueue;
+
+    /**
+     * Registers the metrics with the platform MBean server. A failure is reported
+     * and otherwise ignored, since the metrics are still collected.
+     */
+    public void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.out.println("error registering run metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were registered.
+     */
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Not registered
+        }
+    }
+
+    /**
+     * Adds to the time spent in a stage.
+     *
+     * @param stage the stage, such as {@link #DETECT_ANOMALIES}
+     * @param nanos the time spent, in nanoseconds
+     */
+    public void addTime(String stage, long nanos) {
+        stageTime(stage).add(nanos);
+    }
+
+    /**
+     * Records the time a file took, from its submission until all its lines were analyzed.
+     *
+     * @param nanos the time taken, in nanoseconds
+     */
+    public synchronized void fileDone(long nanos) {
+        fileLatencies.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    /**
+     * Counts a file that lost lines because they could not be read, parsed or analyzed.
+     */
+    public void fileFailed() {
+        failedFiles.increment();
+    }
+
+    LongAdder stageTime(String stage) {
+        return stages.computeIfAbsent(stage, name -> new LongAdder());
+    }
+
+    LongAdder analyzerTime(LogAnalyzer analyzer) {
+        return analyzers.computeIfAbsent(analyzer.getClass().getSimpleName(), name -> new LongAdder());
+    }
+
+    void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    void addLines(int count, int malformed) {
+        lines.add(count);
+        failures.add(malformed);
+    }
+
+    /**
+     * Sets the queues between the stages of the running pipeline.
+     */
+    void watch(BlockingQueue<?> byteQueue, BlockingQueue<?> entryQueue) {
+        this.byteQueue = byteQueue;
+        this.entryQueue = entryQueue;
+    }
+
+    void readQueued() {
+        maxPendingReads.accumulateAndGet(pendingReads.incrementAndGet(), Math::max);
+    }
+
+    void readStarted() {
+        pendingReads.decrementAndGet();
+    }
+
+    void byteQueueDepth(int depth) {
+        maxByteQueue.accumulateAndGet(depth, Math::max);
+    }
+
+    void entryQueueDepth(int depth) {
+        maxEntryQueue.accumulateAndGet(depth, Math::max);
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+    }
+
+    @Override
+    public synchronized long getFilesRead() {
+        return fileLatencies.count();
+    }
+
+    @Override
+    public long getFilesFailed() {
+        return failedFiles.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getLinesParsed() {
+        return lines.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        return perSecond(bytes.sum());
+    }
+
+    @Override
+    public long getLinesPerSecond() {
+        return perSecond(lines.sum());
+    }
+
+    private long perSecond(long count) {
+        long elapsed = System.nanoTime() - started;
+        return elapsed <= 0 ? 0 : (long) (count * 1e9 / elapsed);
+    }
+
+    @Override
+    public Map<String, Long> getStageMillis() {
+        return millis(stages);
+    }
+
+    @Override
+    public Map<String, Long> getAnalyzerMillis() {
+        return millis(analyzers);
+    }
+
+    private static Map<String, Long> millis(Map<String, LongAdder> times) {
+        Map<String, Long> result = new TreeMap<>();
+        times.forEach((name, nanos) -> result.put(name, TimeUnit.NANOSECONDS.toMillis(nanos.sum())));
+        return result;
+    }
+
+    @Override
+    public synchronized long getFileLatencyP50Millis() {
+        return fileLatencies.quantile(0.5);
+    }
+
+    @Override
+    public synchronized long getFileLatencyP90Millis() {
+        return fileLatencies.quantile(0.9);
+    }
+
+    @Override
+    public synchronized long getFileLatencyP99Millis() {
+        return fileLatencies.quantile(0.99);
+    }
+
+    @Override
+    public synchronized long getFileLatencyMaxMillis() {
+        return fileLatencies.max();
+    }
+
+    @Override
+    public int getReadQueueDepth() {
+        return pendingReads.get();
+    }
+
+    @Override
+    public int getByteQueueDepth() {
+        BlockingQueue<?> queue = byteQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public int getEntryQueueDepth() {
+        BlockingQueue<?> queue = entryQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    @Override
+    public int getMaxReadQueueDepth() {
+        return maxPendingReads.get();
+    }
+
+    @Override
+    public int getMaxByteQueueDepth() {
+        return maxByteQueue.get();
+    }
+
+    @Override
+    public int getMaxEntryQueueDepth() {
+        return maxEntryQueue.get();
+    }
+}
@@ -0,0 +1,118 @@
+package processing;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link RunMetrics}, registered with the platform MBean
+ * server under {@value RunMetrics#OBJECT_NAME} while a run with metrics is in progress,
+ * so that it can be watched from JConsole or any other JMX client.
+ * <p>
+ * Times are summed over all threads, so a stage running on four threads for a second
+ * accounts for four seconds.
+ */
+public interface RunMetricsMXBean {
+
+    /**
+     * Returns the time since the run started.
+     */
+    long getElapsedMillis();
+
+    /**
+     * Returns the number of log files read completely, not counting those restored from the cache.
+     */
+    long getFilesRead();
+
+    /**
+     * Returns the number of log files some lines of which could not be read, parsed or analyzed.
+     */
+    long getFilesFailed();
+
+    /**
+     * Returns the number of bytes of log lines handed to the parsers, after decompression.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns the number of lines parsed, including malformed ones.
+     */
+    long getLinesParsed();
+
+    /**
+     * Returns the number of lines skipped because they are malformed or have an invalid timestamp.
+     */
+    long getParseFailures();
+
+    /**
+     * Returns the bytes read per second since the run started.
+     */
+    long getBytesPerSecond();
+
+    /**
+     * Returns the lines parsed per second since the run started.
+     */
+    long getLinesPerSecond();
+
+    /**
+     * Returns the time spent in each stage, in milliseconds.
+     *
+     * @return a map where the key is the stage, such as {@value RunMetrics#PARSE}
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * Returns the time spent in the {@code analyze} method of each analyzer, in milliseconds.
+     *
+     * @return a map where the key is the simple class name of the analyzer
+     */
+    Map<String, Long> getAnalyzerMillis();
+
+    /**
+     * Returns the median time from submitting a file to having analyzed all its lines.
+     */
+    long getFileLatencyP50Millis();
+
+    /**
+     * Returns the 90th percentile of the time from submitting a file to having analyzed all its lines.
+     */
+    long getFileLatencyP90Millis();
+
+    /**
+     * Returns the 99th percentile of the time from submitting a file to having analyzed all its lines.
+     */
+    long getFileLatencyP99Millis();
+
+    /**
+     * Returns the longest time from submitting a file to having analyzed all its lines.
+     */
+    long getFileLatencyMaxMillis();
+
+    /**
+     * Returns the number of submitted reads not yet started by a reader.
+     */
+    int getReadQueueDepth();
+
+    /**
+     * Returns the number of byte batches waiting for a parser.
+     */
+    int getByteQueueDepth();
+
+    /**
+     * Returns the number of entry batches waiting for an analyzer worker.
+     */
+    int getEntryQueueDepth();
+
+    /**
+     * Returns the largest number of submitted reads seen waiting for a reader.
+     */
+    int getMaxReadQueueDepth();
+
+    /**
+     * Returns the largest number of byte batches seen waiting for a parser.
+     */
+    int getMaxByteQueueDepth();
+
+    /**
+     * Returns the largest number of entry batches seen waiting for an analyzer worker.
+     */
+    int getMaxEntryQueueDepth();
+}
@@ -0,0 +1,369 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads the entries of a segment file written by {@link SegmentWriter}, one block per
+ * {@link EntryBatch}, with the positions they had in the original log.
+ * <p>
+ * Only the columns given when the reader is opened are filled; the others are -1 or
+ * empty, as for a {@link BatchParser}. Levels and sources are always decoded, as their
+ * dictionaries are needed by the next blocks, but sources are only interned into
+ * {@link SymbolTable#SOURCES} when their ids are requested or checked by the filter,
+ * and the message section is skipped
+ * unless messages are requested or checked by the {@link LineFilter}. Entries the
+ * filter rejects are dropped.
+ */
+public class SegmentReader implements Closeable {
+
+    private final DataInputStream in;
+    private final String name;
+    private final boolean levels;
+    private final boolean sources;
+    private final boolean sourceBytes;
+    private final boolean messages;
+    private final LineFilter filter;
+    private final LineFilter.Matcher matcher;
+    private final CRC32C crc = new CRC32C();
+
+    private byte[] payload = new byte[64 * 1024];
+    private int offset;
+    private int limit;
+
+    private long[] timestampColumn = new long[1024];
+    private int[] levelColumn = new int[1024];
+    private int[] sourceColumn = new int[1024];
+
+    // Index in the file's dictionary -> symbol id, source bytes and fingerprint, or message bytes.
+    // Source ids are -1 until interned.
+    private int[] levelIds = new int[16];
+    private int[] sourceIds = new int[16];
+    private byte[][] sourceNames = new byte[16][];
+    private long[] sourceHashes = new long[16];
+    private int levelCount;
+    private int sourceCount;
+    private final List<byte[]> messageDictionary = new ArrayList<>();
+
+    /**
+     * Opens a segment file and reads its header.
+     *
+     * @param file    the segment file
+     * @param columns the columns to fill
+     * @throws IOException if the file cannot be read or is not a segment file
+     */
+    public SegmentReader(File file, Set<Column> columns) throws IOException {
+        this(file, columns, LineFilter.ALL);
+    }
+
+    /**
+     * Opens a segment file and reads its header, keeping only the entries accepted by a filter.
+     *
+     * @param file    the segment file
+     * @param columns the columns to fill
+     * @param filter  the entries to read
+     * @throws IOException if the file cannot be read or is not a segment file
+     */
+    public SegmentReader(File file, Set<Column> columns, LineFilter filter) throws IOException {
+        this.filter = filter;
+        this.matcher = filter.matcher();
+        this.levels = columns.contains(Column.LEVEL);
+        this.sources = columns.contains(Column.SOURCE);
+        this.sourceBytes = columns.contains(Column.SOURCE_FINGERPRINT);
+        this.messages = columns.contains(Column.MESSAGE);
+
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != SegmentWriter.MAGIC) {
+                throw new IOException("not a segment file: " + file);
+            }
+            int version = in.readInt();
+            if (version != SegmentWriter.VERSION) {
+                throw new IOException("unsupported segment version " + version + ": " + file);
+            }
+            name = in.readUTF();
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the name the entries are reported under, i.e. the name of the original log.
+     *
+     * @return the name stored in the header
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Reads the name stored in the header of a segment file.
+     *
+     * @param file the segment file
+     * @return the name of the log the segment was converted from
+     * @throws IOException if the file cannot be read or is not a segment file
+     */
+    public static String readName(File file) throws IOException {
+        try (SegmentReader reader = new SegmentReader(file, Set.of())) {
+            return reader.getName();
+        }
+    }
+
+    /**
+     * Reads the next block into a batch.
+     *
+     * @param batch the batch to reset and fill
+     * @return false if the end of the file was reached
+     * @throws IOException if reading fails or the block is corrupt
+     */
+    public boolean next(EntryBatch batch) throws IOException {
+        long position;
+        try {
+            position = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        long endPosition = in.readLong();
+        int count = in.readInt();
+        int length = in.readInt();
+        int checksum = in.readInt();
+        if (count < 0 || length < 0) {
+            throw new IOException("corrupt segment block at position " + position);
+        }
+
+        if (length > payload.length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        in.readFully(payload, 0, length);
+        crc.reset();
+        crc.update(payload, 0, length);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("corrupt segment block at position " + position);
+        }
+
+        if (count > timestampColumn.length) {
+            int capacity = Math.max(count, timestampColumn.length * 2);
+            timestampColumn = new long[capacity];
+            levelColumn = new int[capacity];
+            sourceColumn = new int[capacity];
+        }
+        offset = 0;
+        limit = length;
+
+        int end = section();
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            long value = readVarLong();
+            timestamp += (value >>> 1) ^ -(value & 1);
+            timestampColumn[i] = timestamp;
+        }
+        checkEnd(end);
+
+        end = section();
+        for (int i = 0; i < count; i++) {
+            levelColumn[i] = readLevel();
+        }
+        checkEnd(end);
+
+        end = section();
+        for (int i = 0; i < count; i++) {
+            sourceColumn[i] = readSource();
+        }
+        checkEnd(end);
+
+        batch.reset(name, position, endPosition);
+        if (!messages && !filter.hasMessageTerms()) {
+            for (int i = 0; i < count; i++) {
+                if (accepts(i)) {
+                    batch.add(timestampColumn[i], levels ? levelColumn[i] : -1, sources ? sourceId(i) : -1);
+                    addSourceBytes(batch, i);
+                }
+            }
+            return true;
+        }
+
+        end = section();
+        for (int i = 0; i < count; i++) {
+            byte[] bytes;
+            int from;
+            int to;
+            int code = (int) readVarLong();
+            if (code == 0) {
+                int size = readLength();
+                bytes = payload;
+                from = offset;
+                to = offset + size;
+                offset = to;
+                if (messageDictionary.size() < SegmentWriter.MAX_DICTIONARY_SIZE) {
+                    messageDictionary.add(Arrays.copyOfRange(payload, from, to));
+                }
+            } else if (code <= messageDictionary.size()) {
+                bytes = messageDictionary.get(code - 1);
+                from = 0;
+                to = bytes.length;
+            } else {
+                throw corrupt();
+            }
+
+            if (accepts(i) && filter.acceptsMessage(bytes, from, to)) {
+                int level = levels ? levelColumn[i] : -1;
+                int source = sources ? sourceId(i) : -1;
+                if (messages) {
+                    batch.add(timestampColumn[i], level, source, bytes, from, to);
+                } else {
+                    batch.add(timestampColumn[i], level, source);
+                }
+                addSourceBytes(batch, i);
+            }
+        }
+        checkEnd(end);
+        return true;
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Checks the time range and the level and source conditions of the filter for an entry.
+     */
+    private boolean accepts(int i) {
+        return filter.range().contains(timestampColumn[i])
+                && (!filter.hasLevelTerms() || matcher.level(levelColumn[i]))
+                && (!filter.hasSourceTerms() || matcher.source(sourceId(i)));
+    }
+
+    /**
+     * Returns the id of the source of an entry in {@link SymbolTable#SOURCES}, interning it
+     * the first time it is needed.
+     */
+    private int sourceId(int i) {
+        int code = sourceColumn[i];
+        if (sourceIds[code] < 0) {
+            byte[] bytes = sourceNames[code];
+            sourceIds[code] = SymbolTable.SOURCES.intern(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return sourceIds[code];
+    }
+
+    /**
+     * Sets the source bytes of the entry last added to a batch if they were requested.
+     */
+    private void addSourceBytes(EntryBatch batch, int i) {
+        if (sourceBytes) {
+            int code = sourceColumn[i];
+            byte[] bytes = sourceNames[code];
+            batch.setSourceBytes(bytes, 0, bytes.length, sourceHashes[code]);
+        }
+    }
+
+    /**
+     * Reads the dictionary code of a level and returns its symbol id,
+     * adding a literal to the dictionary of levels.
+     */
+    private int readLevel() throws IOException {
+        int code = (int) readVarLong();
+        if (code > 0 && code <= levelCount) {
+            return levelIds[code - 1];
+        }
+        if (code != 0) {
+            throw corrupt();
+        }
+
+        int size = readLength();
+        int id = SymbolTable.LEVELS.intern(new String(payload, offset, size, StandardCharsets.UTF_8));
+        offset += size;
+        if (levelCount == levelIds.length) {
+            levelIds = Arrays.copyOf(levelIds, levelCount * 2);
+        }
+        levelIds[levelCount++] = id;
+        return id;
+    }
+
+    /**
+     * Reads the dictionary code of a source and returns its index in the dictionary of
+     * sources, adding a literal to it without interning it.
+     */
+    private int readSource() throws IOException {
+        int code = (int) readVarLong();
+        if (code > 0 && code <= sourceCount) {
+            return code - 1;
+        }
+        if (code != 0) {
+            throw corrupt();
+        }
+
+        int size = readLength();
+        if (sourceCount == sourceIds.length) {
+            int capacity = sourceCount * 2;
+            sourceIds = Arrays.copyOf(sourceIds, capacity);
+            sourceNames = Arrays.copyOf(sourceNames, capacity);
+            sourceHashes = Arrays.copyOf(sourceHashes, capacity);
+        }
+        sourceIds[sourceCount] = -1;
+        sourceNames[sourceCount] = Arrays.copyOfRange(payload, offset, offset + size);
+        sourceHashes[sourceCount] = SymbolTable.fingerprint(payload, offset, offset + size);
+        offset += size;
+        return sourceCount++;
+    }
+
+    /**
+     * Reads the length of a section and returns the offset right after it.
+     */
+    private int section() throws IOException {
+        int length = readLength();
+        return offset + length;
+    }
+
+    /**
+     * Reads a length that must fit in the rest of the payload.
+     */
+    private int readLength() throws IOException {
+        long length = readVarLong();
+        if (length > limit - offset) {
+            throw corrupt();
+        }
+        return (int) length;
+    }
+
+    private void checkEnd(int end) throws IOException {
+        if (offset != end) {
+            throw corrupt();
+        }
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (offset >= limit) {
+                throw corrupt();
+            }
+            byte b = payload[offset++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw corrupt();
+    }
+
+    private IOException corrupt() {
+        return new IOException("corrupt segment block in " + name);
+    }
+}
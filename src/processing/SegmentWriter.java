@@ -0,0 +1,280 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Writes parsed log entries to a columnar segment file, which {@link SegmentReader}
+ * feeds to the analyzers without parsing any text.
+ * <p>
+ * A segment file starts with a header (magic number, format version and the name the
+ * entries are reported under), followed by one block per {@link EntryBatch} written.
+ * A block holds the batch's positions in the original log, its entry count, and the
+ * length and CRC32C checksum of its payload. The payload stores each column on its own,
+ * as a length-prefixed section:
+ * <ul>
+ *   <li>timestamps, as the zigzag-encoded difference to the previous timestamp;</li>
+ *   <li>levels, sources and messages, as dictionary codes: 0 followed by the UTF-8 bytes
+ *       of a value seen for the first time, which is then added to the dictionary of the
+ *       column, or {@code 1 + index} of a value already in the dictionary.</li>
+ * </ul>
+ * All integers in the payload are unsigned LEB128 varints. Dictionaries span the whole
+ * file, so blocks are read in order. The message dictionary is capped at
+ * {@value #MAX_DICTIONARY_SIZE} values; later new messages are always written literally.
+ */
+public class SegmentWriter implements Closeable {
+
+    static final int MAGIC = 0x4C534547;
+    static final int VERSION = 1;
+    static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+    /**
+     * The file name suffix of segment files.
+     */
+    public static final String SUFFIX = ".seg";
+
+    /**
+     * A growable byte array with varint encoding.
+     */
+    private static class Section {
+        byte[] bytes = new byte[1024];
+        int length;
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void write(byte[] source, int from, int count) {
+            ensureCapacity(count);
+            System.arraycopy(source, from, bytes, length, count);
+            length += count;
+        }
+
+        void write(Section section) {
+            writeVarLong(section.length);
+            write(section.bytes, 0, section.length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+    }
+
+    private final DataOutputStream out;
+
+    private final Section timestamps = new Section();
+    private final Section levels = new Section();
+    private final Section sources = new Section();
+    private final Section messages = new Section();
+    private final Section payload = new Section();
+    private final CRC32C crc = new CRC32C();
+
+    // Symbol id -> index in the file's dictionary + 1, or 0 if not written yet
+    private int[] levelCodes = new int[16];
+    private int[] sourceCodes = new int[16];
+    private int levelCount;
+    private int sourceCount;
+    private final Map<String, Integer> messageCodes = new HashMap<>();
+
+    /**
+     * Creates a segment file and writes its header.
+     *
+     * @param file the segment file to create or overwrite
+     * @param name the name the entries are reported under when the segment is read
+     * @throws IOException if the file cannot be written
+     */
+    public SegmentWriter(File file, String name) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(name);
+    }
+
+    /**
+     * Checks whether a file name denotes a segment file.
+     *
+     * @param name the file name
+     * @return true for names ending with {@value #SUFFIX}
+     */
+    public static boolean isSegment(String name) {
+        return name.endsWith(SUFFIX);
+    }
+
+    /**
+     * Parses a plain log file and writes its entries to a segment file. The segment is
+     * written to a temporary file first and only replaces {@code segment} once complete.
+     * Malformed lines are skipped.
+     *
+     * @param log        the log file to convert
+     * @param name       the name the entries are reported under
+     * @param segment    the segment file to write
+     * @param inputMode  the input mode used to read the log (STREAM, CHANNEL or MMAP)
+     * @param bufferSize the read buffer size in bytes; each buffer becomes one block
+     * @throws IOException if the log cannot be read or the segment cannot be written
+     */
+    public static void convert(File log, String name, File segment, String inputMode, int bufferSize)
+            throws IOException {
+        convert(log, name, segment, inputMode, bufferSize, null);
+    }
+
+    /**
+     * Converts a plain log file like {@link #convert(File, String, File, String, int)},
+     * handing malformed lines over to a quarantine sink, as in an analysis run.
+     *
+     * @param log        the log file to convert
+     * @param name       the name the entries are reported under
+     * @param segment    the segment file to write
+     * @param inputMode  the input mode used to read the log (STREAM, CHANNEL or MMAP)
+     * @param bufferSize the read buffer size in bytes; each buffer becomes one block
+     * @param quarantine the sink receiving malformed lines, or null
+     * @throws IOException if the log cannot be read or the segment cannot be written
+     */
+    public static void convert(File log, String name, File segment, String inputMode, int bufferSize,
+                               QuarantineSink quarantine) throws IOException {
+        Set<Column> columns = EnumSet.allOf(Column.class);
+        BatchParser parser = new BatchParser(quarantine);
+        EntryBatch entries = new EntryBatch(bufferSize / 64);
+        File temporary = new File(segment.getPath() + ".tmp");
+
+        try (LogInput input = LogInput.open(inputMode, FileChunk.whole(log), bufferSize);
+             SegmentWriter writer = new SegmentWriter(temporary, name)) {
+            long position = 0;
+            int consumed = 0;
+            while (input.fill(consumed)) {
+                ByteBuffer buffer = input.buffer();
+                consumed = ByteBatch.lineEnd(buffer, buffer.limit(), input.isAtEnd());
+                if (consumed == 0) {
+                    continue;
+                }
+
+                entries.reset(name, position, position + consumed);
+                parser.parse(buffer, 0, consumed, entries, columns);
+                writer.write(entries);
+                position += consumed;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary.toPath());
+            throw e;
+        }
+        Files.move(temporary.toPath(), segment.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Appends a batch as one block. Every column of the batch must be filled.
+     *
+     * @param batch the entries to write
+     * @throws IOException if writing fails
+     */
+    public void write(EntryBatch batch) throws IOException {
+        timestamps.length = 0;
+        levels.length = 0;
+        sources.length = 0;
+        messages.length = 0;
+
+        int size = batch.size();
+        long[] times = batch.timestamps();
+        int[] levelIds = batch.levels();
+        int[] sourceIds = batch.sources();
+        byte[] messageBytes = batch.messageBytes();
+
+        long previous = 0;
+        for (int i = 0; i < size; i++) {
+            long delta = times[i] - previous;
+            timestamps.writeVarLong((delta << 1) ^ (delta >> 63));
+            previous = times[i];
+
+            levelCodes = writeSymbol(levels, levelIds[i], levelCodes, SymbolTable.LEVELS, levelCount);
+            if (levelCodes[levelIds[i]] > levelCount) {
+                levelCount++;
+            }
+            sourceCodes = writeSymbol(sources, sourceIds[i], sourceCodes, SymbolTable.SOURCES, sourceCount);
+            if (sourceCodes[sourceIds[i]] > sourceCount) {
+                sourceCount++;
+            }
+
+            int start = batch.messageStart(i);
+            int end = batch.messageEnd(i);
+            String message = new String(messageBytes, start, end - start, StandardCharsets.UTF_8);
+            Integer code = messageCodes.get(message);
+            if (code != null) {
+                messages.writeVarLong(code);
+            } else {
+                messages.writeVarLong(0);
+                messages.writeVarLong(end - start);
+                messages.write(messageBytes, start, end - start);
+                if (messageCodes.size() < MAX_DICTIONARY_SIZE) {
+                    messageCodes.put(message, messageCodes.size() + 1);
+                }
+            }
+        }
+
+        payload.length = 0;
+        payload.write(timestamps);
+        payload.write(levels);
+        payload.write(sources);
+        payload.write(messages);
+
+        crc.reset();
+        crc.update(payload.bytes, 0, payload.length);
+
+        out.writeLong(batch.getPosition());
+        out.writeLong(batch.getEndPosition());
+        out.writeInt(size);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload.bytes, 0, payload.length);
+    }
+
+    /**
+     * Writes the dictionary code of a level or source; a symbol written for the first
+     * time gets the next code, {@code count + 1}.
+     *
+     * @return the code array, grown if needed
+     */
+    private static int[] writeSymbol(Section section, int id, int[] codes, SymbolTable table, int count) {
+        if (id >= codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(id + 1, codes.length * 2));
+        }
+        if (codes[id] != 0) {
+            section.writeVarLong(codes[id]);
+        } else {
+            byte[] name = table.name(id).getBytes(StandardCharsets.UTF_8);
+            section.writeVarLong(0);
+            section.writeVarLong(name.length);
+            section.write(name, 0, name.length);
+            codes[id] = count + 1;
+        }
+        return codes;
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
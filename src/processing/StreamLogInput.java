@@ -0,0 +1,45 @@
+package processing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link BufferedLogInput} that reads a file sequentially through a {@link FileInputStream}
+ * into a heap buffer. This is the default input mode.
+ */
+public class StreamLogInput extends BufferedLogInput {
+
+    private final FileInputStream stream;
+
+    /**
+     * Opens the file and skips to the start of the range.
+     *
+     * @param file       the log file
+     * @param start      the offset of the first byte to read
+     * @param end        the offset right after the last byte to read
+     * @param bufferSize the initial size of the heap buffer
+     * @throws IOException if the file cannot be opened
+     */
+    public StreamLogInput(File file, long start, long end, int bufferSize) throws IOException {
+        super(start, end);
+        this.stream = new FileInputStream(file);
+        this.stream.getChannel().position(start);
+        this.buffer = ByteBuffer.allocate(bufferSize).flip();
+    }
+
+    @Override
+    protected int read(ByteBuffer target, long position) throws IOException {
+        int read = stream.read(target.array(), target.arrayOffset() + target.position(), target.remaining());
+        if (read > 0) {
+            target.position(target.position() + read);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+}
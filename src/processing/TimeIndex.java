@@ -0,0 +1,320 @@
+package processing;
+
+import model.TimeRange;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * A sparse index from timestamps to byte offsets of a log file, kept on disk so
+ * that a run limited to a time range only reads the parts of each file that can
+ * hold entries of that range.
+ * <p>
+ * The file is divided into blocks of {@value #BLOCK_SIZE} bytes. For each block
+ * holding the start of at least one valid line, the index records the offset of
+ * the first such line and the smallest and largest timestamp of those lines, so it
+ * stays correct for logs that are not written in timestamp order. When the blocks
+ * are in order, which is the usual case, the blocks overlapping a range are found
+ * by binary search.
+ * <p>
+ * Indexes are built by the parsers during a normal run (see {@link Builder}) and
+ * stored with the length, modification time and a checksum of the first bytes of
+ * the file. An index is used as long as the file did not change, and for the part
+ * it covers if the file only grew; the appended part is then indexed by the next
+ * run that reads it.
+ */
+public class TimeIndex {
+
+    private static final int MAGIC = 0x4C474958;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".idx";
+
+    static final int BLOCK_SHIFT = 16;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+    private final long length;
+    private final long[] starts;
+    private final long[] minimums;
+    private final long[] maximums;
+    private final boolean ordered;
+
+    private TimeIndex(long length, long[] starts, long[] minimums, long[] maximums) {
+        this.length = length;
+        this.starts = starts;
+        this.minimums = minimums;
+        this.maximums = maximums;
+        boolean ordered = true;
+        for (int i = 1; i < starts.length && ordered; i++) {
+            ordered = maximums[i - 1] <= minimums[i];
+        }
+        this.ordered = ordered;
+    }
+
+    /**
+     * Collects the line starts and timestamps seen by one parser in one batch,
+     * grouped by block. Instances are reused and are not thread-safe.
+     */
+    public static class Sampler {
+        private long[] blocks = new long[16];
+        private long[] starts = new long[16];
+        private long[] minimums = new long[16];
+        private long[] maximums = new long[16];
+        private int count;
+
+        /**
+         * Forgets the lines of the previous batch.
+         */
+        public void clear() {
+            count = 0;
+        }
+
+        /**
+         * Records a valid line.
+         *
+         * @param offset    the position of the start of the line in the file
+         * @param timestamp the timestamp of the line
+         */
+        public void line(long offset, long timestamp) {
+            long block = offset >>> BLOCK_SHIFT;
+            if (count > 0 && blocks[count - 1] == block) {
+                minimums[count - 1] = Math.min(minimums[count - 1], timestamp);
+                maximums[count - 1] = Math.max(maximums[count - 1], timestamp);
+                return;
+            }
+            if (count == blocks.length) {
+                int capacity = count * 2;
+                blocks = Arrays.copyOf(blocks, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                minimums = Arrays.copyOf(minimums, capacity);
+                maximums = Arrays.copyOf(maximums, capacity);
+            }
+            blocks[count] = block;
+            starts[count] = offset;
+            minimums[count] = timestamp;
+            maximums[count] = timestamp;
+            count++;
+        }
+    }
+
+    /**
+     * Builds the index of one file from the samples of all the batches read from it,
+     * which may arrive in any order and from several parser threads.
+     */
+    public static class Builder {
+        // Block number -> {first line start, smallest timestamp, largest timestamp}
+        private final TreeMap<Long, long[]> blocks = new TreeMap<>();
+
+        /**
+         * Creates a builder, optionally continuing an index whose file has grown.
+         *
+         * @param previous the index of the part of the file that is not read again, or null
+         */
+        public Builder(TimeIndex previous) {
+            if (previous != null) {
+                for (int i = 0; i < previous.starts.length; i++) {
+                    blocks.put(previous.starts[i] >>> BLOCK_SHIFT,
+                            new long[]{previous.starts[i], previous.minimums[i], previous.maximums[i]});
+                }
+            }
+        }
+
+        /**
+         * Adds the samples of one batch.
+         *
+         * @param sampler the samples
+         */
+        public synchronized void add(Sampler sampler) {
+            for (int i = 0; i < sampler.count; i++) {
+                long[] block = blocks.get(sampler.blocks[i]);
+                if (block == null) {
+                    blocks.put(sampler.blocks[i],
+                            new long[]{sampler.starts[i], sampler.minimums[i], sampler.maximums[i]});
+                } else {
+                    block[0] = Math.min(block[0], sampler.starts[i]);
+                    block[1] = Math.min(block[1], sampler.minimums[i]);
+                    block[2] = Math.max(block[2], sampler.maximums[i]);
+                }
+            }
+        }
+
+        /**
+         * Returns the index of the file once every byte up to {@code length} was sampled.
+         *
+         * @param length the number of bytes of the file that were read
+         * @return the index
+         */
+        public synchronized TimeIndex build(long length) {
+            int count = blocks.size();
+            long[] starts = new long[count];
+            long[] minimums = new long[count];
+            long[] maximums = new long[count];
+            int i = 0;
+            for (long[] block : blocks.values()) {
+                starts[i] = block[0];
+                minimums[i] = block[1];
+                maximums[i] = block[2];
+                i++;
+            }
+            return new TimeIndex(length, starts, minimums, maximums);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the file covered by the index.
+     *
+     * @return the length of the file when it was indexed
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the ranges of the indexed part of a file that hold all its lines in a time range.
+     * Adjacent blocks are merged into one range; the result is empty if no block overlaps.
+     *
+     * @param file  the indexed file
+     * @param range the time range
+     * @return the newline-aligned ranges to read, in file order
+     */
+    public List<FileChunk> select(File file, TimeRange range) {
+        List<FileChunk> chunks = new ArrayList<>();
+        if (ordered) {
+            // The first block ending at or after the start, and the last one starting at or before the end
+            int first = search(maximums, range.from());
+            int last = search(minimums, range.to() == Long.MAX_VALUE ? Long.MAX_VALUE : range.to() + 1) - 1;
+            if (first <= last) {
+                chunks.add(new FileChunk(file, starts[first], end(last)));
+            }
+            return chunks;
+        }
+
+        long start = -1;
+        for (int i = 0; i < starts.length; i++) {
+            if (range.overlaps(minimums[i], maximums[i])) {
+                if (start < 0) {
+                    start = starts[i];
+                }
+            } else if (start >= 0) {
+                chunks.add(new FileChunk(file, start, starts[i]));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            chunks.add(new FileChunk(file, start, length));
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the index of the first element that is not less than {@code key} in a sorted array.
+     */
+    private static int search(long[] values, long key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long end(int block) {
+        return block + 1 < starts.length ? starts[block + 1] : length;
+    }
+
+    /**
+     * Loads the index of a log file, if it is still valid: the file has the same
+     * first bytes, and either did not change or only grew after a complete line.
+     *
+     * @param directory the directory holding the indexes
+     * @param file      the log file
+     * @return the index, or null if there is none or it no longer matches the file
+     */
+    public static TimeIndex load(File directory, File file) {
+        File entry = AnalysisCache.entryFile(directory, file, SUFFIX);
+        if (!entry.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(file.getCanonicalPath())) {
+                return null;
+            }
+            long length = in.readLong();
+            long lastModified = in.readLong();
+            int headLength = in.readInt();
+            long headChecksum = in.readLong();
+
+            long current = file.length();
+            boolean unchanged = current == length && file.lastModified() == lastModified;
+            if (!unchanged && (current <= length || !AnalysisCache.endsWithLineBreak(file, length))) {
+                return null;
+            }
+            if (AnalysisCache.headChecksum(file, headLength) != headChecksum) {
+                return null;
+            }
+
+            int count = in.readInt();
+            if (count < 0) {
+                return null;
+            }
+            long[] starts = new long[count];
+            long[] minimums = new long[count];
+            long[] maximums = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = in.readLong();
+                minimums[i] = in.readLong();
+                maximums[i] = in.readLong();
+            }
+            return new TimeIndex(length, starts, minimums, maximums);
+        } catch (IOException e) {
+            System.out.println("error reading index for file " + file.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the index of a log file, replacing its previous index.
+     *
+     * @param directory    the directory holding the indexes, created if needed
+     * @param file         the log file
+     * @param lastModified the modification time of the file when it was read
+     */
+    public void save(File directory, File file, long lastModified) {
+        File entry = AnalysisCache.entryFile(directory, file, SUFFIX);
+
+        try {
+            int headLength = (int) Math.min(length, AnalysisCache.HEAD_LENGTH);
+            Files.createDirectories(directory.toPath());
+            File temporary = new File(directory, entry.getName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(file.getCanonicalPath());
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(headLength);
+                out.writeLong(AnalysisCache.headChecksum(file, headLength));
+                out.writeInt(starts.length);
+                for (int i = 0; i < starts.length; i++) {
+                    out.writeLong(starts[i]);
+                    out.writeLong(minimums[i]);
+                    out.writeLong(maximums[i]);
+                }
+            }
+            Files.move(temporary.toPath(), entry.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println("error writing index for file " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes JSON to a {@link Writer} as it is produced, without building a tree first.
+ * <p>
+ * The layout is the one of {@code org.json}'s {@code toString(indentFactor)}: with a
+ * positive indent factor, each member of an object or array goes on its own line,
+ * except in containers holding exactly one member, which are written inline. With an
+ * indent factor of 0, the output is compact. Strings are escaped the same way as by
+ * {@code JSONObject.quote}. Since the layout of a container depends on its size, the
+ * number of members must be given when the container is opened.
+ */
+class JsonWriter implements Closeable {
+
+    /**
+     * An open object or array.
+     */
+    private static class Container {
+        final boolean object;
+        final int length;
+        final int indent;
+        int count;
+        boolean keyWritten;
+
+        Container(boolean object, int length, int indent) {
+            this.object = object;
+            this.length = length;
+            this.indent = indent;
+        }
+    }
+
+    private final Writer out;
+    private final int indentFactor;
+    private final Deque<Container> open = new ArrayDeque<>();
+
+    /**
+     * Creates a writer.
+     *
+     * @param out          the output, which is closed by {@link #close()}
+     * @param indentFactor the number of spaces added per nesting level, or 0 for compact output
+     */
+    JsonWriter(Writer out, int indentFactor) {
+        this.out = out;
+        this.indentFactor = Math.max(indentFactor, 0);
+    }
+
+    /**
+     * Opens an object.
+     *
+     * @param length the number of members the object will have
+     */
+    JsonWriter beginObject(int length) throws IOException {
+        begin(new Container(true, length, valueIndent()));
+        out.write('{');
+        return this;
+    }
+
+    /**
+     * Closes the current object.
+     */
+    JsonWriter endObject() throws IOException {
+        end(true);
+        out.write('}');
+        return this;
+    }
+
+    /**
+     * Opens an array.
+     *
+     * @param length the number of elements the array will have
+     */
+    JsonWriter beginArray(int length) throws IOException {
+        begin(new Container(false, length, valueIndent()));
+        out.write('[');
+        return this;
+    }
+
+    /**
+     * Closes the current array.
+     */
+    JsonWriter endArray() throws IOException {
+        end(false);
+        out.write(']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next member of the current object.
+     */
+    JsonWriter key(String name) throws IOException {
+        Container container = open.peek();
+        if (container == null || !container.object || container.keyWritten) {
+            throw new IllegalStateException("not expecting a key");
+        }
+        startMember(container);
+        container.keyWritten = true;
+        quote(name);
+        out.write(':');
+        if (indentFactor > 0) {
+            out.write(' ');
+        }
+        return this;
+    }
+
+    /**
+     * Writes a string value.
+     */
+    JsonWriter value(String value) throws IOException {
+        startValue();
+        quote(value);
+        return this;
+    }
+
+    /**
+     * Writes a number value.
+     */
+    JsonWriter value(long value) throws IOException {
+        startValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Returns the indent a value written now is laid out from: the indent of its
+     * container's members, which is the container's own indent if it is inline.
+     */
+    private int valueIndent() {
+        Container container = open.peek();
+        if (container == null) {
+            return 0;
+        }
+        return container.length == 1 ? container.indent : container.indent + indentFactor;
+    }
+
+    private void begin(Container container) throws IOException {
+        startValue();
+        open.push(container);
+    }
+
+    private void end(boolean object) throws IOException {
+        Container container = open.peek();
+        if (container == null || container.object != object || container.count != container.length) {
+            throw new IllegalStateException("container does not have the declared length");
+        }
+        open.pop();
+        if (container.length > 1) {
+            if (indentFactor > 0) {
+                out.write('\n');
+            }
+            indent(container.indent);
+        }
+    }
+
+    /**
+     * Counts a value in its container, writing the separator for array elements;
+     * object members got theirs with their key.
+     */
+    private void startValue() throws IOException {
+        Container container = open.peek();
+        if (container == null) {
+            return;
+        }
+        if (container.object) {
+            if (!container.keyWritten) {
+                throw new IllegalStateException("expecting a key");
+            }
+            container.keyWritten = false;
+        } else {
+            startMember(container);
+        }
+        container.count++;
+    }
+
+    private void startMember(Container container) throws IOException {
+        if (container.count >= container.length) {
+            throw new IllegalStateException("container already has its declared length");
+        }
+        if (container.count > 0) {
+            out.write(',');
+        }
+        if (container.length > 1) {
+            if (indentFactor > 0) {
+                out.write('\n');
+            }
+            indent(container.indent + indentFactor);
+        }
+    }
+
+    private void indent(int spaces) throws IOException {
+        for (int i = 0; i < spaces; i++) {
+            out.write(' ');
+        }
+    }
+
+    private void quote(String string) throws IOException {
+        out.write('"');
+        char previous;
+        char c = 0;
+        for (int i = 0; i < string.length(); i++) {
+            previous = c;
+            c = string.charAt(i);
+            switch (c) {
+                case '\\', '"' -> {
+                    out.write('\\');
+                    out.write(c);
+                }
+                case '/' -> {
+                    if (previous == '<') {
+                        out.write('\\');
+                    }
+                    out.write(c);
+                }
+                case '\b' -> out.write("\\b");
+                case '\t' -> out.write("\\t");
+                case '\n' -> out.write("\\n");
+                case '\f' -> out.write("\\f");
+                case '\r' -> out.write("\\r");
+                default -> {
+                    if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+                        String hex = Integer.toHexString(c);
+                        out.write("\\u");
+                        out.write("0000", 0, 4 - hex.length());
+                        out.write(hex);
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -1,14 +1,25 @@
 package report;
 
+import analysis.DistinctCounter;
+import analysis.GapAnalyzer;
+import analysis.RejectCounter;
+import analysis.RollupAnalyzer;
+import analysis.TemplateAnalyzer;
 import analysis.SourceCounter;
 import analysis.LevelCounter;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import processing.RunMetrics;
 
-import java.io.FileWriter;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.List;
-import java.util.Map;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
 
 /**
  * Utility class responsible for generating and saving a JSON report
@@ -19,10 +30,40 @@ import java.util.Map;
  *   <li>{@code COUNT_LEVELS} – frequency of each log level</li>
  *   <li>{@code FIND_COMMON_SOURCE} – most/least common log sources</li>
  *   <li>{@code DETECT_ANOMALIES} – detected anomalies grouped by file</li>
+ *   <li>{@code DISTINCT_COUNTS} – estimated distinct sources and messages, in total and per level</li>
+ *   <li>{@code SOURCE_GAPS} – quantiles of the time between entries of each source</li>
+ *   <li>{@code MESSAGE_TEMPLATES} – the most frequent message templates of each level</li>
+ *   <li>{@code ROLLUPS} – entries per time bucket, level and source, at each resolution</li>
+ *   <li>{@code REJECTED_LINES} – the number of malformed lines of each log file that had any</li>
+ *   <li>{@code RUN_STATS} – throughput, stage and analyzer times, file latencies and queue depths of the run</li>
  * </ul>
+ * Sections are streamed to the file through a {@link JsonWriter} as they are produced,
+ * so no JSON tree or string of the whole report is built. The output is the same as
+ * {@code org.json}'s {@code JSONObject.toString(4)} (or {@code toString()} when not
+ * pretty-printed) for the same content, including the order of the keys, which is the
+ * iteration order of a {@link HashMap} holding them.
  */
 public class ReportBuilder {
 
+    private static final int INDENT = 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Creates and saves a full, pretty-printed JSON report.
+     *
+     * @param levelAnalyzer   an optional {@link LevelCounter} with level counts
+     * @param sourceAnalyzer  an optional {@link SourceCounter} with source counts
+     * @param anomalies       a map of detected anomalies: filename → list of timestamps
+     * @param outputPath      the file path to write the report to (as JSON)
+     * @see #saveFullReport(LevelCounter, SourceCounter, Map, String, boolean)
+     */
+    public static void saveFullReport(LevelCounter levelAnalyzer,
+                                      SourceCounter sourceAnalyzer,
+                                      Map<String, List<String>> anomalies,
+                                      String outputPath) {
+        saveFullReport(levelAnalyzer, sourceAnalyzer, anomalies, outputPath, true);
+    }
+
     /**
      * Creates and saves a full JSON report containing:
      * <ul>
@@ -35,67 +76,364 @@ public class ReportBuilder {
      * @param sourceAnalyzer  an optional {@link SourceCounter} with source counts
      * @param anomalies       a map of detected anomalies: filename → list of timestamps
      * @param outputPath      the file path to write the report to (as JSON)
+     * @param pretty          whether to indent the report, or write it on a single line
      */
     public static void saveFullReport(LevelCounter levelAnalyzer,
                                       SourceCounter sourceAnalyzer,
                                       Map<String, List<String>> anomalies,
-                                      String outputPath) {
-        JSONObject report = new JSONObject();
+                                      String outputPath,
+                                      boolean pretty) {
+        saveFullReport(levelAnalyzer, sourceAnalyzer, anomalies, null, null, null, null, null, null, outputPath, pretty);
+    }
 
-        //  COUNT_LEVELS
+    /**
+     * Creates and saves a full JSON report containing, in addition to the sections of
+     * {@link #saveFullReport(LevelCounter, SourceCounter, Map, String, boolean)}:
+     * <ul>
+     *   <li>Estimated distinct counts (if available)</li>
+     *   <li>Gap quantiles per source (if available)</li>
+     *   <li>The most frequent message templates per level (if available)</li>
+     *   <li>Entry counts per time bucket, level and source (if available)</li>
+     *   <li>The number of malformed lines per file (if available)</li>
+     *   <li>The metrics of the run (if collected); the time spent writing this report
+     *       is not in them yet</li>
+     * </ul>
+     *
+     * @param levelAnalyzer    an optional {@link LevelCounter} with level counts
+     * @param sourceAnalyzer   an optional {@link SourceCounter} with source counts
+     * @param anomalies        a map of detected anomalies: filename → list of timestamps
+     * @param distinctAnalyzer an optional {@link DistinctCounter} with distinct counts
+     * @param gapAnalyzer      an optional {@link GapAnalyzer} with gap quantiles
+     * @param templateAnalyzer an optional {@link TemplateAnalyzer} with message templates
+     * @param rollupAnalyzer   an optional {@link RollupAnalyzer} with counts per time bucket
+     * @param rejectAnalyzer   an optional {@link RejectCounter} with malformed line counts
+     * @param metrics          optional {@link RunMetrics} of the run
+     * @param outputPath       the file path to write the report to (as JSON)
+     * @param pretty           whether to indent the report, or write it on a single line
+     */
+    public static void saveFullReport(LevelCounter levelAnalyzer,
+                                      SourceCounter sourceAnalyzer,
+                                      Map<String, List<String>> anomalies,
+                                      DistinctCounter distinctAnalyzer,
+                                      GapAnalyzer gapAnalyzer,
+                                      TemplateAnalyzer templateAnalyzer,
+                                      RollupAnalyzer rollupAnalyzer,
+                                      RejectCounter rejectAnalyzer,
+                                      RunMetrics metrics,
+                                      String outputPath,
+                                      boolean pretty) {
+        List<String> sections = new ArrayList<>();
         if (levelAnalyzer != null) {
-            JSONObject countLevels = new JSONObject();
-            for (var entry : levelAnalyzer.getCounts().entrySet()) {
-                countLevels.put(entry.getKey(), entry.getValue());
+            sections.add("COUNT_LEVELS");
+        }
+        if (sourceAnalyzer != null) {
+            sections.add("FIND_COMMON_SOURCE");
+        }
+        sections.add("DETECT_ANOMALIES");
+        if (distinctAnalyzer != null) {
+            sections.add("DISTINCT_COUNTS");
+        }
+        if (gapAnalyzer != null) {
+            sections.add("SOURCE_GAPS");
+        }
+        if (templateAnalyzer != null) {
+            sections.add("MESSAGE_TEMPLATES");
+        }
+        if (rollupAnalyzer != null) {
+            sections.add("ROLLUPS");
+        }
+        if (rejectAnalyzer != null) {
+            sections.add("REJECTED_LINES");
+        }
+        if (metrics != null) {
+            sections.add("RUN_STATS");
+        }
+
+        try (FileChannel channel = FileChannel.open(Path.of(outputPath), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             JsonWriter json = new JsonWriter(newWriter(channel), pretty ? INDENT : 0)) {
+
+            json.beginObject(sections.size());
+            for (String section : keyOrder(sections)) {
+                json.key(section);
+                switch (section) {
+                    case "COUNT_LEVELS" -> writeLevels(json, levelAnalyzer);
+                    case "FIND_COMMON_SOURCE" -> writeSources(json, sourceAnalyzer);
+                    case "DISTINCT_COUNTS" -> writeDistinctCounts(json, distinctAnalyzer);
+                    case "SOURCE_GAPS" -> writeGaps(json, gapAnalyzer);
+                    case "MESSAGE_TEMPLATES" -> writeTemplates(json, templateAnalyzer);
+                    case "ROLLUPS" -> writeRollups(json, rollupAnalyzer);
+                    case "REJECTED_LINES" -> writeRejectedLines(json, rejectAnalyzer);
+                    case "RUN_STATS" -> writeRunStats(json, metrics);
+                    default -> writeAnomalies(json, anomalies);
+                }
             }
-            report.put("COUNT_LEVELS", countLevels);
+            json.endObject();
+        } catch (IOException e) {
+            System.out.println("error saving report");
         }
+    }
 
-        //  FIND_COMMON_SOURCE
-        if (sourceAnalyzer != null) {
-            JSONObject commonSource = new JSONObject();
-            var sourceCounts = sourceAnalyzer.getSourceCounts();
+    private static Writer newWriter(FileChannel channel) {
+        // Unpaired surrogates are replaced, as by a FileWriter
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return new BufferedWriter(Channels.newWriter(channel, encoder, -1), BUFFER_SIZE);
+    }
 
-            List<String> sources = sourceCounts.keySet().stream().toList();
-            List<Integer> counts = sources.stream().map(sourceCounts::get).toList();
+    //  COUNT_LEVELS
+    private static void writeLevels(JsonWriter json, LevelCounter levelAnalyzer) throws IOException {
+        Map<String, Long> counts = levelAnalyzer.getCounts();
+        json.beginObject(counts.size());
+        for (String level : keyOrder(counts.keySet())) {
+            json.key(level).value(counts.get(level));
+        }
+        json.endObject();
+    }
+
+    //  FIND_COMMON_SOURCE
+    private static void writeSources(JsonWriter json, SourceCounter sourceAnalyzer) throws IOException {
+        var sourceCounts = sourceAnalyzer.getSourceCounts();
+
+        List<String> sources = sourceCounts.keySet().stream().toList();
+        List<Long> counts = sources.stream().map(sourceCounts::get).toList();
 
-            commonSource.put("sources", sources.toString());
-            commonSource.put("source_counts", counts.toString());
-            commonSource.put("most_common_source", sourceAnalyzer.getMostCommonSource());
-            commonSource.put("most_common_source_count", sourceAnalyzer.getMostCommonSourceCount());
-            commonSource.put("least_common_source", sourceAnalyzer.getLeastCommonSource());
-            commonSource.put("least_common_source_count", sourceAnalyzer.getLeastCommonSourceCount());
+        // A null value leaves the key out, as with JSONObject.put
+        Map<String, Object> commonSource = new LinkedHashMap<>();
+        commonSource.put("sources", sources.toString());
+        commonSource.put("source_counts", counts.toString());
+        commonSource.put("most_common_source", sourceAnalyzer.getMostCommonSource());
+        commonSource.put("most_common_source_count", sourceAnalyzer.getMostCommonSourceCount());
+        commonSource.put("least_common_source", sourceAnalyzer.getLeastCommonSource());
+        commonSource.put("least_common_source_count", sourceAnalyzer.getLeastCommonSourceCount());
+        commonSource.values().removeIf(Objects::isNull);
+
+        json.beginObject(commonSource.size());
+        for (String key : keyOrder(commonSource.keySet())) {
+            json.key(key);
+            if (commonSource.get(key) instanceof Long count) {
+                json.value(count);
+            } else {
+                json.value((String) commonSource.get(key));
+            }
+        }
+        json.endObject();
+    }
 
-            report.put("FIND_COMMON_SOURCE", commonSource);
+    //  DETECT_ANOMALIES
+    private static void writeAnomalies(JsonWriter json, Map<String, List<String>> anomalies) throws IOException {
+        if (anomalies == null || anomalies.isEmpty()) {
+            json.beginArray(0).endArray();
+            return;
         }
 
-        //  DETECT_ANOMALIES
-        if (anomalies != null && !anomalies.isEmpty()) {
-            JSONObject allAnomalies = new JSONObject();
+        json.beginArray(1).beginObject(anomalies.size());
+        for (String filename : keyOrder(anomalies.keySet())) {
+            List<String> times = anomalies.get(filename);
 
-            for (Map.Entry<String, List<String>> entry : anomalies.entrySet()) {
-                String filename = entry.getKey();
-                List<String> times = entry.getValue();
+            json.key(filename).beginObject(2);
+            for (String key : keyOrder(List.of("anomalies", "anomalies_count"))) {
+                json.key(key);
+                if (key.equals("anomalies")) {
+                    json.beginArray(times.size());
+                    for (String time : times) {
+                        json.value(time);
+                    }
+                    json.endArray();
+                } else {
+                    json.value(times.size());
+                }
+            }
+            json.endObject();
+        }
+        json.endObject().endArray();
+    }
 
-                JSONObject fileObj = new JSONObject();
-                fileObj.put("anomalies", times);
-                fileObj.put("anomalies_count", times.size());
+    //  DISTINCT_COUNTS
+    private static void writeDistinctCounts(JsonWriter json, DistinctCounter distinctAnalyzer) throws IOException {
+        Map<String, Long> sources = distinctAnalyzer.getDistinctSourcesPerLevel();
+        Map<String, Long> messages = distinctAnalyzer.getDistinctMessagesPerLevel();
 
-                allAnomalies.put(filename, fileObj);
+        json.beginObject(3);
+        for (String key : keyOrder(List.of("sources", "messages", "levels"))) {
+            json.key(key);
+            switch (key) {
+                case "sources" -> json.value(distinctAnalyzer.getDistinctSources());
+                case "messages" -> json.value(distinctAnalyzer.getDistinctMessages());
+                default -> {
+                    json.beginObject(sources.size());
+                    for (String level : keyOrder(sources.keySet())) {
+                        json.key(level).beginObject(2);
+                        for (String count : keyOrder(List.of("sources", "messages"))) {
+                            json.key(count).value(count.equals("sources") ? sources.get(level) : messages.get(level));
+                        }
+                        json.endObject();
+                    }
+                    json.endObject();
+                }
             }
+        }
+        json.endObject();
+    }
 
-            JSONArray anomaliesArray = new JSONArray();
-            anomaliesArray.put(allAnomalies);
+    //  SOURCE_GAPS
+    private static void writeGaps(JsonWriter json, GapAnalyzer gapAnalyzer) throws IOException {
+        Map<String, GapAnalyzer.Gaps> gaps = gapAnalyzer.getGaps();
+        List<String> keys = List.of("gaps", "p50", "p90", "p99", "max");
 
-            report.put("DETECT_ANOMALIES", anomaliesArray);
-        } else {
-            report.put("DETECT_ANOMALIES", new JSONArray());
+        json.beginObject(gaps.size());
+        for (String source : keyOrder(gaps.keySet())) {
+            GapAnalyzer.Gaps sourceGaps = gaps.get(source);
+            json.key(source).beginObject(keys.size());
+            for (String key : keyOrder(keys)) {
+                json.key(key).value(switch (key) {
+                    case "gaps" -> sourceGaps.count();
+                    case "p50" -> sourceGaps.p50();
+                    case "p90" -> sourceGaps.p90();
+                    case "p99" -> sourceGaps.p99();
+                    default -> sourceGaps.max();
+                });
+            }
+            json.endObject();
         }
+        json.endObject();
+    }
 
-        try (FileWriter file = new FileWriter(outputPath)) {
-            file.write(report.toString(4)); // with indentation
-        } catch (IOException e) {
-            System.out.println("error saving report");
+    //  MESSAGE_TEMPLATES
+    private static void writeTemplates(JsonWriter json, TemplateAnalyzer templateAnalyzer) throws IOException {
+        Map<String, List<TemplateAnalyzer.Template>> templates = templateAnalyzer.getTopTemplates();
+        List<String> keys = List.of("template", "count", "error");
+
+        json.beginObject(templates.size());
+        for (String level : keyOrder(templates.keySet())) {
+            List<TemplateAnalyzer.Template> levelTemplates = templates.get(level);
+            json.key(level).beginArray(levelTemplates.size());
+            for (TemplateAnalyzer.Template template : levelTemplates) {
+                json.beginObject(keys.size());
+                for (String key : keyOrder(keys)) {
+                    json.key(key);
+                    switch (key) {
+                        case "template" -> json.value(template.template());
+                        case "count" -> json.value(template.count());
+                        default -> json.value(template.error());
+                    }
+                }
+                json.endObject();
+            }
+            json.endArray();
+        }
+        json.endObject();
+    }
+
+    //  ROLLUPS
+    private static void writeRollups(JsonWriter json, RollupAnalyzer rollupAnalyzer) throws IOException {
+        Map<String, Integer> resolutions = new HashMap<>();
+        for (int resolution : rollupAnalyzer.getResolutions()) {
+            resolutions.put(String.valueOf(resolution), resolution);
+        }
+        List<String> keys = List.of("start", "counts");
+
+        json.beginObject(resolutions.size());
+        for (String resolution : keyOrder(resolutions.keySet())) {
+            Map<String, Map<String, List<RollupAnalyzer.Run>>> rollup = rollupAnalyzer.getRollup(resolutions.get(resolution));
+            json.key(resolution).beginObject(rollup.size());
+            for (String level : keyOrder(rollup.keySet())) {
+                Map<String, List<RollupAnalyzer.Run>> sources = rollup.get(level);
+                json.key(level).beginObject(sources.size());
+                for (String source : keyOrder(sources.keySet())) {
+                    List<RollupAnalyzer.Run> runs = sources.get(source);
+                    json.key(source).beginArray(runs.size());
+                    for (RollupAnalyzer.Run run : runs) {
+                        json.beginObject(keys.size());
+                        for (String key : keyOrder(keys)) {
+                            json.key(key);
+                            if (key.equals("start")) {
+                                json.value(run.start());
+                            } else {
+                                json.beginArray(run.counts().length);
+                                for (long count : run.counts()) {
+                                    json.value(count);
+                                }
+                                json.endArray();
+                            }
+                        }
+                        json.endObject();
+                    }
+                    json.endArray();
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    //  REJECTED_LINES
+    private static void writeRejectedLines(JsonWriter json, RejectCounter rejectAnalyzer) throws IOException {
+        Map<String, Long> counts = rejectAnalyzer.getRejectedLines();
+        json.beginObject(counts.size());
+        for (String filename : keyOrder(counts.keySet())) {
+            json.key(filename).value(counts.get(filename));
+        }
+        json.endObject();
+    }
+
+    //  RUN_STATS
+    private static void writeRunStats(JsonWriter json, RunMetrics metrics) throws IOException {
+        Map<String, Long> latencies = new HashMap<>();
+        latencies.put("p50", metrics.getFileLatencyP50Millis());
+        latencies.put("p90", metrics.getFileLatencyP90Millis());
+        latencies.put("p99", metrics.getFileLatencyP99Millis());
+        latencies.put("max", metrics.getFileLatencyMaxMillis());
+
+        Map<String, Long> queues = new HashMap<>();
+        queues.put("reads", (long) metrics.getMaxReadQueueDepth());
+        queues.put("byte_batches", (long) metrics.getMaxByteQueueDepth());
+        queues.put("entry_batches", (long) metrics.getMaxEntryQueueDepth());
+
+        // A value is either a number or an object of numbers
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("elapsed_ms", metrics.getElapsedMillis());
+        stats.put("files", metrics.getFilesRead());
+        stats.put("failed_files", metrics.getFilesFailed());
+        stats.put("bytes", metrics.getBytesRead());
+        stats.put("lines", metrics.getLinesParsed());
+        stats.put("parse_failures", metrics.getParseFailures());
+        stats.put("bytes_per_second", metrics.getBytesPerSecond());
+        stats.put("lines_per_second", metrics.getLinesPerSecond());
+        stats.put("stages_ms", metrics.getStageMillis());
+        stats.put("analyzers_ms", metrics.getAnalyzerMillis());
+        stats.put("file_latency_ms", latencies);
+        stats.put("max_queue_depth", queues);
+
+        json.beginObject(stats.size());
+        for (String key : stats.keySet()) {
+            json.key(key);
+            if (stats.get(key) instanceof Long value) {
+                json.value(value);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Long> group = (Map<String, Long>) stats.get(key);
+            json.beginObject(group.size());
+            for (String name : keyOrder(group.keySet())) {
+                json.key(name).value(group.get(name));
+            }
+            json.endObject();
+        }
+        json.endObject();
+    }
+
+    /**
+     * Returns keys in the order a {@link HashMap} that they were put into, in the given
+     * order, iterates them; this is the order {@code JSONObject} writes them in.
+     */
+    private static Collection<String> keyOrder(Collection<String> keys) {
+        Map<String, Boolean> map = new HashMap<>();
+        for (String key : keys) {
+            map.put(key, Boolean.TRUE);
         }
+        return map.keySet();
     }
 }
@@ -0,0 +1,176 @@
+package analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the online detection of {@link AnomalyDetector} finds the same anomalies
+ * as scanning the sorted timestamps of a file, and stays bounded on outliers.
+ */
+class AnomalyDetectorTest {
+
+    private static final int WINDOW = 60;
+    private static final int THRESHOLD = 5;
+    private static final int TOLERANCE = 10;
+    private static final long START = 1_744_761_600L;
+
+    @Test
+    void matchesSortedScanWithinTolerance() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int round = 0; round < 50; round++) {
+            long[] shuffled = jitter(random, bursty(random, 2000));
+            long[] timestamps = shuffled.clone();
+            Arrays.sort(timestamps);
+
+            for (int segments : new int[]{1, 2, 7}) {
+                AnomalyDetector detector = newDetector();
+                feed(detector, shuffled, segments);
+                assertEquals(sortedScan(timestamps), detector.detectAnomalies(), "round " + round + ", " + segments + " segments");
+            }
+        }
+    }
+
+    @Test
+    void firstEntryInTheFutureDoesNotHoldBackTheSegment() throws IOException {
+        int count = 300_000;
+        long[] timestamps = new long[count + 1];
+        timestamps[0] = START + 10_000_000L;
+        for (int i = 1; i <= count; i++) {
+            timestamps[i] = START + i * 20L;
+        }
+
+        AnomalyDetector detector = newDetector();
+        feed(detector, timestamps, 1);
+        // Only the outlier and about a tolerance worth of entries may be kept
+        assertTrue(stateSize(detector) < 4096, "state of " + stateSize(detector) + " bytes");
+
+        long[] sorted = timestamps.clone();
+        Arrays.sort(sorted);
+        assertEquals(sortedScan(sorted), detector.detectAnomalies());
+    }
+
+    @Test
+    void headOfASegmentMergesWithThePreviousSegment() {
+        // The second segment starts later than the end of the first one, then goes back
+        long[] first = {START, START + 1, START + 2, START + 8};
+        long[] second = {START + 12, START + 3, START + 4, START + 100};
+
+        AnomalyDetector detector = newDetector();
+        feed(detector.segment("test.log", 0), first);
+        feed(detector.segment("test.log", 1), second);
+
+        long[] all = {START, START + 1, START + 2, START + 3, START + 4, START + 8, START + 12, START + 100};
+        Map<String, List<String>> anomalies = detector.detectAnomalies();
+        assertFalse(anomalies.isEmpty());
+        assertEquals(sortedScan(all), anomalies);
+    }
+
+    @Test
+    void stateSurvivesWriteAndRead() throws IOException {
+        SplittableRandom random = new SplittableRandom(3);
+        long[] shuffled = jitter(random, bursty(random, 3000));
+        long[] sorted = shuffled.clone();
+        Arrays.sort(sorted);
+
+        AnomalyDetector detector = newDetector();
+        feed(detector, Arrays.copyOf(shuffled, 1000), 1);
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        detector.writeState("test.log", new DataOutputStream(state));
+
+        AnomalyDetector restored = newDetector();
+        restored.readState("test.log", new DataInputStream(new ByteArrayInputStream(state.toByteArray())));
+        feed(restored.segment("test.log", 0), Arrays.copyOfRange(shuffled, 1000, shuffled.length));
+        assertEquals(sortedScan(sorted), restored.detectAnomalies());
+    }
+
+    @Test
+    void countsEntriesLaterThanTheTolerance() {
+        long[] timestamps = new long[51];
+        for (int i = 0; i < 50; i++) {
+            timestamps[i] = START + i;
+        }
+        timestamps[50] = START + 5;
+
+        AnomalyDetector detector = newDetector();
+        feed(detector, timestamps, 1);
+        assertEquals(Map.of("test.log", 1L), detector.getLateEntries());
+        assertEquals(Map.of(), newDetector().getLateEntries());
+    }
+
+    private static int stateSize(AnomalyDetector detector) throws IOException {
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        detector.writeState("test.log", new DataOutputStream(state));
+        return state.size();
+    }
+
+    /**
+     * Feeds timestamps into consecutive segments of about the same size.
+     */
+    private static void feed(AnomalyDetector detector, long[] timestamps, int segments) {
+        int perSegment = (timestamps.length + segments - 1) / segments;
+        for (int s = 0; s < segments; s++) {
+            int from = Math.min(s * perSegment, timestamps.length);
+            int to = Math.min(from + perSegment, timestamps.length);
+            feed(detector.segment("test.log", s), Arrays.copyOfRange(timestamps, from, to));
+        }
+    }
+
+    private static void feed(AnomalyDetector.Segment segment, long[] timestamps) {
+        for (long timestamp : timestamps) {
+            segment.add(timestamp);
+        }
+    }
+
+    /**
+     * Returns the anomalies of timestamps fed in ascending order into a single segment.
+     */
+    private static Map<String, List<String>> sortedScan(long[] sorted) {
+        AnomalyDetector detector = new AnomalyDetector(Set.of("ERROR"), WINDOW, THRESHOLD, 0);
+        feed(detector.segment("test.log", 0), sorted);
+        return detector.detectAnomalies();
+    }
+
+    /**
+     * Returns ascending timestamps with quiet stretches and bursts.
+     */
+    private static long[] bursty(SplittableRandom random, int count) {
+        long[] timestamps = new long[count];
+        long timestamp = START;
+        for (int i = 0; i < count; i++) {
+            timestamp += random.nextInt(10) == 0 ? random.nextInt(200) : random.nextInt(3);
+            timestamps[i] = timestamp;
+        }
+        return timestamps;
+    }
+
+    /**
+     * Moves each timestamp back by less than the tolerance, so that no timestamp lags more
+     * than that behind an earlier one, the way the lines of a log written by several
+     * threads interleave.
+     */
+    private static long[] jitter(SplittableRandom random, long[] sorted) {
+        long[] jittered = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            jittered[i] = sorted[i] - random.nextInt(TOLERANCE);
+        }
+        return jittered;
+    }
+
+    private static AnomalyDetector newDetector() {
+        return new AnomalyDetector(Set.of("ERROR"), WINDOW, THRESHOLD, TOLERANCE);
+    }
+}
@@ -0,0 +1,120 @@
+package analysis;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import org.junit.jupiter.api.Test;
+import processing.BatchParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that the analyzers that follow a log in position order give the same results
+ * whatever the order their batches arrive in and however the batches are spread over
+ * partials, since the pipeline guarantees neither.
+ */
+class BatchOrderTest {
+
+    private static final int LINES_PER_BATCH = 7;
+    private static final int PARTIALS = 3;
+
+    @Test
+    void resultsDoNotDependOnBatchOrder() throws IOException {
+        List<EntryBatch> batches = new ArrayList<>();
+        File[] logs = new File("logs").listFiles((dir, name) -> name.endsWith(".log"));
+        assertFalse(logs == null || logs.length == 0, "run the tests from the project directory");
+        for (File log : logs) {
+            batches.addAll(batches(log));
+        }
+
+        List<LogAnalyzer> inOrder = newAnalyzers();
+        analyze(inOrder, batches, 1);
+        assertFalse(((AnomalyDetector) inOrder.get(0)).detectAnomalies().isEmpty());
+        assertFalse(((GapAnalyzer) inOrder.get(1)).getGaps().isEmpty());
+
+        for (long seed = 0; seed < 5; seed++) {
+            List<EntryBatch> shuffled = new ArrayList<>(batches);
+            Collections.shuffle(shuffled, new Random(seed));
+            List<LogAnalyzer> anyOrder = newAnalyzers();
+            analyze(anyOrder, shuffled, PARTIALS);
+
+            assertEquals(((AnomalyDetector) inOrder.get(0)).detectAnomalies(),
+                    ((AnomalyDetector) anyOrder.get(0)).detectAnomalies());
+            assertEquals(((GapAnalyzer) inOrder.get(1)).getGaps(), ((GapAnalyzer) anyOrder.get(1)).getGaps());
+            assertEquals(((TemplateAnalyzer) inOrder.get(2)).getTopTemplates(),
+                    ((TemplateAnalyzer) anyOrder.get(2)).getTopTemplates());
+            assertEquals(rollup((RollupAnalyzer) inOrder.get(3)), rollup((RollupAnalyzer) anyOrder.get(3)));
+        }
+    }
+
+    /**
+     * Feeds the batches round-robin into the given number of partials of each analyzer,
+     * then merges the partials.
+     */
+    private static void analyze(List<LogAnalyzer> analyzers, List<EntryBatch> batches, int partials) {
+        List<List<LogAnalyzer>> workers = new ArrayList<>();
+        for (int i = 0; i < partials; i++) {
+            workers.add(analyzers.stream().map(LogAnalyzer::newPartial).toList());
+        }
+        for (int i = 0; i < batches.size(); i++) {
+            for (LogAnalyzer partial : workers.get(i % partials)) {
+                partial.analyze(batches.get(i));
+            }
+        }
+        for (List<LogAnalyzer> worker : workers) {
+            for (int i = 0; i < analyzers.size(); i++) {
+                analyzers.get(i).merge(worker.get(i));
+            }
+        }
+    }
+
+    /**
+     * Parses a log into batches of a few lines each, positioned within the log.
+     */
+    private static List<EntryBatch> batches(File log) throws IOException {
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        BatchParser parser = new BatchParser();
+        List<EntryBatch> batches = new ArrayList<>();
+
+        int start = 0;
+        int lines = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n' && ++lines % LINES_PER_BATCH == 0 || i == bytes.length - 1) {
+                EntryBatch batch = new EntryBatch(LINES_PER_BATCH);
+                batch.reset(log.getName(), start, i + 1);
+                parser.parse(buffer, start, i + 1, batch, EnumSet.allOf(Column.class));
+                batches.add(batch);
+                start = i + 1;
+            }
+        }
+        return batches;
+    }
+
+    private static Map<String, Map<String, List<String>>> rollup(RollupAnalyzer analyzer) {
+        Map<String, Map<String, List<String>>> result = new TreeMap<>();
+        analyzer.getRollup(60).forEach((level, sources) -> sources.forEach((source, runs) ->
+                result.computeIfAbsent(level, l -> new TreeMap<>()).put(source, runs.stream()
+                        .map(run -> run.start() + Arrays.toString(run.counts())).toList())));
+        return result;
+    }
+
+    private static List<LogAnalyzer> newAnalyzers() {
+        return List.of(new AnomalyDetector(Set.of("ERROR", "WARNING"), 60, 3, 10),
+                new GapAnalyzer(0.01, 64), new TemplateAnalyzer(10, 100), new RollupAnalyzer(new int[]{60}, 16));
+    }
+}
@@ -0,0 +1,118 @@
+package analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link BucketSeries} reports exactly the counts added to it, as runs,
+ * downsampled, merged or written and read back.
+ */
+class BucketSeriesTest {
+
+    @Test
+    void runsHoldExactlyTheCountsAdded() {
+        Map<Long, Long> exact = new TreeMap<>();
+        BucketSeries series = series(new Random(1), exact);
+
+        List<BucketSeries.Run> runs = series.runs();
+        assertEquals(exact, counts(runs));
+        long previousEnd = Long.MIN_VALUE;
+        for (BucketSeries.Run run : runs) {
+            long[] counts = run.counts();
+            assertNotEquals(0, counts[0]);
+            assertNotEquals(0, counts[counts.length - 1]);
+            // Runs are apart by more than the empty buckets a run may hold
+            assertTrue(previousEnd == Long.MIN_VALUE || run.start() - previousEnd >= 8, run.start() + " after " + previousEnd);
+            int empty = 0;
+            for (long count : counts) {
+                empty = count == 0 ? empty + 1 : 0;
+                assertTrue(empty < 8);
+            }
+            previousEnd = run.start() + counts.length;
+        }
+    }
+
+    @Test
+    void downsamplingAddsUpTheFinerBuckets() {
+        Map<Long, Long> exact = new TreeMap<>();
+        BucketSeries series = series(new Random(2), exact);
+        for (int factor : new int[]{1, 7, 60, 1024, 100_000}) {
+            Map<Long, Long> coarse = new TreeMap<>();
+            exact.forEach((bucket, count) -> coarse.merge(Math.floorDiv(bucket, factor), count, Long::sum));
+            assertEquals(coarse, counts(series.downsample(factor).runs()), "factor " + factor);
+        }
+    }
+
+    @Test
+    void mergingEqualsCountingOnce() {
+        Map<Long, Long> exact = new TreeMap<>();
+        BucketSeries first = series(new Random(3), exact);
+        BucketSeries second = series(new Random(4), exact);
+        first.addAll(second);
+        assertEquals(exact, counts(first.runs()));
+    }
+
+    @Test
+    void readsBackWhatItWrote() throws IOException {
+        Map<Long, Long> exact = new TreeMap<>();
+        BucketSeries series = series(new Random(5), exact);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        series.write(new DataOutputStream(bytes));
+        BucketSeries read = new BucketSeries();
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(exact, counts(read.runs()));
+
+        // Reading adds to the counts already there
+        read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        exact.replaceAll((bucket, count) -> count * 2);
+        assertEquals(exact, counts(read.runs()));
+
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        new BucketSeries().write(new DataOutputStream(empty));
+        BucketSeries none = new BucketSeries();
+        none.read(new DataInputStream(new ByteArrayInputStream(empty.toByteArray())));
+        assertTrue(none.runs().isEmpty());
+    }
+
+    /**
+     * Fills a series with bursts of nearby buckets spread over several pages, a few
+     * negative buckets and one stray bucket far from the others, adding the same counts to {@code exact}.
+     */
+    private static BucketSeries series(Random random, Map<Long, Long> exact) {
+        BucketSeries series = new BucketSeries();
+        long[] centers = {-5000, 0, 1023, 1024, 29_000_000, 29_003_000, 1L << 40};
+        for (int i = 0; i < 20_000; i++) {
+            long bucket = centers[random.nextInt(centers.length)] + random.nextInt(200) - 100;
+            long count = 1 + random.nextInt(3);
+            series.add(bucket, count);
+            exact.merge(bucket, count, Long::sum);
+        }
+        return series;
+    }
+
+    private static Map<Long, Long> counts(List<BucketSeries.Run> runs) {
+        Map<Long, Long> counts = new TreeMap<>();
+        for (BucketSeries.Run run : runs) {
+            for (int i = 0; i < run.counts().length; i++) {
+                if (run.counts()[i] != 0) {
+                    counts.put(run.start() + i, run.counts()[i]);
+                }
+            }
+        }
+        return counts;
+    }
+}
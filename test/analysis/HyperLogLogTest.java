@@ -0,0 +1,82 @@
+package analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link HyperLogLog} estimates stay within a few standard errors of the true
+ * number of distinct values, and that merging sketches equals sketching the union once.
+ */
+class HyperLogLogTest {
+
+    private static final double ERROR = 0.01;
+
+    @Test
+    void estimatesWithinTheConfiguredError() {
+        int precision = HyperLogLog.precisionFor(ERROR);
+        assertTrue(1.04 / Math.sqrt(1 << precision) <= ERROR);
+        for (int distinct : new int[]{10, 1000, 50_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            Random random = new Random(distinct);
+            for (int i = 0; i < distinct; i++) {
+                long value = random.nextLong();
+                // Every value is added several times, which must not change the estimate
+                sketch.add(value);
+                sketch.add(value);
+            }
+            double relative = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+            assertTrue(relative <= 4 * ERROR, distinct + " estimated as " + sketch.estimate());
+        }
+    }
+
+    @Test
+    void estimatesWeakHashesWithinTheConfiguredError() {
+        HyperLogLog sketch = new HyperLogLog(HyperLogLog.precisionFor(ERROR));
+        int distinct = 200_000;
+        for (long i = 0; i < distinct; i++) {
+            sketch.add(i);
+        }
+        assertTrue(Math.abs(sketch.estimate() - distinct) <= 4 * ERROR * distinct, "estimated " + sketch.estimate());
+    }
+
+    @Test
+    void mergingEqualsSketchingTheUnionOnce() throws IOException {
+        int precision = HyperLogLog.precisionFor(ERROR);
+        HyperLogLog first = new HyperLogLog(precision);
+        HyperLogLog second = new HyperLogLog(precision);
+        HyperLogLog once = new HyperLogLog(precision);
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong();
+            // The two halves overlap by a fifth of the values
+            if (i < 60_000) {
+                first.add(value);
+            }
+            if (i >= 40_000) {
+                second.add(value);
+            }
+            once.add(value);
+        }
+
+        first.merge(second);
+        assertEquals(once.estimate(), first.estimate());
+        assertEquals(once.estimate(), copy(first).estimate());
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new HyperLogLog(precision - 1)));
+    }
+
+    private static HyperLogLog copy(HyperLogLog sketch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.write(new DataOutputStream(bytes));
+        return HyperLogLog.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
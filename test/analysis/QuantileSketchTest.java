@@ -0,0 +1,94 @@
+package analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that every quantile of a {@link QuantileSketch} is within its relative accuracy
+ * of the exact one, and that merging sketches equals sketching all the values once.
+ */
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1};
+
+    @Test
+    void quantilesAreWithinTheAccuracy() {
+        for (double accuracy : new double[]{0.01, 0.05}) {
+            long[] values = values(new Random(7), 100_000);
+            QuantileSketch sketch = new QuantileSketch(accuracy);
+            for (long value : values) {
+                sketch.add(value);
+            }
+
+            Arrays.sort(values);
+            assertEquals(values.length, sketch.count());
+            assertEquals(values[values.length - 1], sketch.max());
+            for (double quantile : QUANTILES) {
+                long exact = values[(int) (quantile * (values.length - 1))];
+                long estimate = sketch.quantile(quantile);
+                // Within the accuracy, up to rounding to a whole number
+                assertTrue(Math.abs(estimate - exact) <= accuracy * exact + 1,
+                        "quantile " + quantile + " at accuracy " + accuracy + ": " + estimate + " for " + exact);
+            }
+        }
+    }
+
+    @Test
+    void mergingEqualsSketchingAllValuesOnce() throws IOException {
+        long[] values = values(new Random(11), 50_000);
+        QuantileSketch first = new QuantileSketch(0.01);
+        QuantileSketch second = new QuantileSketch(0.01);
+        QuantileSketch once = new QuantileSketch(0.01);
+        for (int i = 0; i < values.length; i++) {
+            // The second sketch only sees small values, so the first one has more buckets
+            (values[i] < 1000 && i % 2 == 0 ? second : first).add(values[i]);
+            once.add(values[i]);
+        }
+
+        second.merge(first);
+        for (QuantileSketch merged : new QuantileSketch[]{second, copy(second)}) {
+            assertEquals(once.count(), merged.count());
+            assertEquals(once.max(), merged.max());
+            for (double quantile : QUANTILES) {
+                assertEquals(once.quantile(quantile), merged.quantile(quantile), "quantile " + quantile);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> first.merge(new QuantileSketch(0.02)));
+    }
+
+    @Test
+    void emptySketchReturnsZero() {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        assertEquals(0, sketch.quantile(0.5));
+        sketch.merge(new QuantileSketch(0.01));
+        assertEquals(0, sketch.count());
+    }
+
+    /**
+     * Generates gaps the way logs have them: many zeros, most values small, and a long tail.
+     */
+    private static long[] values(Random random, int count) {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextInt(10) == 0 ? 0 : (long) Math.exp(random.nextDouble() * 14);
+        }
+        return values;
+    }
+
+    private static QuantileSketch copy(QuantileSketch sketch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.write(new DataOutputStream(bytes));
+        return QuantileSketch.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
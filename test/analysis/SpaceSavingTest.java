@@ -0,0 +1,125 @@
+package analysis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the guarantees of {@link SpaceSaving}: counts overestimate the true counts by at
+ * most their error, frequent keys always hold a counter, and merged summaries keep both.
+ */
+class SpaceSavingTest {
+
+    private static final int CAPACITY = 100;
+
+    @Test
+    void countsAreWithinTheirErrorAndFrequentKeysAreKept() {
+        List<Long> stream = zipf(new Random(3), 1000, 200_000);
+        SpaceSaving<String> summary = new SpaceSaving<>(CAPACITY);
+        stream.forEach(key -> summary.add(key, "key " + key));
+
+        Map<Long, Long> exact = count(stream);
+        List<SpaceSaving.Counter<String>> counters = summary.counters();
+        assertEquals(CAPACITY, counters.size());
+        assertBounds(exact, counters);
+        Set<Long> kept = counters.stream().map(SpaceSaving.Counter::key).collect(Collectors.toSet());
+        exact.forEach((key, count) -> {
+            if (count > stream.size() / CAPACITY) {
+                assertTrue(kept.contains(key), "key " + key + " seen " + count + " times");
+            }
+        });
+        assertEquals("key " + counters.get(0).key(), counters.get(0).label());
+        for (int i = 1; i < counters.size(); i++) {
+            assertTrue(counters.get(i - 1).count() >= counters.get(i).count());
+        }
+    }
+
+    @Test
+    void mergingSummariesOfEveryKeyEqualsCountingOnce() {
+        List<Long> stream = zipf(new Random(5), 80, 50_000);
+        SpaceSaving<String> first = new SpaceSaving<>(CAPACITY);
+        SpaceSaving<String> second = new SpaceSaving<>(CAPACITY);
+        for (int i = 0; i < stream.size(); i++) {
+            (i % 3 == 0 ? first : second).add(stream.get(i), "key");
+        }
+
+        first.merge(second);
+        Map<Long, Long> merged = new HashMap<>();
+        for (SpaceSaving.Counter<String> counter : first.counters()) {
+            assertEquals(0, counter.error());
+            merged.put(counter.key(), counter.count());
+        }
+        assertEquals(count(stream), merged);
+    }
+
+    @Test
+    void mergedSummariesKeepTheBoundsAndTheTopKeys() {
+        List<Long> stream = zipf(new Random(9), 1000, 200_000);
+        SpaceSaving<String> first = new SpaceSaving<>(CAPACITY);
+        SpaceSaving<String> second = new SpaceSaving<>(CAPACITY);
+        SpaceSaving<String> once = new SpaceSaving<>(CAPACITY);
+        for (int i = 0; i < stream.size(); i++) {
+            (i < stream.size() / 2 ? first : second).add(stream.get(i), "key");
+            once.add(stream.get(i), "key");
+        }
+
+        first.merge(second);
+        Map<Long, Long> exact = count(stream);
+        List<SpaceSaving.Counter<String>> counters = first.counters();
+        // A merged count may miss what one half counted before dropping the key, but never
+        // exceeds the true count by more than its error
+        for (SpaceSaving.Counter<String> counter : counters) {
+            assertTrue(counter.count() - counter.error() <= exact.get(counter.key()), counter.toString());
+        }
+        assertEquals(top(once.counters(), 10), top(counters, 10));
+        assertEquals(top(once.counters(), 10), exact.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed()).limit(10).map(Map.Entry::getKey).toList());
+    }
+
+    private static void assertBounds(Map<Long, Long> exact, List<SpaceSaving.Counter<String>> counters) {
+        for (SpaceSaving.Counter<String> counter : counters) {
+            long count = exact.get(counter.key());
+            assertTrue(counter.count() >= count, counter + " seen " + count + " times");
+            assertTrue(counter.count() - counter.error() <= count, counter + " seen " + count + " times");
+        }
+    }
+
+    private static List<Long> top(List<SpaceSaving.Counter<String>> counters, int count) {
+        return counters.stream().limit(count).map(SpaceSaving.Counter::key).toList();
+    }
+
+    private static Map<Long, Long> count(List<Long> stream) {
+        Map<Long, Long> counts = new HashMap<>();
+        stream.forEach(key -> counts.merge(key, 1L, Long::sum));
+        return counts;
+    }
+
+    /**
+     * Generates a shuffled stream where key {@code k} is about {@code 1 / (k + 1)} times as frequent as key 0.
+     */
+    private static List<Long> zipf(Random random, int keys, int size) {
+        double total = 0;
+        for (int k = 0; k < keys; k++) {
+            total += 1.0 / (k + 1);
+        }
+        List<Long> stream = new ArrayList<>(size);
+        for (int k = 0; k < keys && stream.size() < size; k++) {
+            long count = Math.max(1, Math.round(size / total / (k + 1)));
+            for (long i = 0; i < count && stream.size() < size; i++) {
+                stream.add((long) k);
+            }
+        }
+        Collections.shuffle(stream, random);
+        return stream;
+    }
+}
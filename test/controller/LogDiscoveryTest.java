@@ -0,0 +1,62 @@
+package controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks which files {@link LogDiscovery} finds, with and without recursion and
+ * through symbolic links.
+ */
+class LogDiscoveryTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsFilesThroughSymbolicLinks() throws IOException {
+        Path logs = Files.createDirectories(directory.resolve("logs"));
+        Files.writeString(logs.resolve("a.log"), "a\n");
+        Files.writeString(logs.resolve("notes.txt"), "n\n");
+        Path other = Files.createDirectories(directory.resolve("other"));
+        Files.writeString(other.resolve("b.log"), "b\n");
+        Files.createSymbolicLink(logs.resolve("b.log"), other.resolve("b.log"));
+        Path nested = Files.createDirectories(logs.resolve("2025"));
+        Files.writeString(nested.resolve("c.log"), "c\n");
+        // A loop back to the directory itself must not be walked forever
+        Files.createSymbolicLink(nested.resolve("loop"), logs);
+        Path link = Files.createSymbolicLink(directory.resolve("link"), logs);
+
+        assertEquals(Set.of("a.log", "b.log"), find(link, false));
+        assertEquals(Set.of("a.log", "b.log", "2025/c.log"), find(link, true));
+        assertEquals(find(logs, true), find(link, true));
+    }
+
+    @Test
+    void leavesOutExcludedFilesAndDirectories() throws IOException {
+        Files.writeString(directory.resolve("a.log"), "a\n");
+        Files.writeString(directory.resolve("skip.log"), "s\n");
+        Path old = Files.createDirectories(directory.resolve("old"));
+        Files.writeString(old.resolve("d.log"), "d\n");
+
+        LogDiscovery discovery = new LogDiscovery(directory.toFile(), true, List.of("*.log"), List.of("skip*", "old"));
+        Set<String> names = new TreeSet<>();
+        discovery.walk((file, name) -> names.add(name));
+        assertEquals(Set.of("a.log"), names);
+    }
+
+    private static Set<String> find(Path directory, boolean recursive) throws IOException {
+        Set<String> names = new TreeSet<>();
+        new LogDiscovery(directory.toFile(), recursive, List.of("*.log"), List.of())
+                .walk((file, name) -> names.add(name));
+        return names;
+    }
+}
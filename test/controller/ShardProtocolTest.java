@@ -0,0 +1,80 @@
+package controller;
+
+import model.TimeRange;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the messages of the {@link ShardProtocol} read back as they were written,
+ * and that a peer that is not a worker of the run or sends invalid results is refused.
+ */
+class ShardProtocolTest {
+
+    @Test
+    void readsBackTheMessagesOfAShard() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ShardProtocol.Assignment assignment = new ShardProtocol.Assignment("config.properties", "level=ERROR",
+                new TimeRange(1_744_800_000L, 1_744_803_600L), List.of(new File("logs/a.log"), new File("logs/b.log.gz")),
+                List.of("a.log", "sub/b.log.gz"));
+        ShardProtocol.writeHello(out, 42L, 3);
+        ShardProtocol.writeAssignment(out, assignment);
+        ShardProtocol.writeResult(out, new ShardProtocol.Result(1, "sub/b.log.gz", new byte[]{1, 2, 3}));
+        ShardProtocol.writeResult(out, new ShardProtocol.Result(0, "a.log", new byte[0]));
+        ShardProtocol.writeEnd(out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(3, ShardProtocol.readHello(in, 42L));
+        assertEquals(assignment, ShardProtocol.readAssignment(in));
+
+        ShardProtocol.Result first = ShardProtocol.readResult(in, 2);
+        assertEquals(1, first.file());
+        assertEquals("sub/b.log.gz", first.name());
+        assertArrayEquals(new byte[]{1, 2, 3}, first.state());
+        ShardProtocol.Result second = ShardProtocol.readResult(in, 2);
+        assertEquals(0, second.file());
+        assertArrayEquals(new byte[0], second.state());
+        assertNull(ShardProtocol.readResult(in, 2));
+    }
+
+    @Test
+    void refusesPeersWithAnotherToken() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeHello(new DataOutputStream(bytes), 42L, 0);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertThrows(IOException.class, () -> ShardProtocol.readHello(in, 43L));
+        byte[] request = "GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        assertThrows(IOException.class, () -> ShardProtocol.readHello(
+                new DataInputStream(new ByteArrayInputStream(request)), 42L));
+    }
+
+    @Test
+    void refusesInvalidResults() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeResult(new DataOutputStream(bytes), new ShardProtocol.Result(2, "c.log", new byte[]{1}));
+        assertThrows(IOException.class, () -> ShardProtocol.readResult(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 2));
+
+        // A result cut short by a worker that died
+        ByteArrayOutputStream cut = new ByteArrayOutputStream();
+        ShardProtocol.writeResult(new DataOutputStream(cut), new ShardProtocol.Result(0, "a.log", new byte[]{1, 2}));
+        byte[] truncated = Arrays.copyOf(cut.toByteArray(), cut.size() - 1);
+        assertThrows(EOFException.class, () -> ShardProtocol.readResult(
+                new DataInputStream(new ByteArrayInputStream(truncated)), 2));
+    }
+}
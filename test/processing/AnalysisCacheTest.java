@@ -0,0 +1,175 @@
+package processing;
+
+import analysis.LevelCounter;
+import analysis.LogAnalyzer;
+import model.EntryBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the {@link AnalysisCache} restores the results of unchanged files, resumes
+ * files that only grew, and ignores entries that no longer match their file.
+ */
+class AnalysisCacheTest {
+
+    private static final String SIGNATURE = "COUNT_LEVELS";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresTheResultsOfAnUnchangedFile() throws IOException {
+        File log = write("unchanged.log", 0, 3000);
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+
+        LevelCounter restored = new LevelCounter();
+        assertEquals(log.length(), new AnalysisCache(cache(), SIGNATURE).restore(log, log.getName(), List.of(restored), true));
+        assertEquals(Map.of("info", 1000L, "warning", 1000L, "error", 1000L), restored.getCounts());
+    }
+
+    @Test
+    void resumesAFileThatOnlyGrew() throws IOException {
+        File log = write("grown.log", 0, 3000);
+        long length = log.length();
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+        Files.writeString(log.toPath(), lines(3000, 1000), StandardOpenOption.APPEND);
+
+        AnalysisCache cache = new AnalysisCache(cache(), SIGNATURE);
+        LevelCounter resumed = new LevelCounter();
+        long offset = cache.restore(log, log.getName(), List.of(resumed), true);
+        assertEquals(length, offset);
+        resumed.merge(count(log, offset));
+        assertEquals(count(log, 0).getCounts(), resumed.getCounts());
+
+        // A file that cannot be read from an offset is read again from the start
+        assertNotRestored(cache, log, false);
+
+        // Once saved again, the grown file is unchanged
+        save(cache, log, resumed);
+        assertEquals(log.length(), new AnalysisCache(cache(), SIGNATURE).restore(log, log.getName(),
+                List.of(new LevelCounter()), true));
+    }
+
+    @Test
+    void ignoresEntriesThatNoLongerMatch() throws IOException {
+        File log = write("stale.log", 0, 3000);
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+
+        assertNotRestored(new AnalysisCache(cache(), "COUNT_LEVELS,DETECT_ANOMALIES"), log);
+
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.seek(1);
+            file.write('3');
+        }
+        assertNotRestored(new AnalysisCache(cache(), SIGNATURE), log);
+
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(log.length() - 10);
+        }
+        assertNotRestored(new AnalysisCache(cache(), SIGNATURE), log);
+
+        // Grown, but the cached part did not end on a line break
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(log.length() - 1);
+        }
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+        Files.writeString(log.toPath(), " continued\n", StandardOpenOption.APPEND);
+        assertNotRestored(new AnalysisCache(cache(), SIGNATURE), log);
+    }
+
+    @Test
+    void ignoresCorruptEntries() throws IOException {
+        File log = write("corrupt.log", 0, 3000);
+        save(new AnalysisCache(cache(), SIGNATURE), log, count(log, 0));
+
+        File[] entries = cache().listFiles();
+        assertEquals(1, entries.length);
+        try (RandomAccessFile file = new RandomAccessFile(entries[0], "rw")) {
+            file.seek(file.length() - 1);
+            int value = file.read();
+            file.seek(file.length() - 1);
+            file.write(value ^ 1);
+        }
+        assertNotRestored(new AnalysisCache(cache(), SIGNATURE), log);
+    }
+
+    @Test
+    void prunesTheEntriesOfMissingFiles() throws IOException {
+        File kept = write("kept.log", 0, 100);
+        File deleted = write("deleted.log", 0, 100);
+        AnalysisCache cache = new AnalysisCache(cache(), SIGNATURE);
+        save(cache, kept, count(kept, 0));
+        save(cache, deleted, count(deleted, 0));
+        assertEquals(2, cache().listFiles().length);
+
+        assertTrue(deleted.delete());
+        AnalysisCache next = new AnalysisCache(cache(), SIGNATURE);
+        assertEquals(kept.length(), next.restore(kept, kept.getName(), List.of(new LevelCounter()), true));
+        next.prune();
+        assertEquals(1, cache().listFiles().length);
+        assertEquals(kept.length(), new AnalysisCache(cache(), SIGNATURE).restore(kept, kept.getName(),
+                List.of(new LevelCounter()), true));
+    }
+
+    private static void assertNotRestored(AnalysisCache cache, File log) {
+        assertNotRestored(cache, log, true);
+    }
+
+    private static void assertNotRestored(AnalysisCache cache, File log, boolean resumable) {
+        LevelCounter counter = new LevelCounter();
+        assertEquals(0, cache.restore(log, log.getName(), List.of(counter), resumable));
+        assertFalse(counter.getCounts().values().stream().anyMatch(count -> count > 0));
+    }
+
+    private File cache() {
+        return directory.resolve("cache").toFile();
+    }
+
+    private static void save(AnalysisCache cache, File log, LogAnalyzer analyzer) {
+        cache.save(log, log.getName(), log.length(), log.lastModified(), List.of(analyzer));
+    }
+
+    /**
+     * Counts the levels of a log from an offset to its end.
+     */
+    private static LevelCounter count(File log, long offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        EntryBatch batch = new EntryBatch(16);
+        batch.reset(log.getName(), offset, bytes.length);
+        LevelCounter counter = new LevelCounter();
+        new BatchParser().parse(ByteBuffer.wrap(bytes), (int) offset, bytes.length, batch, counter.columns());
+        counter.analyze(batch);
+        return counter;
+    }
+
+    private File write(String name, int first, int count) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, lines(first, count));
+        return file.toFile();
+    }
+
+    private static String lines(int first, int count) {
+        String[] levels = {"INFO", "WARNING", "ERROR"};
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            text.append("[2025-04-16 13:28:").append(String.format("%02d", i % 60)).append("] [")
+                    .append(levels[i % 3]).append("] [Server").append(i % 5).append("] [message ").append(i).append("]\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,155 @@
+package processing;
+
+import analysis.DistinctCounter;
+import analysis.GapAnalyzer;
+import analysis.LevelCounter;
+import analysis.LogAnalyzer;
+import analysis.RollupAnalyzer;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the results of analyzers written in the {@link AnalyzerState} format are
+ * restored unchanged, and only into analyzers of the same classes and format version.
+ */
+class AnalyzerStateTest {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Test
+    void restoresTheResultsOfEveryAnalyzer() throws IOException {
+        List<LogAnalyzer> analyzers = analyzers();
+        analyze(analyzers, 0, 20_000);
+
+        byte[] state = AnalyzerState.write("test.log", analyzers);
+        List<LogAnalyzer> restored = analyzers();
+        assertTrue(AnalyzerState.read(state, "test.log", restored));
+        assertSameResults(analyzers, restored);
+
+        // Written again, the restored results give the same bytes
+        assertEquals(Arrays.toString(state), Arrays.toString(AnalyzerState.write("test.log", restored)));
+    }
+
+    @Test
+    void continuesFromRestoredResults() throws IOException {
+        // Which sources are tracked depends on the order they are seen in, so track them all
+        List<LogAnalyzer> whole = analyzers(12);
+        analyze(whole, 0, 20_000);
+
+        List<LogAnalyzer> half = analyzers(12);
+        analyze(half, 0, 10_000);
+        byte[] state = AnalyzerState.write("test.log", half);
+        List<LogAnalyzer> restored = analyzers(12);
+        assertTrue(AnalyzerState.read(state, "test.log", restored));
+        analyze(restored, 10_000, 10_000);
+
+        assertSameResults(whole, restored);
+    }
+
+    @Test
+    void rejectsStatesOfOtherAnalyzersOrVersions() throws IOException {
+        List<LogAnalyzer> analyzers = analyzers();
+        analyze(analyzers, 0, 1000);
+        byte[] state = AnalyzerState.write("test.log", analyzers);
+
+        List<LogAnalyzer> reordered = new ArrayList<>(analyzers());
+        reordered.add(0, reordered.remove(1));
+        assertFalse(AnalyzerState.read(state, "test.log", reordered));
+        assertFalse(AnalyzerState.read(state, "test.log", analyzers().subList(0, 2)));
+
+        byte[] otherVersion = state.clone();
+        otherVersion[7]++;
+        List<LogAnalyzer> untouched = analyzers();
+        assertFalse(AnalyzerState.read(otherVersion, "test.log", untouched));
+        assertTrue(((LevelCounter) untouched.get(0)).getCounts().values().stream().allMatch(count -> count == 0));
+    }
+
+    private static List<LogAnalyzer> analyzers() {
+        return analyzers(4);
+    }
+
+    /**
+     * Creates the analyzers, tracking up to {@code maxSources} of the 12 sources of the log.
+     */
+    private static List<LogAnalyzer> analyzers(int maxSources) {
+        return List.of(new LevelCounter(), new DistinctCounter(0.01), new GapAnalyzer(0.01, maxSources),
+                new RollupAnalyzer(new int[]{60, 3600}, maxSources));
+    }
+
+    private static void assertSameResults(List<LogAnalyzer> expected, List<LogAnalyzer> actual) {
+        assertEquals(((LevelCounter) expected.get(0)).getCounts(), ((LevelCounter) actual.get(0)).getCounts());
+
+        DistinctCounter distinct = (DistinctCounter) expected.get(1);
+        DistinctCounter restoredDistinct = (DistinctCounter) actual.get(1);
+        assertEquals(distinct.getDistinctSources(), restoredDistinct.getDistinctSources());
+        assertEquals(distinct.getDistinctMessagesPerLevel(), restoredDistinct.getDistinctMessagesPerLevel());
+
+        assertEquals(((GapAnalyzer) expected.get(2)).getGaps(), ((GapAnalyzer) actual.get(2)).getGaps());
+
+        for (int resolution : new int[]{60, 3600}) {
+            assertEquals(rollup((RollupAnalyzer) expected.get(3), resolution),
+                    rollup((RollupAnalyzer) actual.get(3), resolution));
+        }
+    }
+
+    private static Map<String, Map<String, List<String>>> rollup(RollupAnalyzer analyzer, int resolution) {
+        Map<String, Map<String, List<String>>> rollup = new HashMap<>();
+        analyzer.getRollup(resolution).forEach((level, sources) -> sources.forEach((source, runs) -> {
+            List<String> described = new ArrayList<>();
+            for (RollupAnalyzer.Run run : runs) {
+                described.add(run.start() + " " + Arrays.toString(run.counts()));
+            }
+            rollup.computeIfAbsent(level, name -> new HashMap<>()).put(source, described);
+        }));
+        return rollup;
+    }
+
+    /**
+     * Parses generated lines {@code [first, first + count)} of a log and feeds them to the
+     * analyzers in batches of 1000, at the positions they have in the log.
+     */
+    private static void analyze(List<LogAnalyzer> analyzers, int first, int count) {
+        String[] levels = {"INFO", "WARNING", "ERROR"};
+        Set<Column> columns = EnumSet.noneOf(Column.class);
+        analyzers.forEach(analyzer -> columns.addAll(analyzer.columns()));
+        LocalDateTime start = LocalDateTime.of(2025, 4, 16, 0, 0);
+        BatchParser parser = new BatchParser();
+        EntryBatch batch = new EntryBatch(16);
+        long position = 0;
+        for (int from = 0; from < first + count; from += 1000) {
+            StringBuilder text = new StringBuilder();
+            for (int i = from; i < from + 1000; i++) {
+                text.append('[').append(start.plusSeconds(i * 7L).format(FORMAT)).append("] [")
+                        .append(levels[i % 3]).append("] [Server").append(i * 31 % 12).append("] [message ")
+                        .append(i % 500).append("]\n");
+            }
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            if (from >= first) {
+                batch.reset("test.log", position, position + bytes.length);
+                parser.parse(ByteBuffer.wrap(bytes), 0, bytes.length, batch, columns);
+                for (LogAnalyzer analyzer : analyzers) {
+                    analyzer.analyze(batch);
+                }
+            }
+            position += bytes.length;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package processing;
+
+import model.TimeRange;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how {@link LineFilter} splits filter expressions into words and symbols.
+ */
+class LineFilterTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    @Test
+    void loneExclamationMarkIsPartOfAWord() {
+        LineFilter filter = parse("message contains Error!");
+        assertTrue(accepts(filter, "Fatal Error! disk full"));
+        assertFalse(accepts(filter, "Fatal Error disk full"));
+
+        assertTrue(accepts(parse("message = !"), "!"));
+        assertTrue(accepts(parse("message contains !!x!"), "a!!x!b"));
+        assertTrue(accepts(parse("message contains a! AND message contains b"), "a! b"));
+    }
+
+    @Test
+    void exclamationMarkBeforeEqualsIsNotEqual() {
+        LineFilter filter = parse("message!=Error!");
+        assertTrue(accepts(filter, "Error"));
+        assertFalse(accepts(filter, "Error!"));
+        assertThrows(IllegalArgumentException.class, () -> parse("message != x!!=y"));
+    }
+
+    @Test
+    void rejectsIncompleteExpressions() {
+        assertThrows(IllegalArgumentException.class, () -> parse("message contains"));
+        assertThrows(IllegalArgumentException.class, () -> parse("message !"));
+        assertThrows(IllegalArgumentException.class, () -> parse("message contains \"Error!"));
+    }
+
+    @Test
+    void quotedValuesKeepSymbols() {
+        LineFilter filter = parse("message = \"a != (b, c)\"");
+        assertTrue(accepts(filter, "a != (b, c)"));
+        assertEquals(TimeRange.ALL, filter.range());
+    }
+
+    private static LineFilter parse(String expression) {
+        return assertTimeoutPreemptively(TIMEOUT, () -> LineFilter.parse(expression, TimeRange.ALL), expression);
+    }
+
+    private static boolean accepts(LineFilter filter, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return filter.acceptsMessage(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,108 @@
+package processing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks that every {@link LogInput} mode hands over the lines of a range of a file
+ * exactly once and in order, whatever the buffer size.
+ */
+class LogInputTest {
+
+    private static final List<String> MODES = List.of("STREAM", "CHANNEL", "MMAP");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsWholeFileInEveryMode() throws IOException {
+        File file = write(lines(2000));
+        byte[] expected = Files.readAllBytes(file.toPath());
+        for (String mode : MODES) {
+            for (int bufferSize : new int[]{1, 7, 64, 4096, 1 << 20}) {
+                assertArrayEquals(expected, read(mode, FileChunk.whole(file), bufferSize), mode + " " + bufferSize);
+            }
+        }
+    }
+
+    @Test
+    void readsChunksInEveryMode() throws IOException {
+        File file = write(lines(5000));
+        byte[] expected = Files.readAllBytes(file.toPath());
+        for (String mode : MODES) {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (FileChunk chunk : FileChunk.split(file, 10_000)) {
+                all.writeBytes(read(mode, chunk, 256));
+            }
+            assertArrayEquals(expected, all.toByteArray(), mode);
+        }
+    }
+
+    @Test
+    void growsForLinesLongerThanTheBuffer() throws IOException {
+        String longLine = "[2025-04-16 13:28:10] [INFO] [Server4] [" + "x".repeat(100_000) + "]\n";
+        File file = write("short\n" + longLine + "short\r\n" + longLine + "last");
+        byte[] expected = Files.readAllBytes(file.toPath());
+        for (String mode : MODES) {
+            assertArrayEquals(expected, read(mode, FileChunk.whole(file), 16), mode);
+        }
+    }
+
+    @Test
+    void stopsAtTheEndOfAnEmptyRange() throws IOException {
+        File file = write("");
+        for (String mode : MODES) {
+            try (LogInput input = LogInput.open(mode, FileChunk.whole(file), 64)) {
+                while (input.fill(0)) {
+                    assertFalse(input.buffer().hasRemaining(), mode);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a range the way the pipeline does: complete lines are consumed from the
+     * front of the buffer after each fill.
+     */
+    private static byte[] read(String mode, FileChunk chunk, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (LogInput input = LogInput.open(mode, chunk, bufferSize)) {
+            int consumed = 0;
+            while (input.fill(consumed)) {
+                ByteBuffer buffer = input.buffer();
+                consumed = ByteBatch.lineEnd(buffer, buffer.limit(), input.isAtEnd());
+                byte[] lines = new byte[consumed];
+                buffer.get(0, lines);
+                out.writeBytes(lines);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String lines(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("[2025-04-16 13:28:10] [INFO] [Server").append(i % 7).append("] [")
+                    .append("message ".repeat(i % 13)).append(i).append("]\n");
+        }
+        return text.toString();
+    }
+
+    private File write(String content) throws IOException {
+        Path file = Files.createTempFile(directory, "input", ".log");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file.toFile();
+    }
+}
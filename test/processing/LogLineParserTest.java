@@ -0,0 +1,243 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that {@link LogLineParser} and {@link BatchParser} accept and split exactly
+ * the lines the regular expression used before them did, on the sample logs and on
+ * the lines that differ between a byte scanner and {@link Pattern}.
+ */
+class LogLineParserTest {
+
+    // The line format and timestamp format the parser replaced
+    private static final Pattern LOG_PATTERN = Pattern.compile("^\\[(.*?)\\] \\[(.*?)\\] \\[(.*?)\\] \\[(.*?)\\]$");
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private static final List<String> EDGE_CASES = List.of(
+            "[2025-04-16 13:28:10] [INFO] [Server4] [Cache miss]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] []",
+            "[] [] [] []",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [a] [b]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [contains ] [ inside]",
+            "[2025-04-16 13:28:10] [INFO] [Server4]] [x]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [Cache miss",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [Cache miss] ",
+            " [2025-04-16 13:28:10] [INFO] [Server4] [Cache miss]",
+            "[2025-04-16 13:28:10][INFO][Server4][Cache miss]",
+            "[2025-04-16 13:28:10] [INFO] [Server4]",
+            "[2025-04-16 13:28:10] [ERROR] [Ünïcødé] [日本語のメッセージ]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [next\u0085line]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [line\u2028separator]",
+            "[2025-04-16 13:28:10] [INFO] [Server\u2029] [paragraph separator]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [Â no separator]",
+            "[2025-04-16 13:28:10] [INFO] [Server4] [\u20ac\u2027\u202a]",
+            "[2025-13-16 13:28:10] [INFO] [Server4] [month 13]",
+            "[2025-02-30 13:28:10] [INFO] [Server4] [February 30]",
+            "[2024-02-29 23:59:59] [INFO] [Server4] [leap day]",
+            "[2025-04-16 24:00:00] [INFO] [Server4] [hour 24]",
+            "[2025-04-16 13:28:60] [INFO] [Server4] [second 60]",
+            "[2025-04-16T13:28:10] [INFO] [Server4] [ISO separator]",
+            "[2025-04-16 13:28] [INFO] [Server4] [no seconds]",
+            "[2025-04-16 13:28:10.5] [INFO] [Server4] [fraction]",
+            "[25-04-16 13:28:10] [INFO] [Server4] [short year]",
+            "[+2025-04-16 13:28:10] [INFO] [Server4] [signed year]",
+            "[2025-4-16 13:28:10] [INFO] [Server4] [one digit month]",
+            "[ 2025-04-16 13:28:10] [INFO] [Server4] [leading space]",
+            "[2025-04-16 13:28:1x] [INFO] [Server4] [letter]",
+            "[not a timestamp] [INFO] [Server4] [text]",
+            "[] [INFO] [Server4] [empty timestamp]");
+
+    @Test
+    void matchesRegexOnSampleLogs() throws IOException {
+        File[] logs = new File("logs").listFiles((dir, name) -> name.endsWith(".log"));
+        assertNotNull(logs, "run the tests from the project directory");
+        assertTrue(logs.length > 0);
+
+        LogLineParser parser = new LogLineParser();
+        int lines = 0;
+        for (File log : logs) {
+            try (BufferedReader reader = Files.newBufferedReader(log.toPath())) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    assertSameAsRegex(parser, line);
+                    lines++;
+                }
+            }
+        }
+        assertTrue(lines > 0);
+    }
+
+    @Test
+    void matchesRegexOnEdgeCases() {
+        LogLineParser parser = new LogLineParser();
+        for (String line : EDGE_CASES) {
+            assertSameAsRegex(parser, line);
+        }
+    }
+
+    @Test
+    void rejectsUnicodeLineSeparators() {
+        LogLineParser parser = new LogLineParser();
+        for (char separator : new char[]{'\u0085', '\u2028', '\u2029'}) {
+            String line = "[2025-04-16 13:28:10] [INFO] [Server4] [a" + separator + "b]";
+            assertNull(regex(line));
+            assertFalse(parse(parser, line), "U+" + Integer.toHexString(separator));
+        }
+    }
+
+    @Test
+    void rejectsInvalidTimestamps() {
+        LogLineParser parser = new LogLineParser();
+        for (String timestamp : List.of("2025-13-16 13:28:10", "2025-04-16 25:00:00", "2025-04-16T13:28:10", "")) {
+            String line = "[" + timestamp + "] [INFO] [Server4] [text]";
+            assertTrue(parse(parser, line));
+            assertFalse(parser.hasValidTimestamp(), timestamp);
+        }
+    }
+
+    @Test
+    void splitsLinesLikeBufferedReader() throws IOException {
+        String valid = "[2025-04-16 13:28:10] [INFO] [Server4] [Cache miss]";
+        String other = "[2025-04-16 13:29:19] [WARNING] [Server3] [Network packet loss]";
+        List<String> inputs = List.of(
+                valid + "\n" + other + "\n",
+                valid + "\r\n" + other + "\r\n",
+                valid + "\r" + other + "\r",
+                valid + "\r\n" + other,
+                valid + "\n\r" + other + "\r\r\n",
+                valid + "\r\n\r\n" + other + "\n\n",
+                valid + "\n" + String.join("\r\n", EDGE_CASES) + "\r",
+                "[2025-04-16 13:28:10] [INFO] [Server4] [half\r] [line]\n" + other);
+
+        for (String input : inputs) {
+            assertSameAsBufferedReader(input);
+        }
+    }
+
+    @Test
+    void parsesSampleLogsLikeBufferedReader() throws IOException {
+        File[] logs = new File("logs").listFiles((dir, name) -> name.endsWith(".log"));
+        assertNotNull(logs, "run the tests from the project directory");
+        for (File log : logs) {
+            assertSameAsBufferedReader(Files.readString(log.toPath()));
+        }
+    }
+
+    /**
+     * Parses every line of a text through a {@link BatchParser} and compares the
+     * entries and rejected lines with the lines returned by {@link BufferedReader}.
+     */
+    private static void assertSameAsBufferedReader(String input) throws IOException {
+        List<String[]> expected = new ArrayList<>();
+        int expectedRejected = 0;
+        try (BufferedReader reader = new BufferedReader(new StringReader(input))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = regex(line);
+                if (fields == null) {
+                    expectedRejected++;
+                } else {
+                    expected.add(fields);
+                }
+            }
+        }
+
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        EntryBatch batch = new EntryBatch(16);
+        batch.reset("test", 0, bytes.length);
+        new BatchParser().parse(ByteBuffer.wrap(bytes), 0, bytes.length, batch, EnumSet.allOf(Column.class));
+
+        assertEquals(expected.size(), batch.size(), input);
+        assertEquals(expectedRejected, batch.rejected(), input);
+        for (int i = 0; i < expected.size(); i++) {
+            String[] fields = expected.get(i);
+            assertEquals(epochSecond(fields[0]), batch.timestamps()[i]);
+            assertEquals(fields[1], SymbolTable.LEVELS.name(batch.levels()[i]));
+            assertEquals(fields[2], SymbolTable.SOURCES.name(batch.sources()[i]));
+            assertEquals(SymbolTable.SOURCES.fingerprint(batch.sources()[i]), batch.sourceFingerprints()[i]);
+            assertEquals(fields[2], new String(batch.sourceBytes(), batch.sourceStart(i), batch.sourceEnd(i) - batch.sourceStart(i),
+                    StandardCharsets.UTF_8));
+            assertEquals(fields[3], batch.message(i));
+        }
+    }
+
+    /**
+     * Checks that a line is accepted by {@link LogLineParser} exactly when it matched the
+     * regular expression and had a valid timestamp, and that the fields are the same.
+     */
+    private static void assertSameAsRegex(LogLineParser parser, String line) {
+        String[] fields = regex(line);
+        boolean accepted = parse(parser, line) && parser.hasValidTimestamp();
+        assertEquals(fields != null, accepted, line);
+        if (fields == null) {
+            return;
+        }
+        assertArrayEquals(fields, new String[]{parser.timestamp(), parser.level(), parser.source(), parser.message()}, line);
+        assertEquals(fields[1], SymbolTable.LEVELS.name(parser.level(SymbolTable.LEVELS)));
+        assertEquals(fields[2], SymbolTable.SOURCES.name(parser.source(SymbolTable.SOURCES)));
+        assertEquals(epochSecond(fields[0]), parser.epochSecond(), line);
+    }
+
+    /**
+     * Parses a line from a direct buffer, so that the decoding goes through the
+     * parser's scratch array, with bytes around it that are not part of the line.
+     */
+    private static boolean parse(LogLineParser parser, String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 2);
+        buffer.put(0, (byte) ']');
+        buffer.put(1, bytes);
+        buffer.put(bytes.length + 1, (byte) '[');
+        return parser.parse(buffer, 1, bytes.length + 1);
+    }
+
+    /**
+     * Splits a line the way the regular expression did, rejecting it if the timestamp
+     * could not be parsed.
+     *
+     * @return the timestamp, level, source and message, or null if the line was rejected
+     */
+    private static String[] regex(String line) {
+        Matcher matcher = LOG_PATTERN.matcher(line);
+        if (!matcher.matches()) {
+            return null;
+        }
+        try {
+            LocalDateTime.parse(matcher.group(1), TIMESTAMP_FORMAT);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return new String[]{matcher.group(1), matcher.group(2), matcher.group(3), matcher.group(4)};
+    }
+
+    private static long epochSecond(String timestamp) {
+        return LocalDateTime.parse(timestamp, TIMESTAMP_FORMAT).toEpochSecond(ZoneOffset.UTC);
+    }
+}
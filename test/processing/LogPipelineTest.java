@@ -0,0 +1,103 @@
+package processing;
+
+import analysis.LevelCounter;
+import analysis.LogAnalyzer;
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the jobs of a {@link LogPipeline} report what happened to their lines.
+ */
+class LogPipelineTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void failingAnalyzerFailsItsJob() throws IOException, InterruptedException {
+        File file = write(2000);
+        IllegalStateException failure = new IllegalStateException("broken analyzer");
+        LogAnalyzer broken = new LogAnalyzer() {
+            @Override
+            public Set<Column> columns() {
+                return Set.of(Column.LEVEL);
+            }
+
+            @Override
+            public void analyze(EntryBatch batch) {
+                throw failure;
+            }
+        };
+
+        try (LogPipeline pipeline = new LogPipeline(1, 2, 2, 4, 4, 4096, "STREAM")) {
+            LogPipeline.Job failed = pipeline.submit(FileChunk.whole(file), List.of(broken));
+            LogPipeline.Job ok = pipeline.submit(FileChunk.whole(file), List.of(new LevelCounter()));
+            failed.await();
+            ok.await();
+
+            assertTrue(failed.hasFailed());
+            assertFalse(failed.isComplete());
+            assertSame(failure, failed.getError());
+            assertFalse(ok.hasFailed());
+            assertTrue(ok.isComplete());
+            assertNull(ok.getError());
+        }
+    }
+
+    @Test
+    void resultsAreMergedWhenAJobIsDone() throws IOException, InterruptedException {
+        File file = write(5000);
+        LevelCounter levels = new LevelCounter();
+        try (LogPipeline pipeline = new LogPipeline(1, 2, 3, 4, 4, 4096, "STREAM")) {
+            for (int round = 1; round <= 3; round++) {
+                pipeline.submit(FileChunk.whole(file), List.of(levels)).await();
+                assertEquals(round * 5000L, levels.getCounts().values().stream().mapToLong(Long::longValue).sum());
+            }
+        }
+    }
+
+    @Test
+    void resultsOfManyListsOfAnalyzersAreKeptApart() throws IOException {
+        File file = write(3000);
+        List<LevelCounter> counters = new ArrayList<>();
+        try (LogPipeline pipeline = new LogPipeline(2, 2, 3, 4, 4, 4096, "STREAM")) {
+            for (int i = 0; i < 40; i++) {
+                LevelCounter levels = new LevelCounter();
+                counters.add(levels);
+                pipeline.submit(FileChunk.whole(file), List.of(levels));
+            }
+        }
+        for (LevelCounter levels : counters) {
+            assertEquals(Map.of("info", 1000L, "warning", 1000L, "error", 1000L), levels.getCounts());
+        }
+    }
+
+    private File write(int lines) throws IOException {
+        String[] levels = {"INFO", "WARNING", "ERROR"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("[2025-04-16 13:28:").append(String.format("%02d", i % 60)).append("] [")
+                    .append(levels[i % 3]).append("] [Server").append(i % 5).append("] [message ").append(i).append("]\n");
+        }
+        Path file = Files.createTempFile(directory, "pipeline", ".log");
+        Files.writeString(file, text);
+        return file.toFile();
+    }
+}
@@ -0,0 +1,142 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.SymbolTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a log converted by {@link SegmentWriter} reads back through a {@link SegmentReader}
+ * as the same entries, at the same positions, as parsing the log itself.
+ */
+class SegmentTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackTheEntriesOfTheLog() throws IOException {
+        File log = write(5000);
+        File segment = directory.resolve("test.log" + SegmentWriter.SUFFIX).toFile();
+        SegmentWriter.convert(log, "test.log", segment, "STREAM", 4096);
+
+        List<String> expected = entries(parse(log));
+        List<String> actual = new ArrayList<>();
+        long position = 0;
+        int blocks = 0;
+        try (SegmentReader reader = new SegmentReader(segment, EnumSet.allOf(Column.class))) {
+            assertEquals("test.log", reader.getName());
+            EntryBatch batch = new EntryBatch(16);
+            while (reader.next(batch)) {
+                assertEquals("test.log", batch.getName());
+                assertEquals(position, batch.getPosition());
+                position = batch.getEndPosition();
+                actual.addAll(entries(batch));
+                blocks++;
+            }
+        }
+        assertEquals(log.length(), position);
+        assertEquals(expected, actual);
+        assertTrue(blocks > 1, "the log should span several blocks");
+    }
+
+    @Test
+    void leavesColumnsThatWereNotRequestedEmpty() throws IOException {
+        File log = write(100);
+        File segment = directory.resolve("test.log" + SegmentWriter.SUFFIX).toFile();
+        SegmentWriter.convert(log, "test.log", segment, "STREAM", 1 << 16);
+
+        try (SegmentReader reader = new SegmentReader(segment, EnumSet.of(Column.TIMESTAMP))) {
+            EntryBatch batch = new EntryBatch(16);
+            while (reader.next(batch)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    assertEquals(-1, batch.levels()[i]);
+                    assertEquals(-1, batch.sources()[i]);
+                    assertEquals(0, batch.sourceFingerprints()[i]);
+                    assertEquals("", batch.message(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rejectsCorruptBlocks() throws IOException {
+        File log = write(1000);
+        File segment = directory.resolve("test.log" + SegmentWriter.SUFFIX).toFile();
+        SegmentWriter.convert(log, "test.log", segment, "STREAM", 4096);
+
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(file.length() - 10);
+            int value = file.read();
+            file.seek(file.length() - 10);
+            file.write(value ^ 0x40);
+        }
+        IOException error = assertThrows(IOException.class, () -> {
+            try (SegmentReader reader = new SegmentReader(segment, EnumSet.allOf(Column.class))) {
+                EntryBatch batch = new EntryBatch(16);
+                while (reader.next(batch)) {
+                    // read every block
+                }
+            }
+        });
+        assertTrue(error.getMessage().startsWith("corrupt segment block"), error.getMessage());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() {
+        assertThrows(IOException.class, () -> SegmentReader.readName(write(10)));
+    }
+
+    private File write(int lines) throws IOException {
+        String[] levels = {"INFO", "WARNING", "ERROR", "DEBUG"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append("[2025-04-16 13:").append(String.format("%02d:%02d", i / 60 % 60, i % 60)).append("] [")
+                    .append(levels[i % 4]).append("] [Server").append(i % 37).append("] [message ")
+                    .append(i % 7 == 0 ? "repeated" : String.valueOf(i)).append("]\n");
+            if (i % 500 == 0) {
+                text.append("not a log line\n");
+            }
+        }
+        Path file = Files.createTempFile(directory, "segment", ".log");
+        Files.writeString(file, text);
+        return file.toFile();
+    }
+
+    private static EntryBatch parse(File log) throws IOException {
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        EntryBatch batch = new EntryBatch(16);
+        batch.reset(log.getName(), 0, bytes.length);
+        new BatchParser().parse(ByteBuffer.wrap(bytes), 0, bytes.length, batch, EnumSet.allOf(Column.class));
+        return batch;
+    }
+
+    private static List<String> entries(EntryBatch batch) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            String source = new String(batch.sourceBytes(), batch.sourceStart(i),
+                    batch.sourceEnd(i) - batch.sourceStart(i), StandardCharsets.UTF_8);
+            assertEquals(SymbolTable.SOURCES.name(batch.sources()[i]), source);
+            assertEquals(SymbolTable.SOURCES.fingerprint(batch.sources()[i]), batch.sourceFingerprints()[i]);
+            entries.add(batch.timestamps()[i] + " " + SymbolTable.LEVELS.name(batch.levels()[i]) + " "
+                    + source + " " + batch.message(i));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,174 @@
+package processing;
+
+import model.EntryBatch;
+import model.EntryBatch.Column;
+import model.TimeRange;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a {@link TimeIndex} survives being saved and loaded, that the ranges it
+ * selects hold every line of a time range, and that it is only used while it matches its file.
+ */
+class TimeIndexTest {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void selectsEveryLineOfARangeAfterLoading() throws IOException {
+        File log = write("ordered.log", 0, 20_000);
+        TimeIndex index = load(log);
+
+        List<Long> timestamps = timestamps(log, new FileChunk(log, 0, log.length()));
+        TimeRange range = new TimeRange(timestamps.get(6000), timestamps.get(8000));
+        List<FileChunk> chunks = index.select(log, range);
+
+        assertEquals(1, chunks.size());
+        assertTrue(chunks.get(0).getEnd() - chunks.get(0).getStart() < log.length() / 4);
+        assertEquals(inRange(timestamps, range), inRange(read(log, chunks), range));
+    }
+
+    @Test
+    void selectsEveryLineOfARangeOfAnUnorderedLog() throws IOException {
+        File log = write("unordered.log", 10_000, 10_000);
+        Files.writeString(log.toPath(), lines(0, 10_000), StandardOpenOption.APPEND);
+        TimeIndex index = load(log);
+
+        List<Long> timestamps = timestamps(log, new FileChunk(log, 0, log.length()));
+        for (TimeRange range : List.of(new TimeRange(timestamps.get(15_000), timestamps.get(16_000)),
+                new TimeRange(timestamps.get(9000), timestamps.get(11_000)),
+                new TimeRange(timestamps.get(19_999), Long.MAX_VALUE))) {
+            assertEquals(inRange(timestamps, range), inRange(read(log, index.select(log, range)), range), range.toString());
+        }
+    }
+
+    @Test
+    void coversOnlyTheIndexedPartOfAGrownFile() throws IOException {
+        File log = write("grown.log", 0, 5000);
+        long length = log.length();
+        load(log);
+
+        Files.writeString(log.toPath(), lines(5000, 100), StandardOpenOption.APPEND);
+        TimeIndex index = TimeIndex.load(directory.resolve("index").toFile(), log);
+        assertNotNull(index);
+        assertEquals(length, index.getLength());
+    }
+
+    @Test
+    void isIgnoredOnceTheFileChanged() throws IOException {
+        File log = write("changed.log", 0, 5000);
+        load(log);
+        File indexes = directory.resolve("index").toFile();
+
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.seek(10);
+            file.write('9');
+        }
+        assertNull(TimeIndex.load(indexes, log));
+
+        load(log);
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(log.length() - 100);
+        }
+        assertNull(TimeIndex.load(indexes, log));
+    }
+
+    /**
+     * Builds the index of a log the way the parsers do, from two batches handed over in
+     * reverse order, then saves it and loads it back.
+     */
+    private TimeIndex load(File log) throws IOException {
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        int middle = bytes.length / 2;
+        while (bytes[middle - 1] != '\n') {
+            middle++;
+        }
+
+        TimeIndex.Builder builder = new TimeIndex.Builder(null);
+        BatchParser parser = new BatchParser();
+        EntryBatch batch = new EntryBatch(16);
+        TimeIndex.Sampler sampler = new TimeIndex.Sampler();
+        for (int[] range : new int[][]{{middle, bytes.length}, {0, middle}}) {
+            sampler.clear();
+            batch.reset(log.getName(), range[0], range[1]);
+            parser.parse(ByteBuffer.wrap(bytes), range[0], range[1], batch, EnumSet.of(Column.TIMESTAMP),
+                    LineFilter.ALL, sampler);
+            builder.add(sampler);
+        }
+
+        File indexes = directory.resolve("index").toFile();
+        builder.build(bytes.length).save(indexes, log, log.lastModified());
+        TimeIndex index = TimeIndex.load(indexes, log);
+        assertNotNull(index);
+        assertEquals(bytes.length, index.getLength());
+        return index;
+    }
+
+    private File write(String name, int first, int count) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, lines(first, count));
+        return file.toFile();
+    }
+
+    private static String lines(int first, int count) {
+        LocalDateTime start = LocalDateTime.of(2025, 4, 16, 0, 0);
+        StringBuilder text = new StringBuilder();
+        for (int i = first; i < first + count; i++) {
+            text.append('[').append(start.plusSeconds(i).format(FORMAT)).append("] [INFO] [Server")
+                    .append(i % 5).append("] [message ").append(i).append("]\n");
+        }
+        return text.toString();
+    }
+
+    private static List<Long> read(File log, List<FileChunk> chunks) throws IOException {
+        List<Long> timestamps = new ArrayList<>();
+        for (FileChunk chunk : chunks) {
+            timestamps.addAll(timestamps(log, chunk));
+        }
+        return timestamps;
+    }
+
+    private static List<Long> timestamps(File log, FileChunk chunk) throws IOException {
+        byte[] bytes = Files.readAllBytes(log.toPath());
+        int from = (int) chunk.getStart();
+        int to = (int) chunk.getEnd();
+        assertTrue(from == 0 || bytes[from - 1] == '\n', "chunks start at a line");
+        assertTrue(to == bytes.length || bytes[to - 1] == '\n', "chunks end at a line");
+
+        EntryBatch batch = new EntryBatch(16);
+        batch.reset(log.getName(), from, to);
+        new BatchParser().parse(ByteBuffer.wrap(bytes), from, to, batch, EnumSet.of(Column.TIMESTAMP));
+        assertEquals(0, batch.rejected(), new String(bytes, from, Math.min(to - from, 100), StandardCharsets.UTF_8));
+        List<Long> timestamps = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            timestamps.add(batch.timestamps()[i]);
+        }
+        return timestamps;
+    }
+
+    private static List<Long> inRange(List<Long> timestamps, TimeRange range) {
+        return timestamps.stream().filter(range::contains).toList();
+    }
+}